@@ -290,6 +290,12 @@ public final class SynapseConstants {
             = "synapse.sal.endpoints.sesssion.timeout.default";    
 
     public static final long SAL_ENDPOINTS_DEFAULT_SESSION_TIMEOUT = 120000;
+
+    /** Maximum number of sessions kept by the SAL endpoints in a non clustered environment */
+    public static final String PROP_SAL_ENDPOINT_MAX_SESSIONS
+            = "synapse.sal.endpoints.sessions.max";
+
+    public static final int SAL_ENDPOINTS_DEFAULT_MAX_SESSIONS = 1000000;
     
 
     /** A name to use for anonymous sequences in the sequence stack */
@@ -389,6 +395,7 @@ public final class SynapseConstants {
     public static final int ENDPOINT_FO_NONE_READY   = 303000;
     public static final int ENDPOINT_ADDRESS_NONE_READY = 303001;
     public static final int ENDPOINT_WSDL_NONE_READY = 303002;
+    public static final int ENDPOINT_CIRCUIT_OPEN = 303003;
     // Failure on endpoint in the session 
     public static final int ENDPOINT_SAL_NOT_READY = 309001;
     public static final int ENDPOINT_SAL_INVALID_PATH = 309002;
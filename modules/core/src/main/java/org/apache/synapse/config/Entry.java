@@ -44,13 +44,15 @@ public class Entry implements SynapseArtifact {
     /** Source URL of the entry if it is a URL_SRC */
     private URL src;
     /** The value of the entry. This can be either an OMElement or an String */
-    private Object value;
+    private volatile Object value;
     /** An XML to Object mapper - if one is available */
     private XMLToObjectMapper mapper;
     /** The version of the cached resource */
-    private long version;
+    private volatile long version;
     /** The local expiry time for the cached resource */
-    private long expiryTime;
+    private volatile long expiryTime;
+    /** Whether the value has been read since the flag was last cleared */
+    private volatile boolean accessed;
     /** The name of the file where this entry is defined */
     private String fileName;
     /** The description of the local entry */
@@ -118,6 +120,9 @@ public class Entry implements SynapseArtifact {
      * @return Either an OMElement or a String
      */
     public Object getValue() {
+        if (!accessed) {
+            accessed = true;
+        }
         return value;
     }
 
@@ -205,6 +210,18 @@ public class Entry implements SynapseArtifact {
         }
     }
 
+    /**
+     * Checks whether the value of this entry has been read since the last call to this
+     * method, and clears the flag. The registry uses this to skip refreshing idle entries.
+     *
+     * @return true if the value has been read since the last check
+     */
+    public boolean clearAccessed() {
+        boolean wasAccessed = accessed;
+        accessed = false;
+        return wasAccessed;
+    }
+
     public boolean isDynamic() {
         return type == REMOTE_ENTRY;
     }
@@ -37,7 +37,7 @@ import java.util.Properties;
  * Factory for {@link CalloutMediator} instances.
  * 
  * <pre>
- * &lt;callout [serviceURL="string"] [action="string"][passHeaders="true|false"] [initAxis2ClientOptions="true|false"]&gt;
+ * &lt;callout [serviceURL="string"] [action="string"][passHeaders="true|false"] [initAxis2ClientOptions="true|false"] [onComplete="string"]&gt;
  *      &lt;configuration [axis2xml="string"] [repository="string"]/&gt;?
  *      &lt;endpoint/&gt;?
  *      &lt;source xpath="expression" | key="string"&gt;?
@@ -56,6 +56,7 @@ public class CalloutMediatorFactory extends AbstractMediatorFactory {
     private static final QName ATT_REPOSITORY = new QName("repository");
     private static final QName ATT_PASS_HEADERS = new QName("passHeaders");
     private static final QName ATT_INIT_AXI2_CLIENT_OPTIONS = new QName("initAxis2ClientOptions");
+    private static final QName ATT_ON_COMPLETE = new QName("onComplete");
     private static final QName Q_CONFIG
             = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "configuration");
     private static final QName Q_SOURCE
@@ -116,6 +117,11 @@ public class CalloutMediatorFactory extends AbstractMediatorFactory {
             callout.setInitClientOptions(false);
         }
 
+        OMAttribute attOnComplete = elem.getAttribute(ATT_ON_COMPLETE);
+        if (attOnComplete != null) {
+            callout.setOnComplete(attOnComplete.getAttributeValue());
+        }
+
         if (configElt != null) {
 
             OMAttribute axis2xmlAttr = configElt.getAttribute(ATT_AXIS2XML);
@@ -72,11 +72,13 @@ public class MediatorFactoryFinder implements XMLToObjectMapper {
         DBLookupMediatorFactory.class,
         CacheMediatorFactory.class,
         CalloutMediatorFactory.class,
+        ParallelCalloutMediatorFactory.class,
         EventPublisherMediatorFactory.class,
         TransactionMediatorFactory.class,
         EnqueueMediatorFactory.class,
         ConditionalRouterMediatorFactory.class,
         SamplingThrottleMediatorFactory.class,
+        StageMediatorFactory.class,
         URLRewriteMediatorFactory.class,
         EnrichMediatorFactory.class,
         MessageStoreMediatorFactory.class,
@@ -59,11 +59,13 @@ public class MediatorSerializerFinder {
         DBReportMediatorSerializer.class,
         CacheMediatorSerializer.class,
         CalloutMediatorSerializer.class,
+        ParallelCalloutMediatorSerializer.class,
         EventPublisherMediatorSerializer.class,
         TransactionMediatorSerializer.class,
         EnqueueMediatorSerializer.class,
         ConditionalRouterMediatorSerializer.class,
         SamplingThrottleMediatorSerializer.class,
+        StageMediatorSerializer.class,
         EnrichMediatorSerializer.class,
         TemplateMediatorSerializer.class,
         InvokeMediatorSerializer.class,
@@ -37,17 +37,25 @@ import org.apache.synapse.commons.executors.PriorityExecutor;
 import org.apache.synapse.config.Entry;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.core.axis2.ProxyService;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.eventing.SynapseEventSource;
 import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.rest.API;
+import org.apache.synapse.util.concurrent.SynapseThreadPool;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 import java.io.*;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * <p>
@@ -74,7 +82,12 @@ import java.util.Properties;
  *  <li>CONFIG_HOME/registry.xml</li>
  * </ul>
  * </p>
- *
+ * <p>
+ * The XML files of all the artifact directories are read and parsed concurrently, using the
+ * number of threads given by the <code>synapse.config.loader.threads</code> property, while the
+ * artifacts are still built and added to the configuration one at a time in the order of the
+ * dependencies between the artifact types. The time taken to build the configuration is logged.
+ * </p>
  */
 public class MultiXMLConfigurationBuilder {
 
@@ -95,6 +108,14 @@ public class MultiXMLConfigurationBuilder {
 
     public static final String SEPARATE_REGISTRY_DEFINITION = "__separateRegDef";
 
+    /** Number of threads used to parse the artifact files, defaults to the processor count */
+    public static final String LOADER_THREADS = "synapse.config.loader.threads";
+
+    private static final String[] ARTIFACT_DIRS = {
+            LOCAL_ENTRY_DIR, ENDPOINTS_DIR, SEQUENCES_DIR, TEMPLATES_DIR, PROXY_SERVICES_DIR,
+            TASKS_DIR, EVENTS_DIR, EXECUTORS_DIR, MESSAGE_STORE_DIR, MESSAGE_PROCESSOR_DIR,
+            SYNAPSE_IMPORTS_DIR, REST_API_DIR };
+
     private static final String[] extensions = { "xml" };
 
     private static Log log = LogFactory.getLog(MultiXMLConfigurationBuilder.class);
@@ -103,6 +124,21 @@ public class MultiXMLConfigurationBuilder {
 
         log.info("Building synapse configuration from the synapse artifact repository at : " + root);
 
+        long start = System.currentTimeMillis();
+        DocumentLoader loader = new DocumentLoader(root, getLoaderThreads(properties));
+        try {
+            SynapseConfiguration synapseConfig = getConfiguration(root, properties, loader);
+            log.info("Built the synapse configuration from the artifact repository in " +
+                    (System.currentTimeMillis() - start) + " ms");
+            return synapseConfig;
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    private static SynapseConfiguration getConfiguration(String root, Properties properties,
+                                                         DocumentLoader loader) {
+
         // First try to load the configuration from synapse.xml
         SynapseConfiguration synapseConfig = createConfigurationFromSynapseXML(root, properties);
         if (synapseConfig == null) {
@@ -123,18 +159,18 @@ public class MultiXMLConfigurationBuilder {
                     " will be neglected");
         }
 
-        createLocalEntries(synapseConfig, root, properties);
-        createEndpoints(synapseConfig, root, properties);
-        createSequences(synapseConfig, root, properties);
-        createTemplates(synapseConfig, root, properties);
-        createProxyServices(synapseConfig, root, properties);
-        createTasks(synapseConfig, root, properties);
-        createEventSources(synapseConfig, root, properties);
-        createExecutors(synapseConfig, root, properties);
-        createMessageStores(synapseConfig, root, properties);
-        createMessageProcessors(synapseConfig, root, properties);
-        createSynapseImports(synapseConfig, root, properties);
-        createAPIs(synapseConfig, root);
+        createLocalEntries(synapseConfig, root, properties, loader);
+        createEndpoints(synapseConfig, root, properties, loader);
+        createSequences(synapseConfig, root, properties, loader);
+        createTemplates(synapseConfig, root, properties, loader);
+        createProxyServices(synapseConfig, root, properties, loader);
+        createTasks(synapseConfig, root, properties, loader);
+        createEventSources(synapseConfig, root, properties, loader);
+        createExecutors(synapseConfig, root, properties, loader);
+        createMessageStores(synapseConfig, root, properties, loader);
+        createMessageProcessors(synapseConfig, root, properties, loader);
+        createSynapseImports(synapseConfig, root, properties, loader);
+        createAPIs(synapseConfig, root, loader);
 
         return synapseConfig;
     }
@@ -186,7 +222,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createLocalEntries(SynapseConfiguration synapseConfig, String rootDirPath,
-                                           Properties properties) {
+                                           Properties properties, DocumentLoader loader) {
 
         File localEntriesDir = new File(rootDirPath, LOCAL_ENTRY_DIR);
         if (localEntriesDir.exists()) {
@@ -200,7 +236,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Local Entry from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_LOCALENTRIES, msg, e);
@@ -220,7 +256,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createProxyServices(SynapseConfiguration synapseConfig, String rootDirPath,
-                                            Properties properties) {
+                                            Properties properties, DocumentLoader loader) {
 
         File proxyServicesDir = new File(rootDirPath, PROXY_SERVICES_DIR);
         if (proxyServicesDir.exists()) {
@@ -234,7 +270,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Proxy service configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_PROXY_SERVICES, msg, e);
@@ -254,7 +290,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createTasks(SynapseConfiguration synapseConfig, String rootDirPath,
-                                    Properties properties) {
+                                    Properties properties, DocumentLoader loader) {
 
         File tasksDir = new File(rootDirPath, TASKS_DIR);
         if (tasksDir.exists()) {
@@ -268,7 +304,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Task configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_TASKS, msg, e);
@@ -286,7 +322,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createSequences(SynapseConfiguration synapseConfig, String rootDirPath,
-                                        Properties properties) {
+                                        Properties properties, DocumentLoader loader) {
 
         File sequencesDir = new File(rootDirPath, SEQUENCES_DIR);
         if (sequencesDir.exists()) {
@@ -300,7 +336,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Sequence configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_SEQUENCES, msg, e);
@@ -321,7 +357,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createTemplates(SynapseConfiguration synapseConfig, String rootDirPath,
-                                        Properties properties) {
+                                        Properties properties, DocumentLoader loader) {
 
         File templatesDir = new File(rootDirPath, TEMPLATES_DIR);
         if (templatesDir.exists()) {
@@ -334,7 +370,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Template configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_TEMPLATES, msg, e);
@@ -373,7 +409,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createEndpoints(SynapseConfiguration synapseConfig, String rootDirPath,
-                                        Properties properties) {
+                                        Properties properties, DocumentLoader loader) {
 
         File endpointsDir = new File(rootDirPath, ENDPOINTS_DIR);
         if (endpointsDir.exists()) {
@@ -387,7 +423,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Endpoint configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_EP, msg, e);
@@ -407,7 +443,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createEventSources(SynapseConfiguration synapseConfig, String rootDirPath,
-                                           Properties properties) {
+                                           Properties properties, DocumentLoader loader) {
 
         File eventsDir = new File(rootDirPath, EVENTS_DIR);
         if (eventsDir.exists()) {
@@ -421,7 +457,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Event Source configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_EVENT_SOURCE, msg, e);
@@ -441,7 +477,7 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createExecutors(SynapseConfiguration synapseConfig, String rootDirPath,
-                                        Properties properties) {
+                                        Properties properties, DocumentLoader loader) {
 
         File executorsDir = new File(rootDirPath, EXECUTORS_DIR);
         if (executorsDir.exists()) {
@@ -455,7 +491,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Executor configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_EXECUTORS, msg, e);
@@ -475,7 +511,8 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createMessageStores(SynapseConfiguration synapseConfig ,
-                                            String rootDirPath, Properties properties) {
+                                            String rootDirPath, Properties properties,
+                                            DocumentLoader loader) {
 
         File messageStoresDir = new File(rootDirPath, MESSAGE_STORE_DIR);
         if (messageStoresDir.exists() ) {
@@ -489,7 +526,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Message Store configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_MESSAGE_STORES, msg, e);
@@ -509,7 +546,8 @@ public class MultiXMLConfigurationBuilder {
     }
 
     private static void createMessageProcessors(SynapseConfiguration synapseConfig,
-                                            String rootDirPath, Properties properties) {
+                                            String rootDirPath, Properties properties,
+                                            DocumentLoader loader) {
 
         File messageProcessorDir = new File(rootDirPath, MESSAGE_PROCESSOR_DIR);
         if (messageProcessorDir.exists()) {
@@ -523,7 +561,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Message Processor configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_MESSAGE_PROCESSORS, msg, e);
@@ -542,7 +580,8 @@ public class MultiXMLConfigurationBuilder {
         }
     }
 
-    private static void createSynapseImports(SynapseConfiguration synapseConfig, String root, Properties properties) {
+    private static void createSynapseImports(SynapseConfiguration synapseConfig, String root,
+                                             Properties properties, DocumentLoader loader) {
         File synImportsDir = new File(root, SYNAPSE_IMPORTS_DIR);
         if (synImportsDir.exists()) {
             if (log.isDebugEnabled()) {
@@ -554,7 +593,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building Synapse Import configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_IMPORTS, msg, e);
@@ -574,7 +613,8 @@ public class MultiXMLConfigurationBuilder {
 
     }
 
-    private static void createAPIs(SynapseConfiguration synapseConfig, String rootDirPath) {
+    private static void createAPIs(SynapseConfiguration synapseConfig, String rootDirPath,
+                                   DocumentLoader loader) {
 
         File apiDir = new File(rootDirPath, REST_API_DIR);
         if (apiDir.exists()) {
@@ -588,7 +628,7 @@ public class MultiXMLConfigurationBuilder {
 
                 OMElement document = null;
                 try {
-                    document = getOMElement(file);
+                    document = loader.getDocument(file);
                 } catch (Exception e) {
                     String msg = "Error while building API configuration from file : " + file.getName();
                     handleConfigurationError(SynapseConstants.FAIL_SAFE_MODE_APIS, msg, e);
@@ -606,6 +646,83 @@ public class MultiXMLConfigurationBuilder {
         }
     }
 
+    private static int getLoaderThreads(Properties properties) {
+        String threads = properties != null ? properties.getProperty(LOADER_THREADS) : null;
+        if (threads == null) {
+            threads = SynapsePropertiesLoader.getPropertyValue(LOADER_THREADS,
+                    String.valueOf(Runtime.getRuntime().availableProcessors()));
+        }
+        try {
+            return Integer.parseInt(threads.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value : " + threads + " for the property : " + LOADER_THREADS);
+            return 1;
+        }
+    }
+
+    /**
+     * Reads and parses the files of the artifact directories on a pool of threads, handing out
+     * the parsed documents as the artifacts are being built
+     */
+    private static class DocumentLoader {
+
+        private final Map<File, Future<OMElement>> documents =
+                new HashMap<File, Future<OMElement>>();
+        private ExecutorService executor = null;
+
+        DocumentLoader(String rootDirPath, int threads) {
+            if (threads <= 1) {
+                return;
+            }
+            executor = new SynapseThreadPool(threads, threads, 5, -1,
+                    "synapse-config-loader", "synapse-config-loader");
+            for (String dir : ARTIFACT_DIRS) {
+                File artifactDir = new File(rootDirPath, dir);
+                if (!artifactDir.exists()) {
+                    continue;
+                }
+                Iterator files = FileUtils.iterateFiles(artifactDir, extensions, false);
+                while (files.hasNext()) {
+                    final File file = (File) files.next();
+                    documents.put(file, executor.submit(new Callable<OMElement>() {
+                        public OMElement call() {
+                            return getOMElement(file);
+                        }
+                    }));
+                }
+            }
+        }
+
+        OMElement getDocument(File file) {
+            Future<OMElement> document = documents.remove(file);
+            if (document == null) {
+                return getOMElement(file);
+            }
+            try {
+                return document.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SynapseException("Interrupted while loading the file : " +
+                        file.getName(), e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new SynapseException("Error while loading the file : " + file.getName(),
+                        e.getCause());
+            }
+        }
+
+        void shutdown() {
+            if (executor != null) {
+                for (Future<OMElement> document : documents.values()) {
+                    document.cancel(true);
+                }
+                executor.shutdown();
+            }
+        }
+    }
+
     private static OMElement getOMElement(File file) {
         FileInputStream is;
         try {
@@ -0,0 +1,76 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.config.xml;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.mediators.builtin.CalloutMediator;
+import org.apache.synapse.mediators.builtin.ParallelCalloutMediator;
+
+import javax.xml.namespace.QName;
+import java.util.Properties;
+
+/**
+ * Factory for {@link ParallelCalloutMediator} instances.
+ * <p>
+ * Configuration syntax:
+ * <pre>
+ * &lt;parallelCallout onComplete="string"&gt;
+ *    &lt;callout .../&gt;+
+ * &lt;/parallelCallout&gt;
+ * </pre>
+ */
+public class ParallelCalloutMediatorFactory extends AbstractListMediatorFactory {
+
+    private static final QName PARALLEL_CALLOUT_Q
+            = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "parallelCallout");
+    private static final QName ATT_ON_COMPLETE = new QName("onComplete");
+
+    public Mediator createSpecificMediator(OMElement elem, Properties properties) {
+
+        ParallelCalloutMediator parallelCallout = new ParallelCalloutMediator();
+        processAuditStatus(parallelCallout, elem);
+
+        String onComplete = elem.getAttributeValue(ATT_ON_COMPLETE);
+        if (onComplete == null) {
+            handleException("The 'onComplete' attribute is required for the parallel callout");
+        }
+        parallelCallout.setOnComplete(onComplete);
+
+        addChildren(elem, parallelCallout, properties);
+        if (parallelCallout.getList().isEmpty()) {
+            handleException("The parallel callout requires at least one callout");
+        }
+        for (Mediator child : parallelCallout.getList()) {
+            if (!(child instanceof CalloutMediator)) {
+                handleException("The parallel callout only supports callout mediators, " +
+                        "but found : " + child.getType());
+            } else if (((CalloutMediator) child).getOnComplete() != null) {
+                handleException("The callouts of a parallel callout cannot have an " +
+                        "onComplete sequence of their own");
+            }
+        }
+        return parallelCallout;
+    }
+
+    public QName getTagQName() {
+        return PARALLEL_CALLOUT_Q;
+    }
+}
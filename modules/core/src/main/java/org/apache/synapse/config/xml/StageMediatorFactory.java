@@ -0,0 +1,157 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.config.xml;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.mediators.stage.StageMediator;
+
+import javax.xml.namespace.QName;
+import java.util.Properties;
+
+/**
+ * Builds the {@link org.apache.synapse.mediators.stage.StageMediator} instance by looking at the
+ * following configuration</p>
+ *
+ * <pre>&lt;stage name="string" sequence="string"&gt;
+ *   &lt;threads min="int" max="int" [targetLatency="long"]/&gt;?
+ *   &lt;queue size="int" [overflow="block|drop|divert"] [timeout="long"] [sequence="string"]/&gt;?
+ * &lt;/stage&gt;
+ * </pre>
+ *
+ * @see org.apache.synapse.config.xml.AbstractMediatorFactory
+ */
+public class StageMediatorFactory extends AbstractMediatorFactory {
+
+    private static final QName STAGE_Q
+            = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "stage");
+    private static final QName THREADS_Q
+            = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "threads");
+    private static final QName QUEUE_Q
+            = new QName(XMLConfigConstants.SYNAPSE_NAMESPACE, "queue");
+    private static final QName MIN_ATTR
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "min");
+    private static final QName MAX_ATTR
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "max");
+    private static final QName TARGET_LATENCY_ATTR
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "targetLatency");
+    private static final QName SIZE_ATTR
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "size");
+    private static final QName OVERFLOW_ATTR
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "overflow");
+    private static final QName TIMEOUT_ATTR
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "timeout");
+
+    public Mediator createSpecificMediator(OMElement omElement, Properties properties) {
+
+        StageMediator stageMediator = new StageMediator();
+        processAuditStatus(stageMediator, omElement);
+
+        String name = omElement.getAttributeValue(ATT_NAME);
+        if (name == null) {
+            handleException("The 'name' attribute is required for the stage mediator");
+        }
+        stageMediator.setName(name);
+
+        String sequence = omElement.getAttributeValue(ATT_SEQUENCE);
+        if (sequence == null) {
+            handleException("The 'sequence' attribute is required for the stage mediator");
+        }
+        stageMediator.setSequence(sequence);
+
+        OMElement threadsElem = omElement.getFirstChildWithName(THREADS_Q);
+        if (threadsElem != null) {
+            String min = threadsElem.getAttributeValue(MIN_ATTR);
+            if (min != null) {
+                stageMediator.setMinThreads(parseInt(min, "threads min"));
+            }
+            String max = threadsElem.getAttributeValue(MAX_ATTR);
+            if (max != null) {
+                stageMediator.setMaxThreads(parseInt(max, "threads max"));
+            }
+            String targetLatency = threadsElem.getAttributeValue(TARGET_LATENCY_ATTR);
+            if (targetLatency != null) {
+                stageMediator.setTargetLatency(parseLong(targetLatency, "targetLatency"));
+            }
+        }
+        if (stageMediator.getMinThreads() < 1 ||
+                stageMediator.getMaxThreads() < stageMediator.getMinThreads()) {
+            handleException("Invalid thread counts for the stage : " + name + ", min : " +
+                    stageMediator.getMinThreads() + ", max : " + stageMediator.getMaxThreads());
+        }
+
+        OMElement queueElem = omElement.getFirstChildWithName(QUEUE_Q);
+        if (queueElem != null) {
+            String size = queueElem.getAttributeValue(SIZE_ATTR);
+            if (size != null) {
+                stageMediator.setQueueSize(parseInt(size, "queue size"));
+            }
+            String overflow = queueElem.getAttributeValue(OVERFLOW_ATTR);
+            if (overflow != null) {
+                if (!StageMediator.OVERFLOW_BLOCK.equals(overflow) &&
+                        !StageMediator.OVERFLOW_DROP.equals(overflow) &&
+                        !StageMediator.OVERFLOW_DIVERT.equals(overflow)) {
+                    handleException("Unknown overflow policy : " + overflow + " for the stage : " +
+                            name + ", expected block, drop or divert");
+                }
+                stageMediator.setOverflowPolicy(overflow);
+            }
+            String timeout = queueElem.getAttributeValue(TIMEOUT_ATTR);
+            if (timeout != null) {
+                stageMediator.setBlockTimeout(parseLong(timeout, "queue timeout"));
+            }
+            stageMediator.setOverflowSequence(queueElem.getAttributeValue(ATT_SEQUENCE));
+        }
+        if (stageMediator.getQueueSize() < 1) {
+            handleException("Queue size of the stage : " + name + " must be a positive value");
+        }
+        if (StageMediator.OVERFLOW_DIVERT.equals(stageMediator.getOverflowPolicy()) &&
+                stageMediator.getOverflowSequence() == null) {
+            handleException("The divert overflow policy of the stage : " + name +
+                    " requires a sequence");
+        }
+
+        return stageMediator;
+    }
+
+    private int parseInt(String value, String attribute) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            handleException("Stage " + attribute + " has to be an integer value, but found : " +
+                    value);
+        }
+        return -1;
+    }
+
+    private long parseLong(String value, String attribute) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            handleException("Stage " + attribute + " has to be a long value in milliseconds, " +
+                    "but found : " + value);
+        }
+        return -1;
+    }
+
+    public QName getTagQName() {
+        return STAGE_Q;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.config.xml;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.mediators.stage.StageMediator;
+
+/**
+ * Serializes the {@link org.apache.synapse.mediators.stage.StageMediator} instance into a XML
+ * configuration as follows</p>
+ *
+ * <pre>&lt;stage name="string" sequence="string"&gt;
+ *   &lt;threads min="int" max="int" [targetLatency="long"]/&gt;
+ *   &lt;queue size="int" overflow="block|drop|divert" [timeout="long"] [sequence="string"]/&gt;
+ * &lt;/stage&gt;
+ * </pre>
+ *
+ * @see org.apache.synapse.config.xml.AbstractMediatorSerializer
+ */
+public class StageMediatorSerializer extends AbstractMediatorSerializer {
+
+    public OMElement serializeSpecificMediator(Mediator mediator) {
+        if (!(mediator instanceof StageMediator)) {
+            handleException("Unsupported mediator passed in for serialization : " +
+                    mediator.getType());
+        }
+
+        StageMediator stageMediator = (StageMediator) mediator;
+        OMElement stageElem = fac.createOMElement("stage", synNS);
+        saveTracingState(stageElem, mediator);
+
+        if (stageMediator.getName() != null) {
+            stageElem.addAttribute("name", stageMediator.getName(), nullNS);
+        } else {
+            handleException("Invalid stage mediator. Name is required");
+        }
+        if (stageMediator.getSequence() != null) {
+            stageElem.addAttribute("sequence", stageMediator.getSequence(), nullNS);
+        } else {
+            handleException("Invalid stage mediator. Sequence is required");
+        }
+
+        OMElement threadsElem = fac.createOMElement("threads", synNS);
+        threadsElem.addAttribute("min", Integer.toString(stageMediator.getMinThreads()), nullNS);
+        threadsElem.addAttribute("max", Integer.toString(stageMediator.getMaxThreads()), nullNS);
+        if (stageMediator.getTargetLatency() > 0) {
+            threadsElem.addAttribute("targetLatency",
+                    Long.toString(stageMediator.getTargetLatency()), nullNS);
+        }
+        stageElem.addChild(threadsElem);
+
+        OMElement queueElem = fac.createOMElement("queue", synNS);
+        queueElem.addAttribute("size", Integer.toString(stageMediator.getQueueSize()), nullNS);
+        queueElem.addAttribute("overflow", stageMediator.getOverflowPolicy(), nullNS);
+        if (StageMediator.OVERFLOW_BLOCK.equals(stageMediator.getOverflowPolicy())) {
+            queueElem.addAttribute("timeout",
+                    Long.toString(stageMediator.getBlockTimeout()), nullNS);
+        }
+        if (stageMediator.getOverflowSequence() != null) {
+            queueElem.addAttribute("sequence", stageMediator.getOverflowSequence(), nullNS);
+        }
+        stageElem.addChild(queueElem);
+
+        return stageElem;
+    }
+
+    public String getMediatorClassName() {
+        return StageMediator.class.getName();
+    }
+}
@@ -115,6 +115,15 @@ public class XMLConfigConstants {
 
     public static final String RETRY_CONFIG = "retryConfig";
 
+    public static final String CIRCUIT_BREAKER = "circuitBreaker";
+    public static final String CIRCUIT_BREAKER_WINDOW = "window";
+    public static final String CIRCUIT_BREAKER_MINIMUM_CALLS = "minimumCalls";
+    public static final String CIRCUIT_BREAKER_FAILURE_RATE = "failureRateThreshold";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_DURATION = "slowCallDuration";
+    public static final String CIRCUIT_BREAKER_SLOW_CALL_RATE = "slowCallRateThreshold";
+    public static final String CIRCUIT_BREAKER_OPEN_DURATION = "openDuration";
+    public static final String CIRCUIT_BREAKER_HALF_OPEN_TRIALS = "halfOpenTrials";
+
 	public static final String LOADBALANCE_POLICY = "policy";
 	public static final String LOADBALANCE_ALGORITHM = "algorithm";
 
@@ -326,9 +326,58 @@ public class EndpointDefinitionFactory implements DefinitionFactory {
             }
         }
 
+        OMElement circuitBreaker = elem.getFirstChildWithName(new QName(
+            SynapseConstants.SYNAPSE_NAMESPACE, XMLConfigConstants.CIRCUIT_BREAKER));
+
+        if (circuitBreaker != null) {
+
+            definition.setCircuitBreakerOn(true);
+            definition.setCircuitBreakerWindow((int) getCircuitBreakerValue(
+                    circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_WINDOW));
+            definition.setCircuitBreakerMinimumCalls((int) getCircuitBreakerValue(
+                    circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_MINIMUM_CALLS));
+            definition.setCircuitBreakerFailureRateThreshold((int) getCircuitBreakerValue(
+                    circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_FAILURE_RATE));
+            definition.setCircuitBreakerSlowCallDuration(getCircuitBreakerValue(
+                    circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_DURATION));
+            definition.setCircuitBreakerSlowCallRateThreshold((int) getCircuitBreakerValue(
+                    circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_RATE));
+            definition.setCircuitBreakerOpenDuration(getCircuitBreakerValue(
+                    circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_OPEN_DURATION));
+            definition.setCircuitBreakerHalfOpenTrials((int) getCircuitBreakerValue(
+                    circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_HALF_OPEN_TRIALS));
+        }
+
         return definition;
     }
 
+    /**
+     * Read a setting of the circuit breaker
+     *
+     * @param circuitBreaker the circuitBreaker element
+     * @param name           name of the setting
+     * @return the value of the setting, or -1 if it is not specified
+     */
+    private static long getCircuitBreakerValue(OMElement circuitBreaker, String name) {
+        OMElement value = circuitBreaker.getFirstChildWithName(new QName(
+            SynapseConstants.SYNAPSE_NAMESPACE, name));
+        if (value != null && value.getText() != null) {
+            long l = -1;
+            try {
+                l = Long.parseLong(value.getText().trim());
+            } catch (NumberFormatException e) {
+                handleException("The circuit breaker " + name + " should be specified " +
+                    "as a valid number : " + value.getText(), e);
+            }
+            if (l < 0) {
+                handleException("The circuit breaker " + name + " should not be " +
+                    "negative : " + value.getText());
+            }
+            return l;
+        }
+        return -1;
+    }
+
     protected static void handleException(String msg) {
         log.error(msg);
         throw new SynapseException(msg);
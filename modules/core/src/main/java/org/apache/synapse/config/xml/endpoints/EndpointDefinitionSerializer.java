@@ -210,5 +210,38 @@ public class EndpointDefinitionSerializer {
                 retryConfig.addChild(errorCodes);
             element.addChild(retryConfig);
         }
+
+        if (endpointDefinition.isCircuitBreakerOn()) {
+            OMElement circuitBreaker = fac.createOMElement(XMLConfigConstants.CIRCUIT_BREAKER,
+                    SynapseConstants.SYNAPSE_OMNAMESPACE);
+            addCircuitBreakerValue(circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_WINDOW,
+                    endpointDefinition.getCircuitBreakerWindow());
+            addCircuitBreakerValue(circuitBreaker,
+                    XMLConfigConstants.CIRCUIT_BREAKER_MINIMUM_CALLS,
+                    endpointDefinition.getCircuitBreakerMinimumCalls());
+            addCircuitBreakerValue(circuitBreaker, XMLConfigConstants.CIRCUIT_BREAKER_FAILURE_RATE,
+                    endpointDefinition.getCircuitBreakerFailureRateThreshold());
+            addCircuitBreakerValue(circuitBreaker,
+                    XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_DURATION,
+                    endpointDefinition.getCircuitBreakerSlowCallDuration());
+            addCircuitBreakerValue(circuitBreaker,
+                    XMLConfigConstants.CIRCUIT_BREAKER_SLOW_CALL_RATE,
+                    endpointDefinition.getCircuitBreakerSlowCallRateThreshold());
+            addCircuitBreakerValue(circuitBreaker,
+                    XMLConfigConstants.CIRCUIT_BREAKER_OPEN_DURATION,
+                    endpointDefinition.getCircuitBreakerOpenDuration());
+            addCircuitBreakerValue(circuitBreaker,
+                    XMLConfigConstants.CIRCUIT_BREAKER_HALF_OPEN_TRIALS,
+                    endpointDefinition.getCircuitBreakerHalfOpenTrials());
+            element.addChild(circuitBreaker);
+        }
+    }
+
+    private void addCircuitBreakerValue(OMElement circuitBreaker, String name, long value) {
+        if (value != -1) {
+            OMElement child = fac.createOMElement(name, SynapseConstants.SYNAPSE_OMNAMESPACE);
+            child.setText(Long.toString(value));
+            circuitBreaker.addChild(child);
+        }
     }
 }
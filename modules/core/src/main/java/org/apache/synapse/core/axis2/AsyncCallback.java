@@ -38,6 +38,9 @@ public class AsyncCallback implements AxisCallback {
     /** Action to perform when timeout occurs */
     private int timeOutAction = SynapseConstants.NONE;
 
+    /** Time the message was sent, used to work out the response time of the endpoint */
+    private final long sendTime = System.currentTimeMillis();
+
     public AsyncCallback(MessageContext synapseOutMsgCtx) {
         this.synapseOutMsgCtx = synapseOutMsgCtx;
     }
@@ -54,6 +57,10 @@ public class AsyncCallback implements AxisCallback {
         return synapseOutMsgCtx;
     }
 
+    public long getSendTime() {
+        return sendTime;
+    }
+
     public long getTimeOutOn() {
         return timeOutOn;
     }
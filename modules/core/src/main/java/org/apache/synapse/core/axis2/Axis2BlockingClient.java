@@ -24,6 +24,7 @@ import org.apache.axis2.Constants;
 import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.client.OperationClient;
 import org.apache.axis2.client.Options;
+import org.apache.axis2.client.async.AxisCallback;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.ConfigurationContextFactory;
 import org.apache.axis2.context.ServiceContext;
@@ -32,7 +33,10 @@ import org.apache.axis2.description.AxisOperation;
 import org.apache.axis2.description.AxisService;
 import org.apache.axis2.description.AxisServiceGroup;
 import org.apache.axis2.description.WSDL2Constants;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.apache.axis2.util.Utils;
 import org.apache.axis2.wsdl.WSDLConstants;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
@@ -74,6 +78,25 @@ public class Axis2BlockingClient {
         this.configurationContext = configurationContext;
     }
 
+    /**
+     * Allow the given number of messages to be sent concurrently to the same host. The default
+     * HTTP connection manager of the client only opens a couple of connections per host.
+     *
+     * @param maxConnections maximum number of connections kept open to a single host
+     */
+    public void setMaxConnectionsPerHost(int maxConnections) {
+        if (configurationContext == null) {
+            return;
+        }
+        MultiThreadedHttpConnectionManager connectionManager =
+                new MultiThreadedHttpConnectionManager();
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(maxConnections);
+        connectionManager.getParams().setMaxTotalConnections(Math.max(maxConnections,
+                connectionManager.getParams().getMaxTotalConnections()));
+        configurationContext.setProperty(HTTPConstants.MULTITHREAD_HTTP_CONNECTION_MANAGER,
+                connectionManager);
+    }
+
     public void cleanup() throws AxisFault {
         if (configurationContextCreated) {
             configurationContext.terminate();
@@ -95,6 +118,154 @@ public class Axis2BlockingClient {
             log.debug("Start Sending the Message ");
         }
 
+        Invocation invocation = prepare(endpoint, synapseInMsgCtx);
+        org.apache.axis2.context.MessageContext axisOutMsgCtx = invocation.axisOutMsgCtx;
+
+        // Invoke
+        boolean isOutOnly = isOutOnly(synapseInMsgCtx, axisOutMsgCtx);
+        try {
+            if (isOutOnly) {
+                if (log.isDebugEnabled()) {
+                    log.debug("invoking service in OUT_ONLY manner");
+                }
+                sendRobust(axisOutMsgCtx, invocation.clientOptions,
+                        invocation.anonymousService, invocation.serviceCtx);
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("invoking service in OUT_IN manner");
+                }
+                org.apache.axis2.context.MessageContext result = sendReceive(axisOutMsgCtx,
+                        invocation.clientOptions, invocation.anonymousService,
+                        invocation.serviceCtx);
+                synapseInMsgCtx.setEnvelope(result.getEnvelope());
+                synapseInMsgCtx.setProperty(NhttpConstants.HTTP_SC, result.getProperty(
+                        SynapseConstants.HTTP_SENDER_STATUSCODE));
+                return synapseInMsgCtx;
+            }
+        } catch (Exception ex) {
+            axisOutMsgCtx.getTransportOut().getSender().cleanup(axisOutMsgCtx);
+            if (!isOutOnly) {
+                setErrorProperties(synapseInMsgCtx, ex);
+                return synapseInMsgCtx;
+            }
+            synapseInMsgCtx.setProperty(SynapseConstants.BLOCKING_CLIENT_ERROR, "true");
+            handleException("Error sending Message to url : " +
+                    ((AbstractEndpoint) invocation.endpoint).getDefinition().getAddress());
+        }
+        return null;
+    }
+
+    /**
+     * Send the message to a given Leaf endpoint (Address/WSDL/Default) and return without
+     * waiting for the response. The callback is notified once the response arrives, with the
+     * given message context carrying the response envelope, or the error properties set the
+     * same way as by {@link #send(Endpoint, MessageContext)} if the invocation failed.
+     * <p/>
+     * Whether a thread is held while the call is in flight depends on the transport sender
+     * configured for the client. The HTTP senders of the default axis2_blocking_client.xml
+     * hold one for each call, so a configuration with non-blocking senders is needed to avoid
+     * that.
+     *
+     * @param endpoint        leaf Endpoint
+     * @param synapseInMsgCtx Synapse Message Context to be sent
+     * @param callback        callback notified with the response
+     * @throws Exception if the message could not be handed over to the transport
+     */
+    public void sendNonBlocking(Endpoint endpoint, final MessageContext synapseInMsgCtx,
+                                final ResponseCallback callback) throws Exception {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Start Sending the Message without blocking");
+        }
+
+        Invocation invocation = prepare(endpoint, synapseInMsgCtx);
+        final org.apache.axis2.context.MessageContext axisOutMsgCtx = invocation.axisOutMsgCtx;
+
+        AxisOperation axisAnonymousOperation = invocation.anonymousService.getOperation(
+                new QName(AnonymousServiceFactory.OUT_IN_OPERATION));
+        OperationClient operationClient = axisAnonymousOperation.createClient(
+                invocation.serviceCtx, invocation.clientOptions);
+        operationClient.addMessageContext(axisOutMsgCtx);
+        axisOutMsgCtx.setAxisMessage(axisAnonymousOperation.getMessage(
+                WSDLConstants.MESSAGE_LABEL_OUT_VALUE));
+        operationClient.setCallback(new AxisCallback() {
+
+            private boolean notified = false;
+
+            public void onMessage(org.apache.axis2.context.MessageContext msgContext) {
+                try {
+                    synapseInMsgCtx.setEnvelope(
+                            MessageHelper.cloneSOAPEnvelope(msgContext.getEnvelope()));
+                    synapseInMsgCtx.setProperty(NhttpConstants.HTTP_SC, msgContext.getProperty(
+                            SynapseConstants.HTTP_SENDER_STATUSCODE));
+                } catch (Exception e) {
+                    onError(e);
+                    return;
+                }
+                cleanup();
+                notify(synapseInMsgCtx);
+            }
+
+            public void onFault(org.apache.axis2.context.MessageContext msgContext) {
+                onError(Utils.getInboundFaultFromMessageContext(msgContext));
+            }
+
+            public void onError(Exception e) {
+                cleanup();
+                try {
+                    setErrorProperties(synapseInMsgCtx, e);
+                } catch (AxisFault fault) {
+                    log.warn("Error setting the fault envelope of the response", fault);
+                }
+                notify(synapseInMsgCtx);
+            }
+
+            public void onComplete() {
+            }
+
+            private void cleanup() {
+                try {
+                    axisOutMsgCtx.getTransportOut().getSender().cleanup(axisOutMsgCtx);
+                } catch (AxisFault ignore) {
+                }
+            }
+
+            private void notify(MessageContext result) {
+                synchronized (this) {
+                    if (notified) {
+                        return;
+                    }
+                    notified = true;
+                }
+                callback.onComplete(result);
+            }
+        });
+
+        if (log.isDebugEnabled()) {
+            log.debug("invoking service in OUT_IN manner without blocking");
+        }
+        operationClient.execute(false);
+    }
+
+    /**
+     * Callback notified when the response to a message sent through
+     * {@link Axis2BlockingClient#sendNonBlocking(Endpoint, MessageContext, ResponseCallback)}
+     * is received
+     */
+    public interface ResponseCallback {
+
+        /**
+         * Invoked with the message context that was sent, carrying the response envelope or
+         * the {@link SynapseConstants#BLOCKING_CLIENT_ERROR} and error properties
+         *
+         * @param result message context carrying the response
+         */
+        void onComplete(MessageContext result);
+    }
+
+    private Invocation prepare(Endpoint endpoint, MessageContext synapseInMsgCtx)
+            throws AxisFault {
+
         if (endpoint instanceof IndirectEndpoint) {
             // Get the real endpoint if endpoint is an indirect one
             endpoint = ((IndirectEndpoint) endpoint).getRealEndpoint(synapseInMsgCtx);
@@ -152,54 +323,37 @@ public class Axis2BlockingClient {
         ServiceContext serviceCtx = serviceGroupContext.getServiceContext(anonymousService);
         axisOutMsgCtx.setServiceContext(serviceCtx);
 
-        // Invoke
-        boolean isOutOnly = isOutOnly(synapseInMsgCtx, axisOutMsgCtx);
-        try {
-            if (isOutOnly) {
-                if (log.isDebugEnabled()) {
-                    log.debug("invoking service in OUT_ONLY manner");
-                }
-                sendRobust(axisOutMsgCtx, clientOptions, anonymousService, serviceCtx);
-            } else {
-                if (log.isDebugEnabled()) {
-                    log.debug("invoking service in OUT_IN manner");
-                }
-                org.apache.axis2.context.MessageContext result = sendReceive(axisOutMsgCtx,
-                        clientOptions, anonymousService, serviceCtx);
-                synapseInMsgCtx.setEnvelope(result.getEnvelope());
-                synapseInMsgCtx.setProperty(NhttpConstants.HTTP_SC, result.getProperty(
-                        SynapseConstants.HTTP_SENDER_STATUSCODE));
-                return synapseInMsgCtx;
+        Invocation invocation = new Invocation();
+        invocation.endpoint = endpoint;
+        invocation.axisOutMsgCtx = axisOutMsgCtx;
+        invocation.clientOptions = clientOptions;
+        invocation.anonymousService = anonymousService;
+        invocation.serviceCtx = serviceCtx;
+        return invocation;
+    }
+
+    private void setErrorProperties(MessageContext synapseInMsgCtx, Exception ex)
+            throws AxisFault {
+        synapseInMsgCtx.setProperty(SynapseConstants.BLOCKING_CLIENT_ERROR, "true");
+        if (ex instanceof AxisFault) {
+            AxisFault fault = (AxisFault) ex;
+            if (fault.getFaultCode() != null) {
+                synapseInMsgCtx.setProperty(SynapseConstants.ERROR_CODE,
+                        fault.getFaultCode().getLocalPart());
             }
-        } catch (Exception ex) {
-            synapseInMsgCtx.setProperty(SynapseConstants.BLOCKING_CLIENT_ERROR, "true");
-            axisOutMsgCtx.getTransportOut().getSender().cleanup(axisOutMsgCtx);
-            if (!isOutOnly) {
-                if (ex instanceof AxisFault) {
-                    AxisFault fault = (AxisFault) ex;
-                    if (fault.getFaultCode() != null) {
-                        synapseInMsgCtx.setProperty(SynapseConstants.ERROR_CODE,
-                                fault.getFaultCode().getLocalPart());
-                    }
-                    synapseInMsgCtx.setProperty(SynapseConstants.ERROR_MESSAGE, fault.getMessage());
+            synapseInMsgCtx.setProperty(SynapseConstants.ERROR_MESSAGE, fault.getMessage());
 
-                    if (fault.getDetail() != null) {
-                        synapseInMsgCtx.setProperty(SynapseConstants.ERROR_DETAIL, fault.getDetail());
-                    }
-                    synapseInMsgCtx.setProperty(SynapseConstants.ERROR_EXCEPTION, ex);
-                    org.apache.axis2.context.MessageContext faultMC = fault.getFaultMessageContext();
-                    if (faultMC != null) {
-                        synapseInMsgCtx.setProperty(NhttpConstants.HTTP_SC,
-                                faultMC.getProperty(SynapseConstants.HTTP_SENDER_STATUSCODE));
-                        synapseInMsgCtx.setEnvelope(faultMC.getEnvelope());
-                    }
-                }
-                return synapseInMsgCtx;
+            if (fault.getDetail() != null) {
+                synapseInMsgCtx.setProperty(SynapseConstants.ERROR_DETAIL, fault.getDetail());
+            }
+            synapseInMsgCtx.setProperty(SynapseConstants.ERROR_EXCEPTION, ex);
+            org.apache.axis2.context.MessageContext faultMC = fault.getFaultMessageContext();
+            if (faultMC != null) {
+                synapseInMsgCtx.setProperty(NhttpConstants.HTTP_SC,
+                        faultMC.getProperty(SynapseConstants.HTTP_SENDER_STATUSCODE));
+                synapseInMsgCtx.setEnvelope(faultMC.getEnvelope());
             }
-            handleException("Error sending Message to url : " +
-                    ((AbstractEndpoint) endpoint).getDefinition().getAddress());
         }
-        return null;
     }
 
     private void sendRobust(org.apache.axis2.context.MessageContext axisOutMsgCtx,
@@ -244,6 +398,17 @@ public class Axis2BlockingClient {
         return returnMsgCtx;
     }
 
+    /**
+     * Everything needed to invoke an endpoint, prepared from the message to be sent
+     */
+    private static class Invocation {
+        private Endpoint endpoint;
+        private org.apache.axis2.context.MessageContext axisOutMsgCtx;
+        private Options clientOptions;
+        private AxisService anonymousService;
+        private ServiceContext serviceCtx;
+    }
+
     private boolean isOutOnly(MessageContext messageIn,
                               org.apache.axis2.context.MessageContext axis2Ctx) {
         return "true".equals(messageIn.getProperty(SynapseConstants.OUT_ONLY)) ||
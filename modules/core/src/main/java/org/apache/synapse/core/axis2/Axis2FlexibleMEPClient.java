@@ -38,7 +38,9 @@ import org.apache.axis2.wsdl.WSDLConstants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.endpoints.CircuitBreaker;
 import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.endpoints.algorithms.LoadAwareAlgorithm;
 import org.apache.synapse.rest.RESTConstants;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.util.MessageHelper;
@@ -410,6 +412,14 @@ public class Axis2FlexibleMEPClient {
         }
 
         mepClient.execute(true);
+
+        if (outOnlyMessage) {
+            // no response will arrive, so the requests of the message end once it is sent.
+            // Their latency is not counted, as it is only the time taken to send the message,
+            // and the circuit breakers count the calls as successful.
+            LoadAwareAlgorithm.complete(synapseOutMessageContext, false);
+            CircuitBreaker.complete(synapseOutMessageContext, true);
+        }
    }
 
     private static MessageContext cloneForSend(MessageContext ori, String preserveAddressing)
@@ -43,7 +43,10 @@ import org.apache.synapse.aspects.statistics.StatisticsReporter;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.endpoints.CircuitBreaker;
 import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.RequestHedging;
+import org.apache.synapse.endpoints.algorithms.LoadAwareAlgorithm;
 import org.apache.synapse.endpoints.dispatch.Dispatcher;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
@@ -52,6 +55,7 @@ import org.apache.synapse.transport.passthru.config.SourceConfiguration;
 import org.apache.synapse.util.ResponseAcceptEncodingProcessor;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is the message receiver that receives the responses for outgoing messages sent out
@@ -73,6 +77,17 @@ public class SynapseCallbackReceiver implements MessageReceiver {
     /** This is the synchronized callbackStore that maps outgoing messageID's to callback objects */
     private final Map<String, AxisCallback> callbackStore;  // will be made thread safe in the constructor
 
+    /** Time in ms a cancelled callback is remembered after its request would have timed out */
+    private static final long CANCELLED_CALLBACK_RETENTION = 120000;
+
+    /**
+     * Message IDs of the requests whose callbacks were cancelled, mapped to the time they can be
+     * forgotten, so that their late responses are dropped quietly
+     */
+    private final Map<String, Long> cancelledCallbacks = new ConcurrentHashMap<String, Long>();
+
+    private volatile long lastPurge = System.currentTimeMillis();
+
     private boolean initialized = false;
 
     private SynapseCallbackReceiver() {
@@ -155,12 +170,50 @@ public class SynapseCallbackReceiver implements MessageReceiver {
     }
 
     public void addCallback(String MsgID, AxisCallback callback) {
+        if (callback instanceof AsyncCallback && !RequestHedging.register(
+                ((AsyncCallback) callback).getSynapseOutMsgCtx(), MsgID)) {
+            // the other attempt of this hedged request has already been answered
+            markCancelled(MsgID, (AsyncCallback) callback);
+            return;
+        }
         callbackStore.put(MsgID, callback);
         if (log.isDebugEnabled()) {
             log.debug("Callback added. Total callbacks waiting for : " + callbackStore.size());
         }
     }
 
+    /**
+     * Cancel the callback of a request, so that its response and its timeout are discarded.
+     * This does not abort the request on the wire.
+     *
+     * @param messageID message ID the callback was registered with
+     * @return true if the callback was found and cancelled
+     */
+    public boolean cancelCallback(String messageID) {
+        AxisCallback callback = callbackStore.remove(messageID);
+        if (callback == null) {
+            return false;
+        }
+        markCancelled(messageID, (AsyncCallback) callback);
+        return true;
+    }
+
+    private void markCancelled(String messageID, AsyncCallback callback) {
+        long now = System.currentTimeMillis();
+        cancelledCallbacks.put(messageID,
+                Math.max(callback.getTimeOutOn(), now) + CANCELLED_CALLBACK_RETENTION);
+
+        if (now - lastPurge > 1000) {
+            lastPurge = now;
+            Iterator<Map.Entry<String, Long>> itr = cancelledCallbacks.entrySet().iterator();
+            while (itr.hasNext()) {
+                if (itr.next().getValue() < now) {
+                    itr.remove();
+                }
+            }
+        }
+    }
+
     /**
      * Every time a response message is received this method gets invoked. It will then select
      * the outgoing *Synapse* message context for the reply we received, and determine what action
@@ -225,6 +278,12 @@ public class SynapseCallbackReceiver implements MessageReceiver {
                 handleMessage(messageID, messageCtx, ((AsyncCallback) callback).getSynapseOutMsgCtx(),
                         (AsyncCallback)callback);
                 
+            } else if (cancelledCallbacks.remove(messageID) != null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Dropping the response for the cancelled request with message Id : " +
+                            messageID);
+                }
+
             } else {
                 // TODO invoke a generic synapse error handler for this message
                 log.warn("Synapse received a response for the request with message Id : " +
@@ -250,6 +309,13 @@ public class SynapseCallbackReceiver implements MessageReceiver {
     private void handleMessage(String messageID ,MessageContext response,
         org.apache.synapse.MessageContext synapseOutMsgCtx, AsyncCallback callback) throws AxisFault {
 
+        Object lastEndpoint = synapseOutMsgCtx.getProperty(SynapseConstants.LAST_ENDPOINT);
+        if (lastEndpoint instanceof Endpoint &&
+                ((Endpoint) lastEndpoint).getMetricsMBean() != null) {
+            ((Endpoint) lastEndpoint).getMetricsMBean().notifyResponseTime(
+                    System.currentTimeMillis() - callback.getSendTime());
+        }
+
         Object o = response.getProperty(SynapseConstants.SENDING_FAULT);
         if (o != null && Boolean.TRUE.equals(o)) {
 
@@ -309,6 +375,8 @@ public class SynapseCallbackReceiver implements MessageReceiver {
                     log.warn("Synapse timed out for the request with Message ID : " + messageID +
                             ". Ignoring fault handlers since the timeout action is DISCARD.");
                     faultStack.removeAllElements();
+                    LoadAwareAlgorithm.complete(synapseOutMsgCtx, false);
+                    CircuitBreaker.complete(synapseOutMsgCtx, false);
                 } else {
                     ((FaultHandler) faultStack.pop()).handleFault(synapseOutMsgCtx, null);
                 }
@@ -316,6 +384,17 @@ public class SynapseCallbackReceiver implements MessageReceiver {
 
         } else {
 
+            if (!RequestHedging.onResponse(synapseOutMsgCtx)) {
+                // the other attempt of this hedged request has already been answered
+                LoadAwareAlgorithm.complete(synapseOutMsgCtx, true);
+                CircuitBreaker.complete(synapseOutMsgCtx, true);
+                if (log.isDebugEnabled()) {
+                    log.debug("Dropping the late response of the hedged request with message Id : "
+                            + messageID);
+                }
+                return;
+            }
+
             // there can always be only one instance of an Endpoint in the faultStack of a message
             // if the send was successful, so remove it before we proceed any further
             Stack faultStack = synapseOutMsgCtx.getFaultStack();
@@ -324,6 +403,8 @@ public class SynapseCallbackReceiver implements MessageReceiver {
                 Endpoint successfulEndpoint = (Endpoint) faultStack.pop();
                 successfulEndpoint.onSuccess();
             }
+            LoadAwareAlgorithm.complete(synapseOutMsgCtx, true);
+            CircuitBreaker.complete(synapseOutMsgCtx, true);
             if (log.isDebugEnabled()) {
                 log.debug("Synapse received an asynchronous response message");
                 log.debug("Received To: " +
@@ -28,6 +28,8 @@ import org.apache.synapse.ServerContextInformation;
 import org.apache.synapse.aspects.statistics.StatisticsCleaner;
 import org.apache.synapse.aspects.statistics.StatisticsCollector;
 import org.apache.synapse.config.SynapseConfigUtils;
+import org.apache.synapse.endpoints.CircuitBreaker;
+import org.apache.synapse.endpoints.algorithms.LoadAwareAlgorithm;
 import org.apache.synapse.endpoints.dispatch.SALSessions;
 
 import java.util.Map;
@@ -149,6 +151,9 @@ public class TimeoutHandler extends TimerTask {
                                     }
                                 }
 
+                            } else {
+                                LoadAwareAlgorithm.complete(callback.getSynapseOutMsgCtx(), false);
+                                CircuitBreaker.complete(callback.getSynapseOutMsgCtx(), false);
                             }
                         }
 
@@ -156,6 +161,8 @@ public class TimeoutHandler extends TimerTask {
                         log.warn("Expiring message ID : " + key + "; dropping message after " +
                                 "global timeout of : " + (globalTimeout / 1000) + " seconds");
                         callbackStore.remove(key);
+                        LoadAwareAlgorithm.complete(callback.getSynapseOutMsgCtx(), false);
+                        CircuitBreaker.complete(callback.getSynapseOutMsgCtx(), false);
                     }
                 }
             }
@@ -71,6 +71,9 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
     /** The endpoint context - if applicable - that will hold the runtime state of the endpoint */
     private EndpointContext context = null;
 
+    /** The circuit breaker deciding whether the endpoint is ready, in circuit breaker mode */
+    private CircuitBreaker circuitBreaker = null;
+
     /** Is clustering enabled */
     protected Boolean isClusteringEnabled = null;
 
@@ -106,6 +109,15 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
         return context;
     }
 
+    /**
+     * Get the circuit breaker of this endpoint
+     *
+     * @return the circuit breaker, or null if the endpoint is not in circuit breaker mode
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
     public String getName() {
         return endpointName;
     }
@@ -208,6 +220,10 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
 
             context = new EndpointContext(getName(), getDefinition(), isClusteringEnabled,
                     cc, metricsMBean);
+            if (definition != null && definition.isCircuitBreakerOn()) {
+                circuitBreaker = new CircuitBreaker(definition.toString(), definition,
+                        metricsMBean);
+            }
         }
         initialized = true;
 
@@ -229,6 +245,11 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
                     "endpoint must be in initialized state");
         }
 
+        if (circuitBreaker != null) {
+            // the circuit breaker decides, unless the endpoint was manually switched off
+            return context != null && !context.isState(EndpointContext.ST_OFF) &&
+                    circuitBreaker.isCallPermitted();
+        }
         return context != null && context.readyToSend();
     }
 
@@ -243,6 +264,12 @@ public abstract class AbstractEndpoint extends FaultHandler implements Endpoint,
                     "endpoint must be in initialized state");
         }
 
+        if (circuitBreaker != null && !circuitBreaker.begin(synCtx)) {
+            informFailure(synCtx, SynapseConstants.ENDPOINT_CIRCUIT_OPEN,
+                    "Currently , circuit of endpoint : " + circuitBreaker);
+            return;
+        }
+
         prepareForEndpointStatistics(synCtx);
 
         if (traceOrDebugOn) {
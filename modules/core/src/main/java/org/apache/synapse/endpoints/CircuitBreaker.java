@@ -0,0 +1,458 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Decides whether a leaf endpoint in circuit breaker mode is ready, from the outcomes and
+ * response times of the calls made through it in the last few seconds. The calls are counted
+ * in a ring of one second buckets, which are replaced with compare-and-set as time moves on, so
+ * recording a call never takes a lock.
+ * <p/>
+ * While the circuit is closed every call is let through. When at least the minimum number of
+ * calls were made in the window, and the share of failed calls or of slow calls reaches its
+ * threshold, the circuit opens and calls are refused. Once the open duration has passed the
+ * circuit is half open, and a limited number of trial calls are let through. The circuit closes
+ * when all of them succeed, and opens again when one of them fails or is slow.
+ * <p/>
+ * Each call is recorded on the message context when it is sent, and is completed by the
+ * endpoint when the message fails, or by the callback receiver when the response arrives. A call
+ * of an out only message succeeds once the message is sent, as no response will arrive. The
+ * state is kept by each node on its own and is never replicated in a cluster.
+ */
+public class CircuitBreaker {
+
+    private static final Log log = LogFactory.getLog(CircuitBreaker.class);
+
+    /** Message context property holding the calls of the message which are in flight */
+    public static final String CIRCUIT_BREAKER_CALLS = "ENDPOINT_CIRCUIT_BREAKER_CALLS";
+
+    /** Calls are let through and counted in the window */
+    public static final int CLOSED = 0;
+    /** Calls are refused until the open duration has passed */
+    public static final int OPEN = 1;
+    /** A limited number of trial calls are let through to decide whether to close the circuit */
+    public static final int HALF_OPEN = 2;
+
+    public static final int DEFAULT_WINDOW = 10;
+    public static final int DEFAULT_MINIMUM_CALLS = 10;
+    public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 100;
+    public static final long DEFAULT_OPEN_DURATION = 30000;
+    public static final int DEFAULT_HALF_OPEN_TRIALS = 3;
+
+    private static final long SECOND = 1000000000L;
+    private static final long MILLISECOND = 1000000L;
+
+    private final String endpointName;
+
+    /** Length of the window in seconds */
+    private final int window;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    /** Response time in ns from which a call is slow, or 0 if calls are never slow */
+    private final long slowCallDuration;
+    private final int slowCallRateThreshold;
+    /** Time in ns the circuit stays open */
+    private final long openDuration;
+    private final int halfOpenTrials;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final AtomicReference<Phase> phase;
+
+    /** Metrics bean to notify the state changes */
+    private final EndpointView metricsBean;
+
+    /**
+     * Create the circuit breaker of an endpoint
+     *
+     * @param endpointName name of the endpoint, for logging
+     * @param definition   definition of the endpoint holding the circuit breaker settings
+     * @param metricsBean  metrics bean of the endpoint, or null
+     */
+    public CircuitBreaker(String endpointName, EndpointDefinition definition,
+                          EndpointView metricsBean) {
+        this.endpointName = endpointName;
+        this.window = Math.max(1, valueOf(definition.getCircuitBreakerWindow(), DEFAULT_WINDOW));
+        this.minimumCalls = Math.max(1, valueOf(definition.getCircuitBreakerMinimumCalls(),
+                DEFAULT_MINIMUM_CALLS));
+        this.failureRateThreshold = valueOf(definition.getCircuitBreakerFailureRateThreshold(),
+                DEFAULT_FAILURE_RATE_THRESHOLD);
+        this.slowCallDuration = Math.max(0, definition.getCircuitBreakerSlowCallDuration()) *
+                MILLISECOND;
+        this.slowCallRateThreshold = valueOf(definition.getCircuitBreakerSlowCallRateThreshold(),
+                DEFAULT_SLOW_CALL_RATE_THRESHOLD);
+        this.openDuration = (definition.getCircuitBreakerOpenDuration() < 0 ?
+                DEFAULT_OPEN_DURATION : definition.getCircuitBreakerOpenDuration()) * MILLISECOND;
+        this.halfOpenTrials = Math.max(1, valueOf(definition.getCircuitBreakerHalfOpenTrials(),
+                DEFAULT_HALF_OPEN_TRIALS));
+        this.metricsBean = metricsBean;
+
+        buckets = new AtomicReferenceArray<Bucket>(window);
+        phase = new AtomicReference<Phase>(new Phase(CLOSED, System.nanoTime()));
+    }
+
+    private static int valueOf(int value, int defaultValue) {
+        return value < 0 ? defaultValue : value;
+    }
+
+    /**
+     * Would a call be let through now? This does not take a trial call of a half open circuit.
+     *
+     * @return true if a call would be let through
+     */
+    public boolean isCallPermitted() {
+        Phase p = phase.get();
+        switch (p.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.nanoTime() - p.since >= openDuration;
+            default:
+                return p.trials.get() < halfOpenTrials ||
+                        System.nanoTime() - p.since >= openDuration;
+        }
+    }
+
+    /**
+     * Let a call through if the circuit allows it, and record it on the message
+     *
+     * @param synCtx message to be sent through the endpoint
+     * @return true if the message may be sent, false if the circuit refused it
+     */
+    public boolean begin(MessageContext synCtx) {
+        Phase p = acquire();
+        if (p == null) {
+            return false;
+        }
+        getCalls(synCtx, true).add(new Call(this, p.state == HALF_OPEN ? p : null));
+        return true;
+    }
+
+    private Phase acquire() {
+        while (true) {
+            Phase p = phase.get();
+            if (p.state == CLOSED) {
+                return p;
+            }
+
+            long now = System.nanoTime();
+            if (p.state == OPEN) {
+                if (now - p.since < openDuration) {
+                    return null;
+                }
+                if (phase.compareAndSet(p, new Phase(HALF_OPEN, now))) {
+                    log.info("Endpoint : " + endpointName + " circuit is now HALF OPEN and " +
+                            "will let " + halfOpenTrials + " trial call/s through");
+                }
+                continue;
+            }
+
+            int trials = p.trials.get();
+            if (trials < halfOpenTrials) {
+                if (p.trials.compareAndSet(trials, trials + 1)) {
+                    return p;
+                }
+            } else if (now - p.since >= openDuration) {
+                // trial calls which have not completed by now are taken to be lost
+                phase.compareAndSet(p, new Phase(HALF_OPEN, now));
+            } else {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Complete the calls made through this circuit breaker by a message which failed
+     *
+     * @param synCtx  message which failed
+     * @param failure true if the fault counts as a failure of the endpoint
+     */
+    public void onFault(MessageContext synCtx, boolean failure) {
+        List<Call> calls = getCalls(synCtx, false);
+        if (calls != null) {
+            for (Call call : calls) {
+                if (call.breaker == this) {
+                    calls.remove(call);
+                    call.complete(failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * Complete all the calls recorded on the message by the circuit breakers it went through
+     *
+     * @param synCtx  message which completed
+     * @param success true if a response was received, false if the message was dropped
+     */
+    public static void complete(MessageContext synCtx, boolean success) {
+        List<Call> calls = getCalls(synCtx, false);
+        if (calls != null) {
+            for (Call call : calls) {
+                call.complete(!success);
+            }
+            calls.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Call> getCalls(MessageContext synCtx, boolean create) {
+        List<Call> calls = (List<Call>) synCtx.getProperty(CIRCUIT_BREAKER_CALLS);
+        if (calls == null && create) {
+            calls = new CopyOnWriteArrayList<Call>();
+            synCtx.setProperty(CIRCUIT_BREAKER_CALLS, calls);
+        }
+        return calls;
+    }
+
+    private void record(Call call, boolean failure) {
+        long now = System.nanoTime();
+        boolean slow = slowCallDuration > 0 && now - call.start >= slowCallDuration;
+
+        if (call.trial != null) {
+            if (failure || slow) {
+                open(call.trial, (failure ? "a trial call failed" : "a trial call was slow"), now);
+            } else if (call.trial.successes.incrementAndGet() >= halfOpenTrials) {
+                close(call.trial);
+            }
+            return;
+        }
+
+        Bucket bucket = getBucket(now / SECOND);
+        if (bucket != null) {
+            bucket.calls.incrementAndGet();
+            if (failure) {
+                bucket.failures.incrementAndGet();
+            }
+            if (slow) {
+                bucket.slowCalls.incrementAndGet();
+            }
+        }
+
+        Phase p = phase.get();
+        if ((failure || slow) && p.state == CLOSED) {
+            int[] counts = count(now);
+            if (counts[0] >= minimumCalls) {
+                if (counts[1] * 100L >= (long) failureRateThreshold * counts[0]) {
+                    open(p, counts[1] + " of the last " + counts[0] + " calls failed", now);
+                } else if (slowCallDuration > 0 &&
+                        counts[2] * 100L >= (long) slowCallRateThreshold * counts[0]) {
+                    open(p, counts[2] + " of the last " + counts[0] + " calls were slow", now);
+                }
+            }
+        }
+    }
+
+    private Bucket getBucket(long second) {
+        int index = (int) (((second % window) + window) % window);
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.second == second) {
+                return bucket;
+            } else if (bucket != null && bucket.second > second) {
+                // the call completed as the window moved past its second
+                return null;
+            }
+            Bucket newBucket = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, newBucket)) {
+                return newBucket;
+            }
+        }
+    }
+
+    /**
+     * Count the calls, failed calls and slow calls in the window ending at the given time
+     */
+    private int[] count(long now) {
+        long second = now / SECOND;
+        int[] counts = new int[3];
+        for (int i = 0; i < window; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && second - bucket.second < window && bucket.second <= second) {
+                counts[0] += bucket.calls.get();
+                counts[1] += bucket.failures.get();
+                counts[2] += bucket.slowCalls.get();
+            }
+        }
+        return counts;
+    }
+
+    private void open(Phase current, String reason, long now) {
+        if (phase.compareAndSet(current, new Phase(OPEN, now))) {
+            log.warn("Endpoint : " + endpointName + " circuit is now OPEN as " + reason +
+                    ". Calls will be refused for : " + (openDuration / MILLISECOND) + "ms");
+            if (metricsBean != null) {
+                metricsBean.incrementSuspensions();
+                if (current.state == CLOSED) {
+                    metricsBean.setSuspendedAt(Calendar.getInstance().getTime());
+                }
+            }
+        }
+    }
+
+    private void close(Phase current) {
+        clearWindow();
+        if (phase.compareAndSet(current, new Phase(CLOSED, System.nanoTime()))) {
+            log.info("Endpoint : " + endpointName + " circuit is now CLOSED as " +
+                    halfOpenTrials + " trial call/s succeeded");
+            notifyClosed();
+        }
+    }
+
+    /**
+     * Close the circuit and forget the calls counted so far (e.g. when the endpoint is
+     * manually switched on)
+     */
+    public void reset() {
+        clearWindow();
+        phase.set(new Phase(CLOSED, System.nanoTime()));
+        notifyClosed();
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < window; i++) {
+            buckets.set(i, null);
+        }
+    }
+
+    private void notifyClosed() {
+        if (metricsBean != null) {
+            metricsBean.resetConsecutiveSuspensions();
+            metricsBean.setSuspendedAt(null);
+        }
+    }
+
+    /**
+     * Get the state of the circuit
+     *
+     * @return one of {@link #CLOSED}, {@link #OPEN} or {@link #HALF_OPEN}
+     */
+    public int getState() {
+        return phase.get().state;
+    }
+
+    public String getStateAsString() {
+        switch (getState()) {
+            case CLOSED: return "CLOSED";
+            case OPEN: return "OPEN";
+            default: return "HALF_OPEN";
+        }
+    }
+
+    /**
+     * Get the number of calls completed in the window
+     *
+     * @return number of calls
+     */
+    public int getCallCount() {
+        return count(System.nanoTime())[0];
+    }
+
+    /**
+     * Get the share of the calls in the window which failed
+     *
+     * @return percentage of failed calls, or 0 if there were no calls
+     */
+    public double getFailureRate() {
+        int[] counts = count(System.nanoTime());
+        return counts[0] == 0 ? 0 : counts[1] * 100.0 / counts[0];
+    }
+
+    /**
+     * Get the share of the calls in the window which were slow
+     *
+     * @return percentage of slow calls, or 0 if there were no calls
+     */
+    public double getSlowCallRate() {
+        int[] counts = count(System.nanoTime());
+        return counts[0] == 0 ? 0 : counts[2] * 100.0 / counts[0];
+    }
+
+    public String toString() {
+        return "[ Name : " + endpointName + " ] [ Circuit : " + getStateAsString() + " ]";
+    }
+
+    /**
+     * A state of the circuit, replaced as a whole on every transition so that trial calls of an
+     * earlier half open period cannot affect a later one
+     */
+    private static final class Phase {
+
+        private final int state;
+        private final long since;
+        private final AtomicInteger trials = new AtomicInteger();
+        private final AtomicInteger successes = new AtomicInteger();
+
+        private Phase(int state, long since) {
+            this.state = state;
+            this.since = since;
+        }
+    }
+
+    /**
+     * Outcomes of the calls completed in one second
+     */
+    private static final class Bucket {
+
+        private final long second;
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        private Bucket(long second) {
+            this.second = second;
+        }
+    }
+
+    /**
+     * A call let through the circuit, which is completed only once
+     */
+    private static final class Call {
+
+        private final CircuitBreaker breaker;
+        /** The half open phase this call is a trial of, or null */
+        private final Phase trial;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Call(CircuitBreaker breaker, Phase trial) {
+            this.breaker = breaker;
+            this.trial = trial;
+        }
+
+        private void complete(boolean failure) {
+            if (completed.compareAndSet(false, true)) {
+                breaker.record(this, failure);
+            }
+        }
+    }
+}
@@ -31,7 +31,9 @@ public class DefaultEndpoint extends AbstractEndpoint {
     public void onFault(MessageContext synCtx) {
 
         // is this really a fault or a timeout/connection close etc?
-        if (isTimeout(synCtx)) {
+        if (getCircuitBreaker() != null) {
+            getCircuitBreaker().onFault(synCtx, isTimeout(synCtx) || isSuspendFault(synCtx));
+        } else if (isTimeout(synCtx)) {
             getContext().onTimeout();
         } else if (isSuspendFault(synCtx)) {
             getContext().onFault();
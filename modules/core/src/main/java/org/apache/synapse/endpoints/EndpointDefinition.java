@@ -151,6 +151,23 @@ public class EndpointDefinition implements AspectConfigurable {
     /** A list of error codes which permit the retries */
     private final List<Integer> retryDisabledErrorCodes = new ArrayList<Integer>();
 
+    /** Is the endpoint in circuit breaker mode, instead of suspending itself on errors */
+    private boolean circuitBreakerOn = false;
+    /** Length in seconds of the window the calls are counted in by the circuit breaker */
+    private int circuitBreakerWindow = -1;
+    /** Calls to be made in the window before the circuit may open */
+    private int circuitBreakerMinimumCalls = -1;
+    /** Percentage of failed calls in the window which opens the circuit */
+    private int circuitBreakerFailureRateThreshold = -1;
+    /** Response time in ms from which a call is counted as slow */
+    private long circuitBreakerSlowCallDuration = -1;
+    /** Percentage of slow calls in the window which opens the circuit */
+    private int circuitBreakerSlowCallRateThreshold = -1;
+    /** Time in ms the circuit stays open before trial calls are let through */
+    private long circuitBreakerOpenDuration = -1;
+    /** Number of trial calls let through a half open circuit */
+    private int circuitBreakerHalfOpenTrials = -1;
+
     /**
      * This should return the absolute EPR address referenced by the named endpoint. This may be
      * possibly computed.
@@ -511,6 +528,70 @@ public class EndpointDefinition implements AspectConfigurable {
         this.replicationDisabled = replicationDisabled;
     }
 
+    public boolean isCircuitBreakerOn() {
+        return circuitBreakerOn;
+    }
+
+    public void setCircuitBreakerOn(boolean circuitBreakerOn) {
+        this.circuitBreakerOn = circuitBreakerOn;
+    }
+
+    public int getCircuitBreakerWindow() {
+        return circuitBreakerWindow;
+    }
+
+    public void setCircuitBreakerWindow(int circuitBreakerWindow) {
+        this.circuitBreakerWindow = circuitBreakerWindow;
+    }
+
+    public int getCircuitBreakerMinimumCalls() {
+        return circuitBreakerMinimumCalls;
+    }
+
+    public void setCircuitBreakerMinimumCalls(int circuitBreakerMinimumCalls) {
+        this.circuitBreakerMinimumCalls = circuitBreakerMinimumCalls;
+    }
+
+    public int getCircuitBreakerFailureRateThreshold() {
+        return circuitBreakerFailureRateThreshold;
+    }
+
+    public void setCircuitBreakerFailureRateThreshold(int circuitBreakerFailureRateThreshold) {
+        this.circuitBreakerFailureRateThreshold = circuitBreakerFailureRateThreshold;
+    }
+
+    public long getCircuitBreakerSlowCallDuration() {
+        return circuitBreakerSlowCallDuration;
+    }
+
+    public void setCircuitBreakerSlowCallDuration(long circuitBreakerSlowCallDuration) {
+        this.circuitBreakerSlowCallDuration = circuitBreakerSlowCallDuration;
+    }
+
+    public int getCircuitBreakerSlowCallRateThreshold() {
+        return circuitBreakerSlowCallRateThreshold;
+    }
+
+    public void setCircuitBreakerSlowCallRateThreshold(int circuitBreakerSlowCallRateThreshold) {
+        this.circuitBreakerSlowCallRateThreshold = circuitBreakerSlowCallRateThreshold;
+    }
+
+    public long getCircuitBreakerOpenDuration() {
+        return circuitBreakerOpenDuration;
+    }
+
+    public void setCircuitBreakerOpenDuration(long circuitBreakerOpenDuration) {
+        this.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+    }
+
+    public int getCircuitBreakerHalfOpenTrials() {
+        return circuitBreakerHalfOpenTrials;
+    }
+
+    public void setCircuitBreakerHalfOpenTrials(int circuitBreakerHalfOpenTrials) {
+        this.circuitBreakerHalfOpenTrials = circuitBreakerHalfOpenTrials;
+    }
+
     public void addSuspendErrorCode(int code) {
         suspendErrorCodes.add(code);
     }
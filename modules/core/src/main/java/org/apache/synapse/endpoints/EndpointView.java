@@ -22,49 +22,86 @@ package org.apache.synapse.endpoints;
 import org.apache.axis2.transport.base.MessageLevelMetricsCollector;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.util.metrics.CounterTable;
+import org.apache.synapse.util.metrics.LatencyHistogram;
+import org.apache.synapse.util.metrics.StripedCounter;
 
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * This class is the metrics collector and JMX control point for Endpoints
+ * This class is the metrics collector and JMX control point for Endpoints.
+ * <p/>
+ * The per message counters are updated without locking, so that many threads sending through
+ * the same endpoint do not contend on it, and are summed up when read. The tables and the
+ * response time percentiles returned over JMX are snapshots taken at the time of the call.
+ * The per minute suspension and timeout counts of all the endpoints are rolled over by a
+ * single shared timer.
  */
 public class EndpointView implements EndpointViewMBean, MessageLevelMetricsCollector {
 
     private static final Log log = LogFactory.getLog(EndpointView.class);
-    private static final Long ONE = 1L;
-    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(20,
-        new ThreadFactory() {
+
+    /** Number of minutes of suspension and timeout counts kept */
+    private static final int HISTORY = 15;
+
+    /** The views of all the endpoints, rolled over by the shared tick every minute */
+    private static final Set<EndpointView> views =
+        Collections.newSetFromMap(new ConcurrentHashMap<EndpointView, Boolean>());
+
+    private static final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
             public Thread newThread(Runnable r) {
-                return new Thread(r, "endpoint-jmx-stat-collector");
+                Thread t = new Thread(r, "endpoint-jmx-stat-collector");
+                t.setDaemon(true);
+                return t;
             }
         }
     );
 
+    static {
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                for (EndpointView view : views) {
+                    try {
+                        view.tick();
+                    } catch (Exception e) {
+                        log.warn("Error rolling over the statistics of the endpoint : " +
+                                view.endpointName, e);
+                    }
+                }
+            }
+        }, 60, 60, TimeUnit.SECONDS);
+    }
+
     /** The name of the endpoint */
     private String endpointName = null;
     /** The actual Endpoint implementation we manage */
     private Endpoint endpoint = null;
 
     // metrics collected / maintained
-    private long messagesReceived;
-    private long faultsReceiving;
-    private long timeoutsReceiving;
-    private long bytesReceived;
-    private long minSizeReceived;
-    private long maxSizeReceived;
-    private double avgSizeReceived;
-    private final Map<Integer, Long> receivingFaultTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
-
-    private long messagesSent;
-    private long faultsSending;
-    private long timeoutsSending;
-    private long bytesSent;
-    private long minSizeSent;
-    private long maxSizeSent;
-    private double avgSizeSent;
+    private final StripedCounter messagesReceived = new StripedCounter();
+    private final StripedCounter faultsReceiving = new StripedCounter();
+    private final StripedCounter timeoutsReceiving = new StripedCounter();
+    private final StripedCounter bytesReceived = new StripedCounter();
+    private final AtomicLong minSizeReceived = new AtomicLong(0);
+    private final AtomicLong maxSizeReceived = new AtomicLong(0);
+    private final StripedCounter sizeReceivedTotal = new StripedCounter();
+    private final StripedCounter sizeReceivedCount = new StripedCounter();
+    private final CounterTable receivingFaultTable = new CounterTable();
+
+    private final StripedCounter messagesSent = new StripedCounter();
+    private final StripedCounter faultsSending = new StripedCounter();
+    private final StripedCounter timeoutsSending = new StripedCounter();
+    private final StripedCounter bytesSent = new StripedCounter();
+    private final AtomicLong minSizeSent = new AtomicLong(0);
+    private final AtomicLong maxSizeSent = new AtomicLong(0);
+    private final StripedCounter sizeSentTotal = new StripedCounter();
+    private final StripedCounter sizeSentCount = new StripedCounter();
+
+    private final LatencyHistogram responseTimes = new LatencyHistogram();
 
     private int consecutiveSuspensions;
     private int consecutiveTimeouts;
@@ -75,18 +112,17 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
     private Date suspendedAt;
     private Date timedoutAt;
 
-    private final Map<Integer, Long> sendingFaultTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
+    private final CounterTable sendingFaultTable = new CounterTable();
 
-    private final Map<Integer, Long> responseCodeTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
+    private final CounterTable responseCodeTable = new CounterTable();
 
     private long lastResetTime = System.currentTimeMillis();
 
-    private ScheduledFuture future;
-
-    private Queue<Integer> suspensionCounts = new LinkedList<Integer>();
-    private Queue<Integer> timeoutCounts = new LinkedList<Integer>();
+    /** Suspension and timeout counts of the last minutes, as a ring with the given next slot */
+    private final int[] suspensionCounts = new int[HISTORY];
+    private final int[] timeoutCounts = new int[HISTORY];
+    private int historyIndex = 0;
+    private int historySize = 0;
 
     /**
      * Create a new MBean to manage the given endpoint
@@ -96,26 +132,26 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
     public EndpointView(final String endpointName, Endpoint endpoint) {
         this.endpointName = endpointName;
         this.endpoint = endpoint;
+        views.add(this);
+    }
 
-        this.future = scheduler.scheduleAtFixedRate(new Runnable() {
-            public void run() {
-                if (suspensionCounts.size() == 15) {
-                    suspensionCounts.remove();
-                }
-                suspensionCounts.offer(suspensions.getAndSet(0));
-
-                if (timeoutCounts.size() == 15) {
-                    timeoutCounts.remove();
-                }
-                timeoutCounts.offer(timeouts.getAndSet(0));
-            }
-        }, 60, 60, TimeUnit.SECONDS);
+    /**
+     * Roll over the per minute suspension and timeout counts
+     */
+    synchronized void tick() {
+        suspensionCounts[historyIndex] = suspensions.getAndSet(0);
+        timeoutCounts[historyIndex] = timeouts.getAndSet(0);
+        historyIndex = (historyIndex + 1) % HISTORY;
+        if (historySize < HISTORY) {
+            historySize++;
+        }
     }
 
     public void destroy() {
-        future.cancel(true);
-        suspensionCounts.clear();
-        timeoutCounts.clear();
+        views.remove(this);
+        synchronized (this) {
+            historySize = 0;
+        }
     }
 
     // --- endpoint control ---
@@ -134,6 +170,10 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             if (endpoint.getContext() != null) {
                 endpoint.getContext().switchOn();
             }
+            CircuitBreaker circuitBreaker = getCircuitBreaker(endpoint);
+            if (circuitBreaker != null) {
+                circuitBreaker.reset();
+            }
         }
     }
 
@@ -166,7 +206,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         if (endpoint.getChildren() != null) {
             return getActiveChildren() > 0;
         } else if (endpoint.getContext() != null) {
-            return endpoint.getContext().isState(EndpointContext.ST_ACTIVE);
+            return isInState(endpoint, EndpointContext.ST_ACTIVE);
         }
         return false;
     }
@@ -218,7 +258,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         } else {
             int activeCount = 0;
             for (Endpoint e : endpoint.getChildren()) {
-                if (e.getContext().isState(EndpointContext.ST_ACTIVE)) {
+                if (isInState(e, EndpointContext.ST_ACTIVE)) {
                     activeCount++;
                 }
             }
@@ -245,6 +285,44 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         }
     }
 
+    // --- circuit breaker ---
+    /**
+     * State of the circuit of a leaf endpoint in circuit breaker mode
+     * @return CLOSED, OPEN or HALF_OPEN, or null if this is not a leaf endpoint in circuit
+     * breaker mode
+     */
+    public String getCircuitBreakerState() {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(endpoint);
+        return circuitBreaker == null ? null : circuitBreaker.getStateAsString();
+    }
+
+    /**
+     * Number of calls counted in the circuit breaker window of a leaf endpoint
+     * @return the number of calls, or -1 if this is not a leaf endpoint in circuit breaker mode
+     */
+    public int getCircuitBreakerCalls() {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(endpoint);
+        return circuitBreaker == null ? -1 : circuitBreaker.getCallCount();
+    }
+
+    /**
+     * Percentage of failed calls in the circuit breaker window of a leaf endpoint
+     * @return the failure rate, or -1 if this is not a leaf endpoint in circuit breaker mode
+     */
+    public double getCircuitBreakerFailureRate() {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(endpoint);
+        return circuitBreaker == null ? -1 : circuitBreaker.getFailureRate();
+    }
+
+    /**
+     * Percentage of slow calls in the circuit breaker window of a leaf endpoint
+     * @return the slow call rate, or -1 if this is not a leaf endpoint in circuit breaker mode
+     */
+    public double getCircuitBreakerSlowCallRate() {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(endpoint);
+        return circuitBreaker == null ? -1 : circuitBreaker.getSlowCallRate();
+    }
+
     // --- endpoint metrics ---
     /**
      * Time when statistics was last reset for this leaf endpoint
@@ -274,10 +352,10 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
                     addTableMaps(receivingFaultTable, e.getMetricsMBean().getReceivingFaultTable());
                 }
             }
-            addTableMaps(receivingFaultTable, this.receivingFaultTable);
+            addTableMaps(receivingFaultTable, this.receivingFaultTable.snapshot());
             return receivingFaultTable;
         } else {
-            return receivingFaultTable;
+            return receivingFaultTable.snapshot();
         }
     }
 
@@ -293,10 +371,10 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
                     addTableMaps(sendingFaultTable, e.getMetricsMBean().getSendingFaultTable());
                 }
             }
-            addTableMaps(sendingFaultTable, this.sendingFaultTable);
+            addTableMaps(sendingFaultTable, this.sendingFaultTable.snapshot());
             return sendingFaultTable;
         } else {
-            return sendingFaultTable;
+            return sendingFaultTable.snapshot();
         }
     }
 
@@ -314,7 +392,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return responseCodeTable;
         } else {
-            return responseCodeTable;
+            return responseCodeTable.snapshot();
         }
     }
 
@@ -394,18 +472,12 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         return getTotal(timeoutCounts, 15);
     }
 
-    private int getTotal(Queue<Integer> queue, int count) {
+    private synchronized int getTotal(int[] counts, int minutes) {
         int sum = 0;
-        Integer[] array = queue.toArray(new Integer[queue.size()]);
-
-        if (count > array.length) {
-            for (int i = 0; i < array.length; i++) {
-                sum +=array[i];
-            }
-        } else {
-            for (int i = 0; i < count; i++) {
-                sum += array[array.length - 1 - i];
-            }
+        int index = historyIndex;
+        for (int i = 0; i < Math.min(minutes, historySize); i++) {
+            index = (index + HISTORY - 1) % HISTORY;
+            sum += counts[index];
         }
         return sum;
     }
@@ -424,7 +496,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return messagesReceived;
         } else {
-            return messagesReceived;
+            return messagesReceived.sum();
         }
     }
 
@@ -442,7 +514,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return faultsReceiving;
         } else {
-            return faultsReceiving;
+            return faultsReceiving.sum();
         }
     }
 
@@ -460,7 +532,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return timeoutsReceiving;
         } else {
-            return timeoutsReceiving;
+            return timeoutsReceiving.sum();
         }
     }
 
@@ -478,7 +550,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return bytesReceived;
         } else {
-            return bytesReceived;
+            return bytesReceived.sum();
         }
     }
 
@@ -496,7 +568,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return messagesSent;
         } else {
-            return messagesSent;
+            return messagesSent.sum();
         }
     }
 
@@ -514,7 +586,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return faultsSending;
         } else {
-            return faultsSending;
+            return faultsSending.sum();
         }
     }
 
@@ -532,7 +604,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return timeoutsSending;
         } else {
-            return timeoutsSending;
+            return timeoutsSending.sum();
         }
     }
 
@@ -550,7 +622,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return bytesSent;
         } else {
-            return bytesSent;
+            return bytesSent.sum();
         }
     }
 
@@ -568,7 +640,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return minSizeReceived;
         } else {
-            return minSizeReceived;
+            return minSizeReceived.get();
         }
     }
 
@@ -586,7 +658,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return maxSizeReceived;
         } else {
-            return maxSizeReceived;
+            return maxSizeReceived.get();
         }
     }
 
@@ -604,7 +676,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return minSizeSent;
         } else {
-            return minSizeSent;
+            return minSizeSent.get();
         }
     }
 
@@ -622,7 +694,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return maxSizeSent;
         } else {
-            return maxSizeSent;
+            return maxSizeSent.get();
         }
     }
 
@@ -639,7 +711,8 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return avgSizeReceived;
         } else {
-            return avgSizeReceived;
+            long count = sizeReceivedCount.sum();
+            return count == 0 ? 0 : (double) sizeReceivedTotal.sum() / count;
         }
     }
 
@@ -655,32 +728,120 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return avgSizeSent;
         } else {
-            return avgSizeSent;
+            long count = sizeSentCount.sum();
+            return count == 0 ? 0 : (double) sizeSentTotal.sum() / count;
         }
     }
 
+    // --- response times ---
+    public double getAvgResponseTime() {
+        if (endpoint.getChildren() != null) {
+            long count = 0;
+            double total = 0;
+            for (Endpoint e : endpoint.getChildren()) {
+                if (e.getMetricsMBean() != null) {
+                    long epCount = e.getMetricsMBean().getResponseCount();
+                    count += epCount;
+                    total += e.getMetricsMBean().getAvgResponseTime() * epCount;
+                }
+            }
+            return count == 0 ? 0 : total / count;
+        } else {
+            return responseTimes.getMean();
+        }
+    }
+
+    public long getMaxResponseTime() {
+        if (endpoint.getChildren() != null) {
+            long maxResponseTime = 0;
+            for (Endpoint e : endpoint.getChildren()) {
+                if (e.getMetricsMBean() != null) {
+                    maxResponseTime = Math.max(maxResponseTime,
+                            e.getMetricsMBean().getMaxResponseTime());
+                }
+            }
+            return maxResponseTime;
+        } else {
+            return responseTimes.getMax();
+        }
+    }
+
+    public long getResponseCount() {
+        if (endpoint.getChildren() != null) {
+            long responseCount = 0;
+            for (Endpoint e : endpoint.getChildren()) {
+                if (e.getMetricsMBean() != null) {
+                    responseCount += e.getMetricsMBean().getResponseCount();
+                }
+            }
+            return responseCount;
+        } else {
+            return responseTimes.getCount();
+        }
+    }
+
+    /**
+     * The 50th, 90th, 99th and 99.9th percentiles of the response times of a leaf endpoint, in
+     * milliseconds. Percentiles cannot be combined, so for a group endpoint the highest value
+     * among the children is reported for each percentile.
+     * @return a Map of percentile names (p50, p90, p99, p999) to response times
+     */
+    public Map<String, Long> getResponseTimePercentiles() {
+        Map<String, Long> percentiles = new LinkedHashMap<String, Long>();
+        if (endpoint.getChildren() != null) {
+            for (Endpoint e : endpoint.getChildren()) {
+                if (e.getMetricsMBean() != null) {
+                    for (Map.Entry<String, Long> entry :
+                            e.getMetricsMBean().getResponseTimePercentiles().entrySet()) {
+                        Long current = percentiles.get(entry.getKey());
+                        if (current == null || entry.getValue() > current) {
+                            percentiles.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+            }
+        } else {
+            percentiles.put("p50", responseTimes.getPercentile(50));
+            percentiles.put("p90", responseTimes.getPercentile(90));
+            percentiles.put("p99", responseTimes.getPercentile(99));
+            percentiles.put("p999", responseTimes.getPercentile(99.9));
+        }
+        return percentiles;
+    }
+
+    /**
+     * Record the time taken by the endpoint to respond to a message
+     * @param millis time between sending the message and receiving the response
+     */
+    public void notifyResponseTime(long millis) {
+        responseTimes.record(millis);
+    }
+
     // --- MessageLevelMetricsCollector methods ---
     public void resetStatistics() {
 
-        messagesReceived  = 0;
-        faultsReceiving   = 0;
-        timeoutsReceiving = 0;
-        bytesReceived     = 0;
-        minSizeReceived   = 0;
-        maxSizeReceived   = 0;
-        avgSizeReceived   = 0;
+        messagesReceived.reset();
+        faultsReceiving.reset();
+        timeoutsReceiving.reset();
+        bytesReceived.reset();
+        minSizeReceived.set(0);
+        maxSizeReceived.set(0);
+        sizeReceivedTotal.reset();
+        sizeReceivedCount.reset();
         receivingFaultTable.clear();
 
-        messagesSent      = 0;
-        faultsSending     = 0;
-        timeoutsSending   = 0;
-        bytesSent         = 0;
-        minSizeSent       = 0;
-        maxSizeSent       = 0;
-        avgSizeSent       = 0;
+        messagesSent.reset();
+        faultsSending.reset();
+        timeoutsSending.reset();
+        bytesSent.reset();
+        minSizeSent.set(0);
+        maxSizeSent.set(0);
+        sizeSentTotal.reset();
+        sizeSentCount.reset();
         sendingFaultTable.clear();
 
         responseCodeTable.clear();
+        responseTimes.reset();
         lastResetTime = System.currentTimeMillis();
 
         if (endpoint.getChildren() != null) {
@@ -693,68 +854,52 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         log.info("Endpoint statistics reset for : " + endpointName + " (and/or its children)");
     }
 
-    public synchronized void incrementMessagesReceived() {
-        messagesReceived++;
+    public void incrementMessagesReceived() {
+        messagesReceived.increment();
     }
 
-    public synchronized void incrementFaultsReceiving(int errorCode) {
-        faultsReceiving++;
-        Object o = receivingFaultTable.get(errorCode);
-        if (o == null) {
-            receivingFaultTable.put(errorCode, ONE);
-        } else {
-            receivingFaultTable.put(errorCode, (Long) o + 1);
-        }
+    public void incrementFaultsReceiving(int errorCode) {
+        faultsReceiving.increment();
+        receivingFaultTable.increment(errorCode);
     }
 
-    public synchronized void incrementTimeoutsReceiving() {
-        timeoutsReceiving++;
+    public void incrementTimeoutsReceiving() {
+        timeoutsReceiving.increment();
     }
 
-    public synchronized void incrementBytesReceived(long size) {
-        bytesReceived += size;
+    public void incrementBytesReceived(long size) {
+        bytesReceived.add(size);
     }
 
-    public synchronized void incrementMessagesSent() {
-        messagesSent++;
+    public void incrementMessagesSent() {
+        messagesSent.increment();
     }
 
-    public synchronized void incrementFaultsSending(int errorCode) {
-        faultsSending++;
-        Object o = sendingFaultTable.get(errorCode);
-        if (o == null) {
-            sendingFaultTable.put(errorCode, ONE);
-        } else {
-            sendingFaultTable.put(errorCode, (Long) o + 1);
-        }
+    public void incrementFaultsSending(int errorCode) {
+        faultsSending.increment();
+        sendingFaultTable.increment(errorCode);
     }
 
-    public synchronized void incrementTimeoutsSending() {
-        timeoutsSending++;
+    public void incrementTimeoutsSending() {
+        timeoutsSending.increment();
     }
 
-    public synchronized void incrementBytesSent(long size) {
-        bytesSent += size;
+    public void incrementBytesSent(long size) {
+        bytesSent.add(size);
     }
 
-    public synchronized void notifyReceivedMessageSize(long size) {
-        if (minSizeReceived == 0 || size < minSizeReceived) {
-            minSizeReceived = size;
-        }
-        if (size > maxSizeReceived) {
-            maxSizeReceived = size;
-        }
-        avgSizeReceived = (avgSizeReceived == 0 ? size : (avgSizeReceived + size) / 2);
+    public void notifyReceivedMessageSize(long size) {
+        updateMin(minSizeReceived, size);
+        updateMax(maxSizeReceived, size);
+        sizeReceivedTotal.add(size);
+        sizeReceivedCount.increment();
     }
 
-    public synchronized void notifySentMessageSize(long size) {
-        if (minSizeSent == 0 || size < minSizeSent) {
-            minSizeSent = size;
-        }
-        if (size > maxSizeSent) {
-            maxSizeSent = size;
-        }
-        avgSizeSent = (avgSizeSent == 0 ? size : (avgSizeSent + size) / 2);
+    public void notifySentMessageSize(long size) {
+        updateMin(minSizeSent, size);
+        updateMax(maxSizeSent, size);
+        sizeSentTotal.add(size);
+        sizeSentCount.increment();
     }
 
     /**
@@ -763,14 +908,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      * @param errorCode the code to report
      */
     public void reportSendingFault(int errorCode) {
-        synchronized(sendingFaultTable) {
-            Object o = sendingFaultTable.get(errorCode);
-            if (o == null) {
-                sendingFaultTable.put(errorCode, ONE);
-            } else {
-                sendingFaultTable.put(errorCode, (Long) o + 1);
-            }
-        }
+        sendingFaultTable.increment(errorCode);
     }
 
     /**
@@ -779,14 +917,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      * @param errorCode the code to report
      */
     public void reportReceivingFault(int errorCode) {
-        synchronized(receivingFaultTable) {
-            Object o = receivingFaultTable.get(errorCode);
-            if (o == null) {
-                receivingFaultTable.put(errorCode, ONE);
-            } else {
-                receivingFaultTable.put(errorCode, (Long) o + 1);
-            }
-        }
+        receivingFaultTable.increment(errorCode);
     }
 
     /**
@@ -794,17 +925,24 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      * @param respCode response code
      */
     public void reportResponseCode(int respCode) {
-        synchronized(responseCodeTable) {
-            Object o = responseCodeTable.get(respCode);
-            if (o == null) {
-                responseCodeTable.put(respCode, ONE);
-            } else {
-                responseCodeTable.put(respCode, (Long) o + 1);
-            }
-        }
+        responseCodeTable.increment(respCode);
     }
 
     //---------- utility methods ---------------
+    private static void updateMin(AtomicLong min, long size) {
+        long current = min.get();
+        while ((current == 0 || size < current) && !min.compareAndSet(current, size)) {
+            current = min.get();
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long size) {
+        long current = max.get();
+        while (size > current && !max.compareAndSet(current, size)) {
+            current = max.get();
+        }
+    }
+
     private static void addTableMaps(Map<Integer, Long> t, Map<Integer, Long> s) {
         for (Map.Entry<Integer, Long> o : s.entrySet()) {
             if (t.containsKey(o.getKey())) {
@@ -824,7 +962,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         if (endpoint.getChildren() != null) {
             int count = 0, total = 0;
             for (Endpoint e : endpoint.getChildren()) {
-                if (e.getContext().isState(state)) {
+                if (isInState(e, state)) {
                     count++;
                 }
                 total++;
@@ -832,9 +970,27 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             return count == total;
 
         } else if (endpoint.getContext() != null) {
-            return endpoint.getContext().isState(state);
+            return isInState(endpoint, state);
         }
         return false;
     }
 
+    /**
+     * Is the given leaf endpoint in the given state? In circuit breaker mode an open circuit is
+     * reported as suspended, and a closed or half open circuit as active.
+     */
+    private static boolean isInState(Endpoint e, int state) {
+        CircuitBreaker circuitBreaker = getCircuitBreaker(e);
+        if (circuitBreaker != null && !e.getContext().isState(EndpointContext.ST_OFF)) {
+            boolean open = circuitBreaker.getState() == CircuitBreaker.OPEN;
+            return (state == EndpointContext.ST_SUSPENDED && open) ||
+                    (state == EndpointContext.ST_ACTIVE && !open);
+        }
+        return e.getContext().isState(state);
+    }
+
+    private static CircuitBreaker getCircuitBreaker(Endpoint e) {
+        return e instanceof AbstractEndpoint ? ((AbstractEndpoint) e).getCircuitBreaker() : null;
+    }
+
 }
@@ -44,6 +44,11 @@ public interface EndpointViewMBean {
     public Map getSendingFaultTable();
     public Map getResponseCodeTable();
 
+    public long getResponseCount();
+    public double getAvgResponseTime();
+    public long getMaxResponseTime();
+    public Map getResponseTimePercentiles();
+
     public Date getSuspendedAt();
     public Date getTimedoutAt();
     public int getConsecutiveEndpointSuspensions();
@@ -57,6 +62,11 @@ public interface EndpointViewMBean {
     public int getLast5MinuteEndpointTimeouts();
     public int getLast15MinuteEndpointTimeouts();
 
+    public String getCircuitBreakerState();
+    public int getCircuitBreakerCalls();
+    public double getCircuitBreakerFailureRate();
+    public double getCircuitBreakerSlowCallRate();
+
     // JMX Operations
     public void switchOn() throws Exception;
     public void switchOff() throws Exception;
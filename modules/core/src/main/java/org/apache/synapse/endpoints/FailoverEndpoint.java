@@ -19,8 +19,10 @@
 
 package org.apache.synapse.endpoints;
 
+import org.apache.axis2.util.JavaUtils;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.MediatorProperty;
 
 import java.util.Map;
@@ -34,6 +36,10 @@ import java.util.Set;
  * failing and parent endpoint is available, this will delegate the problem to the parent endpoint.
  * If parent endpoint is not available it will pop the next FaultHandler and delegate the problem
  * to that.
+ * <p/>
+ * When the <code>failover.hedging</code> property is set to true, a request which has not been
+ * answered in time is also sent to the next ready child endpoint, and the first response is
+ * taken. See {@link RequestHedging} for the properties which control the hedging.
  */
 public class FailoverEndpoint extends AbstractEndpoint {
 
@@ -43,6 +49,34 @@ public class FailoverEndpoint extends AbstractEndpoint {
     /** The fail-over mode supported by this endpoint. By default we do dynamic fail-over */
     private boolean dynamic = true;
 
+    /** Hedging of the requests, or null if the requests are only failed over */
+    private RequestHedging hedging = null;
+
+    public void init(SynapseEnvironment synapseEnvironment) {
+        super.init(synapseEnvironment);
+        MediatorProperty hedgingOn = getProperty(RequestHedging.HEDGING);
+        if (hedging == null && hedgingOn != null &&
+                JavaUtils.isTrueExplicitly(hedgingOn.getValue())) {
+            double percentile = RequestHedging.DEFAULT_PERCENTILE;
+            long delay = RequestHedging.DEFAULT_DELAY;
+            int budget = RequestHedging.DEFAULT_BUDGET;
+
+            MediatorProperty val = getProperty(RequestHedging.HEDGING_PERCENTILE);
+            if (val != null) {
+                percentile = Double.parseDouble(val.getValue().trim());
+            }
+            val = getProperty(RequestHedging.HEDGING_DELAY);
+            if (val != null) {
+                delay = Long.parseLong(val.getValue().trim());
+            }
+            val = getProperty(RequestHedging.HEDGING_BUDGET);
+            if (val != null) {
+                budget = Integer.parseInt(val.getValue().trim());
+            }
+            hedging = new RequestHedging(this, percentile, delay, budget);
+        }
+    }
+
     public void send(MessageContext synCtx) {
 
         if (log.isDebugEnabled()) {
@@ -81,8 +115,7 @@ public class FailoverEndpoint extends AbstractEndpoint {
                     if (isARetry && metricsMBean != null) {
                         metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_FO_FAIL_OVER);
                     }
-                    synCtx.pushFaultHandler(this);
-                    endpoint.send(synCtx);
+                    sendToChild(synCtx, endpoint, isARetry);
                     break;
                 }
             }
@@ -108,8 +141,7 @@ public class FailoverEndpoint extends AbstractEndpoint {
                 if (isARetry && metricsMBean != null) {
                     metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_FO_FAIL_OVER);
                 }
-                synCtx.pushFaultHandler(this);
-                currentEndpoint.send(synCtx);
+                sendToChild(synCtx, currentEndpoint, isARetry);
 
             } else {
                 boolean foundEndpoint = false;
@@ -120,8 +152,7 @@ public class FailoverEndpoint extends AbstractEndpoint {
                         if (isARetry && metricsMBean != null) {
                             metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_FO_FAIL_OVER);
                         }
-                        synCtx.pushFaultHandler(this);
-                        currentEndpoint.send(synCtx);
+                        sendToChild(synCtx, currentEndpoint, isARetry);
                         break;
                     }
                 }
@@ -137,8 +168,46 @@ public class FailoverEndpoint extends AbstractEndpoint {
         }
     }
 
+    /**
+     * Send a request to the given child endpoint, and schedule its hedge if this is the first
+     * attempt of a hedged request
+     *
+     * @param synCtx request to be sent
+     * @param endpoint child endpoint to send the request to
+     * @param isARetry whether the request was sent to another child endpoint before
+     */
+    private void sendToChild(MessageContext synCtx, Endpoint endpoint, boolean isARetry) {
+        if (hedging != null && !isARetry) {
+            hedging.begin(synCtx, endpoint);
+        }
+        synCtx.pushFaultHandler(this);
+        endpoint.send(synCtx);
+        if (hedging != null && !isARetry) {
+            hedging.sent(synCtx);
+        }
+    }
+
+    /**
+     * Send the copy of a hedged request to the given child endpoint
+     *
+     * @param synCtx copy of the request
+     * @param endpoint child endpoint to send the copy to
+     */
+    void sendHedge(MessageContext synCtx, Endpoint endpoint) {
+        synCtx.pushFaultHandler(this);
+        endpoint.send(synCtx);
+    }
+
     public void onChildEndpointFail(Endpoint endpoint, MessageContext synMessageContext) {
         logOnChildEndpointFail(endpoint, synMessageContext);
+        if (RequestHedging.onFault(synMessageContext)) {
+            if (log.isDebugEnabled()) {
+                log.debug(this + " Ignoring the failure of the request with [Message ID : " +
+                        synMessageContext.getMessageID() + "], since the other attempt of the " +
+                        "hedged request is in flight or answered");
+            }
+            return;
+        }
         if (!((AbstractEndpoint)endpoint).isRetryDisabled(synMessageContext)) {
             if (log.isDebugEnabled()) {
                 log.debug(this + " Retry Attempt for Request with [Message ID : " +
@@ -173,4 +242,8 @@ public class FailoverEndpoint extends AbstractEndpoint {
     public void setDynamic(boolean dynamic) {
         this.dynamic = dynamic;
     }
+
+    public RequestHedging getHedging() {
+        return hedging;
+    }
 }
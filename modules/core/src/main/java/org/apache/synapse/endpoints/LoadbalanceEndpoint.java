@@ -27,6 +27,7 @@ import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.endpoints.algorithms.AlgorithmContext;
+import org.apache.synapse.endpoints.algorithms.LoadAwareAlgorithm;
 import org.apache.synapse.endpoints.algorithms.LoadbalanceAlgorithm;
 import org.apache.synapse.mediators.MediatorProperty;
 
@@ -221,6 +222,9 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
     public void onChildEndpointFail(Endpoint endpoint, MessageContext synMessageContext) {
 
         logOnChildEndpointFail(endpoint, synMessageContext);
+        if (algorithm instanceof LoadAwareAlgorithm) {
+            ((LoadAwareAlgorithm) algorithm).onFault(synMessageContext);
+        }
         // resend (to a different endpoint) only if we support failover
         if (failover) {
             if (!((AbstractEndpoint)endpoint).isRetryDisabled(synMessageContext)) {
@@ -0,0 +1,497 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.AxisFault;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.core.axis2.SynapseCallbackReceiver;
+import org.apache.synapse.endpoints.algorithms.LoadAwareAlgorithm;
+import org.apache.synapse.mediators.eip.EIPConstants;
+import org.apache.synapse.util.MessageHelper;
+import org.apache.synapse.util.metrics.LatencyHistogram;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedges the requests sent through a failover endpoint. When the child endpoint a request was
+ * sent to has not answered within a percentile of the recent response times of the endpoint, a
+ * copy of the request is sent to the next ready child endpoint, and whichever response arrives
+ * first is taken. The response times are measured with a {@link LatencyHistogram} and the delay
+ * is recomputed after every few hundred responses. Until then the configured delay is used.
+ * <p/>
+ * The hedges are limited to a percentage of the requests. Every request earns that share of a
+ * hedge, every hedge spends a whole one, and at most a few hedges can be saved up during quiet
+ * periods, so that a slow endpoint cannot double the load on the others.
+ * <p/>
+ * The failover endpoint builds the envelope once. Before the first attempt of a request which may
+ * be hedged is sent, the envelope is serialized into a buffer and the message context is copied
+ * without its envelope, on the sending thread, as sending adds headers to the envelope. The
+ * envelope of the hedge is only parsed from the buffer when the timer fires, so the hedge never
+ * reads the message while it is still being mediated or answered. The timer is started once the
+ * first attempt has been sent. Out only requests are never hedged, as they are not answered.
+ * When one of the attempts is answered the other one is cancelled. Its callback is
+ * removed from the callback receiver, so that its response and its timeout are discarded, and a
+ * hedge which is not sent yet is never sent. The fault of one attempt is ignored while the other
+ * one is in flight, and the failover endpoint takes over once both have failed.
+ * <p/>
+ * Both child endpoints may process a hedged request, so hedging must only be enabled for
+ * endpoints serving idempotent requests.
+ */
+public class RequestHedging {
+
+    private static final Log log = LogFactory.getLog(RequestHedging.class);
+
+    /** Message context property holding the hedged request of the message */
+    public static final String HEDGED_REQUEST = "FAILOVER_HEDGED_REQUEST";
+
+    public static final String HEDGING = "failover.hedging";
+    public static final String HEDGING_PERCENTILE = "failover.hedging.percentile";
+    public static final String HEDGING_DELAY = "failover.hedging.delay";
+    public static final String HEDGING_BUDGET = "failover.hedging.budget";
+
+    public static final double DEFAULT_PERCENTILE = 95;
+    public static final long DEFAULT_DELAY = 100;
+    public static final int DEFAULT_BUDGET = 10;
+
+    /** Number of responses measured before the delay is recomputed */
+    static final int SAMPLES = 500;
+
+    /** Most hedges which can be saved up, in hundredths of a hedge */
+    static final long MAX_CREDITS = 1000;
+
+    private static final long HEDGE_COST = 100;
+
+    private static final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "failover-hedging-timer");
+                t.setDaemon(true);
+                return t;
+            }
+        }
+    );
+
+    private final FailoverEndpoint endpoint;
+    private final double percentile;
+    /** Percentage of the requests which may be hedged */
+    private final int budget;
+
+    /** Saved up hedges in hundredths of a hedge */
+    private final AtomicLong credits = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final AtomicLong samples = new AtomicLong();
+    /** Time in ms a request waits for a response before it is hedged */
+    private volatile long delay;
+
+    /**
+     * Create the hedging policy of a failover endpoint
+     *
+     * @param endpoint   failover endpoint whose requests are hedged
+     * @param percentile percentile of the response times after which a request is hedged
+     * @param delay      delay in ms used until enough response times are measured
+     * @param budget     percentage of the requests which may be hedged
+     */
+    public RequestHedging(FailoverEndpoint endpoint, double percentile, long delay, int budget) {
+        this.endpoint = endpoint;
+        this.percentile = percentile;
+        this.delay = Math.max(1, delay);
+        this.budget = Math.max(0, Math.min(100, budget));
+    }
+
+    /**
+     * Record a request which is about to be sent to its first child endpoint on the message
+     *
+     * @param synCtx message to be sent
+     * @param first  child endpoint the message is sent to
+     */
+    public void begin(MessageContext synCtx, Endpoint first) {
+        earn();
+        Request request = new Request(this, synCtx, first);
+        synCtx.setProperty(HEDGED_REQUEST, request);
+
+        // only prepare a hedge if one could be sent now, the budget is checked again later
+        if (credits.get() < HEDGE_COST || nextChild(first) == null ||
+                "true".equals(synCtx.getProperty(SynapseConstants.OUT_ONLY))) {
+            return;
+        }
+        try {
+            request.prepare();
+        } catch (Exception e) {
+            log.warn("Error copying the message to hedge it, the request is not hedged", e);
+        }
+    }
+
+    /**
+     * Schedule the hedge of a request whose first attempt has been sent, if the budget allowed
+     * one when it was sent
+     *
+     * @param synCtx message which was sent
+     */
+    public void sent(MessageContext synCtx) {
+        Request request = (Request) synCtx.getProperty(HEDGED_REQUEST);
+        if (request != null && request.isPrepared()) {
+            long elapsed = (System.nanoTime() - request.start) / 1000000;
+            request.schedule(Math.max(0, delay - elapsed));
+        }
+    }
+
+    private Endpoint nextChild(Endpoint first) {
+        for (Endpoint child : endpoint.getChildren()) {
+            if (child != first && child.readyToSend()) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private void hedge(final Request request) {
+        if (!request.isPending() || credits.get() < HEDGE_COST) {
+            return;
+        }
+
+        // copying and sending may take a while, so do not hold up the timer
+        request.primary.getEnvironment().getExecutorService().execute(new Runnable() {
+            public void run() {
+                Endpoint child = nextChild(request.first);
+                if (child == null) {
+                    return;
+                }
+                MessageContext copy;
+                try {
+                    copy = request.copyRequest();
+                } catch (Exception e) {
+                    log.warn("Error copying the request with [Message ID : " +
+                            request.primary.getMessageID() + "], the request is not hedged", e);
+                    return;
+                }
+                if (!request.startHedge(copy)) {
+                    return;
+                }
+
+                hedges.incrementAndGet();
+                if (log.isDebugEnabled()) {
+                    log.debug("Failover endpoint : " + endpoint.getName() + " hedging the " +
+                            "request with [Message ID : " + request.primary.getMessageID() +
+                            "] to : " + child);
+                }
+                try {
+                    endpoint.sendHedge(copy, child);
+                } catch (Exception e) {
+                    log.warn("Error sending the hedge of the request with [Message ID : " +
+                            request.primary.getMessageID() + "]", e);
+                    endpoint.onChildEndpointFail(child, copy);
+                }
+            }
+        });
+    }
+
+    /**
+     * Earn the share of a hedge of a request
+     */
+    void earn() {
+        while (true) {
+            long current = credits.get();
+            long next = Math.min(MAX_CREDITS, current + budget);
+            if (next == current || credits.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Spend a hedge if one is saved up
+     *
+     * @return true if a hedge may be sent
+     */
+    boolean acquire() {
+        while (true) {
+            long current = credits.get();
+            if (current < HEDGE_COST) {
+                return false;
+            }
+            if (credits.compareAndSet(current, current - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Record the response time of a request, and recompute the delay every few hundred responses
+     *
+     * @param millis time in ms from sending the request to receiving its first response
+     */
+    void record(long millis) {
+        latencies.record(millis);
+        if (samples.incrementAndGet() % SAMPLES == 0) {
+            delay = Math.max(1, latencies.getPercentile(percentile));
+            latencies.reset();
+            if (log.isDebugEnabled()) {
+                log.debug("Failover endpoint : " + endpoint.getName() + " now hedges requests " +
+                        "after " + delay + " ms");
+            }
+        }
+    }
+
+    /**
+     * Get the time a request currently waits for a response before it is hedged
+     *
+     * @return delay in ms
+     */
+    public long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Get the number of hedges sent
+     *
+     * @return number of hedges
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Record the callback of an attempt of a hedged request. Called by the callback receiver
+     * before it registers the callback of any message.
+     *
+     * @param synCtx    message which is sent
+     * @param messageID message ID the callback is registered with
+     * @return false if the other attempt was answered already and the callback should be dropped
+     */
+    public static boolean register(MessageContext synCtx, String messageID) {
+        Request request = (Request) synCtx.getProperty(HEDGED_REQUEST);
+        return request == null || request.register(synCtx, messageID);
+    }
+
+    /**
+     * Decide whether the response of a message should be mediated. The first response of a
+     * hedged request wins and cancels the other attempt.
+     *
+     * @param synCtx message whose response arrived
+     * @return false if the response belongs to the losing attempt of a hedged request
+     */
+    public static boolean onResponse(MessageContext synCtx) {
+        Request request = (Request) synCtx.getProperty(HEDGED_REQUEST);
+        return request == null || request.onResponse(synCtx);
+    }
+
+    /**
+     * Decide whether the failure of a message should be ignored by the failover endpoint
+     *
+     * @param synCtx message which failed
+     * @return true if the other attempt of the hedged request is in flight or answered
+     */
+    static boolean onFault(MessageContext synCtx) {
+        Request request = (Request) synCtx.getProperty(HEDGED_REQUEST);
+        return request != null && request.onFault(synCtx);
+    }
+
+    /**
+     * A request and its hedge. Only the first response is taken, and the failover endpoint
+     * is only told about a failure once all the attempts sent have failed.
+     */
+    static class Request {
+
+        private static final int PENDING = 0;
+        private static final int HEDGED = 1;
+        private static final int DONE = 2;
+
+        private final RequestHedging hedging;
+        private final MessageContext primary;
+        private final Endpoint first;
+        private final long start = System.nanoTime();
+
+        /** Copy of the message which is sent as the hedge, or null if it is never hedged */
+        private volatile MessageContext copy;
+        private ScheduledFuture task;
+
+        /** The message without its envelope before the first attempt, or null if not hedged */
+        private MessageContext template;
+        /** The envelope serialized before the first attempt */
+        private byte[] payload;
+
+        private int state = PENDING;
+        private int outstanding = 1;
+        /** Attempt whose response was taken, or null */
+        private MessageContext winner;
+        private String primaryCallback;
+        private String copyCallback;
+
+        Request(RequestHedging hedging, MessageContext primary, Endpoint first) {
+            this.hedging = hedging;
+            this.primary = primary;
+            this.first = first;
+        }
+
+        /**
+         * Copy the message without its envelope and serialize the envelope, on the sending
+         * thread before the first attempt is sent, so that a hedge can be made from them later
+         *
+         * @throws AxisFault if the message cannot be copied
+         * @throws XMLStreamException if the envelope cannot be serialized
+         */
+        void prepare() throws AxisFault, XMLStreamException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            primary.getEnvelope().serialize(out);
+
+            MessageContext copy = MessageHelper.cloneMessageContext(primary, false);
+            copy.setProperty(HEDGED_REQUEST, this);
+            // the hedge is not a branch of the request, unlike the clones made by a mediator
+            Object correlation = primary.getProperty(EIPConstants.AGGREGATE_CORRELATION);
+            if (correlation != null) {
+                copy.setProperty(EIPConstants.AGGREGATE_CORRELATION, correlation);
+            } else {
+                copy.getPropertyKeySet().remove(EIPConstants.AGGREGATE_CORRELATION);
+            }
+
+            payload = out.toByteArray();
+            template = copy;
+        }
+
+        boolean isPrepared() {
+            return template != null;
+        }
+
+        /**
+         * Make the message which is sent as the hedge, parsing its envelope from the buffer
+         *
+         * @return copy of the message as it was before the first attempt was sent
+         * @throws AxisFault if the envelope cannot be set on the copy
+         */
+        MessageContext copyRequest() throws AxisFault {
+            SOAPEnvelope envelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                    new ByteArrayInputStream(payload), null).getSOAPEnvelope();
+            envelope.build();
+            template.setEnvelope(envelope);
+            return template;
+        }
+
+        private synchronized void schedule(long delay) {
+            if (state == PENDING) {
+                task = scheduler.schedule(new Runnable() {
+                    public void run() {
+                        hedging.hedge(Request.this);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized boolean isPending() {
+            return state == PENDING;
+        }
+
+        synchronized boolean startHedge(MessageContext copy) {
+            if (state != PENDING || !hedging.acquire()) {
+                return false;
+            }
+            this.copy = copy;
+            state = HEDGED;
+            outstanding = 2;
+            return true;
+        }
+
+        boolean register(MessageContext synCtx, String messageID) {
+            synchronized (this) {
+                if (state != DONE || winner == null || winner == synCtx) {
+                    if (synCtx == primary) {
+                        primaryCallback = messageID;
+                    } else {
+                        copyCallback = messageID;
+                    }
+                    return true;
+                }
+            }
+            // the other attempt won while this one was being sent
+            complete(synCtx);
+            return false;
+        }
+
+        boolean onResponse(MessageContext synCtx) {
+            MessageContext loser = null;
+            String loserCallback = null;
+            synchronized (this) {
+                if (state == DONE) {
+                    // after both attempts failed the failover endpoint retries one of them
+                    return winner == null || winner == synCtx;
+                }
+                if (state == HEDGED) {
+                    loser = synCtx == primary ? copy : primary;
+                    loserCallback = synCtx == primary ? copyCallback : primaryCallback;
+                }
+                state = DONE;
+                winner = synCtx;
+                cancelTask();
+            }
+
+            hedging.record((System.nanoTime() - start) / 1000000);
+            if (loserCallback != null &&
+                    SynapseCallbackReceiver.getInstance().cancelCallback(loserCallback)) {
+                complete(loser);
+                if (log.isDebugEnabled()) {
+                    log.debug("Cancelled the " + (loser == primary ? "first attempt" : "hedge") +
+                            " of the request with [Message ID : " + primary.getMessageID() + "]");
+                }
+            }
+            return true;
+        }
+
+        synchronized boolean onFault(MessageContext synCtx) {
+            if (state == DONE) {
+                return winner != null && winner != synCtx;
+            }
+            if (--outstanding > 0) {
+                return true;
+            }
+            state = DONE;
+            cancelTask();
+            return false;
+        }
+
+        private void cancelTask() {
+            if (task != null) {
+                task.cancel(false);
+                task = null;
+            }
+        }
+
+        /**
+         * Complete the load balance and circuit breaker calls of a cancelled attempt
+         */
+        private void complete(MessageContext synCtx) {
+            LoadAwareAlgorithm.complete(synCtx, true);
+            CircuitBreaker.complete(synCtx, true);
+        }
+    }
+}
@@ -41,8 +41,10 @@ public class WSDLEndpoint extends AbstractEndpoint {
 
     public void onFault(MessageContext synCtx) {
         
-        // is this an actual leaf endpoint
-        if (getParentEndpoint() != null) {
+        if (getCircuitBreaker() != null) {
+            getCircuitBreaker().onFault(synCtx, isTimeout(synCtx) || isSuspendFault(synCtx));
+        } else if (getParentEndpoint() != null) {
+            // is this an actual leaf endpoint
             // is this really a fault or a timeout/connection close etc?
             if (isTimeout(synCtx)) {
                 getContext().onTimeout();
@@ -0,0 +1,133 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.algorithms;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load of a single child endpoint as seen by a {@link LoadAwareAlgorithm}. It counts the requests
+ * sent to the endpoint that have not completed yet and keeps an exponentially weighted moving
+ * average of the response latency. The average moves to a slower sample at once and decays
+ * towards faster samples over time, so that an endpoint which slows down is avoided quickly and
+ * only taken back gradually.
+ * <p/>
+ * All the state is held in atomic variables and no locks are taken when a request is sent or
+ * completed.
+ */
+public class EndpointLoad {
+
+    private static final long NO_SAMPLES = Double.doubleToLongBits(0);
+    /** Cost of an endpoint with requests in flight and no latency samples yet */
+    private static final double UNKNOWN_LATENCY_PENALTY = 1e12;
+
+    /** Number of requests sent to the endpoint which have not completed yet */
+    private final AtomicInteger outstanding = new AtomicInteger();
+    /** Bits of the moving average of the latency in nanoseconds */
+    private final AtomicLong ewma = new AtomicLong(NO_SAMPLES);
+    /** Time of the last latency sample in nanoseconds */
+    private volatile long lastUpdate = System.nanoTime();
+    /** Time it takes for the weight of a sample to drop to 1/e, in nanoseconds */
+    private final long decay;
+
+    public EndpointLoad(long decay) {
+        this.decay = decay;
+    }
+
+    /**
+     * Record that a request has been sent to the endpoint
+     */
+    public void begin() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Record that a request sent to the endpoint has completed
+     *
+     * @param latency time taken by the request in nanoseconds, or a negative value if the request
+     *                failed and its latency should not be counted
+     */
+    public void end(long latency) {
+        outstanding.decrementAndGet();
+        if (latency >= 0) {
+            update(latency, System.nanoTime());
+        }
+    }
+
+    private void update(long latency, long now) {
+        // the time stamp and the average are not updated together, which at worst gives a
+        // slightly different weight to one of two samples arriving at the same time
+        long elapsed = Math.max(now - lastUpdate, 0);
+        lastUpdate = now;
+        double weight = Math.exp(-(double) elapsed / decay);
+        long current;
+        double next;
+        do {
+            current = ewma.get();
+            double average = Double.longBitsToDouble(current);
+            next = latency > average ? latency : average * weight + latency * (1 - weight);
+        } while (!ewma.compareAndSet(current, Double.doubleToLongBits(next)));
+    }
+
+    /**
+     * Get the number of requests sent to the endpoint which have not completed yet
+     *
+     * @return number of outstanding requests
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Get the moving average of the latency, decayed by the time passed since the last sample so
+     * that an endpoint which has not been used for a while gets tried again
+     *
+     * @return average latency in nanoseconds
+     */
+    public double getLatency() {
+        double average = Double.longBitsToDouble(ewma.get());
+        long elapsed = System.nanoTime() - lastUpdate;
+        return elapsed > 0 ? average * Math.exp(-(double) elapsed / decay) : average;
+    }
+
+    /**
+     * Get the expected cost of sending one more request to the endpoint, which is the average
+     * latency scaled by the number of requests the new one has to queue behind. Until the first
+     * response comes back the latency is not known, and only one request at a time is sent to the
+     * endpoint in preference to the others.
+     *
+     * @return estimated latency of a new request in nanoseconds
+     */
+    public double getPeakEwmaCost() {
+        int pending = getOutstanding();
+        if (ewma.get() == NO_SAMPLES && pending > 0) {
+            return UNKNOWN_LATENCY_PENALTY + pending;
+        }
+        return getLatency() * (pending + 1);
+    }
+
+    /**
+     * Forget the outstanding requests and the latency recorded so far
+     */
+    public void reset() {
+        outstanding.set(0);
+        ewma.set(NO_SAMPLES);
+        lastUpdate = System.nanoTime();
+    }
+}
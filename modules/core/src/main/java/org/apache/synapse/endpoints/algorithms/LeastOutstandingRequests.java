@@ -0,0 +1,44 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.algorithms;
+
+/**
+ * This is the implementation of the least outstanding requests load balancing algorithm.
+ * It sends each request to the ready child endpoint with the fewest requests in flight, so that
+ * slow endpoints which hold on to their requests get less of the traffic.
+ */
+public class LeastOutstandingRequests extends LoadAwareAlgorithm {
+
+    protected int choose(EndpointLoad[] loads) {
+        return chooseLeast(loads);
+    }
+
+    protected double cost(EndpointLoad load) {
+        return load.getOutstanding();
+    }
+
+    public String getName() {
+        return "LeastOutstandingRequests";
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new LeastOutstandingRequests();
+    }
+}
@@ -0,0 +1,306 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.axis2.clustering.Member;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.PropertyInclude;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.mediators.MediatorProperty;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class of the load balance algorithms which choose a child endpoint by its current load.
+ * An {@link EndpointLoad} is kept for every child endpoint, and each request sent through the
+ * algorithm is recorded on the message context until it completes. The callback receiver
+ * completes the requests of a message when its response arrives, the requests of an out only
+ * message are completed once it is sent, and the load balance endpoint completes the request of
+ * a failed child through {@link #onFault(MessageContext)}. The requests are not copied to the
+ * clones of a message.
+ * <p/>
+ * The time it takes for an old latency sample to lose its weight can be set in milliseconds with
+ * the <code>loadbalance.ewma.decay</code> property of the load balance endpoint.
+ * <p/>
+ * These algorithms only balance the child endpoints of a load balance endpoint and do not
+ * support application members.
+ */
+public abstract class LoadAwareAlgorithm implements LoadbalanceAlgorithm, ManagedLifecycle {
+
+    private static final Log log = LogFactory.getLog(LoadAwareAlgorithm.class);
+
+    /** Message context property holding the requests of the message which are in flight */
+    public static final String OUTSTANDING_REQUESTS = "LOADBALANCE_OUTSTANDING_REQUESTS";
+
+    public static final String LB_EWMA_DECAY = "loadbalance.ewma.decay";
+
+    private static final long DEFAULT_DECAY = 10000;
+
+    private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    /** Child endpoints and their loads, in the same order */
+    private List<Endpoint> endpoints = null;
+    private volatile EndpointLoad[] loads = new EndpointLoad[0];
+
+    private Endpoint loadBalanceEndpoint = null;
+
+    /** Start position of the scans, moved on every choice so that ties are spread out */
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private long decay = DEFAULT_DECAY;
+
+    public void setApplicationMembers(List<Member> members) {}
+
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+        createLoads();
+    }
+
+    public void setLoadBalanceEndpoint(Endpoint endpoint) {
+        this.loadBalanceEndpoint = endpoint;
+    }
+
+    public void init(SynapseEnvironment se) {
+        if (loadBalanceEndpoint instanceof PropertyInclude) {
+            MediatorProperty val = ((PropertyInclude) loadBalanceEndpoint).getProperty(
+                    LB_EWMA_DECAY);
+            if (val != null) {
+                decay = Long.parseLong(val.getValue().trim());
+            }
+        }
+        createLoads();
+    }
+
+    public void destroy() {}
+
+    private void createLoads() {
+        int size = endpoints == null ? 0 : endpoints.size();
+        EndpointLoad[] newLoads = new EndpointLoad[size];
+        for (int i = 0; i < size; i++) {
+            newLoads[i] = new EndpointLoad(decay * 1000000);
+        }
+        loads = newLoads;
+    }
+
+    /**
+     * Choose a ready child endpoint and record a request to it on the message context
+     *
+     * @param synCtx           MessageContext instance which holds all per-message properties
+     * @param algorithmContext The context in which holds run time states related to the algorithm
+     * @return endpoint to send the next message, or null if no child endpoint is ready
+     */
+    public Endpoint getNextEndpoint(MessageContext synCtx, AlgorithmContext algorithmContext) {
+        EndpointLoad[] loads = this.loads;
+        int index = choose(loads);
+        if (index < 0) {
+            return null;
+        }
+
+        Request request = new Request(this, loads[index]);
+        getRequests(synCtx, true).add(request);
+        loads[index].begin();
+
+        Endpoint endpoint = endpoints.get(index);
+        if (log.isDebugEnabled()) {
+            log.debug(getName() + " chose " + endpoint + " with " +
+                    loads[index].getOutstanding() + " outstanding requests");
+        }
+        return endpoint;
+    }
+
+    /**
+     * Choose the child endpoint to send the next request to
+     *
+     * @param loads loads of the child endpoints
+     * @return index of the chosen endpoint, or -1 if no endpoint is ready
+     */
+    protected abstract int choose(EndpointLoad[] loads);
+
+    /**
+     * Choose the ready endpoint with the lowest cost, looking at all of them
+     *
+     * @param loads loads of the child endpoints
+     * @return index of the chosen endpoint, or -1 if no endpoint is ready
+     */
+    protected int chooseLeast(EndpointLoad[] loads) {
+        int start = nextStart(loads.length);
+        int best = -1;
+        double bestCost = 0;
+        for (int i = 0; i < loads.length; i++) {
+            int index = (start + i) % loads.length;
+            if (isReady(index)) {
+                double cost = cost(loads[index]);
+                if (best < 0 || cost < bestCost) {
+                    best = index;
+                    bestCost = cost;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Pick two ready endpoints at random and choose the one with the lower cost. This avoids
+     * looking at every endpoint and sending a burst of requests to the same least loaded one.
+     *
+     * @param loads loads of the child endpoints
+     * @return index of the chosen endpoint, or -1 if no endpoint is ready
+     */
+    protected int chooseBestOfTwo(EndpointLoad[] loads) {
+        int size = loads.length;
+        if (size == 0) {
+            return -1;
+        }
+        Random r = random.get();
+        int first = r.nextInt(size);
+        if (!isReady(first)) {
+            // fall back to a scan when the sample hits an endpoint which is not ready
+            return chooseLeast(loads);
+        }
+        if (size == 1) {
+            return first;
+        }
+        int second = r.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        if (!isReady(second)) {
+            return first;
+        }
+        return cost(loads[second]) < cost(loads[first]) ? second : first;
+    }
+
+    /**
+     * Get the cost of sending a request to the endpoint with the given load
+     *
+     * @param load load of the endpoint
+     * @return cost of the endpoint, lower is better
+     */
+    protected abstract double cost(EndpointLoad load);
+
+    private boolean isReady(int index) {
+        return endpoints.get(index).readyToSend();
+    }
+
+    private int nextStart(int size) {
+        return size == 0 ? 0 : (cursor.getAndIncrement() & Integer.MAX_VALUE) % size;
+    }
+
+    /**
+     * Complete the request this algorithm recorded on the message, after the child endpoint it
+     * was sent to failed. The latency of failed requests is not counted.
+     *
+     * @param synCtx message which failed
+     */
+    public void onFault(MessageContext synCtx) {
+        List<Request> requests = getRequests(synCtx, false);
+        if (requests != null) {
+            for (Request request : requests) {
+                if (request.algorithm == this) {
+                    requests.remove(request);
+                    request.complete(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Complete all the requests recorded on the message by the load aware algorithms it went
+     * through
+     *
+     * @param synCtx  message which completed
+     * @param success true if a response was received, false if the message was dropped
+     */
+    public static void complete(MessageContext synCtx, boolean success) {
+        List<Request> requests = getRequests(synCtx, false);
+        if (requests != null) {
+            for (Request request : requests) {
+                request.complete(success);
+            }
+            requests.clear();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Request> getRequests(MessageContext synCtx, boolean create) {
+        List<Request> requests = (List<Request>) synCtx.getProperty(OUTSTANDING_REQUESTS);
+        if (requests == null && create) {
+            requests = new CopyOnWriteArrayList<Request>();
+            synCtx.setProperty(OUTSTANDING_REQUESTS, requests);
+        }
+        return requests;
+    }
+
+    public Member getNextApplicationMember(AlgorithmContext algorithmContext) {
+        // load aware algorithms only balance the child endpoints
+        return null;
+    }
+
+    public void reset(AlgorithmContext algorithmContext) {
+        for (EndpointLoad load : loads) {
+            load.reset();
+        }
+    }
+
+    public abstract LoadbalanceAlgorithm clone();
+
+    /**
+     * Get the load of a child endpoint
+     *
+     * @param index position of the endpoint in the list of child endpoints
+     * @return load of the endpoint
+     */
+    public EndpointLoad getLoad(int index) {
+        return loads[index];
+    }
+
+    /**
+     * A request sent to a child endpoint, which is completed only once
+     */
+    private static class Request {
+
+        private final LoadAwareAlgorithm algorithm;
+        private final EndpointLoad load;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Request(LoadAwareAlgorithm algorithm, EndpointLoad load) {
+            this.algorithm = algorithm;
+            this.load = load;
+        }
+
+        private void complete(boolean success) {
+            if (completed.compareAndSet(false, true)) {
+                load.end(success ? System.nanoTime() - start : -1);
+            }
+        }
+    }
+}
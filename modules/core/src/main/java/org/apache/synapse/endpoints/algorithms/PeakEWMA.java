@@ -0,0 +1,46 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.algorithms;
+
+/**
+ * This is the implementation of the peak EWMA load balancing algorithm.
+ * It picks two ready child endpoints at random and sends the request to the one with the lower
+ * peak exponentially weighted moving average of the latency, multiplied by its number of
+ * outstanding requests plus one. The average moves to a slower response at once and recovers
+ * gradually, which makes this algorithm react quickly to an endpoint that starts to slow down.
+ */
+public class PeakEWMA extends LoadAwareAlgorithm {
+
+    protected int choose(EndpointLoad[] loads) {
+        return chooseBestOfTwo(loads);
+    }
+
+    protected double cost(EndpointLoad load) {
+        return load.getPeakEwmaCost();
+    }
+
+    public String getName() {
+        return "PeakEWMA";
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new PeakEWMA();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.algorithms;
+
+/**
+ * This is the implementation of the power of two choices load balancing algorithm.
+ * It picks two ready child endpoints at random and sends the request to the one with fewer
+ * outstanding requests. Compared to always choosing the least loaded endpoint this needs no scan
+ * and does not herd concurrent requests onto the same endpoint, while still keeping the requests
+ * away from endpoints which are slow to respond.
+ */
+public class PowerOfTwoChoices extends LoadAwareAlgorithm {
+
+    protected int choose(EndpointLoad[] loads) {
+        return chooseBestOfTwo(loads);
+    }
+
+    protected double cost(EndpointLoad load) {
+        return load.getOutstanding();
+    }
+
+    public String getName() {
+        return "PowerOfTwoChoices";
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new PowerOfTwoChoices();
+    }
+}
@@ -26,6 +26,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.IndirectEndpoint;
 import org.apache.synapse.endpoints.SALoadbalanceEndpoint;
@@ -33,6 +34,7 @@ import org.apache.synapse.endpoints.DynamicLoadbalanceEndpoint;
 import org.apache.synapse.util.Replicator;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Keeps the states of the sessions
@@ -52,16 +54,20 @@ public class SALSessions {
 
     private boolean initialized = false;
 
+    /* Length of a tick of the session expiry wheel in milliseconds, and its number of slots */
+    private static final long EXPIRY_TICK = 1000;
+    private static final int EXPIRY_WHEEL_SLOTS = 1024;
+
     /*Cache all path with its endpoint sequence. This is only need for a clustered environment */
     private final Map<List<String>, List<Endpoint>> namesToEndpointsMap =
-            new HashMap<List<String>, List<Endpoint>>();
+            new ConcurrentHashMap<List<String>, List<Endpoint>>();
 
     /* Non- clustered environment , all the established sessions*/
-    private final Map<String, SessionInformation> establishedSessions =
-            new HashMap<String, SessionInformation>();
+    private volatile SessionTable establishedSessions = new SessionTable(EXPIRY_WHEEL_SLOTS,
+            EXPIRY_TICK, SynapseConstants.SAL_ENDPOINTS_DEFAULT_MAX_SESSIONS);
     /* all child endpoints .  This is only need for a clustered environment*/
     private final Map<String, Map<String, Endpoint>> childEndpoints =
-            new HashMap<String, Map<String, Endpoint>>();
+            new ConcurrentHashMap<String, Map<String, Endpoint>>();
 
     private SALSessions() {
     }
@@ -86,6 +92,8 @@ public class SALSessions {
             if (isClusteringEnable) {
                 isClustered = isClusteringEnable;
                 configCtx = cc;
+            } else {
+                establishedSessions = createSessionTable();
             }
             initialized = true;
         }
@@ -207,7 +215,7 @@ public class SALSessions {
             if (isClustered) {
                 Replicator.setAndReplicateState(SESSION_IDS + sessionID, newInformation, configCtx);
             } else {
-                establishedSessions.put(sessionID, newInformation);
+                establishedSessions.put(newInformation);
             }
         }
     }
@@ -244,7 +252,12 @@ public class SALSessions {
             if (log.isDebugEnabled()) {
                 log.debug("Session has been expired for session with id: " + sessionID);
             }
-            removeSession(sessionID);
+            if (isClustered) {
+                removeSession(sessionID);
+            } else {
+                // leave alone a new session which has replaced the expired one in the meantime
+                establishedSessions.remove(information);
+            }
             return null;
         }
 
@@ -313,7 +326,7 @@ public class SALSessions {
     /**
      * Clear all the expired sessions
      */
-    public synchronized void clearSessions() {
+    public void clearSessions() {
 
         if (!initialized) {
             return;
@@ -321,59 +334,47 @@ public class SALSessions {
 
         try {
             if (isClustered) {
+                clearClusteredSessions();
+            } else {
+                establishedSessions.expire(System.currentTimeMillis());
+            }
+        } catch (Throwable ignored) {
+            log.debug("Ignored error clearing sessions : Error " + ignored);
+        }
+    }
 
-                List<String> toBeRemoved = new ArrayList<String>();
-                for (Iterator<String> props = configCtx.getPropertyNames(); props.hasNext();) {
-                    Object name = props.next();
-
-                    if (name instanceof String && ((String) name).startsWith(SESSION_IDS)) {
-                        String key = (String) name;
-                        SessionInformation info = (SessionInformation) configCtx.getProperty(key);
+    /*
+     * Clear the expired sessions replicated in the configuration context
+     */
+    private synchronized void clearClusteredSessions() {
 
-                        if (info != null && info.isExpired()) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("Clustered Environment :" +
-                                        "Expired session with id :" + key);
-                            }
+        List<String> toBeRemoved = new ArrayList<String>();
+        for (Iterator<String> props = configCtx.getPropertyNames(); props.hasNext();) {
+            Object name = props.next();
 
-                            toBeRemoved.add(key);
-                        }
-                    }
-                }
+            if (name instanceof String && ((String) name).startsWith(SESSION_IDS)) {
+                String key = (String) name;
+                SessionInformation info = (SessionInformation) configCtx.getProperty(key);
 
-                if (!toBeRemoved.isEmpty()) {
+                if (info != null && info.isExpired()) {
                     if (log.isDebugEnabled()) {
-                        log.debug("Clearing expired sessions");
+                        log.debug("Clustered Environment :" +
+                                "Expired session with id :" + key);
                     }
 
-                    for (String key : toBeRemoved) {
-                        Replicator.removeAndReplicateState(key, configCtx);
-                    }
+                    toBeRemoved.add(key);
                 }
+            }
+        }
 
-            } else {
-
-                List<String> toBeRemoved = new ArrayList<String>();
-                for (SessionInformation information : establishedSessions.values()) {
-
-                    if (information != null && information.isExpired()) {
-                        String id = information.getId();
-                        if (log.isDebugEnabled()) {
-                            log.debug("Expired session with id :" + id);
-                        }
-                        toBeRemoved.add(id);
-                    }
-                }
+        if (!toBeRemoved.isEmpty()) {
+            if (log.isDebugEnabled()) {
+                log.debug("Clearing expired sessions");
+            }
 
-                if (!toBeRemoved.isEmpty()) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Clearing expired sessions");
-                    }
-                    establishedSessions.keySet().removeAll(toBeRemoved);
-                }
+            for (String key : toBeRemoved) {
+                Replicator.removeAndReplicateState(key, configCtx);
             }
-        } catch (Throwable ignored) {
-            log.debug("Ignored error clearing sessions : Error " + ignored);
         }
     }
 
@@ -403,6 +404,18 @@ public class SALSessions {
         namesToEndpointsMap.clear();
         childEndpoints.clear();
     }
+
+    /*
+     * Creates the table of sessions for a non clustered environment, bounded by the maximum
+     * number of sessions set in the synapse properties
+     */
+    private static SessionTable createSessionTable() {
+        int maxSessions = Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(
+                SynapseConstants.PROP_SAL_ENDPOINT_MAX_SESSIONS,
+                String.valueOf(SynapseConstants.SAL_ENDPOINTS_DEFAULT_MAX_SESSIONS)));
+        return new SessionTable(EXPIRY_WHEEL_SLOTS, EXPIRY_TICK, maxSessions);
+    }
+
     /*
      * Helper method to get a map from a list - This is for clustered env.
      */
@@ -35,7 +35,7 @@ public class SessionInformation implements Serializable {
     private String id;
     private String rootEndpointName;
     private List<String> path;
-    private long expiryTime;
+    private volatile long expiryTime;
     private long expireTimeWindow;
     private transient List<Endpoint> endpointList;
     private transient Member member;
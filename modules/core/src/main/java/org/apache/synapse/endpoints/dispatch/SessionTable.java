@@ -0,0 +1,219 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.dispatch;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sessions established in a non clustered environment, keyed by the session id. Lookups and
+ * updates go to a concurrent map and do not take a lock.
+ * <p/>
+ * Sessions are expired by a hashed timing wheel. Every session is queued on the slot of the
+ * tick its expiry time falls in, and {@link #expire(long)} only visits the slots of the ticks
+ * which have passed since it last ran, rather than scanning all the sessions. A session whose
+ * expiry time has been extended in the meantime, or which is due in a later turn of the wheel,
+ * is queued again on its new slot. The sweep only reclaims memory; a lookup still checks the
+ * expiry time of the session it finds.
+ * <p/>
+ * The number of sessions is bounded. When a new session takes the table over the limit, the
+ * sessions due to expire soonest are evicted until a tenth of the limit is free again, so that
+ * a table which is full does not evict on every new session.
+ */
+class SessionTable {
+
+    private static final Log log = LogFactory.getLog(SessionTable.class);
+
+    private final ConcurrentHashMap<String, SessionInformation> sessions =
+            new ConcurrentHashMap<String, SessionInformation>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Queue<SessionInformation>[] wheel;
+    /** Length of a tick of the wheel in milliseconds */
+    private final long tick;
+    private final int maxSessions;
+
+    /** Held while the wheel is being swept or sessions are being evicted */
+    private final Lock sweepLock = new ReentrantLock();
+    /** Last tick whose slot has been swept */
+    private volatile long sweptTick;
+
+    @SuppressWarnings("unchecked")
+    SessionTable(int slots, long tick, int maxSessions) {
+        this.tick = tick;
+        this.maxSessions = maxSessions;
+        this.wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<SessionInformation>();
+        }
+        this.sweptTick = System.currentTimeMillis() / tick - 1;
+    }
+
+    SessionInformation get(String id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * Add a session, replacing any session with the same id
+     *
+     * @param information session to add
+     */
+    void put(SessionInformation information) {
+        if (sessions.put(information.getId(), information) == null) {
+            size.incrementAndGet();
+        }
+        schedule(information, sweptTick + 1);
+        if (maxSessions > 0 && size.get() > maxSessions) {
+            evict();
+        }
+    }
+
+    void remove(String id) {
+        if (sessions.remove(id) != null) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Remove the given session, if it is still the one held for its id
+     *
+     * @param information session to remove
+     * @return true if the session was removed
+     */
+    boolean remove(SessionInformation information) {
+        if (sessions.remove(information.getId(), information)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    void clear() {
+        sweepLock.lock();
+        try {
+            sessions.clear();
+            size.set(0);
+            for (Queue<SessionInformation> slot : wheel) {
+                slot.clear();
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Remove the sessions which have expired by the given time. If the table is already being
+     * swept by another thread this returns at once.
+     *
+     * @param now current time in milliseconds
+     */
+    void expire(long now) {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            long nowTick = now / tick;
+            long from = Math.max(sweptTick + 1, nowTick - wheel.length + 1);
+            int expired = 0;
+            for (long t = from; t <= nowTick; t++) {
+                for (SessionInformation information : drain(wheel[slot(t)])) {
+                    if (sessions.get(information.getId()) != information) {
+                        // removed or replaced since it was queued
+                        continue;
+                    }
+                    if (information.getExpiryTime() <= now) {
+                        if (remove(information)) {
+                            expired++;
+                        }
+                    } else {
+                        schedule(information, nowTick + 1);
+                    }
+                }
+            }
+            sweptTick = nowTick;
+            if (expired > 0 && log.isDebugEnabled()) {
+                log.debug("Cleared " + expired + " expired sessions, " + size.get() +
+                        " sessions remain");
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * Evict the sessions due to expire soonest until a tenth of the limit is free
+     */
+    private void evict() {
+        sweepLock.lock();
+        try {
+            if (size.get() <= maxSessions) {
+                // another thread has evicted while this one waited
+                return;
+            }
+            int target = maxSessions - maxSessions / 10;
+            int evicted = 0;
+            for (int i = 1; i <= wheel.length && size.get() > target; i++) {
+                Queue<SessionInformation> slot = wheel[slot(sweptTick + i)];
+                SessionInformation information;
+                while (size.get() > target && (information = slot.poll()) != null) {
+                    if (remove(information)) {
+                        evicted++;
+                    }
+                }
+            }
+            if (evicted > 0) {
+                log.warn("The number of sessions exceeded the limit of " + maxSessions +
+                        ", evicted " + evicted + " sessions which were due to expire soonest");
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void schedule(SessionInformation information, long earliestTick) {
+        long expiryTick = Math.max(information.getExpiryTime() / tick, earliestTick);
+        wheel[slot(expiryTick)].add(information);
+    }
+
+    private int slot(long tickNumber) {
+        return (int) (tickNumber % wheel.length);
+    }
+
+    private List<SessionInformation> drain(Queue<SessionInformation> slot) {
+        List<SessionInformation> drained = new ArrayList<SessionInformation>();
+        SessionInformation information;
+        while ((information = slot.poll()) != null) {
+            drained.add(information);
+        }
+        return drained;
+    }
+}
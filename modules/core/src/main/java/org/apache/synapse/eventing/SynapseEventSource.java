@@ -36,6 +36,7 @@ import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.AddressEndpoint;
 import org.apache.synapse.endpoints.EndpointDefinition;
 import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.axis2.SynapseMessageReceiver;
@@ -49,9 +50,11 @@ import org.wso2.eventing.SubscriptionManager;
 import org.wso2.eventing.exceptions.EventException;
 
 import javax.xml.namespace.QName;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Eventsource that accepts the event requests using a message receiver.
@@ -64,6 +67,16 @@ import java.util.Map;
  */
 public class SynapseEventSource extends SynapseMessageReceiver {
 
+    /** Maximum number of threads an event is pushed to the subscribers from */
+    private static final String DISPATCH_PARALLELISM = "synapse.eventing.dispatch.parallelism";
+
+    /** Events with fewer subscribers than this are pushed from a single thread */
+    private static final int MIN_DISPATCH_BATCH_SIZE = 16;
+
+    private static final int dispatchParallelism = Integer.parseInt(
+            SynapsePropertiesLoader.getPropertyValue(DISPATCH_PARALLELISM,
+                    String.valueOf(Runtime.getRuntime().availableProcessors())));
+
     private String name;
     private SubscriptionManager subscriptionManager;
     private static final Log log = LogFactory.getLog(SynapseEventSource.class);
@@ -194,7 +207,11 @@ public class SynapseEventSource extends SynapseMessageReceiver {
     }
 
     /**
-     * Dispatching events async on a different thread
+     * Dispatching events async on a different thread. Events with many subscribers are split
+     * into batches which are pushed in parallel, using at most {@link #dispatchParallelism}
+     * threads of the environment executor per event. The event is only read by the dispatching
+     * thread, which copies it for every subscription of a batch before handing the batch off. A
+     * batch the executor cannot accept is pushed by the dispatching thread itself.
      */
     class EventDispatcher implements Runnable {
         private org.apache.synapse.MessageContext synCtx;
@@ -208,25 +225,78 @@ public class SynapseEventSource extends SynapseMessageReceiver {
             try {
                 MessageContext msgCtx = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
                 Event<MessageContext> event = new Event(msgCtx);
-                subscriptions = subscriptionManager.getMatchingSubscriptions(event);
+                subscriptions = new ArrayList<Subscription>(
+                        subscriptionManager.getMatchingSubscriptions(event));
             } catch (EventException e) {
                 handleException("Matching subscriptions fetching error", e);
             }
+            if (subscriptions.isEmpty()) {
+                return;
+            }
 
-            for (Subscription subscription : subscriptions) {
-                synCtx.setProperty(SynapseConstants.OUT_ONLY,
-                        "true");    // Set one way message for events
+            synCtx.setProperty(SynapseConstants.OUT_ONLY, "true");    // Set one way message for events
+            int size = subscriptions.size();
+            int batches = Math.min(dispatchParallelism,
+                    (size + MIN_DISPATCH_BATCH_SIZE - 1) / MIN_DISPATCH_BATCH_SIZE);
+            if (batches <= 1) {
+                send(subscriptions, null);
+                return;
+            }
+
+            int batchSize = (size + batches - 1) / batches;
+            for (int i = batchSize; i < size; i += batchSize) {
+                final List<Subscription> batch =
+                        subscriptions.subList(i, Math.min(i + batchSize, size));
+                final List<org.apache.synapse.MessageContext> events =
+                        new ArrayList<org.apache.synapse.MessageContext>(batch.size());
+                for (int j = 0; j < batch.size(); j++) {
+                    events.add(copyEvent());
+                }
                 try {
-                    getEndpointFromURL(subscription.getEndpointUrl(), synCtx.getEnvironment())
-                            .send(MessageHelper.cloneMessageContext(synCtx));
-                } catch (AxisFault axisFault) {
-                    log.error("Event sending failure " + axisFault.toString());
+                    synCtx.getEnvironment().getExecutorService().execute(new Runnable() {
+                        public void run() {
+                            send(batch, events);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    send(batch, events);
                 }
+            }
+            send(subscriptions.subList(0, batchSize), null);
+        }
+
+        /**
+         * Push the event to a batch of subscriptions
+         *
+         * @param batch  subscriptions to push the event to
+         * @param events copies of the event for each subscription, or null to copy the event
+         *               while pushing it, which only the dispatching thread may do
+         */
+        private void send(List<Subscription> batch,
+                          List<org.apache.synapse.MessageContext> events) {
+            for (int i = 0; i < batch.size(); i++) {
+                Subscription subscription = batch.get(i);
+                org.apache.synapse.MessageContext event =
+                        events != null ? events.get(i) : copyEvent();
+                if (event == null) {
+                    continue;
+                }
+                getEndpointFromURL(subscription.getEndpointUrl(), synCtx.getEnvironment())
+                        .send(event);
                 if (log.isDebugEnabled()) {
                     log.debug("Event push to  : " + subscription.getEndpointUrl());
                 }
             }
         }
+
+        private org.apache.synapse.MessageContext copyEvent() {
+            try {
+                return MessageHelper.cloneMessageContext(synCtx);
+            } catch (AxisFault axisFault) {
+                log.error("Event sending failure " + axisFault.toString());
+                return null;
+            }
+        }
     }
 
     /**
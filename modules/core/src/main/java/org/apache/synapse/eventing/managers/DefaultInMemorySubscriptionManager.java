@@ -19,13 +19,13 @@
 
 package org.apache.synapse.eventing.managers;
 
+import org.apache.axiom.om.OMElement;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.axiom.util.UIDGenerator;
 import org.apache.axis2.context.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.eventing.SynapseEventingConstants;
-import org.apache.synapse.eventing.filters.TopicBasedEventFilter;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 import org.wso2.eventing.*;
@@ -33,14 +33,24 @@ import org.wso2.eventing.exceptions.EventException;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- *
+ * Keeps the subscriptions in memory. Subscriptions using the XPath filter dialect are grouped by
+ * their expression so that each distinct expression is evaluated once per event, while all the
+ * other subscriptions are treated as topic subscriptions and kept in a {@link
+ * TopicSubscriptionIndex}. Matching an event therefore does not walk through every subscription.
  */
 public class DefaultInMemorySubscriptionManager implements SubscriptionManager<MessageContext> {
 
     private final Map<String, Subscription> store =
             new ConcurrentHashMap<String, Subscription>();
+    private final TopicSubscriptionIndex topicIndex = new TopicSubscriptionIndex();
+    private final Map<String, XPathFilterGroup> xpathFilters =
+            new HashMap<String, XPathFilterGroup>();
+    /** Guards the topic index and the XPath filter groups */
+    private final ReadWriteLock indexLock = new ReentrantReadWriteLock();
     private String topicHeaderName;
     private String topicHeaderNS;
     private SynapseXPath topicXPath;
@@ -61,17 +71,42 @@ public class DefaultInMemorySubscriptionManager implements SubscriptionManager<M
         if (subscription.getId() == null) {
             subscription.setId(UIDGenerator.generateURNString());
         }
-        store.put(subscription.getId(), subscription);
+        SynapseXPath xpath = null;
+        if (isXPathSubscription(subscription)) {
+            try {
+                xpath = createFilterXPath(subscription.getFilterValue());
+            } catch (JaxenException e) {
+                throw new EventException("Invalid XPath filter : " +
+                        subscription.getFilterValue(), e);
+            }
+        }
+
+        indexLock.writeLock().lock();
+        try {
+            Subscription previous = store.put(subscription.getId(), subscription);
+            if (previous != null) {
+                removeFromIndex(previous);
+            }
+            addToIndex(subscription, xpath);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
         return subscription.getId();
 
     }
 
   public boolean unsubscribe(String id) throws EventException {
-        if (store.containsKey(id)) {
-            store.remove(id);
-            return true;
-        } else {
-            return false;
+        indexLock.writeLock().lock();
+        try {
+            Subscription subscription = store.remove(id);
+            if (subscription != null) {
+                removeFromIndex(subscription);
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            indexLock.writeLock().unlock();
         }
     }
 
@@ -104,29 +139,35 @@ public class DefaultInMemorySubscriptionManager implements SubscriptionManager<M
 
     public List<Subscription> getMatchingSubscriptions(Event<MessageContext> event)
             throws EventException {
-        final LinkedList<Subscription> list = new LinkedList<Subscription>();
-        for (Map.Entry<String, Subscription> stringSubscriptionEntry : store.entrySet()) {
-            //TODO : pick the filter based on the dialect
-            //XPathBasedEventFilter filter = new XPathBasedEventFilter();
-            TopicBasedEventFilter filter = new TopicBasedEventFilter();
-            if (filter != null) {
-                filter.setResultValue(stringSubscriptionEntry.getValue().getFilterValue());
-                filter.setSourceXpath(topicXPath);
-                //evaluatedValue = topicXPath.stringValueOf(mc);
+        final List<Subscription> matches = new ArrayList<Subscription>();
+        MessageContext messageContext = event.getMessage();
+        String topic = getTopic(messageContext);
+
+        indexLock.readLock().lock();
+        try {
+            if (topic != null) {
+                topicIndex.match(topic, matches);
             }
-            if (filter == null || filter.match(event)) {
-                Subscription subscription = stringSubscriptionEntry.getValue();
-                Calendar current = Calendar.getInstance(); //Get current date and time
-                if (subscription.getExpires() != null) {
-                    if (current.before(subscription.getExpires())) {
-                        // add only valid subscriptions by checking the expiration
-                        list.add(subscription);
-                    }
-                } else {
-                    // If a expiration dosen't exisits treat it as a never expire subscription, valid till unsubscribe
-                    list.add(subscription);
+            for (XPathFilterGroup group : xpathFilters.values()) {
+                if (group.matches(messageContext)) {
+                    matches.addAll(group.subscriptions.values());
                 }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
 
+        final LinkedList<Subscription> list = new LinkedList<Subscription>();
+        Calendar current = Calendar.getInstance(); //Get current date and time
+        for (Subscription subscription : matches) {
+            if (subscription.getExpires() != null) {
+                if (current.before(subscription.getExpires())) {
+                    // add only valid subscriptions by checking the expiration
+                    list.add(subscription);
+                }
+            } else {
+                // If a expiration dosen't exisits treat it as a never expire subscription, valid till unsubscribe
+                list.add(subscription);
             }
         }
         return list;
@@ -162,6 +203,60 @@ public class DefaultInMemorySubscriptionManager implements SubscriptionManager<M
         }
     }
 
+    private String getTopic(MessageContext messageContext) {
+        try {
+            OMElement topicNode = (OMElement) topicXPath.selectSingleNode(
+                    messageContext.getEnvelope());
+            if (topicNode != null) {
+                return topicNode.getText();
+            }
+        } catch (JaxenException e) {
+            handleException("Error creating topic xpath", e);
+        }
+        return null;
+    }
+
+    private boolean isXPathSubscription(Subscription subscription) {
+        return SynapseEventingConstants.XPATH_FILTER_DIALECT.equals(
+                subscription.getFilterDialect()) && subscription.getFilterValue() != null;
+    }
+
+    private SynapseXPath createFilterXPath(String expression) throws JaxenException {
+        SynapseXPath xpath = new SynapseXPath(expression);
+        xpath.addNamespace("s11", "http://schemas.xmlsoap.org/soap/envelope/");
+        xpath.addNamespace("s12", "http://www.w3.org/2003/05/soap-envelope");
+        return xpath;
+    }
+
+    private void addToIndex(Subscription subscription, SynapseXPath xpath) {
+        String filter = subscription.getFilterValue();
+        if (xpath != null) {
+            XPathFilterGroup group = xpathFilters.get(filter);
+            if (group == null) {
+                group = new XPathFilterGroup(xpath);
+                xpathFilters.put(filter, group);
+            }
+            group.subscriptions.put(subscription.getId(), subscription);
+        } else if (filter != null) {
+            topicIndex.add(filter, subscription);
+        }
+    }
+
+    private void removeFromIndex(Subscription subscription) {
+        String filter = subscription.getFilterValue();
+        if (isXPathSubscription(subscription)) {
+            XPathFilterGroup group = xpathFilters.get(filter);
+            if (group != null) {
+                group.subscriptions.remove(subscription.getId());
+                if (group.subscriptions.isEmpty()) {
+                    xpathFilters.remove(filter);
+                }
+            }
+        } else if (filter != null) {
+            topicIndex.remove(filter, subscription.getId());
+        }
+    }
+
     public void addProperty(String name, String value) {
         properties.put(name, value);
     }
@@ -174,6 +269,29 @@ public class DefaultInMemorySubscriptionManager implements SubscriptionManager<M
         return properties.get(name);
     }
 
+    /**
+     * Subscriptions sharing the same XPath filter expression
+     */
+    private static class XPathFilterGroup {
+
+        private final SynapseXPath xpath;
+        private final Map<String, Subscription> subscriptions =
+                new LinkedHashMap<String, Subscription>();
+
+        XPathFilterGroup(SynapseXPath xpath) {
+            this.xpath = xpath;
+        }
+
+        boolean matches(MessageContext messageContext) {
+            try {
+                return xpath.booleanValueOf(messageContext.getEnvelope());
+            } catch (JaxenException e) {
+                log.warn("Error evaluating the XPath filter : " + xpath, e);
+                return false;
+            }
+        }
+    }
+
     private void handleException(String message) {
         log.error(message);
         throw new SynapseException(message);
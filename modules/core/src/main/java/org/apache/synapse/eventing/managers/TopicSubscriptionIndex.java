@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.eventing.managers;
+
+import org.wso2.eventing.Subscription;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of topic filters, keyed by the '/' separated segments of the filter. A subscription
+ * matches a topic if its filter equals the topic or is a prefix of the topic ending at a segment
+ * boundary, the same rule applied by the
+ * {@link org.apache.synapse.eventing.filters.TopicBasedEventFilter}. In addition a filter segment
+ * consisting of a single '*' matches any one segment of the topic.
+ * <p/>
+ * Looking up the subscriptions of a topic only visits the nodes along the path of the topic, so
+ * the cost depends on the depth of the topic rather than the number of subscriptions.
+ * The index is not thread safe.
+ */
+class TopicSubscriptionIndex {
+
+    static final String SEGMENT_SEPARATOR = "/";
+    static final String WILDCARD_SEGMENT = "*";
+
+    private final Node root = new Node();
+
+    /**
+     * Add a subscription to the index
+     *
+     * @param topicFilter  topic filter of the subscription
+     * @param subscription subscription to be added
+     */
+    void add(String topicFilter, Subscription subscription) {
+        Node node = root;
+        for (String segment : split(topicFilter)) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        node.subscriptions.put(subscription.getId(), subscription);
+    }
+
+    /**
+     * Remove a subscription from the index, dropping the nodes which are no longer used
+     *
+     * @param topicFilter    topic filter the subscription was added with
+     * @param subscriptionId ID of the subscription
+     */
+    void remove(String topicFilter, String subscriptionId) {
+        List<String> segments = split(topicFilter);
+        List<Node> path = new ArrayList<Node>(segments.size() + 1);
+        Node node = root;
+        path.add(node);
+        for (String segment : segments) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+            path.add(node);
+        }
+        node.subscriptions.remove(subscriptionId);
+
+        for (int i = segments.size(); i > 0; i--) {
+            Node current = path.get(i);
+            if (!current.subscriptions.isEmpty() || !current.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(segments.get(i - 1));
+        }
+    }
+
+    /**
+     * Find the subscriptions whose filter matches the given topic
+     *
+     * @param topic  topic of the event
+     * @param result list the matching subscriptions are added to
+     */
+    void match(String topic, List<Subscription> result) {
+        match(root, split(topic), 0, result);
+    }
+
+    private void match(Node node, List<String> segments, int index, List<Subscription> result) {
+        // every node below the root is either the whole topic or a prefix of it
+        result.addAll(node.subscriptions.values());
+        if (index == segments.size()) {
+            return;
+        }
+
+        String segment = segments.get(index);
+        Node child = node.children.get(segment);
+        if (child != null) {
+            match(child, segments, index + 1, result);
+        }
+        if (!WILDCARD_SEGMENT.equals(segment)) {
+            Node wildcard = node.children.get(WILDCARD_SEGMENT);
+            if (wildcard != null) {
+                match(wildcard, segments, index + 1, result);
+            }
+        }
+    }
+
+    /**
+     * Split a topic into its segments, keeping empty segments so that "a//b" and "a/b" remain
+     * different topics
+     *
+     * @param topic topic or topic filter
+     * @return segments of the topic
+     */
+    private static List<String> split(String topic) {
+        List<String> segments = new ArrayList<String>();
+        int start = 0;
+        int end;
+        while ((end = topic.indexOf(SEGMENT_SEPARATOR, start)) != -1) {
+            segments.add(topic.substring(start, end));
+            start = end + SEGMENT_SEPARATOR.length();
+        }
+        segments.add(topic.substring(start));
+        return segments;
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<String, Node>();
+
+        private final Map<String, Subscription> subscriptions =
+                new LinkedHashMap<String, Subscription>();
+    }
+}
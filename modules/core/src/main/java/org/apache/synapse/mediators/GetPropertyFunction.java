@@ -45,6 +45,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.Format;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -60,6 +61,50 @@ public class GetPropertyFunction implements Function {
 
     public static final String NULL_STRING = "";
 
+    private static final int SCOPE_DEFAULT = 0;
+    private static final int SCOPE_AXIS2 = 1;
+    private static final int SCOPE_FUNC = 2;
+    private static final int SCOPE_TRANSPORT = 3;
+    private static final int SCOPE_REGISTRY = 4;
+    private static final int SCOPE_SYSTEM = 5;
+
+    private static final int KEY_TO = 0;
+    private static final int KEY_FROM = 1;
+    private static final int KEY_ACTION = 2;
+    private static final int KEY_FAULT_TO = 3;
+    private static final int KEY_REPLY_TO = 4;
+    private static final int KEY_MESSAGE_ID = 5;
+    private static final int KEY_FAULT = 6;
+    private static final int KEY_MESSAGE_FORMAT = 7;
+    private static final int KEY_OPERATION_NAME = 8;
+    private static final int KEY_OPERATION_NAMESPACE = 9;
+
+    /** Scopes understood by the function, resolved with a single lookup per call */
+    private static final Map<String, Integer> SCOPES = new HashMap<String, Integer>();
+
+    /** Keys of the default scope which are not looked up as message context properties */
+    private static final Map<String, Integer> MESSAGE_KEYS = new HashMap<String, Integer>();
+
+    static {
+        SCOPES.put(XMLConfigConstants.SCOPE_DEFAULT, SCOPE_DEFAULT);
+        SCOPES.put(XMLConfigConstants.SCOPE_AXIS2, SCOPE_AXIS2);
+        SCOPES.put(XMLConfigConstants.SCOPE_FUNC, SCOPE_FUNC);
+        SCOPES.put(XMLConfigConstants.SCOPE_TRANSPORT, SCOPE_TRANSPORT);
+        SCOPES.put(XMLConfigConstants.SCOPE_REGISTRY, SCOPE_REGISTRY);
+        SCOPES.put(XMLConfigConstants.SCOPE_SYSTEM, SCOPE_SYSTEM);
+
+        MESSAGE_KEYS.put(SynapseConstants.HEADER_TO, KEY_TO);
+        MESSAGE_KEYS.put(SynapseConstants.HEADER_FROM, KEY_FROM);
+        MESSAGE_KEYS.put(SynapseConstants.HEADER_ACTION, KEY_ACTION);
+        MESSAGE_KEYS.put(SynapseConstants.HEADER_FAULT, KEY_FAULT_TO);
+        MESSAGE_KEYS.put(SynapseConstants.HEADER_REPLY_TO, KEY_REPLY_TO);
+        MESSAGE_KEYS.put(SynapseConstants.HEADER_MESSAGE_ID, KEY_MESSAGE_ID);
+        MESSAGE_KEYS.put(SynapseConstants.PROPERTY_FAULT, KEY_FAULT);
+        MESSAGE_KEYS.put(SynapseConstants.PROPERTY_MESSAGE_FORMAT, KEY_MESSAGE_FORMAT);
+        MESSAGE_KEYS.put(SynapseConstants.PROPERTY_OPERATION_NAME, KEY_OPERATION_NAME);
+        MESSAGE_KEYS.put(SynapseConstants.PROPERTY_OPERATION_NAMESPACE, KEY_OPERATION_NAMESPACE);
+    }
+
     /** Synapse Message context*/
     private final MessageContext synCtx;
 
@@ -108,12 +153,7 @@ public class GetPropertyFunction implements Function {
             } else if (size == 2) {
                 String argOne = StringFunction.evaluate(args.get(0), context.getNavigator());
                 if (argOne != null) {
-                    if (!XMLConfigConstants.SCOPE_AXIS2.equals(argOne) &&
-                        !XMLConfigConstants.SCOPE_DEFAULT.equals(argOne) &&
-                        !XMLConfigConstants.SCOPE_TRANSPORT.equals(argOne) &&
-                            !XMLConfigConstants.SCOPE_REGISTRY.equals(argOne) &&
-                            !XMLConfigConstants.SCOPE_FUNC.equals(argOne) &&
-                            !XMLConfigConstants.SCOPE_SYSTEM.equals(argOne)) {
+                    if (!isScope(argOne)) {
                         return evaluate(XMLConfigConstants.SCOPE_DEFAULT, args.get(0),
                             args.get(1), context.getNavigator());
                     } else {
@@ -148,11 +188,25 @@ public class GetPropertyFunction implements Function {
      */
     public Object evaluate(Object scopeObject, Object keyObject, Object dateformat,Navigator navigator) {
 
-        boolean traceOn = synCtx.getTracingState() == SynapseConstants.TRACING_ON;
-        boolean traceOrDebugOn = traceOn || log.isDebugEnabled();
-
         String scope = StringFunction.evaluate(scopeObject, navigator);
         String key = StringFunction.evaluate(keyObject, navigator);
+        return evaluate(scope, key, dateformat);
+    }
+
+    /**
+     * Returns the value of the property with the given key in the given scope. This is used by
+     * expressions whose scope and key are known when the expression is compiled.
+     *
+     * @param scope scope will decide from where property will be picked up from
+     *        i.e. axis2, transport, default/synapse
+     * @param key the key of the property
+     * @param dateformat The dateformat that need to convert, or null
+     * @return The value of the property
+     */
+    public Object evaluate(String scope, String key, Object dateformat) {
+
+        boolean traceOn = synCtx.getTracingState() == SynapseConstants.TRACING_ON;
+        boolean traceOrDebugOn = traceOn || log.isDebugEnabled();
 
         if (key == null || "".equals(key)) {
             if (traceOrDebugOn) {
@@ -182,51 +236,138 @@ public class GetPropertyFunction implements Function {
             return Long.toString(System.currentTimeMillis());
         }
 
-        if (XMLConfigConstants.SCOPE_DEFAULT.equals(scope)) {
+        Integer scopeType = SCOPES.get(scope);
+        if (scopeType == null) {
+            if (traceOrDebugOn) {
+                traceOrDebug(traceOn, "Invalid scope : '" + scope + "' has been set for the " +
+                        "synapse:get-property(scope,prop-name) XPath function");
+            }
+            return NULL_STRING;
+        }
+
+        switch (scopeType) {
+            case SCOPE_DEFAULT:
+                return getMessageProperty(key);
+
+            case SCOPE_AXIS2:
+                if (synCtx instanceof Axis2MessageContext) {
+                    org.apache.axis2.context.MessageContext axis2MessageContext
+                            = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+                    return axis2MessageContext.getProperty(key);
+                }
+                break;
+
+            case SCOPE_FUNC:
+                Stack<TemplateContext> functionStack = (Stack) synCtx.getProperty(SynapseConstants.SYNAPSE__FUNCTION__STACK);
+                TemplateContext topCtxt = functionStack.peek();
+                if (topCtxt!=null) {
+                    return topCtxt.getParameterValue(key);
+                }
+                return NULL_STRING;
+
+            case SCOPE_TRANSPORT:
+                if (synCtx instanceof Axis2MessageContext) {
+                    org.apache.axis2.context.MessageContext axis2MessageContext
+                            = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+                    Object headers = axis2MessageContext.getProperty(
+                            org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+
+                    if (headers != null && headers instanceof Map) {
+                        Map headersMap = (Map) headers;
+                        return headersMap.get(key);
+                    }
+                    return NULL_STRING;
+                }
+                break;
+
+            case SCOPE_REGISTRY:
+                return getRegistryProperty(key);
+
+            case SCOPE_SYSTEM:
+                String val = System.getProperty(key);
+                if (val != null) {
+                    return val;
+                } else {
+                    if (traceOrDebugOn) {
+                        traceOrDebug(traceOn, "No system property is found for key '" + key + "'");
+                    }
+                    return NULL_STRING;
+                }
+        }
+
+        if (traceOrDebugOn) {
+            traceOrDebug(traceOn, "Invalid scope : '" + scope + "' has been set for the " +
+                    "synapse:get-property(scope,prop-name) XPath function");
+        }
+        return NULL_STRING;
+    }
+
+    /**
+     * Checks whether the given string is one of the SCOPES of the function
+     *
+     * @param scope string to be checked
+     * @return true if the string is a scope name
+     */
+    public static boolean isScope(String scope) {
+        return SCOPES.containsKey(scope);
+    }
+
+    private Object getMessageProperty(String key) {
 
-            if (SynapseConstants.HEADER_TO.equals(key)) {
+        Integer keyType = MESSAGE_KEYS.get(key);
+        if (keyType == null) {
+            Object result = synCtx.getProperty(key);
+            if (result != null) {
+                return result;
+            } else {
+                return synCtx.getLocalEntry(key);
+            }
+        }
+
+        switch (keyType) {
+            case KEY_TO:
                 EndpointReference toEPR = synCtx.getTo();
                 if (toEPR != null) {
                     return toEPR.getAddress();
                 } else {
                     return NULL_STRING;
                 }
-            } else if (SynapseConstants.HEADER_FROM.equals(key)) {
+            case KEY_FROM:
                 EndpointReference fromEPR = synCtx.getFrom();
                 if (fromEPR != null) {
                     return fromEPR.getAddress();
                 } else {
                     return NULL_STRING;
                 }
-            } else if (SynapseConstants.HEADER_ACTION.equals(key)) {
+            case KEY_ACTION:
                 String wsaAction = synCtx.getWSAAction();
                 if (wsaAction != null) {
                     return wsaAction;
                 } else {
                     return NULL_STRING;
                 }
-            } else if (SynapseConstants.HEADER_FAULT.equals(key)) {
+            case KEY_FAULT_TO:
                 EndpointReference faultEPR = synCtx.getFaultTo();
                 if (faultEPR != null) {
                     return faultEPR.getAddress();
                 } else {
                     return NULL_STRING;
                 }
-            } else if (SynapseConstants.HEADER_REPLY_TO.equals(key)) {
+            case KEY_REPLY_TO:
                 EndpointReference replyToEPR = synCtx.getReplyTo();
                 if (replyToEPR != null) {
                     return replyToEPR.getAddress();
                 } else {
                     return NULL_STRING;
                 }
-            } else if (SynapseConstants.HEADER_MESSAGE_ID.equals(key)) {
+            case KEY_MESSAGE_ID:
                 String messageID = synCtx.getMessageID();
                 if (messageID != null) {
                     return messageID;
                 } else {
                     return NULL_STRING;
                 }
-            } else if (SynapseConstants.PROPERTY_FAULT.equals(key)) {
+            case KEY_FAULT:
                 if (synCtx.getEnvelope().hasFault()) {
                     return SynapseConstants.TRUE;
                 } else if (synCtx instanceof Axis2MessageContext) {
@@ -237,10 +378,9 @@ public class GetPropertyFunction implements Function {
                             axis2MessageContext.getProperty(BaseConstants.FAULT_MESSAGE))) {
                         return SynapseConstants.TRUE;
                     }
-                } else {
-                    return NULL_STRING;
                 }
-            } else if (SynapseConstants.PROPERTY_MESSAGE_FORMAT.equals(key)) {
+                return NULL_STRING;
+            case KEY_MESSAGE_FORMAT:
                 if (synCtx.isDoingPOX())
                     return SynapseConstants.FORMAT_POX;
                 else if (synCtx.isDoingGET())
@@ -249,127 +389,80 @@ public class GetPropertyFunction implements Function {
                     return SynapseConstants.FORMAT_SOAP11;
                 else
                     return SynapseConstants.FORMAT_SOAP12;
-            } else if (SynapseConstants.PROPERTY_OPERATION_NAME.equals(key) ||
-                    SynapseConstants.PROPERTY_OPERATION_NAMESPACE.equals(key)) {
+            default:
                 if (synCtx instanceof Axis2MessageContext) {
                     AxisOperation axisOperation
                             = ((Axis2MessageContext)synCtx).getAxis2MessageContext().getAxisOperation();
                     if (axisOperation != null) {
-                        if (SynapseConstants.PROPERTY_OPERATION_NAMESPACE.equals(key)) {
+                        if (keyType == KEY_OPERATION_NAMESPACE) {
                             return axisOperation.getName().getNamespaceURI();
                         } else {
                             return axisOperation.getName().getLocalPart();
                         }
                     }
                 }
-            } else {
-                Object result = synCtx.getProperty(key);
-                if (result != null) {
-                    return result;
-                } else {
-                    return synCtx.getLocalEntry(key);
-                }
-            }
-        } else if (XMLConfigConstants.SCOPE_AXIS2.equals(scope)
-                && synCtx instanceof Axis2MessageContext) {
-
-            org.apache.axis2.context.MessageContext axis2MessageContext
-                    = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
-            return axis2MessageContext.getProperty(key);
-
-        } else if (XMLConfigConstants.SCOPE_FUNC.equals(scope)) {
-            Stack<TemplateContext> functionStack = (Stack) synCtx.getProperty(SynapseConstants.SYNAPSE__FUNCTION__STACK);
-            TemplateContext topCtxt = functionStack.peek();
-            if (topCtxt!=null) {
-                return topCtxt.getParameterValue(key);
-            }
-        } else if (XMLConfigConstants.SCOPE_TRANSPORT.equals(scope)
-                && synCtx instanceof Axis2MessageContext) {
-
-            org.apache.axis2.context.MessageContext axis2MessageContext
-                    = ((Axis2MessageContext) synCtx).getAxis2MessageContext();
-            Object headers = axis2MessageContext.getProperty(
-                    org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+                return NULL_STRING;
+        }
+    }
 
-            if (headers != null && headers instanceof Map) {
-                Map headersMap = (Map) headers;
-                return headersMap.get(key);
-            }
+    private Object getRegistryProperty(String key) {
 
-        } else if (XMLConfigConstants.SCOPE_REGISTRY.equals(scope)) {
-            String[] regParam = key.split("@");
-            String regPath = null;
-            String propName = null;
-            if (regParam.length == 2) {
-                regPath = regParam[0];
-                propName = regParam[1];
-            } else if (regParam.length == 1) {
-                regPath = regParam[0];
-            }
+        String[] regParam = key.split("@");
+        String regPath = null;
+        String propName = null;
+        if (regParam.length == 2) {
+            regPath = regParam[0];
+            propName = regParam[1];
+        } else if (regParam.length == 1) {
+            regPath = regParam[0];
+        }
 
-            Entry propEntry = synCtx.getConfiguration().getEntryDefinition(regPath);
-            if (propEntry == null) {
-                propEntry = new Entry();
-                propEntry.setType(Entry.REMOTE_ENTRY);
-                propEntry.setKey(key);
-            }
-            Registry registry = synCtx.getConfiguration().getRegistry();
-            if (registry != null) {
-                registry.getResource(propEntry, new Properties());
-                if (propName != null) {
-                    Properties reqProperties = propEntry.getEntryProperties();
-                    if (reqProperties != null) {
-                        if (reqProperties.get(propName) != null) {
-                            return reqProperties.getProperty(propName);
-                        }
+        Entry propEntry = synCtx.getConfiguration().getEntryDefinition(regPath);
+        if (propEntry == null) {
+            propEntry = new Entry();
+            propEntry.setType(Entry.REMOTE_ENTRY);
+            propEntry.setKey(key);
+        }
+        Registry registry = synCtx.getConfiguration().getRegistry();
+        if (registry != null) {
+            registry.getResource(propEntry, new Properties());
+            if (propName != null) {
+                Properties reqProperties = propEntry.getEntryProperties();
+                if (reqProperties != null) {
+                    if (reqProperties.get(propName) != null) {
+                        return reqProperties.getProperty(propName);
                     }
-                } else if (propEntry.getValue() != null) {
-                    if (propEntry.getValue() instanceof OMText) {
-                        OMText omText = (OMText) propEntry.getValue();
-                        DataHandler dh = (DataHandler) omText.getDataHandler();
-                        if (omText.getDataHandler() != null) {
-                            InputStream in = null;
-                            try {
-                                in = dh.getInputStream();
-                                InputStreamReader streamReader = new InputStreamReader(in);
-                                BufferedReader stringReader = new BufferedReader(streamReader);
-                                StringBuilder omTextString = new StringBuilder(NULL_STRING);
-                                String tempStr;
-                                while ((tempStr = stringReader.readLine()) != null) {
-                                    omTextString.append(tempStr);
-                                }
-                                return omTextString.toString();
-                            } catch (IOException e) {
-                                return NULL_STRING;
-                            } finally {
-                                if (in != null) {
-                                    try {
-                                        in.close();
-                                    } catch (IOException ignore) { }
-                                }
+                }
+            } else if (propEntry.getValue() != null) {
+                if (propEntry.getValue() instanceof OMText) {
+                    OMText omText = (OMText) propEntry.getValue();
+                    DataHandler dh = (DataHandler) omText.getDataHandler();
+                    if (omText.getDataHandler() != null) {
+                        InputStream in = null;
+                        try {
+                            in = dh.getInputStream();
+                            InputStreamReader streamReader = new InputStreamReader(in);
+                            BufferedReader stringReader = new BufferedReader(streamReader);
+                            StringBuilder omTextString = new StringBuilder(NULL_STRING);
+                            String tempStr;
+                            while ((tempStr = stringReader.readLine()) != null) {
+                                omTextString.append(tempStr);
+                            }
+                            return omTextString.toString();
+                        } catch (IOException e) {
+                            return NULL_STRING;
+                        } finally {
+                            if (in != null) {
+                                try {
+                                    in.close();
+                                } catch (IOException ignore) { }
                             }
-                        } else {
-                            omText.getText();
                         }
+                    } else {
+                        omText.getText();
                     }
-                    return propEntry.getValue().toString();
-                }
-            }
-        } else if (XMLConfigConstants.SCOPE_SYSTEM.equals(scope)) {
-            String val = System.getProperty(key);
-            if (val != null) {
-                return val;
-            } else {
-                if (traceOrDebugOn) {
-                    traceOrDebug(traceOn, "No system property is found for key '" + key + "'");
                 }
-                return NULL_STRING;
-            }
-
-        } else {
-            if (traceOrDebugOn) {
-                traceOrDebug(traceOn, "Invalid scope : '" + scope + "' has been set for the " +
-                        "synapse:get-property(scope,prop-name) XPath function");
+                return propEntry.getValue().toString();
             }
         }
         return NULL_STRING;
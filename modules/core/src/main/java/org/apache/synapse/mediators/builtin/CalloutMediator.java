@@ -25,7 +25,9 @@ import org.apache.axiom.soap.SOAPBody;
 import org.apache.axiom.soap.SOAPHeader;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
+import org.apache.axis2.context.OperationContext;
 import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.Mediator;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.SynapseException;
@@ -39,6 +41,7 @@ import org.apache.synapse.endpoints.DefaultEndpoint;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.endpoints.EndpointDefinition;
 import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.MediatorWorker;
 import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
@@ -46,13 +49,17 @@ import org.jaxen.JaxenException;
 import java.util.List;
 
 /**
- * <callout [serviceURL="string"] [action="string"][passHeaders="true|false"] [initAxis2ClientOptions="true|false"]>
+ * <callout [serviceURL="string"] [action="string"][passHeaders="true|false"] [initAxis2ClientOptions="true|false"] [onComplete="string"]>
  * <configuration [axis2xml="string"] [repository="string"]/>?
  * <endpoint/>?
  * <source xpath="expression" | key="string">? <!-- key can be a MC property or entry key -->
  * <target xpath="expression" | key="string"/>?
  * <enableSec policy="string" | outboundPolicy="String" | inboundPolicy="String"/>?
  * </callout>
+ *
+ * When the onComplete sequence is given the callout does not block the mediation thread while
+ * the call is in flight. The flow stops at the callout and continues with the onComplete
+ * sequence once the response has been applied to the message.
  */
 public class CalloutMediator extends AbstractMediator implements ManagedLifecycle {
 
@@ -90,6 +97,9 @@ public class CalloutMediator extends AbstractMediator implements ManagedLifecycl
 
     private Axis2BlockingClient blockingMsgSender = null;
 
+    /** Sequence mediation continues with when the callout is made without blocking */
+    private String onComplete = null;
+
     public boolean mediate(MessageContext synCtx) {
 
         SynapseLog synLog = getLog(synCtx);
@@ -102,61 +112,14 @@ public class CalloutMediator extends AbstractMediator implements ManagedLifecycl
             }
         }
 
-        try {
-
-            if (synLog.isTraceOrDebugEnabled()) {
-                if (!isWrappingEndpointCreated) {
-                    synLog.traceOrDebug("Using the defined endpoint : " + endpoint.getName());
-                } else {
-                    if (serviceURL != null) {
-                        synLog.traceOrDebug("Using the serviceURL : " + serviceURL);
-                    } else {
-                        synLog.traceOrDebug("Using the To header as the EPR ");
-                    }
-                    if (securityOn) {
-                        synLog.traceOrDebug("Security enabled within the Callout Mediator config");
-                        if (wsSecPolicyKey != null) {
-                            synLog.traceOrDebug("Using security policy key : " + wsSecPolicyKey);
-                        } else {
-                            if (inboundWsSecPolicyKey != null) {
-                                synLog.traceOrDebug("Using inbound security policy key : " + inboundWsSecPolicyKey);
-                            }
-                            if (outboundWsSecPolicyKey != null) {
-                                synLog.traceOrDebug("Using outbound security policy key : " + outboundWsSecPolicyKey);
-                            }
-                        }
-                    }
-                }
-            }
-
-            org.apache.axis2.context.MessageContext axis2MsgCtx =
-                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
-            if (Constants.VALUE_TRUE.equals(axis2MsgCtx.getProperty(Constants.Configuration.ENABLE_MTOM))) {
-                ((AbstractEndpoint) endpoint).getDefinition().setUseMTOM(true);
-            }
-
-            MessageContext synapseOutMsgCtx = MessageHelper.cloneMessageContext(synCtx);
-
-            if (action != null) {
-                synapseOutMsgCtx.setSoapAction(action);
-            }
-
-            if (requestKey != null || requestXPath != null) {
-                SOAPBody soapBody = synapseOutMsgCtx.getEnvelope().getBody();
-                soapBody.removeChildren();
-                soapBody.addChild(getRequestPayload(synCtx));
-                if (!passHeaders) {
-                    SOAPHeader soapHeader = synapseOutMsgCtx.getEnvelope().getHeader();
-                    soapHeader.removeChildren();
-                }
-            }
+        if (onComplete != null && !"true".equals(synCtx.getProperty(SynapseConstants.OUT_ONLY))) {
+            mediateNonBlocking(synCtx, synLog);
+            synLog.traceOrDebug("End : Callout mediator");
+            return false;
+        }
 
-            if (synLog.isTraceOrDebugEnabled()) {
-                synLog.traceOrDebug("About to invoke the service");
-                if (synLog.isTraceTraceEnabled()) {
-                    synLog.traceTrace("Request message payload : " + synapseOutMsgCtx.getEnvelope());
-                }
-            }
+        try {
+            MessageContext synapseOutMsgCtx = createRequest(synCtx, synLog);
 
             MessageContext resultMsgCtx = null;
             try {
@@ -164,55 +127,205 @@ public class CalloutMediator extends AbstractMediator implements ManagedLifecycl
                     blockingMsgSender.send(endpoint, synapseOutMsgCtx);
                 } else {
                     resultMsgCtx = blockingMsgSender.send(endpoint, synapseOutMsgCtx);
-                    if ("true".equals(resultMsgCtx.getProperty(SynapseConstants.BLOCKING_CLIENT_ERROR))) {
-                        handleFault(synCtx, (Exception) synCtx.getProperty(SynapseConstants.ERROR_EXCEPTION));
-                    }
                 }
             } catch (Exception ex) {
                 handleFault(synCtx, ex);
             }
 
-            if (synLog.isTraceTraceEnabled()) {
-                synLog.traceTrace("Response payload received : " + resultMsgCtx.getEnvelope());
-            }
+            handleResponse(synCtx, resultMsgCtx);
 
-            if (resultMsgCtx != null) {
-                if (targetXPath != null) {
-                    Object o = targetXPath.evaluate(synCtx);
-                    OMElement result = resultMsgCtx.getEnvelope().getBody().getFirstElement();
-                    if (o != null && o instanceof OMElement) {
-                        OMNode tgtNode = (OMElement) o;
-                        tgtNode.insertSiblingAfter(result);
-                        tgtNode.detach();
-                    } else if (o != null && o instanceof List && !((List) o).isEmpty()) {
-                        // Always fetches *only* the first
-                        OMNode tgtNode = (OMElement) ((List) o).get(0);
-                        tgtNode.insertSiblingAfter(result);
-                        tgtNode.detach();
-                    } else {
-                        handleException("Evaluation of target XPath expression : " +
-                                        targetXPath.toString() + " did not yeild an OMNode", synCtx);
+        } catch (AxisFault e) {
+            handleException("Error invoking service : " + serviceURL +
+                            (action != null ? " with action : " + action : ""), e, synCtx);
+        }
+
+        synLog.traceOrDebug("End : Callout mediator");
+        return true;
+    }
+
+    /**
+     * Send the request without holding the current thread while the call is in flight. The
+     * flow is stopped here and, once the response arrives, it is applied to the message and
+     * mediation continues with the <code>onComplete</code> sequence on a thread of the
+     * Synapse environment.
+     */
+    private void mediateNonBlocking(final MessageContext synCtx, SynapseLog synLog) {
+
+        final Mediator continuation = synCtx.getSequence(onComplete);
+        if (continuation == null) {
+            handleException("Sequence : " + onComplete + " not found for the callout", synCtx);
+        }
+
+        sendNonBlocking(synCtx, new Axis2BlockingClient.ResponseCallback() {
+            public void onComplete(final MessageContext result) {
+                resume(synCtx, new AbstractMediator() {
+                    public boolean mediate(MessageContext synCtx) {
+                        handleResponse(synCtx, result);
+                        return continuation.mediate(synCtx);
                     }
-                } else if (targetKey != null) {
-                    OMElement result = resultMsgCtx.getEnvelope().getBody().getFirstElement();
-                    synCtx.setProperty(targetKey, result);
+                });
+            }
+        });
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Callout sent without blocking, mediation continues with " +
+                    "the sequence : " + onComplete + " once the response is received");
+        }
+
+        OperationContext opCtx
+            = ((Axis2MessageContext) synCtx).getAxis2MessageContext().getOperationContext();
+        if (opCtx != null) {
+            opCtx.setProperty(Constants.RESPONSE_WRITTEN, "SKIP");
+        }
+    }
+
+    /**
+     * Send the request created from the given message without waiting for the response. The
+     * callback is notified, on a transport thread, with the message context carrying the
+     * response which is to be passed into {@link #handleResponse(MessageContext, MessageContext)}
+     * to apply it to the message.
+     *
+     * @param synCtx   the message the request is created from
+     * @param callback callback notified when the response is received
+     */
+    public void sendNonBlocking(MessageContext synCtx,
+                                Axis2BlockingClient.ResponseCallback callback) {
+        try {
+            MessageContext synapseOutMsgCtx = createRequest(synCtx, getLog(synCtx));
+            blockingMsgSender.sendNonBlocking(endpoint, synapseOutMsgCtx, callback);
+        } catch (Exception e) {
+            handleException("Error invoking service : " + serviceURL +
+                            (action != null ? " with action : " + action : ""), e, synCtx);
+        }
+    }
+
+    /**
+     * Apply the response of a callout to the message, as configured by the target of the
+     * callout. A failed callout sets the error properties on the message and results in a
+     * {@link SynapseException}.
+     *
+     * @param synCtx       the message the callout was made for
+     * @param resultMsgCtx message context carrying the response, or null if there is none
+     */
+    public void handleResponse(MessageContext synCtx, MessageContext resultMsgCtx) {
+
+        SynapseLog synLog = getLog(synCtx);
+
+        if (resultMsgCtx == null) {
+            synLog.traceOrDebug("Service returned a null response");
+            return;
+        }
+
+        if ("true".equals(resultMsgCtx.getProperty(SynapseConstants.BLOCKING_CLIENT_ERROR))) {
+            handleFault(synCtx,
+                    (Exception) resultMsgCtx.getProperty(SynapseConstants.ERROR_EXCEPTION));
+        }
+
+        if (synLog.isTraceTraceEnabled()) {
+            synLog.traceTrace("Response payload received : " + resultMsgCtx.getEnvelope());
+        }
+
+        try {
+            if (targetXPath != null) {
+                Object o = targetXPath.evaluate(synCtx);
+                OMElement result = resultMsgCtx.getEnvelope().getBody().getFirstElement();
+                if (o != null && o instanceof OMElement) {
+                    OMNode tgtNode = (OMElement) o;
+                    tgtNode.insertSiblingAfter(result);
+                    tgtNode.detach();
+                } else if (o != null && o instanceof List && !((List) o).isEmpty()) {
+                    // Always fetches *only* the first
+                    OMNode tgtNode = (OMElement) ((List) o).get(0);
+                    tgtNode.insertSiblingAfter(result);
+                    tgtNode.detach();
                 } else {
-                    synCtx.setEnvelope(resultMsgCtx.getEnvelope());
+                    handleException("Evaluation of target XPath expression : " +
+                                    targetXPath.toString() + " did not yeild an OMNode", synCtx);
                 }
+            } else if (targetKey != null) {
+                OMElement result = resultMsgCtx.getEnvelope().getBody().getFirstElement();
+                synCtx.setProperty(targetKey, result);
             } else {
-                synLog.traceOrDebug("Service returned a null response");
+                synCtx.setEnvelope(resultMsgCtx.getEnvelope());
             }
-
         } catch (AxisFault e) {
-            handleException("Error invoking service : " + serviceURL +
-                            (action != null ? " with action : " + action : ""), e, synCtx);
+            handleException("Error setting the response of the service : " + serviceURL, e,
+                            synCtx);
         } catch (JaxenException e) {
             handleException("Error while evaluating the XPath expression: " + targetXPath,
                             e, synCtx);
         }
+    }
 
-        synLog.traceOrDebug("End : Callout mediator");
-        return true;
+    /**
+     * Continue the mediation of the given message with the given mediator on a thread of the
+     * Synapse environment
+     *
+     * @param synCtx   message to be mediated
+     * @param mediator mediator to continue with
+     */
+    static void resume(MessageContext synCtx, Mediator mediator) {
+        synCtx.getEnvironment().getExecutorService().execute(
+                new MediatorWorker(mediator, synCtx));
+    }
+
+    private MessageContext createRequest(MessageContext synCtx, SynapseLog synLog)
+            throws AxisFault {
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            if (!isWrappingEndpointCreated) {
+                synLog.traceOrDebug("Using the defined endpoint : " + endpoint.getName());
+            } else {
+                if (serviceURL != null) {
+                    synLog.traceOrDebug("Using the serviceURL : " + serviceURL);
+                } else {
+                    synLog.traceOrDebug("Using the To header as the EPR ");
+                }
+                if (securityOn) {
+                    synLog.traceOrDebug("Security enabled within the Callout Mediator config");
+                    if (wsSecPolicyKey != null) {
+                        synLog.traceOrDebug("Using security policy key : " + wsSecPolicyKey);
+                    } else {
+                        if (inboundWsSecPolicyKey != null) {
+                            synLog.traceOrDebug("Using inbound security policy key : " + inboundWsSecPolicyKey);
+                        }
+                        if (outboundWsSecPolicyKey != null) {
+                            synLog.traceOrDebug("Using outbound security policy key : " + outboundWsSecPolicyKey);
+                        }
+                    }
+                }
+            }
+        }
+
+        org.apache.axis2.context.MessageContext axis2MsgCtx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        if (Constants.VALUE_TRUE.equals(axis2MsgCtx.getProperty(Constants.Configuration.ENABLE_MTOM))) {
+            ((AbstractEndpoint) endpoint).getDefinition().setUseMTOM(true);
+        }
+
+        MessageContext synapseOutMsgCtx = MessageHelper.cloneMessageContext(synCtx);
+
+        if (action != null) {
+            synapseOutMsgCtx.setSoapAction(action);
+        }
+
+        if (requestKey != null || requestXPath != null) {
+            SOAPBody soapBody = synapseOutMsgCtx.getEnvelope().getBody();
+            soapBody.removeChildren();
+            soapBody.addChild(getRequestPayload(synCtx));
+            if (!passHeaders) {
+                SOAPHeader soapHeader = synapseOutMsgCtx.getEnvelope().getHeader();
+                soapHeader.removeChildren();
+            }
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("About to invoke the service");
+            if (synLog.isTraceTraceEnabled()) {
+                synLog.traceTrace("Request message payload : " + synapseOutMsgCtx.getEnvelope());
+            }
+        }
+        return synapseOutMsgCtx;
     }
 
     private void handleFault(MessageContext synCtx, Exception ex) {
@@ -332,6 +445,20 @@ public class CalloutMediator extends AbstractMediator implements ManagedLifecycl
         } catch (AxisFault ignore) {}
     }
 
+    /**
+     * Get the sequence mediation continues with once the response is received, when the callout
+     * is made without blocking the mediation thread
+     *
+     * @return key of the sequence or null if the callout is blocking
+     */
+    public String getOnComplete() {
+        return onComplete;
+    }
+
+    public void setOnComplete(String onComplete) {
+        this.onComplete = onComplete;
+    }
+
     public String getServiceURL() {
         return serviceURL;
     }
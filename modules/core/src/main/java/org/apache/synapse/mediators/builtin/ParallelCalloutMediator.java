@@ -0,0 +1,146 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.mediators.builtin;
+
+import org.apache.axis2.Constants;
+import org.apache.axis2.context.OperationContext;
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.SynapseLog;
+import org.apache.synapse.core.axis2.Axis2BlockingClient;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.AbstractListMediator;
+import org.apache.synapse.mediators.AbstractMediator;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the child callouts in parallel without blocking the mediation thread, and continues
+ * the mediation with the onComplete sequence once all the responses are received. The responses
+ * are applied to the message in the order of the callouts, so each callout would normally have
+ * its own target. A callout which could not be sent fails the join like a callout whose service
+ * returned a fault, once the callouts before it have been applied.
+ *
+ * <pre>
+ * &lt;parallelCallout onComplete="string"&gt;
+ *   &lt;callout .../&gt;+
+ * &lt;/parallelCallout&gt;
+ * </pre>
+ */
+public class ParallelCalloutMediator extends AbstractListMediator implements ManagedLifecycle {
+
+    /** Sequence mediation continues with once all the callouts are complete */
+    private String onComplete;
+
+    public boolean mediate(final MessageContext synCtx) {
+
+        SynapseLog synLog = getLog(synCtx);
+
+        synLog.traceOrDebug("Start : Parallel callout mediator");
+        if (synLog.isTraceTraceEnabled()) {
+            synLog.traceTrace("Message : " + synCtx.getEnvelope());
+        }
+
+        final Mediator continuation = synCtx.getSequence(onComplete);
+        if (continuation == null) {
+            handleException("Sequence : " + onComplete + " not found for the parallel callout",
+                    synCtx);
+        }
+
+        List<Mediator> callouts = getList();
+        final MessageContext[] results = new MessageContext[callouts.size()];
+        final SynapseException[] faults = new SynapseException[callouts.size()];
+        final AtomicInteger pending = new AtomicInteger(callouts.size());
+
+        for (int i = 0; i < callouts.size(); i++) {
+            final int index = i;
+            try {
+                ((CalloutMediator) callouts.get(i)).sendNonBlocking(synCtx,
+                        new Axis2BlockingClient.ResponseCallback() {
+                    public void onComplete(MessageContext result) {
+                        results[index] = result;
+                        if (pending.decrementAndGet() == 0) {
+                            CalloutMediator.resume(synCtx,
+                                    new Join(results, faults, continuation));
+                        }
+                    }
+                });
+            } catch (SynapseException e) {
+                // the other callouts are already in flight, so the join still has to happen
+                faults[index] = e;
+                if (pending.decrementAndGet() == 0) {
+                    CalloutMediator.resume(synCtx, new Join(results, faults, continuation));
+                }
+            }
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug(callouts.size() + " callouts sent, mediation continues with " +
+                    "the sequence : " + onComplete + " once all the responses are received");
+        }
+
+        OperationContext opCtx
+            = ((Axis2MessageContext) synCtx).getAxis2MessageContext().getOperationContext();
+        if (opCtx != null) {
+            opCtx.setProperty(Constants.RESPONSE_WRITTEN, "SKIP");
+        }
+
+        synLog.traceOrDebug("End : Parallel callout mediator");
+        return false;
+    }
+
+    public String getOnComplete() {
+        return onComplete;
+    }
+
+    public void setOnComplete(String onComplete) {
+        this.onComplete = onComplete;
+    }
+
+    /**
+     * Applies the responses of all the callouts to the message and continues the mediation
+     */
+    private class Join extends AbstractMediator {
+
+        private final MessageContext[] results;
+        private final SynapseException[] faults;
+        private final Mediator continuation;
+
+        private Join(MessageContext[] results, SynapseException[] faults, Mediator continuation) {
+            this.results = results;
+            this.faults = faults;
+            this.continuation = continuation;
+        }
+
+        public boolean mediate(MessageContext synCtx) {
+            List<Mediator> callouts = getList();
+            for (int i = 0; i < results.length; i++) {
+                if (faults[i] != null) {
+                    throw faults[i];
+                }
+                ((CalloutMediator) callouts.get(i)).handleResponse(synCtx, results[i]);
+            }
+            return continuation.mediate(synCtx);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.mediators.stage;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stage of a staged (SEDA) mediation flow. A stage owns a bounded queue and a pool of threads
+ * which take the tasks from the queue. The number of threads of the pool is adjusted between the
+ * configured minimum and maximum by looking at how long tasks wait in the queue: when the average
+ * wait over the last period exceeds the target latency threads are added, and when the queue
+ * stays empty threads are removed again.
+ * <p/>
+ * The stage keeps track of the number of tasks processed and rejected and of the time tasks
+ * spend in the queue and being processed, which are exposed through a {@link StageView}.
+ */
+public class Stage {
+
+    private static final Log log = LogFactory.getLog(Stage.class);
+
+    private final String name;
+    private final int minThreads;
+    private final int maxThreads;
+    private final long targetLatency;
+
+    private final BlockingQueue<Runnable> queue;
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong processed = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+    private final AtomicLong diverted = new AtomicLong(0);
+    private final AtomicLong totalQueueTime = new AtomicLong(0);
+    private final AtomicLong totalServiceTime = new AtomicLong(0);
+    private final AtomicLong maxServiceTime = new AtomicLong(0);
+
+    // counters at the time of the last resize check
+    private long lastProcessed = 0;
+    private long lastQueueTime = 0;
+
+    /**
+     * Create a stage
+     *
+     * @param name          name of the stage, used for the threads and the JMX view
+     * @param queueSize     capacity of the queue
+     * @param minThreads    minimum number of threads
+     * @param maxThreads    maximum number of threads
+     * @param targetLatency time in milliseconds tasks are expected to wait in the queue at most,
+     *                      or 0 if the number of threads should not be adjusted
+     */
+    public Stage(final String name, int queueSize, int minThreads, int maxThreads,
+                 long targetLatency) {
+        this.name = name;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.targetLatency = targetLatency;
+        this.queue = new ArrayBlockingQueue<Runnable>(queueSize);
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Stage-" + name + "-" + count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(minThreads, maxThreads, 60, TimeUnit.SECONDS,
+                queue, threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * Hand over a task to the stage without waiting
+     *
+     * @param task the task to be executed
+     * @return true if the task was accepted, false if the queue is full
+     */
+    public boolean execute(Runnable task) {
+        try {
+            executor.execute(new StageTask(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hand over a task to the stage, waiting for space in the queue if it is full
+     *
+     * @param task    the task to be executed
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if the task was accepted, false if the queue did not free up in time
+     */
+    public boolean offer(Runnable task, long timeout) {
+        if (execute(task)) {
+            return true;
+        }
+        try {
+            // all threads are running at this point, so a queued task will be picked up
+            return !executor.isShutdown() &&
+                    queue.offer(new StageTask(task), timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    void notifyRejected() {
+        rejected.incrementAndGet();
+    }
+
+    void notifyDiverted() {
+        diverted.incrementAndGet();
+    }
+
+    /**
+     * Adjust the number of threads based on the time tasks waited in the queue since the last
+     * invocation. This is expected to be called periodically.
+     */
+    public synchronized void resize() {
+        if (targetLatency <= 0) {
+            return;
+        }
+
+        long currentProcessed = processed.get();
+        long currentQueueTime = totalQueueTime.get();
+        long count = currentProcessed - lastProcessed;
+        long averageWait = count == 0 ? 0 : (currentQueueTime - lastQueueTime) / count;
+        lastProcessed = currentProcessed;
+        lastQueueTime = currentQueueTime;
+
+        int threads = executor.getCorePoolSize();
+        if ((averageWait > targetLatency || (count == 0 && !queue.isEmpty())) &&
+                threads < maxThreads) {
+            int newThreads = Math.min(maxThreads, threads + Math.max(1, threads / 2));
+            if (log.isDebugEnabled()) {
+                log.debug("Stage " + name + " : average queue latency " + averageWait +
+                        "ms, increasing the threads from " + threads + " to " + newThreads);
+            }
+            executor.setCorePoolSize(newThreads);
+        } else if (averageWait < targetLatency / 4 && queue.isEmpty() && threads > minThreads) {
+            if (log.isDebugEnabled()) {
+                log.debug("Stage " + name + " : average queue latency " + averageWait +
+                        "ms, decreasing the threads from " + threads + " to " + (threads - 1));
+            }
+            executor.setCorePoolSize(threads - 1);
+        }
+    }
+
+    public void destroy() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Stage " + name + " did not complete processing " +
+                        queue.size() + " messages before shutting down");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int getThreads() {
+        return executor.getPoolSize();
+    }
+
+    public int getCoreThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getDivertedCount() {
+        return diverted.get();
+    }
+
+    public long getAverageQueueTime() {
+        long count = processed.get();
+        return count == 0 ? 0 : totalQueueTime.get() / count;
+    }
+
+    public long getAverageServiceTime() {
+        long count = processed.get();
+        return count == 0 ? 0 : totalServiceTime.get() / count;
+    }
+
+    public long getMaxServiceTime() {
+        return maxServiceTime.get();
+    }
+
+    public synchronized void resetStatistics() {
+        processed.set(0);
+        rejected.set(0);
+        diverted.set(0);
+        totalQueueTime.set(0);
+        totalServiceTime.set(0);
+        maxServiceTime.set(0);
+        lastProcessed = 0;
+        lastQueueTime = 0;
+    }
+
+    /**
+     * Wraps the tasks submitted to the stage to record the time they spend in the queue and
+     * being processed
+     */
+    private class StageTask implements Runnable {
+
+        private final Runnable task;
+        private final long queuedTime = System.currentTimeMillis();
+
+        private StageTask(Runnable task) {
+            this.task = task;
+        }
+
+        public void run() {
+            long start = System.currentTimeMillis();
+            try {
+                task.run();
+            } finally {
+                long serviceTime = System.currentTimeMillis() - start;
+                totalQueueTime.addAndGet(start - queuedTime);
+                totalServiceTime.addAndGet(serviceTime);
+                long max = maxServiceTime.get();
+                while (serviceTime > max && !maxServiceTime.compareAndSet(max, serviceTime)) {
+                    max = maxServiceTime.get();
+                }
+                processed.incrementAndGet();
+            }
+        }
+    }
+}
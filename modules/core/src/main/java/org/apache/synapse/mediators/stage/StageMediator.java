@@ -0,0 +1,244 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.mediators.stage;
+
+import org.apache.axis2.Constants;
+import org.apache.axis2.context.OperationContext;
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseLog;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.MediatorWorker;
+
+import java.util.TimerTask;
+
+/**
+ * Hands the message over to a {@link Stage}, where the given sequence is applied to it by one of
+ * the threads of the stage. Each stage mediator has its own bounded queue and pool of threads,
+ * so that a flow can be split into stages which are sized and monitored independently.
+ * <p/>
+ * When the queue of the stage is full the overflow policy decides what happens to the message:
+ * <ul>
+ * <li><code>block</code> - wait for space in the queue up to the configured timeout, and drop
+ * the message if it does not free up</li>
+ * <li><code>drop</code> - drop the message</li>
+ * <li><code>divert</code> - mediate the message through the overflow sequence on the calling
+ * thread</li>
+ * </ul>
+ *
+ * <pre>
+ * &lt;stage name="string" sequence="string"&gt;
+ *   &lt;threads min="int" max="int" [targetLatency="long"]/&gt;?
+ *   &lt;queue size="int" [overflow="block|drop|divert"] [timeout="long"] [sequence="string"]/&gt;?
+ * &lt;/stage&gt;
+ * </pre>
+ */
+public class StageMediator extends AbstractMediator implements ManagedLifecycle {
+
+    public static final String OVERFLOW_BLOCK = "block";
+    public static final String OVERFLOW_DROP = "drop";
+    public static final String OVERFLOW_DIVERT = "divert";
+
+    /** Interval at which the number of threads of the stage is revised */
+    private static final long RESIZE_INTERVAL = 1000;
+
+    private String name;
+    private String sequence;
+    private int minThreads = 1;
+    private int maxThreads = 10;
+    /** Queue latency in milliseconds above which threads are added, 0 to keep the pool fixed */
+    private long targetLatency = 0;
+    private int queueSize = 1000;
+    private String overflowPolicy = OVERFLOW_BLOCK;
+    private long blockTimeout = 30000;
+    private String overflowSequence;
+
+    private Stage stage;
+    private StageView view;
+    private TimerTask resizeTask;
+
+    public void init(SynapseEnvironment se) {
+        stage = new Stage(name, queueSize, minThreads, maxThreads, targetLatency);
+        view = new StageView(stage);
+        if (targetLatency > 0) {
+            resizeTask = new TimerTask() {
+                public void run() {
+                    stage.resize();
+                }
+            };
+            se.getSynapseConfiguration().getSynapseTimer().schedule(
+                    resizeTask, RESIZE_INTERVAL, RESIZE_INTERVAL);
+        }
+    }
+
+    public void destroy() {
+        if (resizeTask != null) {
+            resizeTask.cancel();
+        }
+        if (view != null) {
+            view.destroy();
+        }
+        if (stage != null) {
+            stage.destroy();
+        }
+    }
+
+    public boolean mediate(MessageContext synCtx) {
+
+        SynapseLog synLog = getLog(synCtx);
+
+        synLog.traceOrDebug("Start : Stage mediator");
+        if (synLog.isTraceTraceEnabled()) {
+            synLog.traceTrace("Message : " + synCtx.getEnvelope());
+        }
+
+        if (stage == null) {
+            handleException("Stage : " + name + " has not been initialized", synCtx);
+        }
+
+        Mediator seq = synCtx.getSequence(sequence);
+        if (seq == null) {
+            handleException("Sequence : " + sequence + " not found for the stage : " + name,
+                    synCtx);
+        }
+
+        MediatorWorker worker = new MediatorWorker(seq, synCtx);
+        boolean accepted;
+        if (OVERFLOW_BLOCK.equals(overflowPolicy)) {
+            accepted = stage.offer(worker, blockTimeout);
+        } else {
+            accepted = stage.execute(worker);
+        }
+
+        if (accepted) {
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Message with id : " + synCtx.getMessageID() +
+                        " handed over to the stage : " + name);
+            }
+        } else if (OVERFLOW_DIVERT.equals(overflowPolicy)) {
+            Mediator overflowSeq = synCtx.getSequence(overflowSequence);
+            if (overflowSeq == null) {
+                stage.notifyRejected();
+                handleException("Overflow sequence : " + overflowSequence +
+                        " not found for the stage : " + name, synCtx);
+            }
+            stage.notifyDiverted();
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Queue of the stage : " + name + " is full, diverting " +
+                        "the message to the sequence : " + overflowSequence);
+            }
+            overflowSeq.mediate(synCtx);
+        } else {
+            stage.notifyRejected();
+            synLog.auditWarn("Queue of the stage : " + name + " is full, dropping the message " +
+                    "with id : " + synCtx.getMessageID());
+            synLog.traceOrDebug("End : Stage mediator");
+            return false;
+        }
+
+        OperationContext opCtx
+            = ((Axis2MessageContext) synCtx).getAxis2MessageContext().getOperationContext();
+        if (opCtx != null) {
+            opCtx.setProperty(Constants.RESPONSE_WRITTEN, "SKIP");
+        }
+
+        synLog.traceOrDebug("End : Stage mediator");
+        return false;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(String sequence) {
+        this.sequence = sequence;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public void setMinThreads(int minThreads) {
+        this.minThreads = minThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+
+    public long getTargetLatency() {
+        return targetLatency;
+    }
+
+    public void setTargetLatency(long targetLatency) {
+        this.targetLatency = targetLatency;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public String getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(String overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getBlockTimeout() {
+        return blockTimeout;
+    }
+
+    public void setBlockTimeout(long blockTimeout) {
+        this.blockTimeout = blockTimeout;
+    }
+
+    public String getOverflowSequence() {
+        return overflowSequence;
+    }
+
+    public void setOverflowSequence(String overflowSequence) {
+        this.overflowSequence = overflowSequence;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.mediators.stage;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+
+import java.util.Date;
+
+/**
+ * Exposes the queue and pool of a {@link Stage} over JMX
+ */
+public class StageView implements StageViewMBean {
+
+    public static final String CATEGORY = "MediationStage";
+
+    private final Stage stage;
+    private Date lastResetTime = new Date();
+
+    public StageView(Stage stage) {
+        this.stage = stage;
+        MBeanRegistrar.getInstance().registerMBean(this, CATEGORY, stage.getName());
+    }
+
+    public void destroy() {
+        MBeanRegistrar.getInstance().unRegisterMBean(CATEGORY, stage.getName());
+    }
+
+    public int getQueueSize() {
+        return stage.getQueueSize();
+    }
+
+    public int getQueueCapacity() {
+        return stage.getQueueCapacity();
+    }
+
+    public int getThreads() {
+        return stage.getThreads();
+    }
+
+    public int getCoreThreads() {
+        return stage.getCoreThreads();
+    }
+
+    public int getActiveThreads() {
+        return stage.getActiveThreads();
+    }
+
+    public long getProcessedCount() {
+        return stage.getProcessedCount();
+    }
+
+    public long getRejectedCount() {
+        return stage.getRejectedCount();
+    }
+
+    public long getDivertedCount() {
+        return stage.getDivertedCount();
+    }
+
+    public long getAverageQueueTime() {
+        return stage.getAverageQueueTime();
+    }
+
+    public long getAverageServiceTime() {
+        return stage.getAverageServiceTime();
+    }
+
+    public long getMaxServiceTime() {
+        return stage.getMaxServiceTime();
+    }
+
+    public Date getLastResetTime() {
+        return lastResetTime;
+    }
+
+    public void reset() {
+        stage.resetStatistics();
+        lastResetTime = new Date();
+    }
+}
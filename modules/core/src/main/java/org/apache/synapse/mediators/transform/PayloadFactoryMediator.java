@@ -39,7 +39,11 @@ import java.util.regex.Pattern;
  * mediator.<p/>
  * Each argument in the mediator configuration could be a static value or an XPath expression.
  * When an expression is used, argument value is fetched at runtime by evaluating the provided XPath
- * expression against the existing SOAP message/message context.
+ * expression against the existing SOAP message/message context.<p/>
+ * The format is compiled into a {@link PayloadTemplate} when it is set, and the new payload is
+ * built directly from the template. Formats which cannot be compiled, and argument values which
+ * contain markup or entity references, are handled by substituting the arguments into the format
+ * and parsing the result, so that such values keep being interpreted as XML.
  */
 public class PayloadFactoryMediator extends AbstractMediator {
 
@@ -48,6 +52,11 @@ public class PayloadFactoryMediator extends AbstractMediator {
      */
     private String format;
 
+    /**
+     * Compiled form of the format, or null if the format could not be compiled.
+     */
+    private PayloadTemplate template;
+
     /**
      * Stores the argument list, argument values are computed dynamically at mediation time.
      */
@@ -67,9 +76,20 @@ public class PayloadFactoryMediator extends AbstractMediator {
     public boolean mediate(MessageContext synCtx) {
 
         SOAPBody soapBody = synCtx.getEnvelope().getBody();
+        String[] argValues = getArgValues(synCtx);
+
+        if (template != null && template.getMaxArgumentIndex() > argValues.length) {
+            handleMissingArgument(template.getMaxArgumentIndex(), argValues, synCtx);
+        }
+
+        if (template != null && !containsMarkup(argValues)) {
+            soapBody.removeChildren();
+            template.build(soapBody, soapBody.getOMFactory(), argValues);
+            return true;
+        }
 
         StringBuffer result = new StringBuffer();
-        transformPayload(result, synCtx);
+        transformPayload(result, argValues, synCtx);
 
         OMElement resultElement;
         try {
@@ -95,28 +115,37 @@ public class PayloadFactoryMediator extends AbstractMediator {
     /**
      * Replaces occurrences of $n with argument values.
      * @param result StringBuffer that stores the result.
+     * @param argValues Argument values extracted from the current message.
      * @param synCtx Current message under mediation.
      */
-    private void transformPayload(StringBuffer result, MessageContext synCtx) {
+    private void transformPayload(StringBuffer result, String[] argValues,
+                                  MessageContext synCtx) {
 
-        Object[] argValues = getArgValues(synCtx);
         Matcher matcher = pattern.matcher("<dummy>" + format + "</dummy>");
         while (matcher.find()) {
             String matchSeq = matcher.group();
             int argIndex = Integer.parseInt(matchSeq.substring(1));
-            matcher.appendReplacement(result, argValues[argIndex - 1].toString());
+            if (argIndex < 1 || argIndex > argValues.length) {
+                handleMissingArgument(argIndex, argValues, synCtx);
+            }
+            matcher.appendReplacement(result, argValues[argIndex - 1]);
         }
         matcher.appendTail(result);
     }
 
+    private void handleMissingArgument(int argIndex, String[] argValues, MessageContext synCtx) {
+        handleException("The payloadFactory format refers to argument $" + argIndex +
+                " but only " + argValues.length + " arguments are provided", synCtx);
+    }
+
     /**
      * Extracts argument values from the current message context.
      * @param synCtx Current message under mediation.
      * @return Extracted argument values.
      */
-    private Object[] getArgValues(MessageContext synCtx) {
+    private String[] getArgValues(MessageContext synCtx) {
 
-        Object[] argValues = new Object[argumentList.size()];
+        String[] argValues = new String[argumentList.size()];
         for (int i = 0; i < argumentList.size(); ++i) {
             Argument arg = argumentList.get(i);
             if (arg.getValue() != null) {
@@ -136,12 +165,28 @@ public class PayloadFactoryMediator extends AbstractMediator {
         return argValues;
     }
 
+    /**
+     * Checks whether any of the argument values has to be parsed as XML.
+     * @param argValues Argument values extracted from the current message.
+     * @return true if a value contains an element or an entity reference.
+     */
+    private boolean containsMarkup(String[] argValues) {
+
+        for (String value : argValues) {
+            if (value != null && (value.indexOf('<') != -1 || value.indexOf('&') != -1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String getFormat() {
         return format;
     }
 
     public void setFormat(String format) {
         this.format = format;
+        this.template = format != null ? PayloadTemplate.compile(format) : null;
     }
 
     public void addArgument(Argument arg) {
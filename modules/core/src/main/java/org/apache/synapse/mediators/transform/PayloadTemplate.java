@@ -0,0 +1,288 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMComment;
+import org.apache.axiom.om.OMContainer;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.OMText;
+import org.apache.axiom.om.util.AXIOMUtil;
+
+import javax.xml.stream.XMLStreamException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Compiled form of a payloadFactory format. The format is parsed once and every element, text
+ * node and attribute value of it is kept as a sequence of literal segments and argument slots,
+ * so that a payload can be built straight into the message by creating the OM nodes, without
+ * scanning the format for <code>$n</code> references and parsing the result for each message.
+ * <p/>
+ * Argument values are inserted as character data. Formats which cannot be represented this way,
+ * such as those with argument references in element or attribute names, are not compiled and
+ * {@link #compile(String)} returns null for them.
+ */
+class PayloadTemplate {
+
+    private final List<ElementTemplate> elements;
+
+    private final int maxArgumentIndex;
+
+    private PayloadTemplate(List<ElementTemplate> elements, int maxArgumentIndex) {
+        this.elements = elements;
+        this.maxArgumentIndex = maxArgumentIndex;
+    }
+
+    /**
+     * Compile the given payload format
+     *
+     * @param format payload format with <code>$n</code> argument references
+     * @return the compiled template or null if the format cannot be compiled
+     */
+    static PayloadTemplate compile(String format) {
+        OMElement root;
+        try {
+            root = AXIOMUtil.stringToOM("<dummy>" + format + "</dummy>");
+        } catch (XMLStreamException e) {
+            return null;
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        int[] maxIndex = new int[1];
+        List<ElementTemplate> elements = new ArrayList<ElementTemplate>();
+        for (Iterator itr = root.getChildElements(); itr.hasNext();) {
+            ElementTemplate element = compileElement((OMElement) itr.next(), maxIndex);
+            if (element == null) {
+                return null;
+            }
+            elements.add(element);
+        }
+        return new PayloadTemplate(elements, maxIndex[0]);
+    }
+
+    /**
+     * Get the largest argument index referred to by the template
+     *
+     * @return largest <code>$n</code> index, or 0 if the format has no argument references
+     */
+    int getMaxArgumentIndex() {
+        return maxArgumentIndex;
+    }
+
+    /**
+     * Create the payload elements as children of the given container
+     *
+     * @param parent    container the payload is added to
+     * @param fac       factory used to create the nodes
+     * @param argValues values of the arguments, <code>$n</code> refers to argValues[n - 1]
+     */
+    void build(OMContainer parent, OMFactory fac, String[] argValues) {
+        for (ElementTemplate element : elements) {
+            element.build(parent, fac, argValues);
+        }
+    }
+
+    private static ElementTemplate compileElement(OMElement elem, int[] maxIndex) {
+        if (Segments.hasReference(elem.getLocalName())) {
+            return null;
+        }
+
+        ElementTemplate template = new ElementTemplate();
+        template.localName = elem.getLocalName();
+        template.namespace = elem.getNamespace();
+
+        for (Iterator itr = elem.getAllDeclaredNamespaces(); itr.hasNext();) {
+            template.declaredNamespaces.add((OMNamespace) itr.next());
+        }
+
+        for (Iterator itr = elem.getAllAttributes(); itr.hasNext();) {
+            OMAttribute attr = (OMAttribute) itr.next();
+            if (Segments.hasReference(attr.getLocalName())) {
+                return null;
+            }
+            AttributeTemplate attribute = new AttributeTemplate();
+            attribute.localName = attr.getLocalName();
+            attribute.namespace = attr.getNamespace();
+            attribute.value = Segments.compile(attr.getAttributeValue(), maxIndex);
+            template.attributes.add(attribute);
+        }
+
+        for (Iterator itr = elem.getChildren(); itr.hasNext();) {
+            OMNode node = (OMNode) itr.next();
+            switch (node.getType()) {
+                case OMNode.ELEMENT_NODE:
+                    ElementTemplate child = compileElement((OMElement) node, maxIndex);
+                    if (child == null) {
+                        return null;
+                    }
+                    template.children.add(child);
+                    break;
+                case OMNode.TEXT_NODE:
+                case OMNode.SPACE_NODE:
+                case OMNode.CDATA_SECTION_NODE:
+                    TextTemplate text = new TextTemplate();
+                    text.type = node.getType();
+                    text.value = Segments.compile(((OMText) node).getText(), maxIndex);
+                    template.children.add(text);
+                    break;
+                case OMNode.COMMENT_NODE:
+                    template.children.add(new CommentTemplate(((OMComment) node).getValue()));
+                    break;
+                default:
+                    return null;
+            }
+        }
+        return template;
+    }
+
+    private interface NodeTemplate {
+
+        void build(OMContainer parent, OMFactory fac, String[] argValues);
+    }
+
+    private static class ElementTemplate implements NodeTemplate {
+
+        private String localName;
+        private OMNamespace namespace;
+        private final List<OMNamespace> declaredNamespaces = new ArrayList<OMNamespace>();
+        private final List<AttributeTemplate> attributes = new ArrayList<AttributeTemplate>();
+        private final List<NodeTemplate> children = new ArrayList<NodeTemplate>();
+
+        public void build(OMContainer parent, OMFactory fac, String[] argValues) {
+            OMElement elem = fac.createOMElement(localName, namespace, parent);
+            for (OMNamespace ns : declaredNamespaces) {
+                if ("".equals(ns.getPrefix())) {
+                    elem.declareDefaultNamespace(ns.getNamespaceURI());
+                } else {
+                    elem.declareNamespace(ns);
+                }
+            }
+            for (AttributeTemplate attribute : attributes) {
+                elem.addAttribute(attribute.localName, attribute.value.evaluate(argValues),
+                        attribute.namespace);
+            }
+            for (NodeTemplate child : children) {
+                child.build(elem, fac, argValues);
+            }
+        }
+    }
+
+    private static class AttributeTemplate {
+
+        private String localName;
+        private OMNamespace namespace;
+        private Segments value;
+    }
+
+    private static class TextTemplate implements NodeTemplate {
+
+        private int type;
+        private Segments value;
+
+        public void build(OMContainer parent, OMFactory fac, String[] argValues) {
+            fac.createOMText(parent, value.evaluate(argValues), type);
+        }
+    }
+
+    private static class CommentTemplate implements NodeTemplate {
+
+        private final String value;
+
+        private CommentTemplate(String value) {
+            this.value = value;
+        }
+
+        public void build(OMContainer parent, OMFactory fac, String[] argValues) {
+            fac.createOMComment(parent, value);
+        }
+    }
+
+    /**
+     * Character data split into literal segments and argument slots. The literal at index i is
+     * followed by the argument referred to by the slot at index i, and the last literal ends the
+     * value.
+     */
+    private static class Segments {
+
+        private final String[] literals;
+        private final int[] slots;
+
+        private Segments(String[] literals, int[] slots) {
+            this.literals = literals;
+            this.slots = slots;
+        }
+
+        static boolean hasReference(String value) {
+            int index = value.indexOf('$');
+            while (index != -1) {
+                if (index + 1 < value.length() && Character.isDigit(value.charAt(index + 1))) {
+                    return true;
+                }
+                index = value.indexOf('$', index + 1);
+            }
+            return false;
+        }
+
+        static Segments compile(String value, int[] maxIndex) {
+            List<String> literals = new ArrayList<String>();
+            List<Integer> slots = new ArrayList<Integer>();
+            int start = 0;
+            int index = value.indexOf('$');
+            while (index != -1) {
+                int end = index + 1;
+                while (end < value.length() && Character.isDigit(value.charAt(end))) {
+                    end++;
+                }
+                if (end > index + 1) {
+                    int argIndex = Integer.parseInt(value.substring(index + 1, end));
+                    literals.add(value.substring(start, index));
+                    slots.add(argIndex - 1);
+                    maxIndex[0] = Math.max(maxIndex[0], argIndex);
+                    start = end;
+                }
+                index = value.indexOf('$', end);
+            }
+            literals.add(value.substring(start));
+
+            int[] slotArray = new int[slots.size()];
+            for (int i = 0; i < slotArray.length; i++) {
+                slotArray[i] = slots.get(i);
+            }
+            return new Segments(literals.toArray(new String[literals.size()]), slotArray);
+        }
+
+        String evaluate(String[] argValues) {
+            if (slots.length == 0) {
+                return literals[0];
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < slots.length; i++) {
+                sb.append(literals[i]).append(argValues[slots[i]]);
+            }
+            return sb.append(literals[slots.length]).toString();
+        }
+    }
+}
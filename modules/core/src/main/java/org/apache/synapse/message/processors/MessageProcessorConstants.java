@@ -30,6 +30,11 @@ public final class MessageProcessorConstants {
     public static final String INTERVAL = "interval";
     public static final String CRON_EXPRESSION = "cronExpression";
 
+    /**
+     * Whether the processor is triggered when messages are added to the store
+     */
+    public static final String EVENT_DRIVEN = "event.driven";
+
     /**
      * Message processor parameters
      */
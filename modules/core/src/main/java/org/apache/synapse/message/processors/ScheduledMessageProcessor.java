@@ -21,17 +21,38 @@ package org.apache.synapse.message.processors;
 
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.message.store.MessageStore;
+import org.apache.synapse.message.store.MessageStoreObserver;
 import org.quartz.*;
 import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.impl.matchers.KeyMatcher;
+import org.quartz.listeners.JobListenerSupport;
 
+import java.util.Date;
 import java.util.Map;
 
-public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor {
+/**
+ * Base class of the message processors which run a Quartz job over the attached message store.
+ * By default the job is run at a fixed interval or according to a cron expression. A processor
+ * can also be event driven, in which case the job is triggered as soon as a message is added to
+ * the store. Every processor observes its message store, so that it also learns about the
+ * messages removed from it by other means. An event driven processor without an explicit
+ * interval or cron expression is not run periodically at all. In both modes jobs may schedule a
+ * delayed retry instead of blocking a scheduler thread, and a processor never triggers a new run
+ * while one is in progress.
+ */
+public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor
+        implements MessageStoreObserver {
 
     public static final String SCHEDULED_MESSAGE_PROCESSOR_GROUP =
             "synapse.message.processor.quartz";
     public static final String PROCESSOR_INSTANCE = "processor.instance";
 
+    /**
+     * Job data key marking the runs fired by a retry trigger
+     */
+    public static final String RETRY_TRIGGER = "retry.trigger";
+
     /**
      * The scheduler, run the the processor
      */
@@ -65,6 +86,50 @@ public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor
      */
     protected State state = State.DESTROY;
 
+    /**
+     * Whether the job is triggered when messages are added to the store
+     */
+    protected boolean eventDriven = false;
+
+    /**
+     * Whether an interval was configured explicitly
+     */
+    private boolean intervalConfigured = false;
+
+    /**
+     * Whether the job is run at an interval or according to a cron expression
+     */
+    private volatile boolean periodic = true;
+
+    /**
+     * Key of the scheduled job
+     */
+    protected JobKey jobKey = null;
+
+    /**
+     * Message store observed by the processor
+     */
+    private MessageStore observedStore = null;
+
+    private JobListener triggerListener = null;
+
+    /**
+     * Guards the trigger state below
+     */
+    private final Object triggerLock = new Object();
+
+    /** A run has been triggered, but has not started yet */
+    private boolean triggerPending = false;
+
+    /** A run is in progress */
+    private boolean executing = false;
+
+    /** Another run has been requested while a run was in progress */
+    private boolean rerunRequested = false;
+
+    /** A retry has been scheduled for later, no other run is triggered until then */
+    private volatile boolean retryScheduled = false;
+
 
     public void start() {
         Trigger trigger;
@@ -82,18 +147,41 @@ public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor
 
         JobBuilder jobBuilder = getJobBuilder();
         JobDataMap jobDataMap = getJobDataMap();
-        jobDataMap.put(MessageProcessorConstants.MESSAGE_STORE,
-                       configuration.getMessageStore(messageStore));
+        MessageStore store = configuration.getMessageStore(messageStore);
+        jobDataMap.put(MessageProcessorConstants.MESSAGE_STORE, store);
         jobDataMap.put(MessageProcessorConstants.PARAMETERS, parameters);
 
+        // an event driven processor only needs to poll if it was asked to
+        periodic = !eventDriven || intervalConfigured ||
+                (cronExpression != null && !"".equals(cronExpression));
+        if (!periodic) {
+            jobBuilder.storeDurably();
+        }
         JobDetail jobDetail = jobBuilder.usingJobData(jobDataMap).build();
+        jobKey = jobDetail.getKey();
 
         try {
-            scheduler.scheduleJob(jobDetail, trigger);
+            triggerListener = new TriggerListener();
+            scheduler.getListenerManager().addJobListener(triggerListener,
+                    KeyMatcher.keyEquals(jobKey));
+            if (periodic) {
+                scheduler.scheduleJob(jobDetail, trigger);
+            } else {
+                scheduler.addJob(jobDetail, true);
+            }
         } catch (SchedulerException e) {
             throw new SynapseException("Error scheduling job : " + jobDetail
                     + " with trigger " + trigger ,e);
         }
+
+        if (store != null) {
+            observedStore = store;
+            store.registerObserver(this);
+            if (eventDriven) {
+                // process whatever is already in the store
+                triggerNow();
+            }
+        }
     }
 
     public void stop() {
@@ -125,6 +213,12 @@ public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor
             o = parameters.get(MessageProcessorConstants.INTERVAL);
             if (o != null) {
                 interval = Integer.parseInt(o.toString());
+                intervalConfigured = true;
+            }
+
+            o = parameters.get(MessageProcessorConstants.EVENT_DRIVEN);
+            if (o != null) {
+                eventDriven = Boolean.parseBoolean(o.toString().trim());
             }
 
 
@@ -171,6 +265,111 @@ public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor
         }
     }
 
+    public void messageAdded(String messageId) {
+        if (eventDriven) {
+            triggerNow();
+        }
+    }
+
+    public void messageRemoved(String messageId) {
+    }
+
+    /**
+     * Trigger a run of the job right away. If a run is in progress, another run is triggered
+     * as soon as it completes. Nothing is triggered while a retry is scheduled.
+     */
+    public void triggerNow() {
+        synchronized (triggerLock) {
+            if (jobKey == null || retryScheduled || triggerPending) {
+                return;
+            }
+            if (executing) {
+                rerunRequested = true;
+                return;
+            }
+            triggerPending = true;
+        }
+        fireTrigger();
+    }
+
+    /**
+     * Schedule a single run of the job after the given delay. Until then no other run is
+     * triggered by the store events, which lets a job back off without holding on to a
+     * scheduler thread.
+     *
+     * @param delay delay before the retry in milliseconds
+     */
+    public void scheduleRetry(long delay) {
+        if (jobKey == null) {
+            return;
+        }
+        retryScheduled = true;
+        Trigger trigger = TriggerBuilder.newTrigger().forJob(jobKey)
+                .usingJobData(RETRY_TRIGGER, true)
+                .startAt(new Date(System.currentTimeMillis() + delay))
+                .build();
+        try {
+            scheduler.scheduleJob(trigger);
+        } catch (SchedulerException e) {
+            retryScheduled = false;
+            log.error("Error scheduling a retry of the message processor : " + name, e);
+        }
+    }
+
+    /**
+     * @return true if a retry has been scheduled and has not been run yet
+     */
+    public boolean isRetryScheduled() {
+        return retryScheduled;
+    }
+
+    /**
+     * @return true if the processor is triggered by the message store events
+     */
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    /**
+     * A job which leaves messages in the store must trigger itself again if the processor is not
+     * periodic, since nothing else runs it until the next message is added to the store.
+     *
+     * @return true if the job is run at an interval or according to a cron expression
+     */
+    public boolean isPeriodic() {
+        return periodic;
+    }
+
+    private void fireTrigger() {
+        try {
+            scheduler.triggerJob(jobKey);
+        } catch (SchedulerException e) {
+            synchronized (triggerLock) {
+                triggerPending = false;
+            }
+            log.error("Error triggering the message processor : " + name, e);
+        }
+    }
+
+    /**
+     * Stop observing the message store and release the job listener
+     */
+    protected void unregisterTriggers() {
+        if (observedStore != null) {
+            observedStore.unregisterObserver(this);
+            observedStore = null;
+        }
+        if (triggerListener != null) {
+            try {
+                scheduler.getListenerManager().removeJobListener(triggerListener.getName());
+            } catch (SchedulerException e) {
+                log.warn("Error removing the job listener of the message processor : " + name);
+            }
+            triggerListener = null;
+        }
+        jobKey = null;
+    }
+
     protected abstract JobBuilder getJobBuilder();
 
     protected JobDataMap getJobDataMap() {
@@ -178,6 +377,7 @@ public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor
     }
 
     public void destroy() {
+        unregisterTriggers();
         try {
             scheduler.deleteJob( new JobKey(name + "-trigger",SCHEDULED_MESSAGE_PROCESSOR_GROUP));
             scheduler.shutdown(true);
@@ -187,4 +387,49 @@ public abstract class ScheduledMessageProcessor extends AbstractMessageProcessor
         state = State.DESTROY;
     }
 
+    /**
+     * Keeps track of the runs of the job, so that store events never start a run while another
+     * one is in progress
+     */
+    private class TriggerListener extends JobListenerSupport {
+
+        public String getName() {
+            return name + "-trigger-listener";
+        }
+
+        @Override
+        public void jobToBeExecuted(JobExecutionContext context) {
+            synchronized (triggerLock) {
+                executing = true;
+                triggerPending = false;
+                if (context.getTrigger().getJobDataMap().containsKey(RETRY_TRIGGER)) {
+                    retryScheduled = false;
+                }
+            }
+        }
+
+        @Override
+        public void jobExecutionVetoed(JobExecutionContext context) {
+            synchronized (triggerLock) {
+                triggerPending = false;
+            }
+        }
+
+        @Override
+        public void jobWasExecuted(JobExecutionContext context,
+                                   JobExecutionException jobException) {
+            boolean rerun = false;
+            synchronized (triggerLock) {
+                executing = false;
+                if (rerunRequested && !retryScheduled && !triggerPending) {
+                    triggerPending = true;
+                    rerun = true;
+                }
+                rerunRequested = false;
+            }
+            if (rerun) {
+                fireTrigger();
+            }
+        }
+    }
 }
@@ -39,12 +39,23 @@ import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.quartz.StatefulJob;
 
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 
 /**
  * Redelivery Job will replay all the Messages in the Message Store when executed
- * Excluding ones that are already tried redelivering more than max number of tries
+ * Excluding ones that are already tried redelivering more than max number of tries.
+ * A failed delivery is retried by a run scheduled after the retry interval, so that the
+ * scheduler thread is never blocked while waiting to retry.
+ * <p/>
+ * By default messages are forwarded one at a time in the order they were stored. If a window
+ * of more than one in flight message is configured, messages are forwarded concurrently and
+ * each message is removed from the store once it has been delivered, in no particular order.
  */
 @DisallowConcurrentExecution
 public class ForwardingJob implements StatefulJob {
@@ -57,27 +68,41 @@ public class ForwardingJob implements StatefulJob {
     private boolean consumeAllEnabled;
     private int maxDeliverAttempts;
     private int retryInterval;
+    private int batchSize;
+    private int maxInFlight;
     private String deactivateSequence;
     private String faultSequence;
     private String replySequence;
     private String[] retryHttpStatusCodes;
-    private State jobState;
+    private volatile State jobState;
     private MessageStore messageStore;
     private Axis2BlockingClient sender;
     private ScheduledMessageForwardingProcessor processor;
 
+    /** Position in the store from which the next message to dispatch is looked up */
+    private int cursor;
+    /** Messages removed from the store by this run since the cursor was last moved */
+    private int removed;
+    /** Guards the cursor against the removals made by the forwarding threads */
+    private final Object cursorLock = new Object();
+
     public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
         //Get the Global Objects from DataMap
         JobDataMap jdm = jobExecutionContext.getMergedJobDataMap();
         configureForwardingJob(jdm);
 
         // WE do not try to process if the processor is inactive or
-        // there is no message store attached.
-        if(!processor.isActive() || messageStore == null) {
+        // there is no message store attached. If a retry is scheduled, the
+        // messages are processed when it runs.
+        if(!processor.isActive() || messageStore == null || processor.isRetryScheduled()) {
             return;
         }
 
-        startProcessingMsgs();
+        if (maxInFlight > 1) {
+            startProcessingMsgsConcurrently();
+        } else {
+            startProcessingMsgs();
+        }
     }
 
     private void configureForwardingJob(JobDataMap jdm) {
@@ -87,6 +112,8 @@ public class ForwardingJob implements StatefulJob {
         processor = (ScheduledMessageForwardingProcessor) jdm.get(
                 ScheduledMessageForwardingProcessor.PROCESSOR_INSTANCE);
         retryInterval = 1000;
+        batchSize = -1;
+        maxInFlight = 1;
 
         setParameters(jdm);
     }
@@ -98,6 +125,8 @@ public class ForwardingJob implements StatefulJob {
             isMaxDeliverAttemptDropEnabled = isMaxDeliverAttemptDropEnabled(parameters);
             consumeAllEnabled = isConsumeAllEnabled(parameters);
             setRetryInterval(parameters);
+            setBatchSize(parameters);
+            setMaxInFlight(parameters);
             if (parameters.get(ForwardingProcessorConstants.RETRY_HTTP_STATUS_CODES) != null) {
                 retryHttpStatusCodes = parameters
                         .get(ForwardingProcessorConstants.RETRY_HTTP_STATUS_CODES).toString().split(",");
@@ -128,6 +157,31 @@ public class ForwardingJob implements StatefulJob {
         }
     }
 
+    private void setBatchSize(Map<String, Object> parameters) {
+        if (parameters.get(ForwardingProcessorConstants.BATCH_SIZE) != null) {
+            try {
+                batchSize = Integer.parseInt(
+                        (String) parameters.get(ForwardingProcessorConstants.BATCH_SIZE));
+            } catch (NumberFormatException nfe) {
+                parameters.remove(ForwardingProcessorConstants.BATCH_SIZE);
+                log.error("Invalid value for batch.size switching back to default value", nfe);
+            }
+        }
+    }
+
+    private void setMaxInFlight(Map<String, Object> parameters) {
+        if (parameters.get(ForwardingProcessorConstants.MAX_IN_FLIGHT) != null) {
+            try {
+                maxInFlight = Integer.parseInt(
+                        (String) parameters.get(ForwardingProcessorConstants.MAX_IN_FLIGHT));
+            } catch (NumberFormatException nfe) {
+                parameters.remove(ForwardingProcessorConstants.MAX_IN_FLIGHT);
+                log.error("Invalid value for max.in.flight.messages switching back to " +
+                        "default value", nfe);
+            }
+        }
+    }
+
     private int extractMaxDeliveryAttempts(Map<String, Object> parameters,
                                            ScheduledMessageForwardingProcessor processor) {
         int maxDeliverAttempts = -1;
@@ -170,6 +224,7 @@ public class ForwardingJob implements StatefulJob {
     }
 
     private void startProcessingMsgs() {
+        int processed = 0;
         do {
             jobState = State.CONTINUE_PROCESSING;
             MessageContext inMsgCtx = messageStore.peek();
@@ -177,24 +232,130 @@ public class ForwardingJob implements StatefulJob {
                 if (isMsgRelatedToThisServer(inMsgCtx)) {
                     handleNewMessage(inMsgCtx);
                 }
-                if (jobState == State.CONTINUE_PROCESSING && !consumeAllEnabled) {
-                    jobState = State.STOP_PROCESSING;
+                if (jobState == State.CONTINUE_PROCESSING) {
+                    if (!consumeAllEnabled) {
+                        jobState = State.STOP_PROCESSING;
+                    } else if (batchSize > 0 && ++processed >= batchSize) {
+                        // process the rest of the messages in another run of the job
+                        jobState = State.STOP_PROCESSING;
+                        processor.triggerNow();
+                    }
                 }
             } else {
                 jobState = State.STOP_PROCESSING;
             }
-            waitBeforeRetry();
-        } while (jobState == State.CONTINUE_PROCESSING || jobState == State.CONTINUE_RETRYING);
-    }
+        } while (jobState == State.CONTINUE_PROCESSING);
 
-    private void waitBeforeRetry() {
         if (jobState == State.CONTINUE_RETRYING) {
+            // retry later without holding on to the scheduler thread
+            processor.scheduleRetry(retryInterval);
+        } else if (!consumeAllEnabled && !processor.isPeriodic() && processor.isActive() &&
+                messageStore.size() > 0) {
+            // only the store events run an event driven processor, so keep going until the
+            // messages stored in a burst or while the processor was down are forwarded
+            processor.triggerNow();
+        }
+    }
+
+    /**
+     * Forward the messages keeping up to maxInFlight messages in flight. New messages are no
+     * longer dispatched once a delivery fails or the processor gets deactivated, and the
+     * messages which are in flight at that point are allowed to complete.
+     */
+    private void startProcessingMsgsConcurrently() {
+        jobState = State.CONTINUE_PROCESSING;
+        CompletionService<MessageContext> completionService =
+                new ExecutorCompletionService<MessageContext>(
+                        processor.getForwardingExecutor(maxInFlight));
+        int limit = consumeAllEnabled ? batchSize : maxInFlight;
+        // messages dispatched or skipped during this run
+        Set<String> seen = new HashSet<String>();
+        int inFlight = 0;
+        int dispatched = 0;
+        boolean exhausted = false;
+
+        while (true) {
+            while (!exhausted && inFlight < maxInFlight && (limit <= 0 || dispatched < limit) &&
+                    jobState == State.CONTINUE_PROCESSING && processor.isActive()) {
+                final MessageContext inMsgCtx = nextMessage(seen);
+                if (inMsgCtx == null) {
+                    exhausted = true;
+                } else if (isMsgRelatedToThisServer(inMsgCtx)) {
+                    completionService.submit(new Callable<MessageContext>() {
+                        public MessageContext call() {
+                            handleNewMessage(inMsgCtx);
+                            return inMsgCtx;
+                        }
+                    });
+                    inFlight++;
+                    dispatched++;
+                }
+            }
+            if (inFlight == 0) {
+                break;
+            }
+
             try {
-                // wait for some time before retrying
-                Thread.sleep(retryInterval);
-            } catch (InterruptedException ignore) {
-                // No harm even it gets interrupted. So nothing to handle.
+                completionService.take().get();
+            } catch (InterruptedException e) {
+                // the messages in flight are retried by a later run
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.error("Error Forwarding Message ", e.getCause());
             }
+            inFlight--;
+        }
+
+        if (jobState == State.CONTINUE_RETRYING) {
+            processor.scheduleRetry(retryInterval);
+        } else if (jobState == State.CONTINUE_PROCESSING && !exhausted &&
+                (consumeAllEnabled || !processor.isPeriodic()) && messageStore.size() > 0) {
+            // the batch is done, process the rest of the messages in another run of the job
+            processor.triggerNow();
+        }
+    }
+
+    /**
+     * Find the first message in the store which has not been seen by this run yet. All the
+     * messages before the cursor have been seen, and the messages this run removes from the
+     * store are all before it, so the cursor only has to be moved back by the number of
+     * messages removed to stay in place.
+     *
+     * @param seen IDs of the messages already seen, the ID of the returned message is added
+     * @return the message or null if there are no more messages
+     */
+    private MessageContext nextMessage(Set<String> seen) {
+        synchronized (cursorLock) {
+            cursor = Math.max(0, cursor - removed);
+            removed = 0;
+            while (true) {
+                MessageContext msgCtx = messageStore.get(cursor);
+                if (msgCtx == null) {
+                    return null;
+                }
+                cursor++;
+                if (seen.add(msgCtx.getMessageID())) {
+                    return msgCtx;
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a message which has been dealt with from the store. In the ordered mode the
+     * message being forwarded is always the first one in the store.
+     *
+     * @param inMsgCtx the message to be removed
+     */
+    private void removeMessage(MessageContext inMsgCtx) {
+        if (maxInFlight > 1) {
+            synchronized (cursorLock) {
+                messageStore.remove(inMsgCtx.getMessageID());
+                removed++;
+            }
+        } else {
+            messageStore.poll();
         }
     }
 
@@ -236,14 +397,16 @@ public class ForwardingJob implements StatefulJob {
         String targetEp = (String) inMsgCtx.getProperty(ForwardingProcessorConstants.TARGET_ENDPOINT);
         if (targetEp != null) {
             Endpoint ep = inMsgCtx.getEndpoint(targetEp);
-            // stop processing if endpoint is not ready to send
+            // try again later if endpoint is not ready to send
             if(ep.getContext().readyToSend()) {
                 if ((ep != null) && (((AbstractEndpoint) ep).isLeafEndpoint())) {
                     sendMsgToEndpoint(inMsgCtx, ep);
                 } else {
                     logMsg(targetEp, ep);
-                    messageStore.poll();
+                    removeMessage(inMsgCtx);
                 }
+            } else {
+                jobState = State.CONTINUE_RETRYING;
             }
         } else {
             //No Target Endpoint defined for the Message
@@ -252,7 +415,7 @@ public class ForwardingJob implements StatefulJob {
             //todo: we can improve this by implementing a target inferring mechanism
             log.warn("Property " + ForwardingProcessorConstants.TARGET_ENDPOINT +
                              " not found in the message context , Hence removing the message ");
-            messageStore.poll();
+            removeMessage(inMsgCtx);
         }
     }
 
@@ -285,8 +448,8 @@ public class ForwardingJob implements StatefulJob {
             } else {
                 // If no Exception Occurred We remove the Message
                 // and reset the delivery attempt count
-                messageStore.poll();
-                processor.resetSentAttemptCount();
+                removeMessage(inMsgCtx);
+                processor.resetSendAttemptCount(inMsgCtx.getMessageID());
             }
         } catch (Exception e) {
             handleOutOnlyError(inMsgCtx);
@@ -301,7 +464,7 @@ public class ForwardingJob implements StatefulJob {
         } else {
             // This Means we have invoked an out only operation
             // remove the message and reset the count
-            doPostSuccessTasks(outCtx);
+            doPostSuccessTasks(inMsgCtx, outCtx);
         }
     }
 
@@ -324,36 +487,41 @@ public class ForwardingJob implements StatefulJob {
             if (isRetryHttpStatusCode(outCtx)) {
                 doPostErrorTasks(inMsgCtx, outCtx);
             } else {
-                doPostSuccessTasks(outCtx);
+                doPostSuccessTasks(inMsgCtx, outCtx);
             }
         } else {
             doPostErrorTasks(inMsgCtx, outCtx);
         }
     }
 
-    private void doPostSuccessTasks(MessageContext outCtx) {
-        messageStore.poll();
-        processor.resetSentAttemptCount();
+    private void doPostSuccessTasks(MessageContext inMsgCtx, MessageContext outCtx) {
+        removeMessage(inMsgCtx);
+        processor.resetSendAttemptCount(inMsgCtx.getMessageID());
         sendResponseToReplySeq(outCtx);
     }
 
     private void doPostErrorTasks(MessageContext inMsgCtx, MessageContext outCtx) {
-        if (maxDeliverAttempts > 0) {
-            processor.incrementSendAttemptCount();
-        }
         sendItToFaultSequence(outCtx);
         if (maxDeliverAttempts > 0) {
             handleMaxDeliveryAttempts(inMsgCtx);
         }
     }
 
+    /**
+     * Count a failed attempt to deliver the message, and drop the message or deactivate the
+     * processor once the message has used up its delivery attempts. The attempts are counted
+     * for each message, so that the deliveries of other messages in flight do not affect them.
+     *
+     * @param inMsgCtx the message which could not be delivered
+     */
     private void handleMaxDeliveryAttempts(MessageContext inMsgCtx) {
-        if (processor.getSendAttemptCount() >= maxDeliverAttempts) {
+        String messageId = inMsgCtx.getMessageID();
+        if (processor.incrementSendAttemptCount(messageId) >= maxDeliverAttempts) {
             if (isMaxDeliverAttemptDropEnabled) {
                 //Since explicitly enabled the message drop after max delivery attempt
-                // message has been removed and reset the delivery attempt count of the processor
-                processor.resetSentAttemptCount();
-                messageStore.poll();
+                // message has been removed and reset the delivery attempt count of the message
+                processor.resetSendAttemptCount(messageId);
+                removeMessage(inMsgCtx);
             } else {
                 deactivate(processor, inMsgCtx);
             }
@@ -365,7 +533,6 @@ public class ForwardingJob implements StatefulJob {
     private void handleOutOnlyError(MessageContext inMsgCtx) {
         sendItToFaultSequence(inMsgCtx);
         if (maxDeliverAttempts > 0) {
-            processor.incrementSendAttemptCount();
             handleMaxDeliveryAttempts(inMsgCtx);
         }
     }
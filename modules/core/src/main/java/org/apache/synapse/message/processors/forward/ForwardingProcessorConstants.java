@@ -79,4 +79,15 @@ public final class ForwardingProcessorConstants {
      * Used to determine if all the messages should be consumed per iteration
      */
     public static final String CONSUME_ALL = "consume.all";
+
+    /**
+     * Maximum number of messages forwarded by a single run of the processor
+     */
+    public static final String BATCH_SIZE = "batch.size";
+
+    /**
+     * Maximum number of messages being forwarded concurrently. Messages are forwarded one at
+     * a time in the store order unless this is set to a value greater than one.
+     */
+    public static final String MAX_IN_FLIGHT = "max.in.flight.messages";
 }
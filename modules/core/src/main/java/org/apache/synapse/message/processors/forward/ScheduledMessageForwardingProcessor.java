@@ -22,8 +22,11 @@ package org.apache.synapse.message.processors.forward;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2BlockingClient;
 import org.apache.synapse.message.processors.ScheduledMessageProcessor;
+import org.apache.synapse.util.concurrent.SynapseThreadPool;
 import org.quartz.*;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -39,10 +42,15 @@ public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcess
 
     private volatile AtomicBoolean active = new AtomicBoolean(true);
 
-    private volatile AtomicInteger sendAttempts = new AtomicInteger(0);
+    /** Failed delivery attempts of the messages which are still in the store, by message ID */
+    private final ConcurrentHashMap<String, AtomicInteger> sendAttempts =
+            new ConcurrentHashMap<String, AtomicInteger>();
 
     private MessageForwardingProcessorView view;
 
+    /** Threads forwarding the messages when more than one message may be in flight */
+    private ExecutorService forwardingExecutor = null;
+
     @Override
     public void init(SynapseEnvironment se) {
         super.init(se);
@@ -72,7 +80,23 @@ public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcess
         }
         String axis2repo = (String) parameters.get(ForwardingProcessorConstants.AXIS2_REPO);
         String axis2Config = (String) parameters.get(ForwardingProcessorConstants.AXIS2_CONFIG);
-        return new Axis2BlockingClient(axis2repo, axis2Config);
+        sender = new Axis2BlockingClient(axis2repo, axis2Config);
+        return sender;
+    }
+
+    /**
+     * Get the pool of threads used to forward messages concurrently, creating it on first use
+     *
+     * @param threads number of messages which may be forwarded concurrently
+     * @return the thread pool
+     */
+    public synchronized ExecutorService getForwardingExecutor(int threads) {
+        if (forwardingExecutor == null) {
+            getSender().setMaxConnectionsPerHost(threads);
+            forwardingExecutor = new SynapseThreadPool(threads, threads, 60, -1,
+                    name + "-forwarder", name + "-forwarder");
+        }
+        return forwardingExecutor;
     }
 
     public boolean isActive() {
@@ -81,25 +105,63 @@ public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcess
 
     public void activate() {
         active.set(true);
+        triggerNow();
     }
 
     public void deactivate() {
         active.set(false);
     }
 
-    public int getSendAttemptCount() {
-        return sendAttempts.get();
+    public int getSendAttemptCount(String messageId) {
+        AtomicInteger attempts = sendAttempts.get(messageId);
+        return attempts != null ? attempts.get() : 0;
+    }
+
+    /**
+     * Count a failed delivery attempt of a message
+     *
+     * @param messageId ID of the message which could not be delivered
+     * @return the number of failed attempts of the message so far
+     */
+    public int incrementSendAttemptCount(String messageId) {
+        AtomicInteger attempts = sendAttempts.get(messageId);
+        if (attempts == null) {
+            attempts = new AtomicInteger();
+            AtomicInteger existing = sendAttempts.putIfAbsent(messageId, attempts);
+            if (existing != null) {
+                attempts = existing;
+            }
+        }
+        return attempts.incrementAndGet();
+    }
+
+    /**
+     * Forget the failed delivery attempts of a message however it left the store, e.g. when it
+     * was deleted through the store view or expired
+     *
+     * @param messageId ID of the message
+     */
+    @Override
+    public void messageRemoved(String messageId) {
+        sendAttempts.remove(messageId);
     }
 
-    public void incrementSendAttemptCount() {
-        sendAttempts.incrementAndGet();
+    /**
+     * Forget the failed delivery attempts of a message which has left the store
+     *
+     * @param messageId ID of the message
+     */
+    public void resetSendAttemptCount(String messageId) {
+        sendAttempts.remove(messageId);
     }
+
     public void resetSentAttemptCount(){
-        sendAttempts.set(0);
+        sendAttempts.clear();
     }
 
     @Override
     public void destroy() {
+         unregisterTriggers();
          try {
              scheduler.deleteJob(new JobKey(name + "-forward job",
                      ScheduledMessageProcessor.SCHEDULED_MESSAGE_PROCESSOR_GROUP));
@@ -107,6 +169,12 @@ public class ScheduledMessageForwardingProcessor extends ScheduledMessageProcess
         } catch (SchedulerException e) {
             log.error("Error while destroying the task " + e);
         }
+        synchronized (this) {
+            if (forwardingExecutor != null) {
+                forwardingExecutor.shutdown();
+                forwardingExecutor = null;
+            }
+        }
         state = State.DESTROY;
     }
 
@@ -25,6 +25,7 @@ import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.message.processors.MessageProcessorConstants;
 import org.apache.synapse.message.processors.ScheduledMessageProcessor;
+import org.apache.synapse.message.store.InMemoryMessageStore;
 import org.apache.synapse.message.store.MessageStore;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.quartz.Job;
@@ -132,52 +133,57 @@ public class ResequencingJob implements Job {
         }
 
         /** Continue to this section happens only after initializing the starting sequence number */
-        boolean errorStop = false;
-        while (!errorStop) {
+        InMemoryMessageStore indexedStore = getIndexedStore(messageStore, seqNoxPath);
+        if (indexedStore != null) {
+            sendInOrder(processor, indexedStore, sequence);
+        } else {
+            boolean errorStop = false;
+            while (!errorStop) {
+
+                /** Iterate through message store */
+                for (int messageIndex = 0; ; messageIndex++) {
+                    MessageContext messageContext = messageStore.get(messageIndex);
+
+                    if (messageContext == null) {
+                        errorStop = true;
+                        break;
+                    }
 
-            /** Iterate through message store */
-            for (int messageIndex = 0; ; messageIndex++) {
-                MessageContext messageContext = messageStore.get(messageIndex);
+                    /** Extract the sequence number from the message */
+                    int sequenceNo;
+                    try {
+                        sequenceNo = Integer.parseInt(seqNoxPath.stringValueOf(messageContext));
+                    } catch (Exception e) {
+                        log.warn("Can't Find sequence number from message " + e.getMessage());
+                        continue;
+                    }
 
-                if (messageContext == null) {
-                    errorStop = true;
-                    break;
-                }
+                    String messageId = messageContext.getMessageID();
 
-                /** Extract the sequence number from the message */
-                int sequenceNo;
-                try {
-                    sequenceNo = Integer.parseInt(seqNoxPath.stringValueOf(messageContext));
-                } catch (Exception e) {
-                    log.warn("Can't Find sequence number from message " + e.getMessage());
-                    continue;
-                }
+                    /** Remove messages which have less sequence number than required */
+                    if(sequenceNo<processor.getNextSeqNo() && processor.getDeleteDuplicates()){
+                        messageStore.remove(messageId);
+                    }
 
-                String messageId = messageContext.getMessageID();
+                    /** Compare the next-to-go sequence number with current message sequence number */
+                    if (sequenceNo == processor.getNextSeqNo()) {
 
-                /** Remove messages which have less sequence number than required */
-                if(sequenceNo<processor.getNextSeqNo() && processor.getDeleteDuplicates()){
-                    messageStore.remove(messageId);
-                }
+                        /** Remove selected message from store */
 
-                /** Compare the next-to-go sequence number with current message sequence number */
-                if (sequenceNo == processor.getNextSeqNo()) {
+                        messageStore.remove(messageId);
+                        /** If sending does not failed increase sequence number */
+                        if (send(messageContext, sequence)) {
 
-                    /** Remove selected message from store */
+                            processor.incrementNextSeqNo();
+                        }
+                        /** Break and start searching from beginning */
+                        break;
+                    }
 
-                    messageStore.remove(messageId);
-                    /** If sending does not failed increase sequence number */
-                    if (send(messageContext, sequence)) {
 
-                        processor.incrementNextSeqNo();
-                    }
-                    /** Break and start searching from beginning */
-                    break;
                 }
 
-
             }
-
         }
 
         /** Reactivating Processor after selecting initial sequence number */
@@ -187,6 +193,56 @@ public class ResequencingJob implements Job {
 
     }
 
+    /**
+     * Send the messages with consecutive sequence numbers starting from the next-to-send sequence
+     * number, looking each of them up directly through the sequence number index of the store
+     *
+     * @param processor    - Resequencing processor which keeps the next-to-send sequence number
+     * @param messageStore - Message store that indexes the messages by sequence number
+     * @param sequence     - the sequence name that the messages should be passed
+     */
+    private void sendInOrder(ResequencingProcessor processor, InMemoryMessageStore messageStore,
+                             String sequence) {
+        while (true) {
+            /** Remove messages which have less sequence number than required */
+            if (processor.getDeleteDuplicates()) {
+                Integer lowest = messageStore.getLowestSequenceNumber();
+                while (lowest != null && lowest < processor.getNextSeqNo()) {
+                    messageStore.remove(messageStore.getBySequenceNumber(lowest).getMessageID());
+                    lowest = messageStore.getLowestSequenceNumber();
+                }
+            }
+
+            MessageContext messageContext = messageStore.getBySequenceNumber(
+                    processor.getNextSeqNo());
+            if (messageContext == null) {
+                break;
+            }
+
+            messageStore.remove(messageContext.getMessageID());
+            /** If sending does not failed increase sequence number */
+            if (send(messageContext, sequence)) {
+                processor.incrementNextSeqNo();
+            }
+        }
+    }
+
+    /**
+     * Get the given message store as a store which indexes its messages by the sequence number
+     * extracted with the given xpath
+     *
+     * @param messageStore - Message store that contains messages
+     * @param seqNoxPath   - SynapseXpath object which contains the xpath to find the sequence number from a message
+     * @return the indexed store or null if the store does not maintain such an index
+     */
+    private InMemoryMessageStore getIndexedStore(MessageStore messageStore, SynapseXPath seqNoxPath) {
+        if (seqNoxPath != null && messageStore instanceof InMemoryMessageStore &&
+                seqNoxPath == ((InMemoryMessageStore) messageStore).getSequenceNumberXpath()) {
+            return (InMemoryMessageStore) messageStore;
+        }
+        return null;
+    }
+
     /**
      * Selects the smallest sequence number as the starting sequence number from a given message store
      *
@@ -196,6 +252,16 @@ public class ResequencingJob implements Job {
      */
     private void selectStartingSeqNo(ResequencingProcessor processor, MessageStore messageStore,
                                      SynapseXPath seqNoxPath) {
+        InMemoryMessageStore indexedStore = getIndexedStore(messageStore, seqNoxPath);
+        if (indexedStore != null) {
+            Integer lowest = indexedStore.getLowestSequenceNumber();
+            if (lowest != null && lowest < processor.getNextSeqNo()) {
+                processor.setNextSeqNo(lowest);
+                processor.setInitSeqNo(new AtomicBoolean(true));
+            }
+            return;
+        }
+
         /** Iterate through message store */
         for (int messageIndex = 0; ; messageIndex++) {
             try {
@@ -24,6 +24,7 @@ import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.message.processors.ScheduledMessageProcessor;
+import org.apache.synapse.message.store.InMemoryMessageStore;
 import org.apache.synapse.message.store.MessageStore;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.quartz.*;
@@ -135,6 +136,17 @@ public class ResequencingProcessor extends ScheduledMessageProcessor {
             seqNoxPath = (SynapseXPath) parameters.get(ResequencingProcessor.SEQUENCE_NUMBER_XPATH);
         }
 
+        /** Let the in-memory store index its messages by sequence number, so that the next message
+         * to go can be looked up directly rather than by walking through the store */
+        if (seqNoxPath != null && store instanceof InMemoryMessageStore) {
+            ((InMemoryMessageStore) store).setSequenceNumberXpath(seqNoxPath);
+            Integer lowest = ((InMemoryMessageStore) store).getLowestSequenceNumber();
+            if (lowest != null && lowest < getNextSeqNo()) {
+                setNextSeqNo(lowest);
+                initSeqNo = new AtomicBoolean(true);
+            }
+            return;
+        }
 
         /** Iterate through message store */
         for (int messageIndex = 0; ; messageIndex++) {
@@ -193,6 +205,7 @@ public class ResequencingProcessor extends ScheduledMessageProcessor {
      */
     @Override
     public void destroy() {
+        unregisterTriggers();
         try {
             scheduler.deleteJob(new JobKey(name + "-resequencing-job",
                     ScheduledMessageProcessor.SCHEDULED_MESSAGE_PROCESSOR_GROUP));
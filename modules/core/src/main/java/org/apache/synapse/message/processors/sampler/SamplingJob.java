@@ -91,6 +91,11 @@ public class SamplingJob implements Job {
                 }
             }
         }
+
+        if (!processor.isPeriodic() && messageStore.size() > 0) {
+            // nothing else runs an event driven processor until the next message is stored
+            processor.triggerNow();
+        }
     }
 
 }
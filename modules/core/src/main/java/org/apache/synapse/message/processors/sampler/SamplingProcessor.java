@@ -64,6 +64,7 @@ public class SamplingProcessor extends ScheduledMessageProcessor {
 
     @Override
     public void destroy() {
+         unregisterTriggers();
          try {
              scheduler.deleteJob(new JobKey(name + "-sampling-job",
                      ScheduledMessageProcessor.SCHEDULED_MESSAGE_PROCESSOR_GROUP));
@@ -22,35 +22,60 @@ package org.apache.synapse.message.store;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.util.xpath.SynapseXPath;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * InMemory Message store will store Failed Messages in the local memory
+ * InMemory Message store will store Failed Messages in the local memory.
+ * <p/>
+ * Messages are indexed by their message ID and kept in insertion order in a structure which
+ * supports positional access in logarithmic time. Optionally a secondary index on a sequence
+ * number extracted from each message using an XPath can be maintained, which allows consumers
+ * such as the resequencing processor to find the next message in order without walking the store.
  */
 public class InMemoryMessageStore extends AbstractMessageStore {
 
     private static final Log log = LogFactory.getLog(InMemoryMessageStore.class);
 
-    /** The map that keeps the stored messages */
-    private Queue<MessageContext> messageList = new ConcurrentLinkedQueue<MessageContext>();
+    /** The list that keeps the stored messages in insertion order, indexed by message ID */
+    private final IndexedMessageList<Entry> messageList = new IndexedMessageList<Entry>();
+
+    /** Stored messages indexed by the sequence number, only used if an XPath is set */
+    private final TreeMap<Integer, LinkedList<Entry>> sequenceIndex =
+            new TreeMap<Integer, LinkedList<Entry>>();
+
+    /** XPath used to extract the sequence number of a message */
+    private volatile SynapseXPath sequenceNumberXpath;
 
     private Lock lock = new ReentrantLock();
 
     public boolean offer(MessageContext messageContext) {
+        if (messageContext == null) {
+            return true;
+        }
+
+        messageContext.getEnvelope().build();
+        Entry entry = new Entry(messageContext);
+        SynapseXPath xpath = sequenceNumberXpath;
+        if (xpath != null) {
+            extractSequenceNumber(entry, xpath);
+        }
+
         lock.lock();
         try {
-            if (messageContext != null) {
-                messageContext.getEnvelope().build();
-                messageList.offer(messageContext);
-                // Notify observers
-                notifyMessageAddition(messageContext.getMessageID());
-                if (log.isDebugEnabled()) {
-                    log.debug("Message with id " + messageContext.getMessageID() + " stored");
-                }
+            if (xpath != sequenceNumberXpath && sequenceNumberXpath != null) {
+                // the index was changed while the sequence number was being extracted
+                extractSequenceNumber(entry, sequenceNumberXpath);
+            }
+            messageList.add(entry);
+            addToSequenceIndex(entry);
+            // Notify observers
+            notifyMessageAddition(messageContext.getMessageID());
+            if (log.isDebugEnabled()) {
+                log.debug("Message with id " + messageContext.getMessageID() + " stored");
             }
         } finally {
             lock.unlock();
@@ -62,29 +87,39 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     public MessageContext poll() {
         lock.lock();
         try {
-            MessageContext context = messageList.poll();
-            if (context != null) {
+            Entry entry = messageList.first();
+            if (entry != null) {
+                removeEntry(entry);
                 // notify observers
-                notifyMessageRemoval(context.getMessageID());
+                notifyMessageRemoval(entry.messageContext.getMessageID());
+                return entry.messageContext;
             }
-            return context;
+            return null;
         } finally {
             lock.unlock();
         }
     }
 
     public MessageContext peek() {
-        return messageList.peek();        
+        lock.lock();
+        try {
+            Entry entry = messageList.first();
+            return entry != null ? entry.messageContext : null;
+        } finally {
+            lock.unlock();
+        }
     }
 
     public MessageContext remove() throws NoSuchElementException {
         lock.lock();
         try {
-            MessageContext msgCtx = messageList.remove();
-            if (msgCtx != null) {
-                notifyMessageRemoval(msgCtx.getMessageID());
+            Entry entry = messageList.first();
+            if (entry == null) {
+                throw new NoSuchElementException();
             }
-            return msgCtx;
+            removeEntry(entry);
+            notifyMessageRemoval(entry.messageContext.getMessageID());
+            return entry.messageContext;
         } finally {
             lock.unlock();
         }
@@ -93,16 +128,8 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     public MessageContext get(int index) {
         lock.lock();
         try {
-            if (index >= 0 && index < messageList.size()) {
-                int i = 0;
-                for (MessageContext msgCtx : messageList) {
-                    if (index == i) {
-                        return msgCtx;
-                    }
-                    i++;
-                }
-            }
-            return null;
+            Entry entry = messageList.get(index);
+            return entry != null ? entry.messageContext : null;
         } finally {
             lock.unlock();
         }
@@ -112,15 +139,9 @@ public class InMemoryMessageStore extends AbstractMessageStore {
         lock.lock();
         try {
             if (messageID != null) {
-                MessageContext removable = null;
-                for (MessageContext msgCtx : messageList) {
-                    if (msgCtx.getMessageID().equals(messageID)) {
-                        removable = msgCtx;
-                        break;
-                    }
-                }
-
-                if (removable != null && messageList.remove(removable)) {
+                Entry entry = messageList.get(messageID);
+                if (entry != null) {
+                    removeEntry(entry);
                     notifyMessageRemoval(messageID);
                 }
             }
@@ -133,7 +154,7 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     public void clear() {
         lock.lock();
         try {
-            while (!messageList.isEmpty()) {
+            while (messageList.size() > 0) {
                 // We need to call remove() here because we need the notifications
                 // to get fired properly for each removal
                 remove();
@@ -146,9 +167,11 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     public List<MessageContext> getAll() {
         lock.lock();
         try {
-            List<MessageContext> returnList = new ArrayList<MessageContext>();
-            returnList.addAll(messageList);
-            return returnList;
+            List<MessageContext> list = new ArrayList<MessageContext>(messageList.size());
+            for (Entry entry : messageList.entries()) {
+                list.add(entry.messageContext);
+            }
+            return list;
         } finally {
             lock.unlock();
         }
@@ -158,10 +181,9 @@ public class InMemoryMessageStore extends AbstractMessageStore {
         lock.lock();
         try {
             if (messageId != null) {
-                for (MessageContext msgCtx : messageList) {
-                    if (msgCtx.getMessageID().equals(messageId)) {
-                        return msgCtx;
-                    }
+                Entry entry = messageList.get(messageId);
+                if (entry != null) {
+                    return entry.messageContext;
                 }
             }
         } finally {
@@ -171,6 +193,122 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     }
 
     public int size() {
-        return messageList.size();
+        lock.lock();
+        try {
+            return messageList.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Set the XPath used to extract the sequence number of the stored messages. Setting an
+     * XPath (re)builds the sequence number index over the messages already in the store.
+     * Messages for which the XPath does not evaluate to an integer are not indexed.
+     *
+     * @param xpath XPath evaluating to the sequence number of a message or null to drop the index
+     */
+    public void setSequenceNumberXpath(SynapseXPath xpath) {
+        lock.lock();
+        try {
+            this.sequenceNumberXpath = xpath;
+            sequenceIndex.clear();
+            if (xpath != null) {
+                for (Entry entry : messageList.entries()) {
+                    extractSequenceNumber(entry, xpath);
+                    addToSequenceIndex(entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SynapseXPath getSequenceNumberXpath() {
+        return sequenceNumberXpath;
+    }
+
+    /**
+     * Get the earliest stored message with the given sequence number without removing it
+     *
+     * @param sequenceNo sequence number of the message
+     * @return the message or null if there is no such message or the store is not indexed
+     */
+    public MessageContext getBySequenceNumber(int sequenceNo) {
+        lock.lock();
+        try {
+            LinkedList<Entry> entries = sequenceIndex.get(sequenceNo);
+            return entries != null ? entries.getFirst().messageContext : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the lowest sequence number in the store or null if there are no indexed messages
+     */
+    public Integer getLowestSequenceNumber() {
+        lock.lock();
+        try {
+            return sequenceIndex.isEmpty() ? null : sequenceIndex.firstKey();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        messageList.remove(entry);
+        removeFromSequenceIndex(entry);
+    }
+
+    private void extractSequenceNumber(Entry entry, SynapseXPath xpath) {
+        entry.sequenced = false;
+        try {
+            entry.sequenceNo = Integer.parseInt(xpath.stringValueOf(entry.messageContext).trim());
+            entry.sequenced = true;
+        } catch (NumberFormatException e) {
+            log.warn("Can't find sequence number from message with id " +
+                    entry.messageContext.getMessageID() + " : " + e.getMessage());
+        }
+    }
+
+    private void addToSequenceIndex(Entry entry) {
+        if (sequenceNumberXpath == null || !entry.sequenced) {
+            return;
+        }
+        LinkedList<Entry> entries = sequenceIndex.get(entry.sequenceNo);
+        if (entries == null) {
+            entries = new LinkedList<Entry>();
+            sequenceIndex.put(entry.sequenceNo, entries);
+        }
+        entries.add(entry);
+    }
+
+    private void removeFromSequenceIndex(Entry entry) {
+        if (!entry.sequenced) {
+            return;
+        }
+        LinkedList<Entry> entries = sequenceIndex.get(entry.sequenceNo);
+        if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+            sequenceIndex.remove(entry.sequenceNo);
+        }
+    }
+
+    /**
+     * A stored message along with its optional sequence number
+     */
+    private static class Entry extends IndexedMessageList.Entry {
+
+        final MessageContext messageContext;
+
+        /** Sequence number of the message, only meaningful if sequenced is true */
+        int sequenceNo;
+
+        boolean sequenced;
+
+        Entry(MessageContext messageContext) {
+            super(messageContext.getMessageID());
+            this.messageContext = messageContext;
+        }
     }
-}
\ No newline at end of file
+}
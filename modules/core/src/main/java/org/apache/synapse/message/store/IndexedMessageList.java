@@ -0,0 +1,256 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Insertion ordered list of stored messages which supports appending, removal of arbitrary
+ * entries, lookups by message ID in constant time and positional lookups in logarithmic time.
+ * Entries are kept in an array of slots and removed entries simply leave an empty slot behind.
+ * A binary indexed (Fenwick) tree over the slot occupancy is used to translate a position in the
+ * store to the slot holding the message. The slot array is compacted or grown whenever the end
+ * of the array is reached.
+ * <p/>
+ * Messages with a duplicate message ID are allowed, lookups by ID return the earliest of them.
+ * <p/>
+ * This class is not thread safe. Callers are expected to serialize access to it.
+ *
+ * @param <E> type of the entries kept in the list
+ */
+class IndexedMessageList<E extends IndexedMessageList.Entry> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Slots holding the stored entries, removed entries leave a null slot behind */
+    private Entry[] slots;
+
+    /** Fenwick tree over slot occupancy (1 based) */
+    private int[] tree;
+
+    /** Index of the first slot which may hold a live entry */
+    private int head = 0;
+
+    /** Index of the slot the next appended entry is placed at */
+    private int tail = 0;
+
+    /** Number of live entries */
+    private int size = 0;
+
+    /** Earliest entry for each message ID */
+    private final Map<String, Entry> idIndex = new HashMap<String, Entry>();
+
+    IndexedMessageList() {
+        slots = new Entry[INITIAL_CAPACITY];
+        tree = new int[INITIAL_CAPACITY + 1];
+    }
+
+    /**
+     * Add an entry to the end of the list
+     *
+     * @param entry entry to be added
+     */
+    void add(E entry) {
+        Entry existing = idIndex.get(entry.messageId);
+        if (existing == null) {
+            idIndex.put(entry.messageId, entry);
+        } else {
+            // keep messages with a duplicate ID chained in insertion order
+            while (existing.nextWithSameId != null) {
+                existing = existing.nextWithSameId;
+            }
+            existing.nextWithSameId = entry;
+        }
+
+        if (tail == slots.length) {
+            resize();
+        }
+        entry.slot = tail;
+        slots[tail] = entry;
+        update(tail, 1);
+        tail++;
+        size++;
+    }
+
+    /**
+     * Remove the given entry from the list
+     *
+     * @param entry entry to be removed
+     * @return true if the entry was in the list
+     */
+    boolean remove(E entry) {
+        int slot = entry.slot;
+        if (slot < 0 || slot >= tail || slots[slot] != entry) {
+            return false;
+        }
+
+        Entry first = idIndex.get(entry.messageId);
+        if (first == entry) {
+            if (entry.nextWithSameId != null) {
+                idIndex.put(entry.messageId, entry.nextWithSameId);
+            } else {
+                idIndex.remove(entry.messageId);
+            }
+        } else if (first != null) {
+            while (first.nextWithSameId != null && first.nextWithSameId != entry) {
+                first = first.nextWithSameId;
+            }
+            first.nextWithSameId = entry.nextWithSameId;
+        }
+        entry.nextWithSameId = null;
+
+        slots[slot] = null;
+        update(slot, -1);
+        entry.slot = -1;
+        size--;
+        while (head < tail && slots[head] == null) {
+            head++;
+        }
+        if (size == 0) {
+            // nothing left, start over from the beginning of the slot array
+            head = 0;
+            tail = 0;
+            tree = new int[slots.length + 1];
+        }
+        return true;
+    }
+
+    /**
+     * @return the first entry in the list or null if the list is empty
+     */
+    @SuppressWarnings("unchecked")
+    E first() {
+        return size == 0 ? null : (E) slots[head];
+    }
+
+    /**
+     * Find the earliest entry with the given message ID
+     *
+     * @param messageId message ID to look for
+     * @return the matching entry or null if there is no such entry
+     */
+    @SuppressWarnings("unchecked")
+    E get(String messageId) {
+        return (E) idIndex.get(messageId);
+    }
+
+    /**
+     * Find the entry at the given position of the list
+     *
+     * @param index position of the entry
+     * @return entry at the given position or null if the index is out of range
+     */
+    @SuppressWarnings("unchecked")
+    E get(int index) {
+        if (index < 0 || index >= size) {
+            return null;
+        }
+        // find the lowest slot which has index + 1 live entries up to and including it
+        int remaining = index + 1;
+        int position = 0;
+        for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= slots.length && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return (E) slots[position];
+    }
+
+    /**
+     * @return a list of all the entries in insertion order
+     */
+    @SuppressWarnings("unchecked")
+    List<E> entries() {
+        List<E> list = new ArrayList<E>(size);
+        for (int i = head; i < tail; i++) {
+            if (slots[i] != null) {
+                list.add((E) slots[i]);
+            }
+        }
+        return list;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Called when the end of the slot array is reached. Moves the live entries to the beginning
+     * of the array, growing it if more than half of the slots are in use, and rebuilds the tree.
+     */
+    private void resize() {
+        Entry[] newSlots = size > slots.length / 2 ? new Entry[slots.length * 2] : slots;
+        int j = 0;
+        for (int i = head; i < tail; i++) {
+            Entry entry = slots[i];
+            if (entry != null) {
+                entry.slot = j;
+                newSlots[j++] = entry;
+            }
+        }
+        for (int i = j; i < tail && newSlots == slots; i++) {
+            slots[i] = null;
+        }
+        slots = newSlots;
+        head = 0;
+        tail = j;
+
+        // linear time construction of the tree over the compacted slots
+        tree = new int[slots.length + 1];
+        for (int i = 1; i <= slots.length; i++) {
+            if (i <= tail) {
+                tree[i]++;
+            }
+            int parent = i + (i & -i);
+            if (parent <= slots.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i <= slots.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Base class of the entries held in the list
+     */
+    static class Entry {
+
+        final String messageId;
+
+        /** Current slot of the entry, -1 if the entry is not in the list */
+        int slot = -1;
+
+        /** Next stored message with the same message ID, if any */
+        Entry nextWithSameId;
+
+        Entry(String messageId) {
+            this.messageId = messageId;
+        }
+    }
+}
@@ -0,0 +1,757 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A message store which persists the stored messages in an append only journal on the local
+ * disk, so that the messages survive a restart of the server. The journal is made of fixed size
+ * memory mapped segment files. Storing a message appends a record holding the serialized message
+ * and removing a message appends a small tombstone record. An in memory index keeps track of
+ * the location of each live message, which is read back from the mapped segment on demand.
+ * <p/>
+ * Segments are forced to the disk by a background thread. Unless disabled, a producer waits
+ * until the message it stored has been forced to the disk, which lets concurrent producers
+ * share a single sync (group commit). Once all the messages in the oldest segment have been
+ * removed, for example after they have been acknowledged by the backend of a message forwarding
+ * processor, the segment is deleted. Live messages of sparse old segments are copied over to the
+ * current segment so that a few unconsumed messages do not hold on to a whole segment.
+ * <p/>
+ * The store accepts the following parameters
+ * <ul>
+ *     <li>journal.directory - directory the segments are kept in</li>
+ *     <li>journal.segment.size - size of a segment file in bytes</li>
+ *     <li>journal.sync.interval - maximum interval between two syncs in milliseconds</li>
+ *     <li>journal.sync.wait - whether producers wait until their messages reach the disk</li>
+ *     <li>journal.compaction.threshold - ratio of live messages below which the messages of
+ *     the oldest segment are copied over to the current segment</li>
+ * </ul>
+ */
+public class JournalMessageStore extends AbstractMessageStore {
+
+    private static final Log log = LogFactory.getLog(JournalMessageStore.class);
+
+    public static final String JOURNAL_DIRECTORY = "journal.directory";
+    public static final String SEGMENT_SIZE = "journal.segment.size";
+    public static final String SYNC_INTERVAL = "journal.sync.interval";
+    public static final String SYNC_WAIT = "journal.sync.wait";
+    public static final String COMPACTION_THRESHOLD = "journal.compaction.threshold";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final long DEFAULT_SYNC_INTERVAL = 100;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.1;
+
+    private static final byte[] NO_ID = new byte[0];
+
+    private File directory;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private long syncInterval = DEFAULT_SYNC_INTERVAL;
+    private boolean syncWait = true;
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** Live messages in the order they were stored */
+    private final IndexedMessageList<Record> records = new IndexedMessageList<Record>();
+
+    /** All the segments of the journal by the segment ID */
+    private final TreeMap<Long, JournalSegment> segments = new TreeMap<Long, JournalSegment>();
+
+    /** Segments with records which have not been forced to the disk yet */
+    private final Set<JournalSegment> dirtySegments = new LinkedHashSet<JournalSegment>();
+
+    /** Segment the records are appended to */
+    private JournalSegment activeSegment;
+
+    /** Sequence number of the next record appended to the journal */
+    private long nextRecordSeq = 0;
+
+    /** Sequence number of the last record appended to the journal */
+    private long writtenRecordSeq = -1;
+
+    /** Sequence number of the last record known to be on the disk, guarded by syncMonitor */
+    private long syncedRecordSeq = -1;
+
+    private final Object syncMonitor = new Object();
+    private final Object flushSignal = new Object();
+
+    private volatile boolean running = false;
+    private Thread flusher;
+
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+
+        String dirName = getParameter(JOURNAL_DIRECTORY, null);
+        if (dirName == null) {
+            dirName = System.getProperty(SynapseConstants.SYNAPSE_HOME, ".") + File.separator +
+                    "repository" + File.separator + "data" + File.separator +
+                    "message-stores" + File.separator + name;
+        }
+        directory = new File(dirName);
+        try {
+            segmentSize = Integer.parseInt(getParameter(SEGMENT_SIZE,
+                    String.valueOf(DEFAULT_SEGMENT_SIZE)));
+            syncInterval = Long.parseLong(getParameter(SYNC_INTERVAL,
+                    String.valueOf(DEFAULT_SYNC_INTERVAL)));
+            compactionThreshold = Double.parseDouble(getParameter(COMPACTION_THRESHOLD,
+                    String.valueOf(DEFAULT_COMPACTION_THRESHOLD)));
+        } catch (NumberFormatException e) {
+            handleException("Invalid journal parameter for the message store : " + name, e);
+        }
+        syncWait = !"false".equalsIgnoreCase(getParameter(SYNC_WAIT, "true"));
+        if (segmentSize <= 0 || syncInterval <= 0) {
+            handleException("The segment size and the sync interval of the message store : " +
+                    name + " must be positive");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            handleException("Unable to create the journal directory : " + directory);
+        }
+
+        lock.lock();
+        try {
+            recover();
+        } catch (IOException e) {
+            handleException("Error recovering the journal of the message store : " + name, e);
+        } finally {
+            lock.unlock();
+        }
+
+        running = true;
+        flusher = new Thread(new Flusher(), "JournalMessageStore-" + name);
+        flusher.setDaemon(true);
+        flusher.start();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Journal message store : " + name + " initialized with " + records.size() +
+                    " messages recovered from " + directory);
+        }
+    }
+
+    public void destroy() {
+        running = false;
+        if (flusher != null) {
+            synchronized (flushSignal) {
+                flushSignal.notifyAll();
+            }
+            try {
+                flusher.join();
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+            flusher = null;
+        }
+
+        lock.lock();
+        try {
+            for (JournalSegment segment : dirtySegments) {
+                segment.force();
+            }
+            dirtySegments.clear();
+            for (JournalSegment segment : segments.values()) {
+                segment.close();
+            }
+            segments.clear();
+            activeSegment = null;
+        } finally {
+            lock.unlock();
+        }
+
+        synchronized (syncMonitor) {
+            syncMonitor.notifyAll();
+        }
+        super.destroy();
+    }
+
+    public boolean offer(MessageContext messageContext) {
+        if (messageContext == null) {
+            return true;
+        }
+        if (!running) {
+            handleException("The message store : " + name + " is not initialized");
+        }
+
+        String messageId = messageContext.getMessageID();
+        byte[] payload;
+        try {
+            payload = MessageContextSerializer.serialize(messageContext);
+        } catch (IOException e) {
+            log.error("Unable to store the message with id " + messageId, e);
+            return false;
+        }
+        byte[] idBytes = JournalSegment.idBytes(messageId);
+
+        long recordSeq;
+        lock.lock();
+        try {
+            JournalSegment segment = segmentFor(JournalSegment.recordSize(idBytes, payload.length));
+            recordSeq = nextRecordSeq++;
+            int offset = segment.append(JournalSegment.RECORD_ADD, recordSeq, idBytes, payload);
+            records.add(new Record(messageId, recordSeq, segment, offset));
+            writtenRecordSeq = recordSeq;
+            // Notify observers
+            notifyMessageAddition(messageId);
+            if (log.isDebugEnabled()) {
+                log.debug("Message with id " + messageId + " stored");
+            }
+        } catch (IOException e) {
+            log.error("Unable to store the message with id " + messageId, e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+
+        if (syncWait) {
+            awaitSync(recordSeq);
+        }
+        return true;
+    }
+
+    public MessageContext poll() {
+        return removeFirst();
+    }
+
+    public MessageContext peek() {
+        Record record;
+        byte[] payload;
+        lock.lock();
+        try {
+            record = records.first();
+            if (record == null) {
+                return null;
+            } else if (record.messageContext != null) {
+                return record.messageContext;
+            }
+            payload = record.segment.readPayload(record.offset);
+        } finally {
+            lock.unlock();
+        }
+
+        MessageContext messageContext = deserialize(payload);
+        lock.lock();
+        try {
+            // keep the head of the store, which is usually polled right after being peeked
+            if (record.slot >= 0 && record.messageContext == null) {
+                record.messageContext = messageContext;
+            }
+            return record.messageContext != null ? record.messageContext : messageContext;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public MessageContext remove() throws NoSuchElementException {
+        MessageContext messageContext = removeFirst();
+        if (messageContext == null) {
+            throw new NoSuchElementException();
+        }
+        return messageContext;
+    }
+
+    public MessageContext remove(String messageID) {
+        if (messageID == null) {
+            return null;
+        }
+        Record record;
+        byte[] payload = null;
+        lock.lock();
+        try {
+            record = records.get(messageID);
+            if (record == null) {
+                return null;
+            }
+            if (record.messageContext == null) {
+                // copy the message out before the segment could be compacted away
+                payload = record.segment.readPayload(record.offset);
+            }
+            removeRecord(record);
+            notifyMessageRemoval(messageID);
+        } catch (IOException e) {
+            handleException("Unable to remove the message with id " + messageID, e);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+        return record.messageContext != null ? record.messageContext : deserialize(payload);
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            Record record;
+            while ((record = records.first()) != null) {
+                removeRecord(record);
+                // notify each removal to keep the observers in sync
+                notifyMessageRemoval(record.messageId);
+            }
+        } catch (IOException e) {
+            handleException("Unable to clear the message store : " + name, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public MessageContext get(int index) {
+        lock.lock();
+        Record record;
+        byte[] payload;
+        try {
+            record = records.get(index);
+            if (record == null) {
+                return null;
+            } else if (record.messageContext != null) {
+                return record.messageContext;
+            }
+            payload = record.segment.readPayload(record.offset);
+        } finally {
+            lock.unlock();
+        }
+        return deserialize(payload);
+    }
+
+    public List<MessageContext> getAll() {
+        List<Object> contents;
+        lock.lock();
+        try {
+            List<Record> entries = records.entries();
+            contents = new ArrayList<Object>(entries.size());
+            for (Record record : entries) {
+                contents.add(record.messageContext != null ? record.messageContext :
+                        record.segment.readPayload(record.offset));
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        List<MessageContext> list = new ArrayList<MessageContext>(contents.size());
+        for (Object content : contents) {
+            list.add(content instanceof MessageContext ? (MessageContext) content :
+                    deserialize((byte[]) content));
+        }
+        return list;
+    }
+
+    public MessageContext get(String messageId) {
+        if (messageId == null) {
+            return null;
+        }
+        byte[] payload;
+        lock.lock();
+        try {
+            Record record = records.get(messageId);
+            if (record == null) {
+                return null;
+            } else if (record.messageContext != null) {
+                return record.messageContext;
+            }
+            payload = record.segment.readPayload(record.offset);
+        } finally {
+            lock.unlock();
+        }
+        return deserialize(payload);
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return records.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the directory holding the journal of this store
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the number of segment files currently making up the journal
+     */
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MessageContext removeFirst() {
+        Record record = null;
+        byte[] payload = null;
+        lock.lock();
+        try {
+            record = records.first();
+            if (record == null) {
+                return null;
+            }
+            if (record.messageContext == null) {
+                // copy the message out before the segment could be compacted away
+                payload = record.segment.readPayload(record.offset);
+            }
+            removeRecord(record);
+            notifyMessageRemoval(record.messageId);
+        } catch (IOException e) {
+            handleException("Unable to remove the message with id " + record.messageId, e);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+        return record.messageContext != null ? record.messageContext : deserialize(payload);
+    }
+
+    /**
+     * Append a tombstone for the given record and drop it from the index. Removals do not wait
+     * for the tombstone to reach the disk, so a message removed right before a crash may be
+     * delivered again after the restart.
+     *
+     * @param record record to be removed
+     * @throws IOException if a new segment is needed and cannot be created
+     */
+    private void removeRecord(Record record) throws IOException {
+        JournalSegment segment = segmentFor(JournalSegment.recordSize(NO_ID, 0));
+        segment.append(JournalSegment.RECORD_REMOVE, record.recordSeq, NO_ID, null);
+        writtenRecordSeq = nextRecordSeq++;
+        record.segment.recordRemoved();
+        records.remove(record);
+    }
+
+    /**
+     * Find the segment a record of the given size can be appended to, starting a new segment
+     * if the current one is full. Must be called while holding the lock.
+     *
+     * @param recordSize size of the record to be appended
+     * @return the segment to append the record to
+     * @throws IOException if a new segment cannot be created
+     */
+    private JournalSegment segmentFor(int recordSize) throws IOException {
+        if (activeSegment == null || !activeSegment.hasRoom(recordSize)) {
+            long id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+            activeSegment = JournalSegment.create(directory, id,
+                    Math.max(segmentSize, recordSize));
+            segments.put(id, activeSegment);
+            if (log.isDebugEnabled()) {
+                log.debug("Started journal segment : " + activeSegment.getFile());
+            }
+        }
+        dirtySegments.add(activeSegment);
+        return activeSegment;
+    }
+
+    private MessageContext deserialize(byte[] payload) {
+        try {
+            return MessageContextSerializer.deserialize(payload, synapseEnvironment);
+        } catch (IOException e) {
+            handleException("Unable to read a message from the message store : " + name, e);
+        }
+        return null;
+    }
+
+    /**
+     * Block until the record with the given sequence number has been forced to the disk
+     *
+     * @param recordSeq sequence number of the record
+     */
+    private void awaitSync(long recordSeq) {
+        synchronized (flushSignal) {
+            flushSignal.notifyAll();
+        }
+        synchronized (syncMonitor) {
+            while (running && syncedRecordSeq < recordSeq) {
+                try {
+                    syncMonitor.wait(syncInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Force all the records appended so far to the disk and release the producers waiting for
+     * them. The segments are forced outside the lock so that producers can keep appending to the
+     * journal in the meantime.
+     */
+    private void sync() {
+        long target;
+        List<JournalSegment> dirty;
+        lock.lock();
+        try {
+            target = writtenRecordSeq;
+            dirty = new ArrayList<JournalSegment>(dirtySegments);
+            dirtySegments.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        for (JournalSegment segment : dirty) {
+            segment.force();
+        }
+
+        synchronized (syncMonitor) {
+            if (target > syncedRecordSeq) {
+                syncedRecordSeq = target;
+            }
+            syncMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Delete the old segments which do not hold live messages anymore. Segments are only ever
+     * deleted oldest first, so that a tombstone is never lost while the record it refers to
+     * still exists in an older segment. If the oldest segment is sparse, its live messages are
+     * copied over to the active segment first. As in {@link #sync()}, the segments are forced
+     * outside the lock, the obsolete segments are not referred to by any record by then.
+     */
+    private void compact() {
+        List<JournalSegment> obsolete = new ArrayList<JournalSegment>();
+        List<JournalSegment> dirty;
+        lock.lock();
+        try {
+            JournalSegment active = activeSegment;
+            // relocating records may start new segments, hence iterate over a copy
+            for (JournalSegment segment : new ArrayList<JournalSegment>(segments.values())) {
+                if (segment == active) {
+                    break;
+                }
+                if (segment.getLiveRecords() > 0) {
+                    if (segment.getLiveRecords() >
+                            segment.getAddedRecords() * compactionThreshold) {
+                        break;
+                    }
+                    relocate(segment);
+                }
+                obsolete.add(segment);
+            }
+            if (obsolete.isEmpty()) {
+                return;
+            }
+            dirty = new ArrayList<JournalSegment>(dirtySegments);
+            dirtySegments.clear();
+        } catch (IOException e) {
+            log.error("Error compacting the journal of the message store : " + name, e);
+            return;
+        } finally {
+            lock.unlock();
+        }
+
+        // relocated records must be on the disk before their old copies are deleted
+        for (JournalSegment segment : dirty) {
+            segment.force();
+        }
+
+        lock.lock();
+        try {
+            for (JournalSegment segment : obsolete) {
+                segments.remove(segment.getId());
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (JournalSegment segment : obsolete) {
+            segment.delete();
+            if (log.isDebugEnabled()) {
+                log.debug("Deleted journal segment : " + segment.getFile());
+            }
+        }
+    }
+
+    private void relocate(JournalSegment segment) throws IOException {
+        for (Record record : records.entries()) {
+            if (record.segment == segment) {
+                byte[] idBytes = JournalSegment.idBytes(record.messageId);
+                byte[] payload = segment.readPayload(record.offset);
+                JournalSegment target = segmentFor(
+                        JournalSegment.recordSize(idBytes, payload.length));
+                // the copy keeps the record sequence number, so tombstones still apply to it
+                record.offset = target.append(JournalSegment.RECORD_ADD, record.recordSeq,
+                        idBytes, payload);
+                record.segment = target;
+                segment.recordRemoved();
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index out of the segments found in the journal directory
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return JournalSegment.isSegmentFile(name);
+            }
+        });
+        if (files == null) {
+            files = new File[0];
+        }
+        // segment file names are zero padded, hence sort in the order of the segment IDs
+        Arrays.sort(files);
+
+        final Map<Long, Record> live = new HashMap<Long, Record>();
+        final long[] maxRecordSeq = {-1};
+        JournalSegment.RecordVisitor visitor = new JournalSegment.RecordVisitor() {
+            public void visit(JournalSegment segment, byte type, long recordSeq,
+                              String messageId, int offset) {
+                if (recordSeq > maxRecordSeq[0]) {
+                    maxRecordSeq[0] = recordSeq;
+                }
+                if (type == JournalSegment.RECORD_ADD) {
+                    // a record copied by an interrupted compaction supersedes the original
+                    Record previous = live.put(recordSeq,
+                            new Record(messageId, recordSeq, segment, offset));
+                    if (previous != null) {
+                        previous.segment.recordRemoved();
+                    }
+                } else if (type == JournalSegment.RECORD_REMOVE) {
+                    Record removed = live.remove(recordSeq);
+                    if (removed != null) {
+                        removed.segment.recordRemoved();
+                    }
+                }
+            }
+        };
+
+        for (File file : files) {
+            JournalSegment segment = JournalSegment.open(file);
+            segments.put(segment.getId(), segment);
+            segment.recover(visitor);
+            activeSegment = segment;
+        }
+
+        List<Record> recovered = new ArrayList<Record>(live.values());
+        Collections.sort(recovered, new Comparator<Record>() {
+            public int compare(Record r1, Record r2) {
+                return r1.recordSeq < r2.recordSeq ? -1 : (r1.recordSeq == r2.recordSeq ? 0 : 1);
+            }
+        });
+        for (Record record : recovered) {
+            records.add(record);
+        }
+
+        nextRecordSeq = maxRecordSeq[0] + 1;
+        writtenRecordSeq = maxRecordSeq[0];
+        syncedRecordSeq = maxRecordSeq[0];
+    }
+
+    private String getParameter(String key, String defaultValue) {
+        if (parameters != null && parameters.get(key) != null) {
+            return parameters.get(key).toString().trim();
+        }
+        return defaultValue;
+    }
+
+    private void handleException(String msg) {
+        log.error(msg);
+        throw new SynapseException(msg);
+    }
+
+    private void handleException(String msg, Exception e) {
+        log.error(msg, e);
+        throw new SynapseException(msg, e);
+    }
+
+    /**
+     * Periodically forces the journal to the disk and compacts it. Producers waiting for their
+     * messages to be synced wake the flusher up right away.
+     */
+    private class Flusher implements Runnable {
+
+        public void run() {
+            while (running) {
+                synchronized (flushSignal) {
+                    if (running && !hasPendingWrites()) {
+                        try {
+                            flushSignal.wait(syncInterval);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                try {
+                    sync();
+                    compact();
+                } catch (Throwable t) {
+                    log.error("Error flushing the journal of the message store : " + name, t);
+                }
+            }
+        }
+
+        private boolean hasPendingWrites() {
+            if (!syncWait) {
+                return false;
+            }
+            lock.lock();
+            try {
+                synchronized (syncMonitor) {
+                    return writtenRecordSeq > syncedRecordSeq;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Location of a stored message in the journal
+     */
+    private static class Record extends IndexedMessageList.Entry {
+
+        final long recordSeq;
+
+        JournalSegment segment;
+
+        int offset;
+
+        /** Message read back by a peek, which is handed out until the message is removed */
+        MessageContext messageContext;
+
+        Record(String messageId, long recordSeq, JournalSegment segment, int offset) {
+            super(messageId);
+            this.recordSeq = recordSeq;
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A single memory mapped file of the journal kept by the {@link JournalMessageStore}. A segment
+ * is a fixed size file holding a sequence of records which are only ever appended. Each record
+ * is laid out as
+ * <pre>
+ * [int length][int crc32][byte type][long record sequence][int id length][id][payload]
+ * </pre>
+ * where the length and the checksum cover everything after the checksum. A zero length marks
+ * the end of the records written to the segment, the unused part of a segment is zero filled.
+ * <p/>
+ * Segments are not thread safe. The store serializes writes and reads, while forcing a segment
+ * to the disk may happen concurrently with appends. A segment must not be used at all once it
+ * has been closed, since closing it releases the memory mapping.
+ */
+class JournalSegment {
+
+    private static final Log log = LogFactory.getLog(JournalSegment.class);
+
+    static final String FILE_PREFIX = "segment-";
+    static final String FILE_SUFFIX = ".log";
+
+    static final byte RECORD_ADD = 1;
+    static final byte RECORD_REMOVE = 2;
+
+    /** length + checksum */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** type + record sequence + id length */
+    private static final int RECORD_FIXED_BODY_SIZE = 13;
+
+    private final long id;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+
+    /** Position the next record is written at */
+    private int writePosition = 0;
+
+    /** Number of records added to this segment which have not been removed yet */
+    private int liveRecords = 0;
+
+    /** Total number of records added to this segment */
+    private int addedRecords = 0;
+
+    private boolean closed = false;
+
+    private JournalSegment(long id, File file, int size) throws IOException {
+        this.id = id;
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        if (raf.length() < size) {
+            raf.setLength(size);
+        }
+        this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+    }
+
+    /**
+     * Create a new segment file in the given directory
+     *
+     * @param directory journal directory
+     * @param id        sequence number of the segment
+     * @param size      size of the segment file in bytes
+     * @return the new segment
+     * @throws IOException if the file cannot be created
+     */
+    static JournalSegment create(File directory, long id, int size) throws IOException {
+        File file = new File(directory, fileName(id));
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to delete the stale journal segment : " + file);
+        }
+        return new JournalSegment(id, file, size);
+    }
+
+    /**
+     * Open an existing segment file
+     *
+     * @param file segment file
+     * @return the segment, the records need to be read using {@link #recover}
+     * @throws IOException if the file cannot be opened
+     */
+    static JournalSegment open(File file) throws IOException {
+        String name = file.getName();
+        long id = Long.parseLong(name.substring(FILE_PREFIX.length(),
+                name.length() - FILE_SUFFIX.length()));
+        return new JournalSegment(id, file, 0);
+    }
+
+    static boolean isSegmentFile(String name) {
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+
+    static String fileName(long id) {
+        return FILE_PREFIX + String.format("%020d", id) + FILE_SUFFIX;
+    }
+
+    /**
+     * Compute the number of bytes a record takes in a segment
+     *
+     * @param messageId   message ID the record refers to
+     * @param payloadSize size of the record payload
+     * @return size of the record
+     */
+    static int recordSize(byte[] messageId, int payloadSize) {
+        return RECORD_HEADER_SIZE + RECORD_FIXED_BODY_SIZE + messageId.length + payloadSize;
+    }
+
+    static byte[] idBytes(String messageId) {
+        try {
+            return (messageId != null ? messageId : "").getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Check whether a record of the given size fits into the remaining space of this segment
+     *
+     * @param recordSize size of the record as computed by {@link #recordSize}
+     * @return true if the record can be appended
+     */
+    boolean hasRoom(int recordSize) {
+        return recordSize <= buffer.capacity() - writePosition;
+    }
+
+    /**
+     * Append a record to the segment
+     *
+     * @param type      record type
+     * @param recordSeq sequence number of the record within the store
+     * @param messageId message ID as returned by {@link #idBytes}
+     * @param payload   record payload, may be null
+     * @return the offset of the record within the segment
+     */
+    int append(byte type, long recordSeq, byte[] messageId, byte[] payload) {
+        int payloadSize = payload != null ? payload.length : 0;
+        int bodySize = RECORD_FIXED_BODY_SIZE + messageId.length + payloadSize;
+
+        ByteBuffer body = ByteBuffer.allocate(bodySize);
+        body.put(type).putLong(recordSeq).putInt(messageId.length).put(messageId);
+        if (payload != null) {
+            body.put(payload);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body.array(), 0, bodySize);
+
+        int offset = writePosition;
+        // the length is written last so that a partially written record is never seen as valid
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + RECORD_HEADER_SIZE);
+        target.put(body.array(), 0, bodySize);
+        buffer.putInt(offset, bodySize);
+        writePosition = offset + RECORD_HEADER_SIZE + bodySize;
+
+        if (type == RECORD_ADD) {
+            liveRecords++;
+            addedRecords++;
+        }
+        return offset;
+    }
+
+    /**
+     * Read the payload of the record at the given offset
+     *
+     * @param offset offset of the record
+     * @return payload of the record
+     */
+    byte[] readPayload(int offset) {
+        int bodySize = buffer.getInt(offset);
+        int idLength = buffer.getInt(offset + RECORD_HEADER_SIZE + 9);
+        int payloadOffset = offset + RECORD_HEADER_SIZE + RECORD_FIXED_BODY_SIZE + idLength;
+        byte[] payload = new byte[bodySize - RECORD_FIXED_BODY_SIZE - idLength];
+        ByteBuffer source = buffer.duplicate();
+        source.position(payloadOffset);
+        source.get(payload);
+        return payload;
+    }
+
+    /**
+     * Read all the valid records of the segment, stopping at the end marker or at the first
+     * record which fails the checksum, which is the tail of a write interrupted by a crash.
+     * The write position is set to the end of the last valid record.
+     *
+     * @param visitor callback invoked for each record
+     * @throws IOException if the segment cannot be read
+     */
+    void recover(RecordVisitor visitor) throws IOException {
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_SIZE + RECORD_FIXED_BODY_SIZE <= buffer.capacity()) {
+            int bodySize = buffer.getInt(position);
+            if (bodySize == 0) {
+                break;
+            }
+            if (bodySize < RECORD_FIXED_BODY_SIZE ||
+                    position + RECORD_HEADER_SIZE + bodySize > buffer.capacity()) {
+                log.warn("Invalid record length at offset " + position + " of journal segment " +
+                        file + ", ignoring the rest of the segment");
+                break;
+            }
+
+            byte[] body = new byte[bodySize];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position + RECORD_HEADER_SIZE);
+            source.get(body);
+            crc.reset();
+            crc.update(body, 0, bodySize);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("Checksum mismatch at offset " + position + " of journal segment " +
+                        file + ", ignoring the rest of the segment");
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.wrap(body);
+            byte type = record.get();
+            long recordSeq = record.getLong();
+            byte[] idBytes = new byte[record.getInt()];
+            record.get(idBytes);
+            if (type == RECORD_ADD) {
+                liveRecords++;
+                addedRecords++;
+            }
+            visitor.visit(this, type, recordSeq, new String(idBytes, "UTF-8"), position);
+            position += RECORD_HEADER_SIZE + bodySize;
+        }
+
+        // wipe whatever follows the last valid record so that it is never read back
+        for (int i = position; i < buffer.capacity() && buffer.get(i) != 0; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        writePosition = position;
+    }
+
+    /**
+     * Flush the changes made to the segment to the disk
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Close the segment file and release its memory mapping
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        unmap();
+        try {
+            raf.close();
+        } catch (IOException e) {
+            log.warn("Error closing journal segment : " + file, e);
+        }
+    }
+
+    /**
+     * Release the memory mapping right away instead of leaving it to the garbage collector, which
+     * keeps the address space, and on some platforms the file, in use until the buffer is
+     * collected. There is no public API for this, hence Unsafe.invokeCleaner is used where it is
+     * available and the cleaner of the buffer on older runtimes.
+     */
+    private void unmap() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field unsafe = unsafeClass.getDeclaredField("theUnsafe");
+            unsafe.setAccessible(true);
+            invokeCleaner.invoke(unsafe.get(null), buffer);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to unmap journal segment : " + file + ", leaving it to the " +
+                        "garbage collector", e);
+            }
+        }
+    }
+
+    /**
+     * Close and delete the segment file
+     */
+    void delete() {
+        close();
+        if (!file.delete()) {
+            log.warn("Unable to delete journal segment : " + file);
+        }
+    }
+
+    long getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getLiveRecords() {
+        return liveRecords;
+    }
+
+    int getAddedRecords() {
+        return addedRecords;
+    }
+
+    void recordRemoved() {
+        liveRecords--;
+    }
+
+    /**
+     * Callback used to read the records of a segment while recovering the store
+     */
+    interface RecordVisitor {
+
+        void visit(JournalSegment segment, byte type, long recordSeq, String messageId,
+                   int offset);
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Converts message contexts to and from the binary form written to the journal of the
+ * {@link JournalMessageStore}. The SOAP envelope, the addressing headers, the message ID and
+ * all the properties with simple (string, boolean or numeric) values are preserved. This
+ * includes the transport headers and the string valued properties of the underlying Axis2
+ * message context. Properties holding any other kind of object are not persisted.
+ */
+class MessageContextSerializer {
+
+    private static final Log log = LogFactory.getLog(MessageContextSerializer.class);
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_INTEGER = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_FLOAT = 5;
+
+    private static final String UTF8 = "UTF-8";
+
+    private MessageContextSerializer() {
+    }
+
+    /**
+     * Serialize the given message context. The envelope of the message is fully built
+     * in the process.
+     *
+     * @param synCtx message to be serialized
+     * @return serialized form of the message
+     * @throws IOException if the message cannot be serialized
+     */
+    static byte[] serialize(MessageContext synCtx) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, synCtx.getMessageID());
+        writeString(out, synCtx.getTo() != null ? synCtx.getTo().getAddress() : null);
+        writeString(out, synCtx.getReplyTo() != null ? synCtx.getReplyTo().getAddress() : null);
+        writeString(out, synCtx.getFaultTo() != null ? synCtx.getFaultTo().getAddress() : null);
+        writeString(out, synCtx.getWSAAction());
+        writeString(out, synCtx.getSoapAction());
+        out.writeBoolean(synCtx.isDoingPOX());
+        out.writeBoolean(synCtx.isDoingGET());
+
+        Map<Object, Object> properties = new HashMap<Object, Object>();
+        for (Object key : synCtx.getPropertyKeySet()) {
+            if (key instanceof String) {
+                properties.put(key, synCtx.getProperty((String) key));
+            }
+        }
+        writeProperties(out, properties);
+
+        if (synCtx instanceof Axis2MessageContext) {
+            org.apache.axis2.context.MessageContext axis2Ctx =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+            out.writeBoolean(axis2Ctx.isDoingREST());
+            writeProperties(out, axis2Ctx.getProperties());
+            Object headers = axis2Ctx.getProperty(
+                    org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+            writeProperties(out, headers instanceof Map ? (Map) headers : null);
+        } else {
+            out.writeBoolean(false);
+            writeProperties(out, null);
+            writeProperties(out, null);
+        }
+
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream(1024);
+        try {
+            synCtx.getEnvelope().serialize(envelope);
+        } catch (Exception e) {
+            throw new IOException("Error serializing the envelope of message : " +
+                    synCtx.getMessageID() + " : " + e.getMessage(), e);
+        }
+        out.writeInt(envelope.size());
+        envelope.writeTo(out);
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Create a new message context out of a serialized message
+     *
+     * @param data serialized message
+     * @param se   synapse environment the message context is created in
+     * @return the message context
+     * @throws IOException if the message cannot be deserialized
+     */
+    static MessageContext deserialize(byte[] data, SynapseEnvironment se) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported message format version : " + version);
+        }
+
+        MessageContext synCtx = se.createMessageContext();
+        synCtx.setMessageID(readString(in));
+        String address = readString(in);
+        if (address != null) {
+            synCtx.setTo(new EndpointReference(address));
+        }
+        address = readString(in);
+        if (address != null) {
+            synCtx.setReplyTo(new EndpointReference(address));
+        }
+        address = readString(in);
+        if (address != null) {
+            synCtx.setFaultTo(new EndpointReference(address));
+        }
+        synCtx.setWSAAction(readString(in));
+        synCtx.setSoapAction(readString(in));
+        synCtx.setDoingPOX(in.readBoolean());
+        synCtx.setDoingGET(in.readBoolean());
+
+        for (Map.Entry<String, Object> entry : readProperties(in).entrySet()) {
+            synCtx.setProperty(entry.getKey(), entry.getValue());
+        }
+
+        boolean doingREST = in.readBoolean();
+        Map<String, Object> axis2Properties = readProperties(in);
+        Map<String, Object> transportHeaders = readProperties(in);
+
+        byte[] envelope = new byte[in.readInt()];
+        in.readFully(envelope);
+        SOAPEnvelope soapEnvelope;
+        try {
+            soapEnvelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                    new ByteArrayInputStream(envelope), UTF8).getSOAPEnvelope();
+            soapEnvelope.build();
+            synCtx.setEnvelope(soapEnvelope);
+        } catch (Exception e) {
+            throw new IOException("Error building the envelope of message : " +
+                    synCtx.getMessageID() + " : " + e.getMessage(), e);
+        }
+
+        if (synCtx instanceof Axis2MessageContext) {
+            org.apache.axis2.context.MessageContext axis2Ctx =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+            axis2Ctx.setDoingREST(doingREST);
+            for (Map.Entry<String, Object> entry : axis2Properties.entrySet()) {
+                axis2Ctx.setProperty(entry.getKey(), entry.getValue());
+            }
+            if (!transportHeaders.isEmpty()) {
+                // transport headers are looked up case insensitively by the transports
+                Map<String, Object> headers =
+                        new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
+                headers.putAll(transportHeaders);
+                axis2Ctx.setProperty(
+                        org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS, headers);
+            }
+        }
+        return synCtx;
+    }
+
+    private static void writeProperties(DataOutputStream out, Map<?, ?> properties)
+            throws IOException {
+
+        if (properties == null) {
+            out.writeInt(0);
+            return;
+        }
+
+        Map<String, Object> simple = new HashMap<String, Object>();
+        for (Map.Entry<?, ?> entry : properties.entrySet()) {
+            Object value = entry.getValue();
+            if (entry.getKey() instanceof String && (value instanceof String ||
+                    value instanceof Boolean || value instanceof Integer ||
+                    value instanceof Long || value instanceof Double || value instanceof Float)) {
+                simple.put((String) entry.getKey(), value);
+            } else if (log.isTraceEnabled()) {
+                log.trace("Property " + entry.getKey() + " is not persisted");
+            }
+        }
+
+        out.writeInt(simple.size());
+        for (Map.Entry<String, Object> entry : simple.entrySet()) {
+            writeString(out, entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                out.writeByte(TYPE_STRING);
+                writeString(out, (String) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TYPE_INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble((Double) value);
+            } else {
+                out.writeByte(TYPE_FLOAT);
+                out.writeFloat((Float) value);
+            }
+        }
+    }
+
+    private static Map<String, Object> readProperties(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, Object> properties = new HashMap<String, Object>();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            byte type = in.readByte();
+            switch (type) {
+                case TYPE_STRING:
+                    properties.put(key, readString(in));
+                    break;
+                case TYPE_BOOLEAN:
+                    properties.put(key, in.readBoolean());
+                    break;
+                case TYPE_INTEGER:
+                    properties.put(key, in.readInt());
+                    break;
+                case TYPE_LONG:
+                    properties.put(key, in.readLong());
+                    break;
+                case TYPE_DOUBLE:
+                    properties.put(key, in.readDouble());
+                    break;
+                case TYPE_FLOAT:
+                    properties.put(key, in.readFloat());
+                    break;
+                default:
+                    throw new IOException("Unknown property type : " + type);
+            }
+        }
+        return properties;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -27,18 +27,55 @@ import org.apache.synapse.config.XMLToObjectMapper;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.mediators.base.SequenceMediator;
 
+import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements the core Registry lookup algorithm
+ * <p/>
+ * Unless the <code>cacheRefreshAhead</code> property is set to false, cached remote entries are
+ * refreshed in the background once 80% of their cachable duration has elapsed, so that requests
+ * do not have to wait for the registry when an entry expires. Only entries which have been
+ * requested since they were last loaded are refreshed, idle entries are left to expire and are
+ * loaded again by the next request. A request for an entry which has expired anyway, for
+ * example because the registry was not reachable, is served the last good value while the
+ * entry is refreshed in the background. Concurrent loads of the same entry are coalesced into a
+ * single registry lookup.
  */
 public abstract class AbstractRegistry implements Registry {
 
     private static final Log log = LogFactory.getLog(AbstractRegistry.class);
 
+    /** Registry property to turn off the background refreshing of cached entries */
+    public static final String CACHE_REFRESH_AHEAD = "cacheRefreshAhead";
+
+    private static final ScheduledExecutorService refreshScheduler =
+            Executors.newScheduledThreadPool(2, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "registry-cache-refresher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
     /** The list of configuration properties */
     protected final Properties properties = new Properties();
 
+    /** Entries with a pending background refresh, weakly held to let removed entries go */
+    private final Set<Entry> refreshPending =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Entry, Boolean>()));
+
+    /** Entries which were not refreshed ahead of expiry, as nobody requested them */
+    private final Set<Entry> idleEntries =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Entry, Boolean>()));
+
     /**
      * Get the resource for the given key from this registry
      * @param entry The Entry instance that contains meta-data
@@ -47,6 +84,136 @@ public abstract class AbstractRegistry implements Registry {
      */
     public Object getResource(Entry entry, Properties properties) {
 
+        // if we have an unexpired cached copy, return the cached object
+        if (entry.isCached() && !entry.isExpired()) {
+            return entry.getValue();
+        }
+
+        boolean refreshAhead = isRefreshAhead();
+        boolean idle = idleEntries.remove(entry);
+        if (refreshAhead && entry.isCached() && !idle) {
+            // serve the last good value while the entry is refreshed in the background
+            Object lastGoodValue = entry.getValue();
+            scheduleRefresh(entry, properties, 0);
+            return lastGoodValue;
+        }
+
+        Object value;
+        synchronized (entry) {
+            // another thread may have loaded the entry while we were waiting
+            if (entry.isCached() && !entry.isExpired()) {
+                return entry.getValue();
+            }
+            try {
+                value = fetchResource(entry, properties);
+            } catch (RuntimeException e) {
+                if (!idle) {
+                    throw e;
+                }
+                log.warn("Error while reloading the expired resource " + entry.getKey() +
+                        " from the registry. Previously cached value will be used", e);
+                return entry.getValue();
+            }
+            // reads made while loading the entry do not count as requests for it
+            entry.clearAccessed();
+        }
+        if (refreshAhead) {
+            scheduleRefreshAhead(entry, properties);
+        }
+        return value;
+    }
+
+    private boolean isRefreshAhead() {
+        return !"false".equals(properties.getProperty(CACHE_REFRESH_AHEAD));
+    }
+
+    /**
+     * Schedule the background refresh of a remote entry before its cache lease expires
+     *
+     * @param entry      cached entry
+     * @param properties properties used to build the resource
+     */
+    private void scheduleRefreshAhead(Entry entry, Properties properties) {
+        if (entry.isRemote() && entry.isCached() && entry.getExpiryTime() > 0) {
+            long remaining = entry.getExpiryTime() - System.currentTimeMillis();
+            scheduleRefresh(entry, properties, Math.max(0, remaining - remaining / 5));
+        }
+    }
+
+    private void scheduleRefresh(Entry entry, Properties properties, long delay) {
+        if (refreshPending.add(entry)) {
+            if (log.isDebugEnabled()) {
+                log.debug("Scheduling the refresh of the cached resource : " + entry.getKey() +
+                        " in " + delay + "ms");
+            }
+            refreshScheduler.schedule(new RefreshTask(entry, properties), delay,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Refreshes a cached entry, keeping the cached value if the registry cannot be reached
+     */
+    private class RefreshTask implements Runnable {
+
+        private final WeakReference<Entry> entryRef;
+        private final Properties properties;
+
+        RefreshTask(Entry entry, Properties properties) {
+            this.entryRef = new WeakReference<Entry>(entry);
+            this.properties = properties;
+        }
+
+        public void run() {
+            Entry entry = entryRef.get();
+            if (entry == null) {
+                return;
+            }
+            boolean refreshed = false;
+            try {
+                if (!entry.clearAccessed()) {
+                    // nobody requested the entry since it was loaded, let its lease run out
+                    if (log.isDebugEnabled()) {
+                        log.debug("Cached resource : " + entry.getKey() + " is idle and will " +
+                                "not be refreshed");
+                    }
+                    idleEntries.add(entry);
+                    return;
+                }
+                synchronized (entry) {
+                    long expiryTime = entry.getExpiryTime();
+                    // make sure the lease is seen as expired so that the registry is checked
+                    entry.setExpiryTime(1);
+                    try {
+                        refreshed = fetchResource(entry, properties) != null;
+                        entry.clearAccessed();
+                    } finally {
+                        if (!refreshed) {
+                            entry.setExpiryTime(expiryTime);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Error while refreshing the resource " + entry.getKey() + " from the " +
+                        "registry. Previously cached value will be used", e);
+            } finally {
+                refreshPending.remove(entry);
+            }
+            if (refreshed) {
+                scheduleRefreshAhead(entry, properties);
+            }
+        }
+    }
+
+    /**
+     * Fetch a resource which is not cached or whose cache lease has expired from the registry
+     *
+     * @param entry      the Entry instance that contains meta-data
+     * @param properties bag of properties with additional information
+     * @return the matching resultant object
+     */
+    private Object fetchResource(Entry entry, Properties properties) {
+
         OMNode omNode = null;
         RegistryEntry re = null;
 
@@ -42,17 +42,23 @@ import org.apache.synapse.aspects.statistics.ErrorLog;
 import org.apache.synapse.aspects.statistics.StatisticsLog;
 import org.apache.synapse.aspects.statistics.StatisticsRecord;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.endpoints.CircuitBreaker;
+import org.apache.synapse.endpoints.RequestHedging;
+import org.apache.synapse.endpoints.algorithms.LoadAwareAlgorithm;
 import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.synapse.mediators.template.TemplateContext;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.Pipe;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.TreeMap;
 
@@ -65,6 +71,14 @@ public class MessageHelper {
 
     private static Log log = LogFactory.getLog(MessageHelper.class);
 
+    /**
+     * Properties recording the requests a message has in flight. They belong to the message
+     * which was sent and are never copied to its clones.
+     */
+    private static final Set<String> IN_FLIGHT_PROPERTIES = new HashSet<String>(Arrays.asList(
+            LoadAwareAlgorithm.OUTSTANDING_REQUESTS, CircuitBreaker.CIRCUIT_BREAKER_CALLS,
+            RequestHedging.HEDGED_REQUEST));
+
     /**
      * This method will simulate cloning the message context and creating an exact copy of the
      * passed message. One should use this method with care; that is because, inside the new MC,
@@ -80,13 +94,28 @@ public class MessageHelper {
      * @see MessageHelper#cloneAxis2MessageContext 
      */
     public static MessageContext cloneMessageContext(MessageContext synCtx) throws AxisFault {
+        return cloneMessageContext(synCtx, true);
+    }
+
+    /**
+     * Clone the message context, optionally without its envelope. A clone without the envelope
+     * is cheap to take, and the caller gives it an envelope before it is used.
+     *
+     * @param synCtx        this will be cloned
+     * @param cloneEnvelope whether the envelope is cloned, or left out of the clone
+     * @return cloned Synapse MessageContext
+     * @throws AxisFault if there is a failure in creating the new Synapse MC or in a failure in
+     *          cloning the underlying axis2 MessageContext
+     */
+    public static MessageContext cloneMessageContext(MessageContext synCtx, boolean cloneEnvelope)
+            throws AxisFault {
 
         // creates the new MessageContext and clone the internal axis2 MessageContext
         // inside the synapse message context and place that in the new one
         MessageContext newCtx = synCtx.getEnvironment().createMessageContext();
         Axis2MessageContext axis2MC = (Axis2MessageContext) newCtx;
-        axis2MC.setAxis2MessageContext(
-            cloneAxis2MessageContext(((Axis2MessageContext) synCtx).getAxis2MessageContext()));
+        axis2MC.setAxis2MessageContext(cloneAxis2MessageContext(
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext(), cloneEnvelope));
 
         newCtx.setConfiguration(synCtx.getConfiguration());
         newCtx.setEnvironment(synCtx.getEnvironment());
@@ -107,6 +136,9 @@ public class MessageHelper {
         // copy all the synapse level properties to the newCtx
         for (Object o : synCtx.getPropertyKeySet()) {
             String key = (String) o;                    // MessageContext API enforce key to be a String
+            if (IN_FLIGHT_PROPERTIES.contains(key)) {
+                continue;
+            }
             Object obj = synCtx.getProperty(key);
             if (obj instanceof String || obj instanceof Integer) {  // For immutable
                 // Do nothing
@@ -167,9 +199,16 @@ public class MessageHelper {
      */
     public static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
         org.apache.axis2.context.MessageContext mc) throws AxisFault {
+        return cloneAxis2MessageContext(mc, true);
+    }
+
+    private static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
+        org.apache.axis2.context.MessageContext mc, boolean cloneEnvelope) throws AxisFault {
 
         org.apache.axis2.context.MessageContext newMC = clonePartially(mc);
-        newMC.setEnvelope(cloneSOAPEnvelope(mc.getEnvelope()));
+        if (cloneEnvelope) {
+            newMC.setEnvelope(cloneSOAPEnvelope(mc.getEnvelope()));
+        }
         newMC.setOptions(cloneOptions(mc.getOptions()));
         
         newMC.setServiceContext(mc.getServiceContext());
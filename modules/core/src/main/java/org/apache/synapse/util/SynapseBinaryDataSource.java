@@ -29,6 +29,12 @@ import java.io.OutputStream;
 
 /**
  * DataSource which will be used to pass the Hessian messages in to SOAP body within axis2/synapse
+ * <p/>
+ * A data source created with {@link #createStreamed(InputStream, String, SynapseEnvironment)}
+ * does not read the message until it is needed. If the message is only written out using
+ * {@link #writeTo(OutputStream)}, it is copied straight from the source stream without being
+ * kept in memory or in a temp file. The message is buffered as soon as it is read in any other
+ * way, so that it can be read any number of times after that.
  *
  * @see javax.activation.DataSource
  */
@@ -40,6 +46,15 @@ public class SynapseBinaryDataSource implements DataSource {
     /** Hessian message is kept inside the DataSource as a byte array */
     private OverflowBlob data;
 
+    /** Stream the message is read from, until it is buffered or written out */
+    private InputStream source;
+
+    /** Used to create the buffer, if the message is read from a stream lazily */
+    private SynapseEnvironment synEnv;
+
+    /** Whether the message has been written out from the source stream without buffering it */
+    private boolean consumed = false;
+
     /**
      * Constructs the HessianDataSource from the given InputStream. Inside the HessianDataSource,
      * data is stored in a byte[] or in a temp file format inorder to be able to get the stream any
@@ -68,11 +83,33 @@ public class SynapseBinaryDataSource implements DataSource {
         inputstream.close();
     }
 
+    private SynapseBinaryDataSource(String contentType, InputStream source,
+                                    SynapseEnvironment synEnv) {
+        this.contentType = contentType;
+        this.source = source;
+        this.synEnv = synEnv;
+    }
+
+    /**
+     * Creates a data source which reads the message from the given stream only when it is needed
+     *
+     * @param inputstream contains the Hessian message, it is closed once the message is read
+     * @param contentType message content type
+     * @param synEnv      used to create the buffer if the message has to be buffered, or null
+     * @return the data source backed by the given stream
+     */
+    public static SynapseBinaryDataSource createStreamed(InputStream inputstream,
+                                                         String contentType,
+                                                         SynapseEnvironment synEnv) {
+        return new SynapseBinaryDataSource(contentType, inputstream, synEnv);
+    }
+
     public String getContentType() {
         return contentType;
     }
 
-    public InputStream getInputStream() throws IOException {
+    public synchronized InputStream getInputStream() throws IOException {
+        buffer();
         return data.getInputStream();
     }
 
@@ -80,8 +117,66 @@ public class SynapseBinaryDataSource implements DataSource {
         return this.getClass().getName();
     }
 
-    public OutputStream getOutputStream() throws IOException {
+    public synchronized OutputStream getOutputStream() throws IOException {
+        buffer();
         return data.getOutputStream();
     }
 
+    /**
+     * Writes the message to the given stream. A message which has not been buffered yet is
+     * copied from the source stream, and cannot be read again after that.
+     *
+     * @param out stream to write the message to
+     * @throws IOException failure in reading or writing the message
+     */
+    public synchronized void writeTo(OutputStream out) throws IOException {
+        if (data != null) {
+            data.writeTo(out);
+            return;
+        }
+        checkConsumed();
+        consumed = true;
+        try {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = source.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            source.close();
+            source = null;
+        }
+    }
+
+    /**
+     * Checks whether the message has been read into the buffer of this data source
+     *
+     * @return true if the message can be read any number of times
+     */
+    public synchronized boolean isBuffered() {
+        return data != null;
+    }
+
+    private void buffer() throws IOException {
+        if (data != null) {
+            return;
+        }
+        checkConsumed();
+        OverflowBlob blob = synEnv != null ?
+                synEnv.createOverflowBlob() : new OverflowBlob(4, 1024, "tmp_", ".dat");
+        try {
+            blob.readFrom(source, -1);
+        } finally {
+            source.close();
+            source = null;
+        }
+        data = blob;
+    }
+
+    private void checkConsumed() throws IOException {
+        if (consumed) {
+            throw new IOException("The message has already been written out from the " +
+                    "source stream and was not buffered");
+        }
+    }
 }
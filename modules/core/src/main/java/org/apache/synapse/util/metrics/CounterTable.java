@@ -0,0 +1,114 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.util.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts occurrences of int codes, such as error codes or HTTP status codes, without locking
+ * or allocating on update. Codes are kept in a fixed size open addressing table which is filled
+ * in using compare-and-set, so the small set of codes seen in practice are counted in place.
+ * Codes which do not fit in the table any more are counted in a synchronized map.
+ */
+public class CounterTable {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final AtomicIntegerArray keys;
+    private final AtomicLongArray counts;
+    private final int mask;
+    private final Map<Integer, Long> overflow = new HashMap<Integer, Long>();
+
+    public CounterTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a table holding up to the given number of codes in place
+     *
+     * @param capacity number of codes counted without locking, rounded up to a power of two
+     */
+    public CounterTable(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        keys = new AtomicIntegerArray(size);
+        counts = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            keys.set(i, EMPTY);
+        }
+    }
+
+    public void increment(int code) {
+        if (code != EMPTY) {
+            int index = (code * 0x9E3779B9 >>> 16) & mask;
+            for (int i = 0; i <= mask; i++) {
+                int key = keys.get(index);
+                if (key == code || (key == EMPTY &&
+                        (keys.compareAndSet(index, EMPTY, code) || keys.get(index) == code))) {
+                    counts.incrementAndGet(index);
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        synchronized (overflow) {
+            Long count = overflow.get(code);
+            overflow.put(code, count == null ? 1L : count + 1);
+        }
+    }
+
+    /**
+     * Take a copy of the counts
+     *
+     * @return a new map of the codes seen since the table was last cleared, and their counts
+     */
+    public Map<Integer, Long> snapshot() {
+        Map<Integer, Long> snapshot = new HashMap<Integer, Long>();
+        for (int i = 0; i <= mask; i++) {
+            int key = keys.get(i);
+            long count = counts.get(i);
+            if (key != EMPTY && count > 0) {
+                snapshot.put(key, count);
+            }
+        }
+        synchronized (overflow) {
+            snapshot.putAll(overflow);
+        }
+        return snapshot;
+    }
+
+    public void clear() {
+        // codes keep their slots, only the counts are reset
+        for (int i = 0; i <= mask; i++) {
+            counts.set(i, 0);
+        }
+        synchronized (overflow) {
+            overflow.clear();
+        }
+    }
+}
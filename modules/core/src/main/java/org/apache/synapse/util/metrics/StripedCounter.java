@@ -0,0 +1,82 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which is cheap to update from many threads at once. The count is spread over a
+ * number of cells, each on its own cache line, and a thread always updates the cell picked by
+ * its id, so that threads updating the counter concurrently rarely touch the same cell. Reading
+ * the counter sums up the cells, which is more expensive than updating it and meant for
+ * counters that are updated far more often than they are read, such as statistics.
+ */
+public class StripedCounter {
+
+    /** Number of longs per cell, so that two cells never share a cache line */
+    private static final int PADDING = 8;
+
+    private static final int CELLS;
+
+    static {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int cells = 1;
+        while (cells < cpus * 2 && cells < 64) {
+            cells <<= 1;
+        }
+        CELLS = cells;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * PADDING);
+
+    public void increment() {
+        cells.incrementAndGet(index());
+    }
+
+    public void add(long value) {
+        cells.addAndGet(index(), value);
+    }
+
+    /**
+     * Get the current value of the counter. Updates made while the cells are summed up may or
+     * may not be included.
+     *
+     * @return sum of all the updates since the counter was created or last reset
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < CELLS; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    private static int index() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (CELLS - 1)) * PADDING;
+    }
+}
@@ -30,9 +30,19 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.xml.XMLConfigConstants;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.mediators.GetPropertyFunction;
 import org.jaxen.*;
+import org.jaxen.expr.DefaultExpr;
+import org.jaxen.expr.Expr;
+import org.jaxen.expr.FunctionCallExpr;
+import org.jaxen.expr.LiteralExpr;
+import org.jaxen.expr.VariableReferenceExpr;
 import org.jaxen.util.SingletonList;
 
+import java.io.Serializable;
+
 import java.util.*;
 
 /**
@@ -70,6 +80,13 @@ import java.util.*;
  * <code>MessageContext</code> and <code>SOAPEnvelope</code> as well as a method to retrieve
  * string values of the evaluated XPaths</p>
  *
+ * <p>Expressions which consist of nothing but a <code>get-property</code> call with literal
+ * arguments, or a <code>$ctx</code>, <code>$axis2</code> or <code>$trp</code> variable, are
+ * recognized when the XPath is created and evaluated against a <code>MessageContext</code> by
+ * looking up the property directly, without going through Jaxen. Other expressions evaluated
+ * against a <code>MessageContext</code> reuse the evaluation context of the current thread
+ * instead of creating a new one for every evaluation.</p>
+ *
  * @see org.apache.axiom.om.xpath.AXIOMXPath
  * @see #getContext(Object)
  * @see org.apache.synapse.util.xpath.SynapseXPathFunctionContext
@@ -83,6 +100,17 @@ public class SynapseXPath extends AXIOMXPath {
 
     private boolean contentAware;
 
+    /**
+     * Direct accessor for the property the expression refers to, or null if the expression
+     * is not a simple property lookup
+     */
+    private PropertyAccessor propertyAccessor;
+
+    /**
+     * Evaluation contexts reused by the evaluations against messages on each thread
+     */
+    private transient ThreadLocal<EvaluationContext> evaluationContexts;
+
     /**
      * <p>Initializes the <code>SynapseXPath</code> with the given <code>xpathString</code> as the
      * XPath</p>
@@ -107,6 +135,7 @@ public class SynapseXPath extends AXIOMXPath {
                 xpathString.contains("$axis2")) {
             contentAware = false;
         }
+        propertyAccessor = createPropertyAccessor(getRootExpr());
     }
 
     /**
@@ -122,6 +151,7 @@ public class SynapseXPath extends AXIOMXPath {
      */
     public SynapseXPath(OMElement element, String xpathExpr) throws JaxenException {
         super(element, xpathExpr);
+        propertyAccessor = createPropertyAccessor(getRootExpr());
     }
 
     /**
@@ -136,6 +166,7 @@ public class SynapseXPath extends AXIOMXPath {
      */
     public SynapseXPath(OMAttribute attribute) throws JaxenException {
         super(attribute);
+        propertyAccessor = createPropertyAccessor(getRootExpr());
     }
 
     public static SynapseXPath parseXPathString(String xPathStr) throws JaxenException {
@@ -302,6 +333,11 @@ public class SynapseXPath extends AXIOMXPath {
         if (obj instanceof MessageContext) {
             MessageContext synCtx = (MessageContext)obj;
             ContextSupport baseContextSupport = getContextSupport();
+            EvaluationContext evaluationContext = getEvaluationContext();
+            if (!evaluationContext.isInUse()) {
+                return evaluationContext.acquire(baseContextSupport, synCtx);
+            }
+            // a nested evaluation of this XPath on the same thread, use a context of its own
             ContextSupport contextSupport =
                 new ContextSupport(baseContextSupport.getNamespaceContext(),
                                    new SynapseXPathFunctionContext(baseContextSupport.getFunctionContext(), synCtx),
@@ -338,15 +374,240 @@ public class SynapseXPath extends AXIOMXPath {
         }
     }
 
+    /**
+     * Evaluates the expression in the given context. If the context was created for a
+     * <code>MessageContext</code> by {@link #getContext(Object)} and the expression is a
+     * simple property lookup, the property is looked up directly. The reused evaluation
+     * context of the thread is released once the evaluation completes.
+     *
+     * @param context the context created by {@link #getContext(Object)}
+     * @return the result of the evaluation as a list
+     * @throws JaxenException in case of an evaluation failure
+     */
+    @Override
+    protected List selectNodesForContext(Context context) throws JaxenException {
+        EvaluationContext evaluationContext = getEvaluationContext();
+        if (!evaluationContext.isAcquiredFor(context)) {
+            return super.selectNodesForContext(context);
+        }
+
+        try {
+            if (propertyAccessor != null) {
+                Object value = propertyAccessor.getValue(
+                        evaluationContext.getMessageContext(), context);
+                if (value != PropertyAccessor.UNRESOLVED) {
+                    return DefaultExpr.convertToList(value);
+                }
+            }
+            return super.selectNodesForContext(context);
+        } finally {
+            evaluationContext.release();
+        }
+    }
+
     public boolean isContentAware() {
         return contentAware;
     }
 
+    private EvaluationContext getEvaluationContext() {
+        ThreadLocal<EvaluationContext> contexts = evaluationContexts;
+        if (contexts == null) {
+            contexts = new ThreadLocal<EvaluationContext>() {
+                protected EvaluationContext initialValue() {
+                    return new EvaluationContext();
+                }
+            };
+            evaluationContexts = contexts;
+        }
+        return contexts.get();
+    }
+
+    /**
+     * Creates a direct accessor for expressions which only look up a property, i.e. a
+     * <code>get-property</code> call with literal arguments or a <code>$ctx</code>,
+     * <code>$axis2</code> or <code>$trp</code> variable
+     *
+     * @param expr the root expression of the XPath
+     * @return the accessor or null if the expression is not a simple property lookup
+     */
+    private static PropertyAccessor createPropertyAccessor(Expr expr) {
+        if (expr instanceof FunctionCallExpr) {
+            FunctionCallExpr function = (FunctionCallExpr) expr;
+            if ((function.getPrefix() != null && function.getPrefix().length() > 0) ||
+                    !SynapseXPathConstants.GET_PROPERTY_FUNCTION.equals(
+                            function.getFunctionName())) {
+                return null;
+            }
+
+            List params = function.getParameters();
+            String[] args = new String[params.size()];
+            for (int i = 0; i < args.length; i++) {
+                if (!(params.get(i) instanceof LiteralExpr)) {
+                    return null;
+                }
+                args[i] = ((LiteralExpr) params.get(i)).getLiteral();
+            }
+
+            if (args.length == 1) {
+                return new PropertyAccessor(XMLConfigConstants.SCOPE_DEFAULT, args[0], null);
+            } else if (args.length == 2) {
+                if (GetPropertyFunction.isScope(args[0])) {
+                    return new PropertyAccessor(args[0], args[1], null);
+                }
+                return new PropertyAccessor(XMLConfigConstants.SCOPE_DEFAULT, args[0], args[1]);
+            } else if (args.length == 3) {
+                return new PropertyAccessor(args[0], args[1], args[2]);
+            }
+
+        } else if (expr instanceof VariableReferenceExpr) {
+            VariableReferenceExpr variable = (VariableReferenceExpr) expr;
+            String prefix = variable.getPrefix();
+            String name = variable.getVariableName();
+            // $body and $header refer to the SOAP body and header whatever their prefix is
+            if (SynapseXPathConstants.SOAP_BODY_VARIABLE.equals(name) ||
+                    SynapseXPathConstants.SOAP_HEADER_VARIABLE.equals(name)) {
+                return null;
+            }
+            if (SynapseXPathConstants.MESSAGE_CONTEXT_VARIABLE_PREFIX.equals(prefix) ||
+                    SynapseXPathConstants.AXIS2_CONTEXT_VARIABLE_PREFIX.equals(prefix) ||
+                    SynapseXPathConstants.TRANSPORT_VARIABLE_PREFIX.equals(prefix)) {
+                return new PropertyAccessor(prefix, name);
+            }
+        }
+        return null;
+    }
+
     private void handleException(String msg, Throwable e) {
         log.error(msg, e);
         throw new SynapseException(msg, e);
     }
 
+    /**
+     * Looks up the property referred to by a simple property expression, returning the same
+     * value the evaluation of the expression by Jaxen would return
+     */
+    private static class PropertyAccessor implements Serializable {
+
+        private static final long serialVersionUID = -4620563279102367411L;
+
+        /** Returned when the property cannot be looked up directly */
+        static final Object UNRESOLVED = new Object();
+
+        private final String scope;
+        private final String key;
+        private final String dateFormat;
+        private final String variablePrefix;
+
+        /**
+         * Accessor for a <code>get-property(scope, key, dateFormat)</code> call
+         */
+        PropertyAccessor(String scope, String key, String dateFormat) {
+            this.scope = scope;
+            this.key = key;
+            this.dateFormat = dateFormat;
+            this.variablePrefix = null;
+        }
+
+        /**
+         * Accessor for a <code>$prefix:key</code> variable
+         */
+        PropertyAccessor(String variablePrefix, String key) {
+            this.scope = null;
+            this.key = key;
+            this.dateFormat = null;
+            this.variablePrefix = variablePrefix;
+        }
+
+        Object getValue(MessageContext synCtx, Context context) {
+            if (variablePrefix == null) {
+                return new GetPropertyFunction(synCtx).evaluate(scope, key, dateFormat);
+            }
+
+            // a prefix mapped to a namespace no longer refers to the Synapse variables
+            if (context.translateNamespacePrefixToUri(variablePrefix) != null) {
+                return UNRESOLVED;
+            }
+            if (SynapseXPathConstants.MESSAGE_CONTEXT_VARIABLE_PREFIX.equals(variablePrefix)) {
+                return synCtx.getProperty(key);
+            } else if (!(synCtx instanceof Axis2MessageContext)) {
+                return UNRESOLVED;
+            }
+
+            org.apache.axis2.context.MessageContext axis2MessageContext =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+            if (SynapseXPathConstants.AXIS2_CONTEXT_VARIABLE_PREFIX.equals(variablePrefix)) {
+                return axis2MessageContext.getProperty(key);
+            }
+            Object headers = axis2MessageContext.getProperty(
+                    org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
+            if (headers instanceof Map) {
+                return ((Map) headers).get(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Evaluation context for messages which is reused by the evaluations of an XPath on one
+     * thread. The context is acquired when an evaluation starts and released when it completes,
+     * so that an evaluation of the same XPath nested in another one gets a context of its own.
+     */
+    private static class EvaluationContext {
+
+        private FunctionContext functionContextParent;
+        private VariableContext variableContextParent;
+        private SynapseXPathFunctionContext functionContext;
+        private SynapseXPathVariableContext variableContext;
+        private ContextSupport contextSupport;
+
+        private MessageContext synCtx;
+        private Context context;
+
+        boolean isInUse() {
+            return context != null;
+        }
+
+        boolean isAcquiredFor(Context context) {
+            return context != null && this.context == context;
+        }
+
+        MessageContext getMessageContext() {
+            return synCtx;
+        }
+
+        Context acquire(ContextSupport baseContextSupport, MessageContext synCtx) {
+            if (contextSupport == null ||
+                    functionContextParent != baseContextSupport.getFunctionContext() ||
+                    variableContextParent != baseContextSupport.getVariableContext() ||
+                    contextSupport.getNavigator() != baseContextSupport.getNavigator()) {
+
+                functionContextParent = baseContextSupport.getFunctionContext();
+                variableContextParent = baseContextSupport.getVariableContext();
+                functionContext = new SynapseXPathFunctionContext(functionContextParent, synCtx);
+                variableContext = new SynapseXPathVariableContext(variableContextParent, synCtx);
+                contextSupport = new ContextSupport(baseContextSupport.getNamespaceContext(),
+                        functionContext, variableContext, baseContextSupport.getNavigator());
+            } else {
+                functionContext.setMessageContext(synCtx);
+                variableContext.setContext(synCtx, synCtx.getEnvelope());
+                contextSupport.setNamespaceContext(baseContextSupport.getNamespaceContext());
+            }
+
+            this.synCtx = synCtx;
+            context = new Context(contextSupport);
+            context.setNodeSet(new SingletonList(synCtx.getEnvelope()));
+            return context;
+        }
+
+        void release() {
+            // do not hold on to the message after the evaluation
+            functionContext.setMessageContext(null);
+            variableContext.setContext(null, null);
+            synCtx = null;
+            context = null;
+        }
+    }
+
     /**
      * This is a wrapper class used to inject both envelope and message contexts for xpath
      * We use this to resolve function scope xpath variables
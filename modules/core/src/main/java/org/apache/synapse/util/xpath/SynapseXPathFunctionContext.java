@@ -42,7 +42,7 @@ public class SynapseXPathFunctionContext implements FunctionContext {
     private final FunctionContext parent;
     
     /** MessageContext to be used by the function resolver */
-    private final MessageContext synCtx;
+    private MessageContext synCtx;
 
     /**
      * <p>Initialises the function context</p>
@@ -57,6 +57,16 @@ public class SynapseXPathFunctionContext implements FunctionContext {
         this.synCtx = synCtx;
     }
 
+    /**
+     * Resets the context to resolve functions against another message, so that the context
+     * can be reused by the evaluations of an XPath on the same thread
+     *
+     * @param synCtx message to be used by the functions, or null to clear the context
+     */
+    void setMessageContext(MessageContext synCtx) {
+        this.synCtx = synCtx;
+    }
+
     /**
      * Get the function with a given namespace and name.
      * <p>
@@ -59,10 +59,10 @@ public class SynapseXPathVariableContext implements VariableContext {
     private final VariableContext parent;
 
     /** MessageContext to be used for the variable resolution */
-    private final MessageContext synCtx;
+    private MessageContext synCtx;
 
     /** SOAPEnvelope to be used for the variable resolution */
-    private final SOAPEnvelope env;
+    private SOAPEnvelope env;
 
     /**
      * <p>Initializes the <code>SynapseVariableContext</code> with the specified context</p>
@@ -101,6 +101,18 @@ public class SynapseXPathVariableContext implements VariableContext {
         this.env = env;
     }
 
+    /**
+     * Resets the context to resolve variables against another message, so that the context
+     * can be reused by the evaluations of an XPath on the same thread
+     *
+     * @param synCtx message to be used for the variable resolution, or null to clear the context
+     * @param env envelope to be used for the variable resolution
+     */
+    void setContext(MessageContext synCtx, SOAPEnvelope env) {
+        this.synCtx = synCtx;
+        this.env = env;
+    }
+
     /**
      * Gets the variable values resolved from the context. This includes the
      * <dl>
@@ -136,5 +136,26 @@ public class CalloutMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, calloutMediatorSerializer));
     }
 
-}
+    public void testCalloutMediatorSerializationScenarioNine() {
+        String inputXml = "<callout xmlns=\"http://ws.apache.org/ns/synapse\" " +
+                          "serviceURL=\"http://localhost:9000/services/SimpleStockQuoteService\" " +
+                          "onComplete=\"quoteReceived\"><target key=\"quote\"/></callout>";
+        assertTrue(serialization(inputXml, calloutMediatorFactory, calloutMediatorSerializer));
+        assertTrue(serialization(inputXml, calloutMediatorSerializer));
+    }
+
+    public void testParallelCalloutMediatorSerialization() {
+        String inputXml = "<parallelCallout xmlns=\"http://ws.apache.org/ns/synapse\" " +
+                          "onComplete=\"quotesReceived\">" +
+                          "<callout serviceURL=\"http://localhost:9000/services/A\">" +
+                          "<target key=\"a\"/></callout>" +
+                          "<callout serviceURL=\"http://localhost:9000/services/B\">" +
+                          "<target key=\"b\"/></callout>" +
+                          "</parallelCallout>";
+        ParallelCalloutMediatorFactory factory = new ParallelCalloutMediatorFactory();
+        ParallelCalloutMediatorSerializer serializer = new ParallelCalloutMediatorSerializer();
+        assertTrue(serialization(inputXml, factory, serializer));
+        assertTrue(serialization(inputXml, serializer));
+    }
 
+}
@@ -0,0 +1,160 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.config.xml;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.mediators.base.SequenceMediator;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Loads a generated artifact repository with a large number of artifacts, using a single thread
+ * and a pool of threads to parse the files, and checks that both build the same configuration.
+ * Setting the <code>synapse.benchmark</code> system property also times the loading of a larger
+ * repository, with the number of artifacts of each type given by the
+ * <code>synapse.config.benchmark.artifacts</code> system property, and logs it.
+ */
+public class MultiXMLConfigurationLoadingTest extends TestCase {
+
+    private static final Log log = LogFactory.getLog(MultiXMLConfigurationLoadingTest.class);
+
+    private static final int ARTIFACTS = 100;
+    private static final int ROUNDS = 3;
+
+    private File root;
+
+    protected void setUp() throws Exception {
+        root = File.createTempFile("synapse-config", "");
+        assertTrue(root.delete());
+        generateRepository(root, ARTIFACTS);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteDirectory(root);
+    }
+
+    public void testParallelLoading() throws Exception {
+        SynapseConfiguration sequential = load(1);
+        assertConfiguration(sequential);
+
+        SynapseConfiguration parallel = load(4);
+        assertConfiguration(parallel);
+        assertEquals(sequential.getDefinedSequences().keySet(),
+                parallel.getDefinedSequences().keySet());
+        assertEquals(sequential.getDefinedEndpoints().keySet(),
+                parallel.getDefinedEndpoints().keySet());
+        assertEquals(sequential.getLocalRegistry().keySet(), parallel.getLocalRegistry().keySet());
+    }
+
+    public void testInvalidArtifact() throws Exception {
+        FileUtils.writeStringToFile(new File(root, "sequences/broken.xml"), "<sequence");
+        // in fail-safe mode the broken artifact is skipped and the rest of the files are loaded
+        SynapseConfiguration config = load(4);
+        assertConfiguration(config);
+        assertEquals(ARTIFACTS, config.getDefinedSequences().size());
+    }
+
+    public void testBenchmark() throws Exception {
+        if (!Boolean.getBoolean("synapse.benchmark")) {
+            return;
+        }
+        int artifacts = Integer.getInteger("synapse.config.benchmark.artifacts", 1000);
+        File repository = File.createTempFile("synapse-config-benchmark", "");
+        assertTrue(repository.delete());
+        try {
+            generateRepository(repository, artifacts);
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+            // warm up so that class loading does not count against the first run
+            load(repository, 1);
+            load(repository, threads);
+
+            long sequential = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                load(repository, 1);
+                sequential = Math.min(sequential, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                load(repository, threads);
+                parallel = Math.min(parallel, System.nanoTime() - start);
+            }
+            log.info("Loaded " + (artifacts * 4) + " artifacts in " + (sequential / 1000000) +
+                    " ms using one thread and in " + (parallel / 1000000) + " ms using " +
+                    threads + " threads");
+        } finally {
+            FileUtils.deleteDirectory(repository);
+        }
+    }
+
+    private SynapseConfiguration load(int threads) {
+        return load(root, threads);
+    }
+
+    private SynapseConfiguration load(File repository, int threads) {
+        Properties properties = new Properties();
+        properties.setProperty(MultiXMLConfigurationBuilder.LOADER_THREADS,
+                String.valueOf(threads));
+        return MultiXMLConfigurationBuilder.getConfiguration(repository.getAbsolutePath(),
+                properties);
+    }
+
+    private void assertConfiguration(SynapseConfiguration config) {
+        assertEquals(ARTIFACTS, config.getDefinedEndpoints().size());
+        assertEquals(ARTIFACTS, config.getProxyServices().size());
+        for (int i = 0; i < ARTIFACTS; i++) {
+            SequenceMediator sequence = config.getDefinedSequences().get("sequence" + i);
+            assertNotNull(sequence);
+            assertEquals("sequence" + i + ".xml", sequence.getFileName());
+            assertNotNull(config.getEndpoint("endpoint" + i));
+            assertNotNull(config.getProxyService("proxy" + i));
+            assertEquals("value" + i, config.getEntry("entry" + i));
+        }
+    }
+
+    private void generateRepository(File root, int count) throws Exception {
+        String ns = "xmlns=\"http://ws.apache.org/ns/synapse\"";
+        for (int i = 0; i < count; i++) {
+            FileUtils.writeStringToFile(new File(root, "local-entries/entry" + i + ".xml"),
+                    "<localEntry " + ns + " key=\"entry" + i + "\">value" + i + "</localEntry>");
+            FileUtils.writeStringToFile(new File(root, "endpoints/endpoint" + i + ".xml"),
+                    "<endpoint " + ns + " name=\"endpoint" + i + "\">" +
+                    "<address uri=\"http://localhost:9000/services/Service" + i + "\">" +
+                    "<timeout><duration>30000</duration><responseAction>fault</responseAction>" +
+                    "</timeout></address></endpoint>");
+            FileUtils.writeStringToFile(new File(root, "sequences/sequence" + i + ".xml"),
+                    "<sequence " + ns + " name=\"sequence" + i + "\">" +
+                    "<log level=\"custom\"><property name=\"seq\" value=\"" + i + "\"/></log>" +
+                    "<property name=\"p" + i + "\" expression=\"//order/id\"/>" +
+                    "<filter xpath=\"//order[@type='" + i + "']\"><then>" +
+                    "<property name=\"matched\" value=\"true\"/></then></filter>" +
+                    "<send><endpoint key=\"endpoint" + i + "\"/></send></sequence>");
+            FileUtils.writeStringToFile(new File(root, "proxy-services/proxy" + i + ".xml"),
+                    "<proxy " + ns + " name=\"proxy" + i + "\" transports=\"http\">" +
+                    "<target inSequence=\"sequence" + i + "\">" +
+                    "<outSequence><send/></outSequence></target></proxy>");
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.config.xml;
+
+public class StageMediatorSerializationTest extends AbstractTestCase {
+
+    private StageMediatorFactory factory;
+    private StageMediatorSerializer serializer;
+
+    public StageMediatorSerializationTest() {
+        super(StageMediatorSerializationTest.class.getName());
+        factory = new StageMediatorFactory();
+        serializer = new StageMediatorSerializer();
+    }
+
+    public void testStageMediatorSerializationScenarioOne() throws Exception {
+        String inputXml = "<stage xmlns=\"http://ws.apache.org/ns/synapse\" name=\"s1\" " +
+                "sequence=\"foo\"><threads min=\"2\" max=\"20\"/>" +
+                "<queue size=\"500\" overflow=\"block\" timeout=\"1000\"/></stage>";
+        assertTrue(serialization(inputXml, factory, serializer));
+        assertTrue(serialization(inputXml, serializer));
+    }
+
+    public void testStageMediatorSerializationScenarioTwo() throws Exception {
+        String inputXml = "<stage xmlns=\"http://ws.apache.org/ns/synapse\" name=\"s1\" " +
+                "sequence=\"foo\"><threads min=\"1\" max=\"10\" targetLatency=\"50\"/>" +
+                "<queue size=\"100\" overflow=\"drop\"/></stage>";
+        assertTrue(serialization(inputXml, factory, serializer));
+        assertTrue(serialization(inputXml, serializer));
+    }
+
+    public void testStageMediatorSerializationScenarioThree() throws Exception {
+        String inputXml = "<stage xmlns=\"http://ws.apache.org/ns/synapse\" name=\"s1\" " +
+                "sequence=\"foo\"><threads min=\"4\" max=\"4\"/>" +
+                "<queue size=\"10\" overflow=\"divert\" sequence=\"bar\"/></stage>";
+        assertTrue(serialization(inputXml, factory, serializer));
+        assertTrue(serialization(inputXml, serializer));
+    }
+}
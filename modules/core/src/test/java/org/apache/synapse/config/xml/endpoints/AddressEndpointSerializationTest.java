@@ -120,4 +120,23 @@ public class AddressEndpointSerializationTest extends AbstractTestCase {
         // the generated name should not show up in the serialization
         assertTrue(compare(serializedOut,inputElement));
     }
+
+    public void testAddressEndpointScenarioSix() throws Exception {
+        String inputXML =
+                "<endpoint name=\"CircuitEp\" xmlns=\"http://ws.apache.org/ns/synapse\">" +
+                        "<address uri=\"http://localhost:9000/services/SimpleStockQuoteService\">" +
+                        "<circuitBreaker><window>30</window><minimumCalls>20</minimumCalls>" +
+                        "<failureRateThreshold>40</failureRateThreshold>" +
+                        "<slowCallDuration>2000</slowCallDuration>" +
+                        "<openDuration>10000</openDuration><halfOpenTrials>5</halfOpenTrials>" +
+                        "</circuitBreaker></address></endpoint>" ;
+
+        OMElement inputElement = createOMElement(inputXML);
+        AddressEndpoint endpoint = (AddressEndpoint) AddressEndpointFactory.getEndpointFromElement(
+                inputElement, true, null);
+        assertTrue(endpoint.getDefinition().isCircuitBreakerOn());
+        assertEquals(-1, endpoint.getDefinition().getCircuitBreakerSlowCallRateThreshold());
+        OMElement serializedOut = AddressEndpointSerializer.getElementFromEndpoint(endpoint);
+        assertTrue(compare(serializedOut,inputElement));
+    }
 }
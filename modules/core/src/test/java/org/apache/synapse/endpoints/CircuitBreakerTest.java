@@ -0,0 +1,261 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.context.OperationContext;
+import org.apache.axis2.description.InOutAxisOperation;
+import org.apache.axis2.description.TransportOutDescription;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.handlers.AbstractHandler;
+import org.apache.axis2.transport.TransportSender;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2FlexibleMEPClient;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+
+public class CircuitBreakerTest extends TestCase {
+
+    private EndpointDefinition definition;
+
+    protected void setUp() throws Exception {
+        definition = new EndpointDefinition();
+        definition.setCircuitBreakerOn(true);
+        definition.setCircuitBreakerMinimumCalls(4);
+        definition.setCircuitBreakerFailureRateThreshold(50);
+        definition.setCircuitBreakerOpenDuration(200);
+        definition.setCircuitBreakerHalfOpenTrials(2);
+    }
+
+    public void testFailureRate() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", definition, null);
+
+        // failures do not open the circuit until the minimum number of calls were made
+        assertTrue(call(breaker, false));
+        assertTrue(call(breaker, false));
+        assertTrue(call(breaker, true));
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        assertEquals(3, breaker.getCallCount());
+
+        assertTrue(call(breaker, true));
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        assertEquals(50.0, breaker.getFailureRate(), 0.001);
+        assertFalse(breaker.isCallPermitted());
+        assertFalse(breaker.begin(TestUtils.getTestContext("<test/>")));
+    }
+
+    public void testHalfOpen() throws Exception {
+        CircuitBreaker breaker = open(new CircuitBreaker("test", definition, null));
+
+        Thread.sleep(250);
+        assertTrue(breaker.isCallPermitted());
+
+        // only the configured number of trial calls are let through
+        MessageContext first = TestUtils.getTestContext("<test/>");
+        MessageContext second = TestUtils.getTestContext("<test/>");
+        assertTrue(breaker.begin(first));
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.begin(second));
+        assertFalse(breaker.isCallPermitted());
+        assertFalse(breaker.begin(TestUtils.getTestContext("<test/>")));
+
+        // the circuit closes when all the trial calls succeed
+        CircuitBreaker.complete(first, true);
+        assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+        CircuitBreaker.complete(second, true);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getCallCount());
+
+        // and opens again as soon as a trial call fails
+        open(breaker);
+        Thread.sleep(250);
+        MessageContext trial = TestUtils.getTestContext("<test/>");
+        assertTrue(breaker.begin(trial));
+        breaker.onFault(trial, true);
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    public void testSlowCalls() throws Exception {
+        definition.setCircuitBreakerFailureRateThreshold(100);
+        definition.setCircuitBreakerSlowCallDuration(20);
+        definition.setCircuitBreakerSlowCallRateThreshold(50);
+        CircuitBreaker breaker = new CircuitBreaker("test", definition, null);
+
+        for (int i = 0; i < 2; i++) {
+            call(breaker, false);
+        }
+        for (int i = 0; i < 2; i++) {
+            MessageContext synCtx = TestUtils.getTestContext("<test/>");
+            assertTrue(breaker.begin(synCtx));
+            Thread.sleep(30);
+            CircuitBreaker.complete(synCtx, true);
+        }
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        assertEquals(50.0, breaker.getSlowCallRate(), 0.001);
+        assertEquals(0.0, breaker.getFailureRate(), 0.001);
+    }
+
+    public void testConcurrentCalls() throws Exception {
+        definition.setCircuitBreakerMinimumCalls(100000);
+        final CircuitBreaker breaker = new CircuitBreaker("test", definition, null);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 1000; j++) {
+                            MessageContext synCtx = TestUtils.getTestContext("<test/>");
+                            breaker.begin(synCtx);
+                            CircuitBreaker.complete(synCtx, j % 4 != 0);
+                        }
+                    } catch (Exception e) {
+                        fail(e.getMessage());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000 * threads.length, breaker.getCallCount());
+        assertEquals(25.0, breaker.getFailureRate(), 0.001);
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+    }
+
+    public void testEndpoint() throws Exception {
+        ConfigurationContext configContext = new ConfigurationContext(new AxisConfiguration());
+        AddressEndpoint endpoint = new AddressEndpoint();
+        endpoint.setEnableMBeanStats(false);
+        endpoint.setName("circuit");
+        endpoint.setDefinition(definition);
+        endpoint.init(new Axis2SynapseEnvironment(configContext, new SynapseConfiguration()));
+
+        CircuitBreaker breaker = endpoint.getCircuitBreaker();
+        assertNotNull(breaker);
+        for (int i = 0; i < 4; i++) {
+            MessageContext synCtx = TestUtils.getTestContext("<test/>");
+            assertTrue(endpoint.readyToSend());
+            assertTrue(breaker.begin(synCtx));
+            synCtx.setProperty(SynapseConstants.ERROR_CODE,
+                    SynapseConstants.NHTTP_CONNECTION_FAILED);
+            endpoint.onFault(synCtx);
+        }
+        assertFalse(endpoint.readyToSend());
+        // the endpoint context is not used in circuit breaker mode
+        assertTrue(endpoint.getContext().isState(EndpointContext.ST_ACTIVE));
+
+        Thread.sleep(250);
+        assertTrue(endpoint.readyToSend());
+        endpoint.getContext().switchOff();
+        assertFalse(endpoint.readyToSend());
+        endpoint.destroy();
+    }
+
+    public void testOutOnlyCalls() throws Exception {
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        TransportOutDescription transportOut = new TransportOutDescription("test");
+        transportOut.setSender(new NullTransportSender());
+        axisConfig.addTransportOut(transportOut);
+        SynapseConfiguration config = new SynapseConfiguration();
+        config.setAxisConfiguration(axisConfig);
+        definition.setAddress("test://backend");
+        CircuitBreaker breaker = new CircuitBreaker("test", definition, null);
+
+        // an out only message gets no response, so its call succeeds once it is sent
+        for (int i = 0; i < 4; i++) {
+            assertTrue(sendOutOnly(breaker, config));
+        }
+        assertEquals(4, breaker.getCallCount());
+        assertTrue(call(breaker, true));
+        assertTrue(call(breaker, true));
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+
+        // and its trial calls close the circuit
+        open(breaker);
+        Thread.sleep(250);
+        assertTrue(sendOutOnly(breaker, config));
+        assertTrue(sendOutOnly(breaker, config));
+        assertEquals(CircuitBreaker.CLOSED, breaker.getState());
+    }
+
+    private boolean sendOutOnly(CircuitBreaker breaker, SynapseConfiguration config)
+            throws Exception {
+        MessageContext synCtx = TestUtils.createSynapseMessageContext("<test/>", config);
+        org.apache.axis2.context.MessageContext axisCtx =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        axisCtx.setConfigurationContext(((Axis2SynapseEnvironment) synCtx.getEnvironment()).
+                getAxis2ConfigurationContext());
+        axisCtx.setOperationContext(new OperationContext(new InOutAxisOperation(), null));
+        synCtx.setProperty(SynapseConstants.OUT_ONLY, "true");
+        if (!breaker.begin(synCtx)) {
+            return false;
+        }
+        Axis2FlexibleMEPClient.send(definition, synCtx);
+        return true;
+    }
+
+    private CircuitBreaker open(CircuitBreaker breaker) throws Exception {
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true);
+        }
+        assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    private boolean call(CircuitBreaker breaker, boolean failure) throws Exception {
+        MessageContext synCtx = TestUtils.getTestContext("<test/>");
+        if (!breaker.begin(synCtx)) {
+            return false;
+        }
+        if (failure) {
+            breaker.onFault(synCtx, true);
+        } else {
+            CircuitBreaker.complete(synCtx, true);
+        }
+        return true;
+    }
+
+    /**
+     * A transport sender which drops the messages
+     */
+    private static class NullTransportSender extends AbstractHandler implements TransportSender {
+
+        public void init(ConfigurationContext configContext, TransportOutDescription transportOut) {
+        }
+
+        public InvocationResponse invoke(org.apache.axis2.context.MessageContext msgContext) {
+            return InvocationResponse.CONTINUE;
+        }
+
+        public void cleanup(org.apache.axis2.context.MessageContext msgContext) {
+        }
+
+        public void stop() {
+        }
+    }
+}
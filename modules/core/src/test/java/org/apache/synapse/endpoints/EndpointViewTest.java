@@ -0,0 +1,129 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+public class EndpointViewTest extends TestCase {
+
+    private static final int THREADS = 8;
+    private static final int MESSAGES = 10000;
+
+    private EndpointView view;
+
+    protected void setUp() throws Exception {
+        view = new EndpointView("test", new AddressEndpoint());
+    }
+
+    protected void tearDown() throws Exception {
+        view.destroy();
+    }
+
+    public void testConcurrentUpdates() throws Exception {
+        Thread[] threads = new Thread[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < MESSAGES; j++) {
+                        view.incrementMessagesSent();
+                        view.incrementBytesSent(10);
+                        view.notifySentMessageSize(10 + index);
+                        view.reportResponseCode(j % 2 == 0 ? 200 : 500);
+                        view.incrementFaultsSending(101503);
+                        view.notifyResponseTime(j % 100);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = THREADS * MESSAGES;
+        assertEquals(total, view.getMessagesSent());
+        assertEquals(total * 10, view.getBytesSent());
+        assertEquals(total, view.getFaultsSending());
+        assertEquals(10, view.getMinSizeSent());
+        assertEquals(10 + THREADS - 1, view.getMaxSizeSent());
+
+        Map<Integer, Long> codes = view.getResponseCodeTable();
+        assertEquals(2, codes.size());
+        assertEquals(total / 2, codes.get(200).longValue());
+        assertEquals(total / 2, codes.get(500).longValue());
+        assertEquals(total, view.getSendingFaultTable().get(101503).longValue());
+
+        assertEquals(total, view.getResponseCount());
+        assertEquals(99, view.getMaxResponseTime());
+        assertEquals(49.5, view.getAvgResponseTime(), 0.001);
+    }
+
+    public void testSnapshots() throws Exception {
+        view.reportResponseCode(200);
+        Map<Integer, Long> snapshot = view.getResponseCodeTable();
+        view.reportResponseCode(200);
+        // the returned table is not affected by later updates
+        assertEquals(1, snapshot.get(200).longValue());
+        assertEquals(2, view.getResponseCodeTable().get(200).longValue());
+
+        view.resetStatistics();
+        assertTrue(view.getResponseCodeTable().isEmpty());
+        assertEquals(0, view.getResponseCount());
+    }
+
+    public void testResponseTimePercentiles() throws Exception {
+        for (int i = 1; i <= 1000; i++) {
+            view.notifyResponseTime(i);
+        }
+        Map<String, Long> percentiles = view.getResponseTimePercentiles();
+        assertWithin(500, percentiles.get("p50"));
+        assertWithin(900, percentiles.get("p90"));
+        assertWithin(990, percentiles.get("p99"));
+        assertEquals(1000, percentiles.get("p999").longValue());
+    }
+
+    public void testSuspensionHistory() throws Exception {
+        view.incrementSuspensions();
+        view.incrementSuspensions();
+        view.tick();
+        view.incrementSuspensions();
+        view.tick();
+        view.incrementTimeouts();
+
+        assertEquals(1, view.getLastMinuteEndpointSuspensions());
+        assertEquals(3, view.getLast5MinuteEndpointSuspensions());
+        assertEquals(3, view.getTotalEndpointSuspensions());
+        // the current minute is only counted once it is rolled over
+        assertEquals(0, view.getLast15MinuteEndpointTimeouts());
+        for (int i = 0; i < 20; i++) {
+            view.tick();
+        }
+        assertEquals(0, view.getLast15MinuteEndpointSuspensions());
+    }
+
+    private void assertWithin(long expected, long actual) {
+        // buckets are at most 12.5% wide
+        assertTrue("Expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * 1.125);
+    }
+}
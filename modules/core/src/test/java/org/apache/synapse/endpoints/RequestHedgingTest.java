@@ -0,0 +1,148 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.util.MessageHelper;
+
+public class RequestHedgingTest extends TestCase {
+
+    public void testBudget() throws Exception {
+        RequestHedging hedging = new RequestHedging(new FailoverEndpoint(), 95, 100, 10);
+        assertFalse(hedging.acquire());
+
+        // every tenth request may be hedged
+        for (int i = 0; i < 10; i++) {
+            hedging.earn();
+        }
+        assertTrue(hedging.acquire());
+        assertFalse(hedging.acquire());
+
+        // only a few hedges are saved up during quiet periods
+        for (int i = 0; i < 1000; i++) {
+            hedging.earn();
+        }
+        int hedges = 0;
+        while (hedging.acquire()) {
+            hedges++;
+        }
+        assertEquals(RequestHedging.MAX_CREDITS / 100, hedges);
+    }
+
+    public void testDelay() throws Exception {
+        RequestHedging hedging = new RequestHedging(new FailoverEndpoint(), 95, 50, 10);
+        assertEquals(50, hedging.getDelay());
+
+        for (int i = 1; i < RequestHedging.SAMPLES; i++) {
+            hedging.record(i);
+        }
+        assertEquals(50, hedging.getDelay());
+
+        // the delay moves to the percentile once enough responses are measured
+        hedging.record(RequestHedging.SAMPLES);
+        long delay = hedging.getDelay();
+        assertTrue("delay : " + delay, delay >= 475 && delay <= 475 * 1.125);
+    }
+
+    public void testFirstResponseWins() throws Exception {
+        RequestHedging hedging = new RequestHedging(new FailoverEndpoint(), 95, 100, 100);
+        MessageContext primary = TestUtils.getTestContext("<test/>");
+        MessageContext copy = TestUtils.getTestContext("<test/>");
+        RequestHedging.Request request = hedge(hedging, primary, copy);
+
+        // the failure of one attempt is ignored while the other one is in flight
+        assertTrue(RequestHedging.onFault(primary));
+        assertTrue(RequestHedging.onResponse(copy));
+
+        // anything arriving for the other attempt later is dropped
+        assertFalse(RequestHedging.onResponse(primary));
+        assertTrue(RequestHedging.onFault(primary));
+        assertFalse(request.register(primary, "urn:uuid:late"));
+    }
+
+    public void testAllAttemptsFail() throws Exception {
+        RequestHedging hedging = new RequestHedging(new FailoverEndpoint(), 95, 100, 100);
+        MessageContext primary = TestUtils.getTestContext("<test/>");
+        MessageContext copy = TestUtils.getTestContext("<test/>");
+        hedge(hedging, primary, copy);
+
+        // the failover endpoint takes over once both attempts have failed
+        assertTrue(RequestHedging.onFault(copy));
+        assertFalse(RequestHedging.onFault(primary));
+        assertTrue(RequestHedging.onResponse(primary));
+    }
+
+    public void testNotHedged() throws Exception {
+        RequestHedging hedging = new RequestHedging(new FailoverEndpoint(), 95, 100, 0);
+        MessageContext primary = TestUtils.getTestContext("<test/>");
+        RequestHedging.Request request = new RequestHedging.Request(hedging, primary, null);
+        primary.setProperty(RequestHedging.HEDGED_REQUEST, request);
+
+        // without a hedge a failure goes to the failover endpoint straight away
+        assertFalse(request.startHedge(TestUtils.getTestContext("<test/>")));
+        assertFalse(RequestHedging.onFault(primary));
+
+        MessageContext other = TestUtils.getTestContext("<test/>");
+        assertTrue(RequestHedging.onResponse(other));
+        assertFalse(RequestHedging.onFault(other));
+    }
+
+    public void testCopyRequest() throws Exception {
+        RequestHedging hedging = new RequestHedging(new FailoverEndpoint(), 95, 100, 10);
+        MessageContext primary = TestUtils.getAxis2MessageContext("<test/>", null);
+        RequestHedging.Request request = new RequestHedging.Request(hedging, primary, null);
+        primary.setProperty(RequestHedging.HEDGED_REQUEST, request);
+        request.prepare();
+        assertTrue(request.isPrepared());
+
+        // sending the first attempt adds a fault handler, properties and headers to the message
+        primary.pushFaultHandler(new FailoverEndpoint());
+        primary.setProperty(SynapseConstants.LAST_ENDPOINT, new FailoverEndpoint());
+        SOAPEnvelope envelope = primary.getEnvelope();
+        envelope.getOrCreateHeader().addChild(TestUtils.createOMElement("<sent/>"));
+
+        MessageContext copy = request.copyRequest();
+        assertNotSame(envelope, copy.getEnvelope());
+        assertEquals("test", copy.getEnvelope().getBody().getFirstElement().getLocalName());
+        assertTrue(copy.getEnvelope().getHeader() == null ||
+                copy.getEnvelope().getHeader().getFirstElement() == null);
+        assertSame(request, copy.getProperty(RequestHedging.HEDGED_REQUEST));
+        assertNull(copy.getProperty(SynapseConstants.LAST_ENDPOINT));
+        assertEquals(primary.getFaultStack().size() - 1, copy.getFaultStack().size());
+
+        // the clones made by mediators are not attempts of the request
+        assertNull(MessageHelper.cloneMessageContext(primary).getProperty(
+                RequestHedging.HEDGED_REQUEST));
+    }
+
+    private RequestHedging.Request hedge(RequestHedging hedging, MessageContext primary,
+                                         MessageContext copy) {
+        RequestHedging.Request request = new RequestHedging.Request(hedging, primary, null);
+        primary.setProperty(RequestHedging.HEDGED_REQUEST, request);
+        copy.setProperty(RequestHedging.HEDGED_REQUEST, request);
+        hedging.earn();
+        assertTrue(request.startHedge(copy));
+        return request;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.util.MessageHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LoadAwareAlgorithmTest extends TestCase {
+
+    private List<Endpoint> endpoints;
+    private SynapseEnvironment env;
+
+    protected void setUp() throws Exception {
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        ConfigurationContext configContext = new ConfigurationContext(axisConfig);
+        env = new Axis2SynapseEnvironment(configContext, new SynapseConfiguration());
+        endpoints = new ArrayList<Endpoint>();
+        for (int i = 0; i < 3; i++) {
+            AddressEndpoint endpoint = new AddressEndpoint();
+            endpoint.setEnableMBeanStats(false);
+            endpoint.setName("ep" + i);
+            endpoint.init(env);
+            endpoints.add(endpoint);
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.destroy();
+        }
+    }
+
+    public void testLeastOutstandingRequests() throws Exception {
+        LoadAwareAlgorithm algorithm = createAlgorithm(new LeastOutstandingRequests());
+
+        // three requests in flight are spread over the three endpoints
+        MessageContext[] messages = new MessageContext[3];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = send(algorithm);
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, algorithm.getLoad(i).getOutstanding());
+        }
+
+        // the endpoint whose request completed gets the next one
+        Endpoint completed = (Endpoint) messages[1].getProperty("endpoint");
+        LoadAwareAlgorithm.complete(messages[1], true);
+        assertSame(completed, send(algorithm).getProperty("endpoint"));
+
+        // completing a message again does not count twice
+        LoadAwareAlgorithm.complete(messages[1], true);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, algorithm.getLoad(i).getOutstanding());
+        }
+    }
+
+    public void testFault() throws Exception {
+        LoadAwareAlgorithm algorithm = createAlgorithm(new LeastOutstandingRequests());
+        LoadAwareAlgorithm other = createAlgorithm(new LeastOutstandingRequests());
+
+        MessageContext synCtx = send(algorithm);
+        other.getNextEndpoint(synCtx, null);
+        int index = endpoints.indexOf(synCtx.getProperty("endpoint"));
+        assertEquals(1, algorithm.getLoad(index).getOutstanding());
+
+        // a fault only completes the request of the algorithm handling it
+        algorithm.onFault(synCtx);
+        assertEquals(0, algorithm.getLoad(index).getOutstanding());
+        assertEquals(0.0, algorithm.getLoad(index).getLatency());
+        assertEquals(1, totalOutstanding(other));
+
+        LoadAwareAlgorithm.complete(synCtx, true);
+        assertEquals(0, totalOutstanding(other));
+    }
+
+    public void testClone() throws Exception {
+        LoadAwareAlgorithm algorithm = createAlgorithm(new LeastOutstandingRequests());
+        MessageContext synCtx = send(algorithm);
+        MessageContext clone = MessageHelper.cloneMessageContext(synCtx);
+        assertNull(clone.getProperty(LoadAwareAlgorithm.OUTSTANDING_REQUESTS));
+
+        // the request of the message is not completed by its clone
+        LoadAwareAlgorithm.complete(clone, true);
+        assertEquals(1, totalOutstanding(algorithm));
+        LoadAwareAlgorithm.complete(synCtx, true);
+        assertEquals(0, totalOutstanding(algorithm));
+    }
+
+    public void testEndpointsNotReady() throws Exception {
+        ((AddressEndpoint) endpoints.get(0)).getContext().switchOff();
+        ((AddressEndpoint) endpoints.get(2)).getContext().switchOff();
+
+        LoadbalanceAlgorithm[] algorithms = {
+                createAlgorithm(new LeastOutstandingRequests()),
+                createAlgorithm(new PowerOfTwoChoices()),
+                createAlgorithm(new PeakEWMA())
+        };
+        for (LoadbalanceAlgorithm algorithm : algorithms) {
+            for (int i = 0; i < 20; i++) {
+                MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+                assertSame(endpoints.get(1), algorithm.getNextEndpoint(synCtx, null));
+            }
+        }
+
+        ((AddressEndpoint) endpoints.get(1)).getContext().switchOff();
+        for (LoadbalanceAlgorithm algorithm : algorithms) {
+            MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+            assertNull(algorithm.getNextEndpoint(synCtx, null));
+        }
+    }
+
+    public void testPeakEWMA() throws Exception {
+        EndpointLoad load = new EndpointLoad(1000000000L);
+        load.begin();
+        // no latency is known yet, so other endpoints are preferred while a request is in flight
+        assertTrue(load.getPeakEwmaCost() > 1e9);
+        load.end(1000000);
+        assertEquals(1000000.0, load.getLatency(), 10000.0);
+
+        // a slower sample is taken at once and faster ones bring the average down gradually
+        load.begin();
+        load.end(50000000);
+        assertEquals(50000000.0, load.getLatency(), 500000.0);
+        load.begin();
+        load.end(1000000);
+        assertTrue(load.getLatency() > 40000000.0);
+
+        load.begin();
+        load.begin();
+        assertEquals(load.getLatency() * 3, load.getPeakEwmaCost(), load.getLatency() * 0.01);
+
+        PeakEWMA algorithm = (PeakEWMA) createAlgorithm(new PeakEWMA());
+        MessageContext slow = send(algorithm);
+        Thread.sleep(50);
+        LoadAwareAlgorithm.complete(slow, true);
+        for (int i = 0; i < 20; i++) {
+            MessageContext synCtx = send(algorithm);
+            // the endpoint which has been slow is not chosen while the others are as fast
+            assertNotSame(slow.getProperty("endpoint"), synCtx.getProperty("endpoint"));
+            LoadAwareAlgorithm.complete(synCtx, true);
+        }
+    }
+
+    private LoadAwareAlgorithm createAlgorithm(LoadAwareAlgorithm algorithm) {
+        algorithm.setEndpoints(endpoints);
+        algorithm.init(env);
+        return algorithm;
+    }
+
+    private MessageContext send(LoadAwareAlgorithm algorithm) throws Exception {
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        Endpoint endpoint = algorithm.getNextEndpoint(synCtx, null);
+        assertNotNull(endpoint);
+        synCtx.setProperty("endpoint", endpoint);
+        return synCtx;
+    }
+
+    private int totalOutstanding(LoadAwareAlgorithm algorithm) {
+        int total = 0;
+        for (int i = 0; i < endpoints.size(); i++) {
+            total += algorithm.getLoad(i).getOutstanding();
+        }
+        return total;
+    }
+}
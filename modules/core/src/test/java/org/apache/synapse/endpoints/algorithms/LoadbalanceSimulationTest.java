@@ -0,0 +1,180 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.util.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates load balancing over local stub backends of different speeds. Each backend serves a
+ * limited number of requests at a time and requests beyond that queue up, and one of them is
+ * ten times slower than the others. A number of clients send requests through each algorithm,
+ * and the load aware algorithms must send less of the traffic to the slow backend than round
+ * robin does. Setting the <code>synapse.benchmark</code> system property also logs the latency
+ * percentiles seen by the clients of each algorithm.
+ */
+public class LoadbalanceSimulationTest extends TestCase {
+
+    private static final Log log = LogFactory.getLog(LoadbalanceSimulationTest.class);
+
+    private static final long[] SERVICE_TIMES = {2, 2, 2, 20};
+    private static final int BACKEND_CONCURRENCY = 2;
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS = 100;
+
+    private List<Endpoint> endpoints;
+    private StubBackend[] backends;
+    private ConfigurationContext configContext;
+
+    protected void setUp() throws Exception {
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        configContext = new ConfigurationContext(axisConfig);
+        SynapseEnvironment env = new Axis2SynapseEnvironment(configContext,
+                new SynapseConfiguration());
+
+        endpoints = new ArrayList<Endpoint>();
+        backends = new StubBackend[SERVICE_TIMES.length];
+        for (int i = 0; i < SERVICE_TIMES.length; i++) {
+            AddressEndpoint endpoint = new AddressEndpoint();
+            endpoint.setEnableMBeanStats(false);
+            endpoint.setName("backend" + i);
+            endpoint.init(env);
+            endpoints.add(endpoint);
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.destroy();
+        }
+    }
+
+    public void testSlowBackendAvoided() throws Exception {
+        int roundRobin = run("RoundRobin", new RoundRobin(endpoints));
+        // round robin ignores the speed of the backends
+        assertEquals(CLIENTS * REQUESTS / endpoints.size(), roundRobin);
+        LoadAwareAlgorithm[] algorithms = {
+                new LeastOutstandingRequests(), new PowerOfTwoChoices(), new PeakEWMA()
+        };
+        for (LoadAwareAlgorithm algorithm : algorithms) {
+            algorithm.setEndpoints(endpoints);
+            int slow = run(algorithm.getName(), algorithm);
+            // the slow backend gets less of the traffic than its round robin share
+            assertTrue(algorithm.getName() + " sent " + slow + " requests to the slow backend",
+                    slow < roundRobin);
+            for (int i = 0; i < endpoints.size(); i++) {
+                assertEquals(0, algorithm.getLoad(i).getOutstanding());
+            }
+        }
+    }
+
+    /**
+     * Send the requests of all the clients through the given algorithm
+     *
+     * @return number of requests served by the slow backend
+     */
+    private int run(String name, final LoadbalanceAlgorithm algorithm) throws Exception {
+        for (int i = 0; i < backends.length; i++) {
+            backends[i] = new StubBackend(SERVICE_TIMES[i]);
+        }
+        final AlgorithmContext context = new AlgorithmContext(false, configContext, name);
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final CountDownLatch done = new CountDownLatch(CLIENTS);
+        final Exception[] error = new Exception[1];
+
+        for (int c = 0; c < CLIENTS; c++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < REQUESTS; i++) {
+                            MessageContext synCtx =
+                                    TestUtils.createLightweightSynapseMessageContext("<test/>");
+                            long sent = System.nanoTime();
+                            Endpoint endpoint = algorithm.getNextEndpoint(synCtx, context);
+                            backends[endpoints.indexOf(endpoint)].serve();
+                            LoadAwareAlgorithm.complete(synCtx, true);
+                            histogram.record((System.nanoTime() - sent) / 1000000);
+                        }
+                    } catch (Exception e) {
+                        error[0] = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        int served = 0;
+        for (StubBackend backend : backends) {
+            served += backend.served.get();
+        }
+        assertEquals(name + " lost requests", CLIENTS * REQUESTS, served);
+        if (Boolean.getBoolean("synapse.benchmark")) {
+            log.info(name + " : p50 " + histogram.getPercentile(50) + " ms, p99 " +
+                    histogram.getPercentile(99) + " ms, max " + histogram.getMax() + " ms");
+        }
+        return backends[backends.length - 1].served.get();
+    }
+
+    /**
+     * A backend which takes a fixed time to serve a request and serves a limited number of
+     * requests at a time
+     */
+    private static class StubBackend {
+
+        private final long serviceTime;
+        private final Semaphore workers = new Semaphore(BACKEND_CONCURRENCY, true);
+        private final AtomicInteger served = new AtomicInteger();
+
+        private StubBackend(long serviceTime) {
+            this.serviceTime = serviceTime;
+        }
+
+        private void serve() throws InterruptedException {
+            workers.acquire();
+            try {
+                Thread.sleep(serviceTime);
+                served.incrementAndGet();
+            } finally {
+                workers.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.endpoints.dispatch;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+
+public class SessionTableTest extends TestCase {
+
+    private static final long TICK = 1000;
+
+    public void testExpiry() throws Exception {
+        SessionTable table = new SessionTable(16, TICK, 0);
+        long now = System.currentTimeMillis();
+        table.put(session("s1", now + 2000));
+        table.put(session("s2", now + 5000));
+        // due in a later turn of the wheel
+        table.put(session("s3", now + 40000));
+        assertEquals(3, table.size());
+
+        table.expire(now + 1000);
+        assertEquals(3, table.size());
+
+        table.expire(now + 3000);
+        assertNull(table.get("s1"));
+        assertNotNull(table.get("s2"));
+        assertEquals(2, table.size());
+
+        // an extended session is queued again instead of being expired
+        table.get("s2").setExpiryTime(now + 8000);
+        table.expire(now + 6000);
+        assertNotNull(table.get("s2"));
+        table.expire(now + 9000);
+        assertNull(table.get("s2"));
+
+        table.expire(now + 30000);
+        assertNotNull(table.get("s3"));
+        table.expire(now + 42000);
+        assertNull(table.get("s3"));
+        assertEquals(0, table.size());
+    }
+
+    public void testReplaceAndRemove() throws Exception {
+        SessionTable table = new SessionTable(16, TICK, 0);
+        long now = System.currentTimeMillis();
+        SessionInformation first = session("s1", now + 2000);
+        table.put(first);
+        SessionInformation second = session("s1", now + 10000);
+        table.put(second);
+        assertEquals(1, table.size());
+        assertSame(second, table.get("s1"));
+
+        // the queued entry of the replaced session does not expire the new one
+        table.expire(now + 3000);
+        assertSame(second, table.get("s1"));
+        assertFalse(table.remove(first));
+        assertSame(second, table.get("s1"));
+
+        table.remove("s1");
+        assertNull(table.get("s1"));
+        assertEquals(0, table.size());
+    }
+
+    public void testBounded() throws Exception {
+        SessionTable table = new SessionTable(64, TICK, 100);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 150; i++) {
+            table.put(session("s" + i, now + 1000 + (150 - i) * 100));
+        }
+        assertTrue(table.size() <= 100);
+        assertTrue(table.size() >= 90);
+        // the sessions due to expire soonest were evicted
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(table.get("s" + i));
+        }
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final SessionTable table = new SessionTable(128, TICK, 0);
+        final long now = System.currentTimeMillis();
+        final int threads = 8;
+        final int sessions = 5000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final Throwable[] error = new Throwable[1];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < sessions; i++) {
+                            String id = thread + "-" + i;
+                            // half of the sessions are short lived
+                            table.put(session(id, now + (i % 2 == 0 ? 1000 : 60000)));
+                            assertNotNull(table.get(id));
+                            if (i % 100 == 0) {
+                                table.expire(now + 2000);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error[0] = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        assertNull(error[0]);
+
+        table.expire(now + 3000);
+        assertEquals(threads * sessions / 2, table.size());
+    }
+
+    private SessionInformation session(String id, long expiryTime) {
+        return new SessionInformation(id, (java.util.List) null, expiryTime);
+    }
+}
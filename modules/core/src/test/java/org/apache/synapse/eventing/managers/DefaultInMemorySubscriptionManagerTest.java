@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.eventing.managers;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.MessageContext;
+import org.apache.synapse.eventing.SynapseEventingConstants;
+import org.apache.synapse.eventing.SynapseSubscription;
+import org.apache.synapse.mediators.TestUtils;
+import org.wso2.eventing.Event;
+import org.wso2.eventing.Subscription;
+import org.wso2.eventing.exceptions.EventException;
+
+import javax.xml.namespace.QName;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class DefaultInMemorySubscriptionManagerTest extends TestCase {
+
+    private static final String TOPIC_NS = "http://synapse.apache.org/test/topics";
+    private static final String TOPIC_HEADER = "topic";
+
+    private DefaultInMemorySubscriptionManager manager;
+
+    protected void setUp() throws Exception {
+        manager = new DefaultInMemorySubscriptionManager();
+        manager.addProperty("topicHeaderName", TOPIC_HEADER);
+        manager.addProperty("topicHeaderNS", TOPIC_NS);
+        manager.init();
+    }
+
+    public void testTopicMatching() throws Exception {
+        subscribe("S1", "weather", null);
+        subscribe("S2", "weather/storms", null);
+        subscribe("S3", "weather/storms/atlantic", null);
+        subscribe("S4", "weather/rain", null);
+        subscribe("S5", "weatherstation", null);
+        subscribe("S6", "weather/*/atlantic", null);
+
+        assertMatches(getMatches("weather/storms/atlantic"), "S1", "S2", "S3", "S6");
+        assertMatches(getMatches("weather/storms"), "S1", "S2");
+        assertMatches(getMatches("weather/rain/atlantic"), "S1", "S4", "S6");
+        assertMatches(getMatches("weatherstation"), "S5");
+        assertMatches(getMatches("news"));
+        assertMatches(getMatches(null));
+
+        assertTrue(manager.unsubscribe("S2"));
+        assertTrue(manager.unsubscribe("S3"));
+        assertFalse(manager.unsubscribe("S3"));
+        assertMatches(getMatches("weather/storms/atlantic"), "S1", "S6");
+
+        // subscribing again with the same ID replaces the indexed filter
+        subscribe("S1", "news", null);
+        assertMatches(getMatches("weather/storms/atlantic"), "S6");
+        assertMatches(getMatches("news/sports"), "S1");
+    }
+
+    public void testXPathMatching() throws Exception {
+        String expression = "//weatherCondition = 'snow'";
+        subscribe("S1", expression, SynapseEventingConstants.XPATH_FILTER_DIALECT);
+        subscribe("S2", expression, SynapseEventingConstants.XPATH_FILTER_DIALECT);
+        subscribe("S3", "//weatherCondition = 'rain'", SynapseEventingConstants.XPATH_FILTER_DIALECT);
+        subscribe("S4", "weather", SynapseEventingConstants.TOPIC_FILTER_DIALECT);
+
+        assertMatches(getMatches("weather", "<weatherCondition>snow</weatherCondition>"),
+                "S1", "S2", "S4");
+        assertMatches(getMatches("news", "<weatherCondition>rain</weatherCondition>"), "S3");
+
+        manager.unsubscribe("S1");
+        assertMatches(getMatches("news", "<weatherCondition>snow</weatherCondition>"), "S2");
+
+        try {
+            subscribe("S5", "//weatherCondition[", SynapseEventingConstants.XPATH_FILTER_DIALECT);
+            fail("An invalid XPath filter should be rejected");
+        } catch (EventException expected) {
+
+        }
+    }
+
+    public void testExpiredSubscriptions() throws Exception {
+        Calendar past = Calendar.getInstance();
+        past.add(Calendar.HOUR, -1);
+        Calendar future = Calendar.getInstance();
+        future.add(Calendar.HOUR, 1);
+
+        subscribe("S1", "weather", null).setExpires(past);
+        subscribe("S2", "weather", null).setExpires(future);
+        assertMatches(getMatches("weather"), "S2");
+
+        // renewing the subscription makes it match again
+        Subscription renewal = new SynapseSubscription();
+        renewal.setId("S1");
+        renewal.setExpires(future);
+        assertTrue(manager.renew(renewal));
+        assertMatches(getMatches("weather"), "S1", "S2");
+    }
+
+    private Subscription subscribe(String id, String filter, String dialect) throws Exception {
+        Subscription subscription = new SynapseSubscription();
+        subscription.setId(id);
+        subscription.setFilterValue(filter);
+        subscription.setFilterDialect(dialect);
+        subscription.setEndpointUrl("http://localhost/" + id);
+        manager.subscribe(subscription);
+        return subscription;
+    }
+
+    private List<Subscription> getMatches(String topic) throws Exception {
+        return getMatches(topic, "<event/>");
+    }
+
+    private List<Subscription> getMatches(String topic, String payload) throws Exception {
+        MessageContext msgCtx = TestUtils.getAxis2MessageContext(payload, null)
+                .getAxis2MessageContext();
+        if (topic != null) {
+            TestUtils.addSOAPHeaderBlock(msgCtx, new QName(TOPIC_NS, TOPIC_HEADER, "t"), topic);
+        }
+        return manager.getMatchingSubscriptions(new Event<MessageContext>(msgCtx));
+    }
+
+    private void assertMatches(List<Subscription> matches, String... ids) {
+        Set<String> actual = new HashSet<String>();
+        for (Subscription subscription : matches) {
+            assertTrue("Duplicate match : " + subscription.getId(),
+                    actual.add(subscription.getId()));
+        }
+        Set<String> expected = new HashSet<String>();
+        for (String id : ids) {
+            expected.add(id);
+        }
+        assertEquals(expected, actual);
+    }
+}
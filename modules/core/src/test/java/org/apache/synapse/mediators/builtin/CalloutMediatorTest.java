@@ -0,0 +1,213 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.mediators.builtin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMElement;
+import org.apache.commons.io.FileUtils;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.MediatorFaultHandler;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.base.SequenceMediator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes callouts to a local backend which responds after a delay, to check that non-blocking
+ * callouts release the mediation thread and that parallel callouts overlap.
+ */
+public class CalloutMediatorTest extends TestCase {
+
+    private static final long DELAY = 500;
+
+    private static final String RESPONSE = "<soapenv:Envelope " +
+            "xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body>" +
+            "<m:response xmlns:m=\"http://services.samples\">%s</m:response>" +
+            "</soapenv:Body></soapenv:Envelope>";
+
+    private HttpServer server;
+    private File repository;
+    private File axis2xml;
+    private SynapseConfiguration config;
+    private SynapseEnvironment environment;
+    private CountDownLatch completed;
+    private volatile MessageContext completedMessage;
+
+    protected void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new SlowHandler());
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        repository = File.createTempFile("callout-repo", "");
+        assertTrue(repository.delete() && repository.mkdir());
+        // client configuration with the default transport senders of Axis2
+        axis2xml = new File(repository, "axis2.xml");
+        FileUtils.copyURLToFile(getClass().getClassLoader().getResource(
+                "org/apache/axis2/deployment/axis2_default.xml"), axis2xml);
+
+        config = new SynapseConfiguration();
+        environment = new Axis2SynapseEnvironment(config);
+        completed = new CountDownLatch(1);
+
+        SequenceMediator onComplete = new SequenceMediator();
+        onComplete.addChild(new AbstractMediator() {
+            public boolean mediate(MessageContext synCtx) {
+                completedMessage = synCtx;
+                completed.countDown();
+                return true;
+            }
+        });
+        config.addSequence("onComplete", onComplete);
+    }
+
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        FileUtils.deleteDirectory(repository);
+    }
+
+    public void testNonBlockingCallout() throws Exception {
+        CalloutMediator callout = createCallout("a");
+        callout.setOnComplete("onComplete");
+        callout.init(environment);
+        try {
+            MessageContext synCtx = createMessage();
+            long start = System.currentTimeMillis();
+            assertFalse(callout.mediate(synCtx));
+            // the mediation thread is released before the backend responds
+            assertTrue(System.currentTimeMillis() - start < DELAY);
+
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            assertSame(synCtx, completedMessage);
+            assertEquals("a", ((OMElement) synCtx.getProperty("a")).getText());
+        } finally {
+            callout.destroy();
+        }
+    }
+
+    public void testParallelCallouts() throws Exception {
+        ParallelCalloutMediator parallel = new ParallelCalloutMediator();
+        parallel.setOnComplete("onComplete");
+        parallel.addChild(createCallout("a"));
+        parallel.addChild(createCallout("b"));
+        parallel.addChild(createCallout("c"));
+        parallel.init(environment);
+        try {
+            MessageContext synCtx = createMessage();
+            long start = System.currentTimeMillis();
+            assertFalse(parallel.mediate(synCtx));
+
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            long elapsed = System.currentTimeMillis() - start;
+            // the calls overlap, so all of them complete in less than the sum of the delays
+            assertTrue("Parallel callouts took " + elapsed + " ms", elapsed < 3 * DELAY);
+            assertEquals("a", ((OMElement) synCtx.getProperty("a")).getText());
+            assertEquals("b", ((OMElement) synCtx.getProperty("b")).getText());
+            assertEquals("c", ((OMElement) synCtx.getProperty("c")).getText());
+        } finally {
+            parallel.destroy();
+        }
+    }
+
+    public void testParallelCalloutNotSent() throws Exception {
+        ParallelCalloutMediator parallel = new ParallelCalloutMediator();
+        parallel.setOnComplete("onComplete");
+        parallel.addChild(createCallout("a"));
+        CalloutMediator broken = createCallout("b");
+        // no transport sender is configured for this scheme, so the callout cannot be sent
+        broken.setServiceURL("unknown://localhost/b");
+        parallel.addChild(broken);
+        parallel.addChild(createCallout("c"));
+        parallel.init(environment);
+        try {
+            MessageContext synCtx = createMessage();
+            final CountDownLatch faulted = new CountDownLatch(1);
+            SequenceMediator faultSequence = new SequenceMediator();
+            faultSequence.addChild(new AbstractMediator() {
+                public boolean mediate(MessageContext synCtx) {
+                    faulted.countDown();
+                    return true;
+                }
+            });
+            synCtx.pushFaultHandler(new MediatorFaultHandler(faultSequence));
+
+            assertFalse(parallel.mediate(synCtx));
+
+            // the join still happens once the other callouts complete, and raises the fault
+            assertTrue(faulted.await(10, TimeUnit.SECONDS));
+            assertEquals(1, completed.getCount());
+            assertEquals("a", ((OMElement) synCtx.getProperty("a")).getText());
+            assertNull(synCtx.getProperty("c"));
+        } finally {
+            parallel.destroy();
+        }
+    }
+
+    private CalloutMediator createCallout(String name) {
+        CalloutMediator callout = new CalloutMediator();
+        callout.setServiceURL("http://localhost:" + server.getAddress().getPort() + "/" + name);
+        callout.setTargetKey(name);
+        callout.setClientRepository(repository.getAbsolutePath());
+        callout.setAxis2xml(axis2xml.getAbsolutePath());
+        return callout;
+    }
+
+    private MessageContext createMessage() throws Exception {
+        return TestUtils.createSynapseMessageContext(
+                "<m:request xmlns:m=\"http://services.samples\"/>", config);
+    }
+
+    private static class SlowHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            InputStream in = exchange.getRequestBody();
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // consume the request
+            }
+            try {
+                Thread.sleep(DELAY);
+            } catch (InterruptedException ignore) {
+            }
+            String name = exchange.getRequestURI().getPath().substring(1);
+            byte[] response = String.format(RESPONSE, name).getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=UTF-8");
+            exchange.sendResponseHeaders(200, response.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(response);
+            out.close();
+        }
+    }
+}
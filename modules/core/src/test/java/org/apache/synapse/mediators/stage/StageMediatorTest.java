@@ -0,0 +1,221 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.mediators.stage;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.base.SequenceMediator;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StageMediatorTest extends TestCase {
+
+    private SynapseConfiguration config;
+    private CountDownLatch release;
+    private AtomicInteger processed;
+    private AtomicInteger diverted;
+
+    protected void setUp() throws Exception {
+        config = new SynapseConfiguration();
+        release = new CountDownLatch(1);
+        processed = new AtomicInteger(0);
+        diverted = new AtomicInteger(0);
+
+        SequenceMediator work = new SequenceMediator();
+        work.addChild(new AbstractMediator() {
+            public boolean mediate(MessageContext synCtx) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignore) {
+                }
+                processed.incrementAndGet();
+                return true;
+            }
+        });
+        config.addSequence("work", work);
+
+        SequenceMediator overflow = new SequenceMediator();
+        overflow.addChild(new AbstractMediator() {
+            public boolean mediate(MessageContext synCtx) {
+                diverted.incrementAndGet();
+                return true;
+            }
+        });
+        config.addSequence("overflow", overflow);
+    }
+
+    public void testProcessing() throws Exception {
+        release.countDown();
+        StageMediator mediator = createStage("process", StageMediator.OVERFLOW_BLOCK);
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertFalse(mediator.mediate(createMessage()));
+            }
+            waitFor(mediator.getStage(), 20);
+            assertEquals(20, processed.get());
+            assertEquals(20, mediator.getStage().getProcessedCount());
+            assertEquals(0, mediator.getStage().getRejectedCount());
+        } finally {
+            mediator.destroy();
+        }
+    }
+
+    public void testDropOverflow() throws Exception {
+        StageMediator mediator = createStage("drop", StageMediator.OVERFLOW_DROP);
+        try {
+            fill(mediator);
+            for (int i = 0; i < 2; i++) {
+                mediator.mediate(createMessage());
+            }
+            assertEquals(2, mediator.getStage().getRejectedCount());
+            release.countDown();
+            waitFor(mediator.getStage(), 4);
+            assertEquals(4, processed.get());
+        } finally {
+            mediator.destroy();
+        }
+    }
+
+    public void testDivertOverflow() throws Exception {
+        StageMediator mediator = createStage("divert", StageMediator.OVERFLOW_DIVERT);
+        mediator.setOverflowSequence("overflow");
+        try {
+            fill(mediator);
+            for (int i = 0; i < 2; i++) {
+                mediator.mediate(createMessage());
+            }
+            assertEquals(2, diverted.get());
+            assertEquals(2, mediator.getStage().getDivertedCount());
+            release.countDown();
+            waitFor(mediator.getStage(), 4);
+        } finally {
+            mediator.destroy();
+        }
+    }
+
+    public void testBlockOverflow() throws Exception {
+        final StageMediator mediator = createStage("block", StageMediator.OVERFLOW_BLOCK);
+        mediator.setBlockTimeout(5000);
+        try {
+            fill(mediator);
+            Thread producer = new Thread() {
+                public void run() {
+                    try {
+                        mediator.mediate(createMessage());
+                    } catch (Exception ignore) {
+                    }
+                }
+            };
+            producer.start();
+            producer.join(200);
+            // the producer waits for space in the queue
+            assertTrue(producer.isAlive());
+            release.countDown();
+            producer.join(5000);
+            assertFalse(producer.isAlive());
+            waitFor(mediator.getStage(), 5);
+            assertEquals(0, mediator.getStage().getRejectedCount());
+        } finally {
+            mediator.destroy();
+        }
+    }
+
+    public void testResize() throws Exception {
+        Stage stage = new Stage("resize", 100, 1, 4, 10);
+        try {
+            for (int i = 0; i < 10; i++) {
+                stage.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException ignore) {
+                        }
+                    }
+                });
+            }
+            // the queue does not drain, so threads are added up to the maximum
+            for (int i = 0; i < 5; i++) {
+                stage.resize();
+            }
+            assertEquals(4, stage.getCoreThreads());
+            release.countDown();
+
+            long timeout = System.currentTimeMillis() + 5000;
+            while (stage.getQueueSize() > 0 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            stage.resize();
+            for (int i = 0; i < 5; i++) {
+                stage.resize();
+            }
+            assertEquals(1, stage.getCoreThreads());
+        } finally {
+            stage.destroy();
+        }
+    }
+
+    private StageMediator createStage(String name, String overflow) {
+        StageMediator mediator = new StageMediator();
+        mediator.setName(name);
+        mediator.setSequence("work");
+        mediator.setMinThreads(2);
+        mediator.setMaxThreads(2);
+        mediator.setQueueSize(2);
+        mediator.setOverflowPolicy(overflow);
+        mediator.init(new Axis2SynapseEnvironment(config));
+        return mediator;
+    }
+
+    /**
+     * Keep both the threads of the stage busy and fill its queue
+     */
+    private void fill(StageMediator mediator) throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mediator.mediate(createMessage());
+        }
+        long timeout = System.currentTimeMillis() + 5000;
+        while (mediator.getStage().getActiveThreads() < 2 &&
+                System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        for (int i = 0; i < 2; i++) {
+            mediator.mediate(createMessage());
+        }
+    }
+
+    private MessageContext createMessage() throws Exception {
+        return TestUtils.createLightweightSynapseMessageContext("<test/>", config);
+    }
+
+    private void waitFor(Stage stage, int count) throws Exception {
+        long timeout = System.currentTimeMillis() + 5000;
+        while (stage.getProcessedCount() < count && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, stage.getProcessedCount());
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.synapse.mediators.transform;
 
 import junit.framework.TestCase;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
 import org.apache.synapse.mediators.TestUtils;
 import org.apache.synapse.util.xpath.SynapseXPath;
 
@@ -57,6 +58,92 @@ public class PayloadFactoryMediatorTest extends TestCase {
         testTransformation(mediator);
     }
 
+    public void testMultipleArgs() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat("<m:order xmlns:m=\"http://services.samples\" id=\"$2-$1\">" +
+                "<m:item>$1 of $10</m:item><!-- comment --><m:price>$$3</m:price></m:order>");
+        for (int i = 1; i <= 10; i++) {
+            PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+            arg.setValue(i == 3 ? "$1\\5" : "v" + i);
+            mediator.addArgument(arg);
+        }
+
+        MessageContext synCtx = TestUtils.getTestContext(SOURCE);
+        assertTrue(mediator.mediate(synCtx));
+
+        assertEquals("v2-v1", evaluate("//m:order/@id", synCtx));
+        assertEquals("v1 of v10", evaluate("//m:order/m:item", synCtx));
+        assertEquals("$$1\\5", evaluate("//m:order/m:price", synCtx));
+        assertEquals("", evaluate("//m:CheckPriceRequest", synCtx));
+    }
+
+    public void testDefaultNamespace() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat("<getQuote xmlns=\"http://services.samples\"><request>" +
+                "<symbol xmlns=\"\">$1</symbol></request></getQuote>");
+        PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+        arg.setValue("IBM");
+        mediator.addArgument(arg);
+
+        MessageContext synCtx = TestUtils.getTestContext(SOURCE);
+        assertTrue(mediator.mediate(synCtx));
+        assertEquals("IBM", evaluate("//m:getQuote/m:request/symbol", synCtx));
+    }
+
+    public void testMarkupArgs() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat(FORMAT);
+        PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+        arg.setValue("<m:code xmlns:m=\"http://services.samples\">IBM</m:code> &amp; co");
+        mediator.addArgument(arg);
+
+        // values with markup are still parsed as part of the payload
+        MessageContext synCtx = TestUtils.getTestContext(SOURCE);
+        assertTrue(mediator.mediate(synCtx));
+        assertEquals("IBM", evaluate("//m:symbol/m:code", synCtx));
+        assertEquals(" & co", evaluate("//m:symbol/text()", synCtx));
+    }
+
+    public void testMissingArgs() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat(FORMAT);
+
+        try {
+            mediator.mediate(TestUtils.getTestContext(SOURCE));
+            fail("A format referring to an argument which is not defined should be rejected");
+        } catch (SynapseException expected) {
+
+        }
+    }
+
+    public void testMissingArgsWithMarkup() throws Exception {
+
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat("<m:getQuote xmlns:m=\"http://services.samples\"><m:symbol>$1</m:symbol>" +
+                "<m:exchange>$2</m:exchange></m:getQuote>");
+        PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+        arg.setValue("<m:code xmlns:m=\"http://services.samples\">IBM</m:code>");
+        mediator.addArgument(arg);
+
+        // values with markup take the substitution path, which must reject the format as well
+        try {
+            mediator.mediate(TestUtils.getTestContext(SOURCE));
+            fail("A format referring to an argument which is not defined should be rejected");
+        } catch (SynapseException expected) {
+
+        }
+    }
+
+    private String evaluate(String expression, MessageContext synCtx) throws Exception {
+        SynapseXPath xpath = new SynapseXPath(expression);
+        xpath.addNamespace("m", "http://services.samples");
+        return xpath.stringValueOf(synCtx);
+    }
+
     private void testTransformation(PayloadFactoryMediator mediator) throws Exception {
 
         MessageContext synCtx = TestUtils.getTestContext(SOURCE);
@@ -0,0 +1,171 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.soap.SOAPBody;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.Iterator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that building payloads from the compiled template of the payloadFactory mediator gives
+ * the same result as substituting the arguments into the format and parsing the result, for
+ * small and large formats with 1, 10 and 50 arguments. Setting the
+ * <code>synapse.benchmark</code> system property also compares the time both approaches take
+ * to build the payloads and logs it.
+ */
+public class PayloadFactoryTemplateTest extends TestCase {
+
+    private static final Log log = LogFactory.getLog(PayloadFactoryTemplateTest.class);
+
+    private static final int WARMUP_ITERATIONS = 2000;
+    private static final int ITERATIONS = 10000;
+
+    private static final String SOURCE = "<m:CheckPriceRequest xmlns:m=\"http://services.samples\">" +
+            "<m:Code>IBM</m:Code></m:CheckPriceRequest>";
+
+    private static final Pattern PATTERN = Pattern.compile("\\$(\\d)+");
+
+    public void testTemplateMatchesParsedFormat() throws Exception {
+        for (int args : new int[] {1, 10, 50}) {
+            compare(args, 1);
+            compare(args, 20);
+        }
+    }
+
+    public void testBenchmark() throws Exception {
+        if (!Boolean.getBoolean("synapse.benchmark")) {
+            return;
+        }
+        for (int args : new int[] {1, 10, 50}) {
+            benchmark(args, 1);
+            benchmark(args, 20);
+        }
+    }
+
+    private void benchmark(int args, int repeat) throws Exception {
+        String format = createFormat(args, repeat);
+        PayloadFactoryMediator mediator = createMediator(format, args);
+        String[] values = createValues(args);
+        MessageContext synCtx = TestUtils.getTestContext(SOURCE);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            mediator.mediate(synCtx);
+            substituteAndParse(format, values, synCtx);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mediator.mediate(synCtx);
+        }
+        long compiled = (System.nanoTime() - start) / ITERATIONS;
+        String payload = synCtx.getEnvelope().getBody().toString();
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            substituteAndParse(format, values, synCtx);
+        }
+        long parsed = (System.nanoTime() - start) / ITERATIONS;
+        assertEquals(payload, synCtx.getEnvelope().getBody().toString());
+
+        log.info(args + " arguments, " + (repeat == 1 ? "small" : "large") + " format : " +
+                compiled + " ns/op using the template, " + parsed +
+                " ns/op substituting and parsing");
+    }
+
+    private void compare(int args, int repeat) throws Exception {
+        String format = createFormat(args, repeat);
+        PayloadFactoryMediator mediator = createMediator(format, args);
+        String[] values = createValues(args);
+
+        MessageContext synCtx = TestUtils.getTestContext(SOURCE);
+        assertTrue(mediator.mediate(synCtx));
+        String compiled = synCtx.getEnvelope().getBody().toString();
+        // mediating twice replaces the payload rather than adding to it
+        assertTrue(mediator.mediate(synCtx));
+        assertEquals(compiled, synCtx.getEnvelope().getBody().toString());
+
+        substituteAndParse(format, values, synCtx);
+        assertEquals(synCtx.getEnvelope().getBody().toString(), compiled);
+    }
+
+    private PayloadFactoryMediator createMediator(String format, int args) {
+        PayloadFactoryMediator mediator = new PayloadFactoryMediator();
+        mediator.setFormat(format);
+        for (int i = 0; i < args; i++) {
+            PayloadFactoryMediator.Argument arg = new PayloadFactoryMediator.Argument();
+            arg.setValue("value" + i);
+            mediator.addArgument(arg);
+        }
+        return mediator;
+    }
+
+    private String[] createValues(int args) {
+        String[] values = new String[args];
+        for (int i = 0; i < args; i++) {
+            values[i] = "value" + i;
+        }
+        return values;
+    }
+
+    private String createFormat(int args, int repeat) {
+        StringBuilder sb = new StringBuilder("<m:order xmlns:m=\"http://services.samples\">");
+        for (int r = 0; r < repeat; r++) {
+            sb.append("<m:line no=\"").append(r).append("\">");
+            for (int i = 1; i <= args; i++) {
+                sb.append("<m:field").append(i).append(" ref=\"$").append(i).append("\">")
+                        .append("item $").append(i).append("</m:field").append(i).append(">");
+            }
+            sb.append("</m:line>");
+        }
+        return sb.append("</m:order>").toString();
+    }
+
+    /**
+     * Builds the payload the way the mediator did before the format was compiled.
+     */
+    private void substituteAndParse(String format, String[] values,
+                                    MessageContext synCtx) throws Exception {
+        StringBuffer result = new StringBuffer();
+        Matcher matcher = PATTERN.matcher("<dummy>" + format + "</dummy>");
+        while (matcher.find()) {
+            int argIndex = Integer.parseInt(matcher.group().substring(1));
+            matcher.appendReplacement(result, values[argIndex - 1]);
+        }
+        matcher.appendTail(result);
+
+        OMElement resultElement = AXIOMUtil.stringToOM(result.toString());
+        SOAPBody soapBody = synCtx.getEnvelope().getBody();
+        soapBody.removeChildren();
+        for (Iterator itr = resultElement.getChildElements(); itr.hasNext();) {
+            OMElement child = (OMElement) itr.next();
+            itr.remove();
+            soapBody.addChild(child);
+        }
+    }
+}
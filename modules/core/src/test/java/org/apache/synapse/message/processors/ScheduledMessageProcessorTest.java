@@ -0,0 +1,160 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processors;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.store.InMemoryMessageStore;
+import org.apache.synapse.message.store.MessageStore;
+import org.quartz.DisallowConcurrentExecution;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ScheduledMessageProcessorTest extends TestCase {
+
+    private MessageStore store;
+    private TestProcessor processor;
+
+    protected void setUp() throws Exception {
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        store = new InMemoryMessageStore();
+        store.setName("TestStore");
+        synapseConfig.addMessageStore("TestStore", store);
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(MessageProcessorConstants.EVENT_DRIVEN, "true");
+        processor = new TestProcessor();
+        processor.setName("TestProcessor");
+        processor.setMessageStoreName("TestStore");
+        processor.setParameters(parameters);
+        processor.init(new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), synapseConfig));
+    }
+
+    protected void tearDown() throws Exception {
+        processor.destroy();
+        store.destroy();
+    }
+
+    public void testTriggeredByStore() throws Exception {
+        // the initial run drains whatever is in the store at start up
+        assertNotNull(processor.runs.poll(5, TimeUnit.SECONDS));
+
+        long start = System.currentTimeMillis();
+        store.offer(createMessageContext("ID1"));
+        assertEquals("ID1", processor.runs.poll(5, TimeUnit.SECONDS));
+        // far below the default polling interval
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(0, store.size());
+
+        // there is no periodic run without messages
+        assertNull(processor.runs.poll(1500, TimeUnit.MILLISECONDS));
+    }
+
+    public void testScheduledRetry() throws Exception {
+        assertNotNull(processor.runs.poll(5, TimeUnit.SECONDS));
+
+        processor.retryDelay = 500;
+        store.offer(createMessageContext("ID1"));
+        assertEquals("ID1", processor.runs.poll(5, TimeUnit.SECONDS));
+        assertTrue(processor.isRetryScheduled());
+
+        // messages added while a retry is pending wait for the retry
+        long start = System.currentTimeMillis();
+        processor.retryDelay = 0;
+        store.offer(createMessageContext("ID2"));
+        assertEquals("ID1", processor.runs.poll(5, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - start >= 400);
+        assertEquals("ID2", processor.runs.poll(5, TimeUnit.SECONDS));
+        assertFalse(processor.isRetryScheduled());
+    }
+
+    private MessageContext createMessageContext(String identifier) throws Exception {
+        MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        msg.setMessageID(identifier);
+        return msg;
+    }
+
+    public static class TestProcessor extends ScheduledMessageProcessor {
+
+        final BlockingQueue<String> runs = new LinkedBlockingQueue<String>();
+
+        volatile long retryDelay = 0;
+
+        @Override
+        protected JobBuilder getJobBuilder() {
+            return JobBuilder.newJob(TestJob.class).withIdentity(
+                    name + "-test-job", SCHEDULED_MESSAGE_PROCESSOR_GROUP);
+        }
+
+        @Override
+        protected JobDataMap getJobDataMap() {
+            JobDataMap jdm = new JobDataMap();
+            jdm.put(PROCESSOR_INSTANCE, this);
+            return jdm;
+        }
+    }
+
+    /**
+     * Consumes a single message per run, or asks for a retry leaving the message in the store
+     */
+    @DisallowConcurrentExecution
+    public static class TestJob implements Job {
+
+        public void execute(JobExecutionContext context) {
+            JobDataMap jdm = context.getMergedJobDataMap();
+            TestProcessor processor = (TestProcessor) jdm.get(
+                    ScheduledMessageProcessor.PROCESSOR_INSTANCE);
+            MessageStore store = (MessageStore) jdm.get(MessageProcessorConstants.MESSAGE_STORE);
+            if (processor.isRetryScheduled()) {
+                return;
+            }
+
+            MessageContext msg = store.peek();
+            if (msg == null) {
+                processor.runs.add("");
+                return;
+            }
+            if (processor.retryDelay > 0) {
+                processor.scheduleRetry(processor.retryDelay);
+            } else {
+                store.poll();
+                if (store.size() > 0) {
+                    processor.triggerNow();
+                }
+            }
+            // reported last, so that the test sees the outcome of the run
+            processor.runs.add(msg.getMessageID());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.processors.forward;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.EndpointDefinition;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.message.processors.MessageProcessorConstants;
+import org.apache.synapse.message.store.InMemoryMessageStore;
+import org.apache.synapse.message.store.MessageStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forwards messages to a local HTTP backend which takes a while to respond, in the ordered
+ * mode and with a window of in flight messages
+ */
+public class ScheduledMessageForwardingProcessorTest extends TestCase {
+
+    private static final int MESSAGES = 20;
+    private static final long BACKEND_LATENCY = 100;
+
+    private HttpServer backend;
+    private ExecutorService backendExecutor;
+    private final AtomicInteger received = new AtomicInteger();
+    private volatile int failures = 0;
+    /** Requests the backend is handling, and the most it handled at the same time */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    protected void setUp() throws Exception {
+        backend = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        backendExecutor = Executors.newFixedThreadPool(MESSAGES);
+        backend.setExecutor(backendExecutor);
+        backend.createContext("/service", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                while (in.read() != -1) {
+                    // consume the request
+                }
+                int current = inFlight.incrementAndGet();
+                int peak = peakInFlight.get();
+                while (current > peak && !peakInFlight.compareAndSet(peak, current)) {
+                    peak = peakInFlight.get();
+                }
+                try {
+                    Thread.sleep(BACKEND_LATENCY);
+                } catch (InterruptedException ignore) {
+                }
+                inFlight.decrementAndGet();
+                synchronized (ScheduledMessageForwardingProcessorTest.this) {
+                    if (failures > 0) {
+                        // drop the connection without a response so that the delivery fails
+                        failures--;
+                        exchange.close();
+                        return;
+                    }
+                    received.incrementAndGet();
+                }
+                exchange.sendResponseHeaders(202, -1);
+                exchange.close();
+            }
+        });
+        backend.start();
+    }
+
+    protected void tearDown() throws Exception {
+        backend.stop(0);
+        backendExecutor.shutdownNow();
+    }
+
+    public void testWindowedForwarding() throws Exception {
+        // the ordered mode forwards one message at a time
+        assertEquals(1, forward(1));
+        received.set(0);
+        peakInFlight.set(0);
+        int windowed = forward(10);
+        assertTrue("At most " + windowed + " messages were forwarded at the same time",
+                windowed > 1 && windowed <= 10);
+    }
+
+    public void testRetryWithWindow() throws Exception {
+        failures = 2;
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(ForwardingProcessorConstants.RETRY_INTERVAL, "200");
+        parameters.put(MessageProcessorConstants.MAX_DELIVER_ATTEMPTS, "5");
+        // the failed messages stay in the store and are delivered by the retry
+        forward(5, parameters);
+    }
+
+    public void testBacklogWithoutConsumeAll() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(ForwardingProcessorConstants.CONSUME_ALL, "false");
+        // the messages stored before the processor starts are forwarded without new events
+        forward(1, parameters);
+    }
+
+    public void testPolledByDefault() throws Exception {
+        ScheduledMessageForwardingProcessor processor = new ScheduledMessageForwardingProcessor();
+        assertFalse(processor.isEventDriven());
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(MessageProcessorConstants.EVENT_DRIVEN, "true");
+        processor.setParameters(parameters);
+        assertTrue(processor.isEventDriven());
+    }
+
+    public void testAttemptsCountedPerMessage() throws Exception {
+        ScheduledMessageForwardingProcessor processor = new ScheduledMessageForwardingProcessor();
+        assertEquals(1, processor.incrementSendAttemptCount("ID1"));
+        assertEquals(2, processor.incrementSendAttemptCount("ID1"));
+
+        // the delivery of another message does not reset the attempts of the failing one
+        assertEquals(1, processor.incrementSendAttemptCount("ID2"));
+        processor.resetSendAttemptCount("ID2");
+        assertEquals(3, processor.incrementSendAttemptCount("ID1"));
+        assertEquals(0, processor.getSendAttemptCount("ID2"));
+
+        processor.resetSentAttemptCount();
+        assertEquals(0, processor.getSendAttemptCount("ID1"));
+    }
+
+    public void testAttemptsForgottenOnRemoval() throws Exception {
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        MessageStore store = new InMemoryMessageStore();
+        ScheduledMessageForwardingProcessor processor = new ScheduledMessageForwardingProcessor();
+        store.registerObserver(processor);
+        MessageContext msg = TestUtils.createSynapseMessageContext("<order/>", synapseConfig);
+        msg.setMessageID("ID1");
+        store.offer(msg);
+        assertEquals(1, processor.incrementSendAttemptCount("ID1"));
+
+        // a message removed from the store by other means than the processor is forgotten
+        store.remove("ID1");
+        assertEquals(0, processor.getSendAttemptCount("ID1"));
+    }
+
+    private int forward(int maxInFlight) throws Exception {
+        return forward(maxInFlight, new HashMap<String, Object>());
+    }
+
+    /**
+     * Forward the test messages through a new processor
+     *
+     * @return the most messages the backend handled at the same time
+     */
+    private int forward(int maxInFlight, Map<String, Object> parameters) throws Exception {
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        synapseConfig.setAxisConfiguration(axisConfig);
+        SynapseEnvironment se = new Axis2SynapseEnvironment(
+                new ConfigurationContext(axisConfig), synapseConfig);
+
+        AddressEndpoint endpoint = new AddressEndpoint();
+        EndpointDefinition definition = new EndpointDefinition();
+        definition.setAddress("http://localhost:" + backend.getAddress().getPort() + "/service");
+        endpoint.setDefinition(definition);
+        endpoint.setName("BackendEndpoint");
+        endpoint.init(se);
+        synapseConfig.addEndpoint("BackendEndpoint", endpoint);
+
+        MessageStore store = new InMemoryMessageStore();
+        store.setName("ForwardingStore");
+        synapseConfig.addMessageStore("ForwardingStore", store);
+        for (int i = 0; i < MESSAGES; i++) {
+            MessageContext msg = TestUtils.createSynapseMessageContext(
+                    "<order><id>" + i + "</id></order>", synapseConfig);
+            msg.setMessageID("ID" + i);
+            msg.setProperty(ForwardingProcessorConstants.TARGET_ENDPOINT, "BackendEndpoint");
+            msg.setProperty(SynapseConstants.OUT_ONLY, "true");
+            store.offer(msg);
+        }
+
+        parameters.put(ForwardingProcessorConstants.MAX_IN_FLIGHT, String.valueOf(maxInFlight));
+        parameters.put(MessageProcessorConstants.EVENT_DRIVEN, "true");
+        parameters.put(ForwardingProcessorConstants.AXIS2_REPO, "./target/test_repos/synapse");
+        parameters.put(ForwardingProcessorConstants.AXIS2_CONFIG,
+                "../../repository/conf/axis2_blocking_client.xml");
+        ScheduledMessageForwardingProcessor processor = new ScheduledMessageForwardingProcessor();
+        processor.setName("ForwardingProcessor");
+        processor.setMessageStoreName("ForwardingStore");
+        processor.setParameters(parameters);
+
+        processor.init(se);
+        try {
+            long timeout = System.currentTimeMillis() + 30000;
+            while ((store.size() > 0 || received.get() < MESSAGES) &&
+                    System.currentTimeMillis() < timeout) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, store.size());
+            assertEquals(MESSAGES, received.get());
+            assertTrue(processor.isActive());
+            return peakInFlight.get();
+        } finally {
+            processor.destroy();
+            store.destroy();
+        }
+    }
+}
@@ -22,6 +22,7 @@ package org.apache.synapse.message.store;
 import junit.framework.TestCase;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.util.xpath.SynapseXPath;
 
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -124,6 +125,82 @@ public class InMemoryMessageStoreTest extends TestCase {
         assertEquals(0, observer.getCount());
     }
     
+    public void testRemoveById() throws Exception {
+        MessageStore store = new InMemoryMessageStore();
+        populateStore(store, 10);
+
+        store.remove("ID3");
+        store.remove("ID7");
+        store.remove("UNKNOWN");
+        assertEquals(8, store.size());
+        assertNull(store.get("ID3"));
+
+        int[] expected = {0, 1, 2, 4, 5, 6, 8, 9};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("ID" + expected[i], store.get(i).getMessageID());
+        }
+        assertNull(store.get(expected.length));
+        assertEquals("ID0", store.poll().getMessageID());
+        assertEquals("ID1", store.get(0).getMessageID());
+    }
+
+    public void testSequenceNumberIndex() throws Exception {
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        store.offer(createMessageContext("ID0", 5));
+        store.offer(createMessageContext("ID1", 3));
+        store.setSequenceNumberXpath(new SynapseXPath("//seq"));
+        store.offer(createMessageContext("ID2", 4));
+        store.offer(createMessageContext("ID3", 3));
+
+        assertEquals(Integer.valueOf(3), store.getLowestSequenceNumber());
+        assertEquals("ID1", store.getBySequenceNumber(3).getMessageID());
+        assertEquals("ID2", store.getBySequenceNumber(4).getMessageID());
+        assertNull(store.getBySequenceNumber(6));
+
+        store.remove("ID1");
+        assertEquals("ID3", store.getBySequenceNumber(3).getMessageID());
+        store.poll();
+        store.remove("ID3");
+        assertEquals(Integer.valueOf(4), store.getLowestSequenceNumber());
+    }
+
+    public void testLargeStore() throws Exception {
+        final int count = 100000;
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        store.setSequenceNumberXpath(new SynapseXPath("//seq"));
+        // store the messages in reverse order of their sequence numbers
+        for (int i = 0; i < count; i++) {
+            store.offer(createMessageContext("ID" + i, count - i));
+        }
+        assertEquals(count, store.size());
+
+        for (int i = 0; i < count; i += 997) {
+            assertEquals("ID" + i, store.get(i).getMessageID());
+            assertEquals("ID" + i, store.get("ID" + i).getMessageID());
+        }
+
+        // drain the store in sequence number order as the resequencer would
+        for (int seq = 1; seq <= count; seq++) {
+            assertEquals(Integer.valueOf(seq), store.getLowestSequenceNumber());
+            MessageContext msg = store.getBySequenceNumber(seq);
+            assertEquals("ID" + (count - seq), msg.getMessageID());
+            store.remove(msg.getMessageID());
+            if (seq % 9973 == 0) {
+                assertEquals("ID0", store.get(0).getMessageID());
+                assertEquals("ID" + (count - seq - 1), store.get(store.size() - 1).getMessageID());
+            }
+        }
+        assertEquals(0, store.size());
+        assertNull(store.peek());
+    }
+
+    private MessageContext createMessageContext(String identifier, int sequenceNo) throws Exception {
+        MessageContext msg = TestUtils.createLightweightSynapseMessageContext(
+                "<test><seq>" + sequenceNo + "</seq></test>");
+        msg.setMessageID(identifier);
+        return msg;
+    }
+
     private MessageContext createMessageContext(String identifier) throws Exception {
         MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
         msg.setMessageID(identifier);
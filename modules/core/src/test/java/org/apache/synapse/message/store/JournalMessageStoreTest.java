@@ -0,0 +1,279 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+public class JournalMessageStoreTest extends TestCase {
+
+    private File directory;
+    private SynapseEnvironment synapseEnvironment;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("journal", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+        synapseEnvironment = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), new SynapseConfiguration());
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testBasics() throws Exception {
+        MessageStore store = createStore(null);
+        try {
+            populateStore(store, 10);
+            assertEquals(10, store.size());
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals("ID" + i, store.get(i).getMessageID());
+                assertEquals("ID" + i, store.get("ID" + i).getMessageID());
+            }
+
+            List<MessageContext> list = store.getAll();
+            assertEquals(10, list.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("ID" + i, list.get(i).getMessageID());
+            }
+
+            // a peeked message is handed out by the following poll
+            MessageContext head = store.peek();
+            assertEquals("ID0", head.getMessageID());
+            assertSame(head, store.poll());
+
+            for (int i = 1; i < 10; i++) {
+                assertEquals("ID" + i, store.remove().getMessageID());
+            }
+            try {
+                store.remove();
+                fail();
+            } catch (NoSuchElementException expected) {
+
+            }
+            assertNull(store.peek());
+
+            populateStore(store, 10);
+            assertEquals("ID4", store.remove("ID4").getMessageID());
+            assertNull(store.remove("ID4"));
+            assertEquals(9, store.size());
+            assertNull(store.get("ID4"));
+            assertEquals("ID5", store.get(4).getMessageID());
+            store.clear();
+            assertEquals(0, store.size());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    public void testMessageContents() throws Exception {
+        MessageStore store = createStore(null);
+        try {
+            MessageContext msg = TestUtils.createLightweightSynapseMessageContext(
+                    "<order><id>42</id></order>");
+            msg.setMessageID("ORDER");
+            msg.setProperty("target.endpoint", "StockQuote");
+            msg.setProperty("attempts", 3);
+            store.offer(msg);
+
+            MessageContext stored = store.get("ORDER");
+            assertNotSame(msg, stored);
+            assertEquals("StockQuote", stored.getProperty("target.endpoint"));
+            assertEquals(3, stored.getProperty("attempts"));
+            assertEquals("42", stored.getEnvelope().getBody().getFirstElement()
+                    .getFirstElement().getText());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    public void testRecovery() throws Exception {
+        MessageStore store = createStore(null);
+        populateStore(store, 10);
+        store.poll();
+        store.remove("ID5");
+        store.destroy();
+
+        store = createStore(null);
+        try {
+            assertEquals(8, store.size());
+            int[] expected = {1, 2, 3, 4, 6, 7, 8, 9};
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("ID" + expected[i], store.get(i).getMessageID());
+            }
+
+            // the recovered journal keeps accepting messages in order
+            store.offer(createMessageContext("ID10"));
+            assertEquals("ID10", store.get(8).getMessageID());
+            assertEquals("ID1", store.poll().getMessageID());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    public void testCompaction() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(JournalMessageStore.SEGMENT_SIZE, "4096");
+        parameters.put(JournalMessageStore.SYNC_INTERVAL, "10");
+        JournalMessageStore store = createStore(parameters);
+        try {
+            populateStore(store, 200);
+            assertTrue(store.getSegmentCount() > 5);
+
+            // consume all but the last few messages, the tombstones take up a couple of segments
+            for (int i = 0; i < 190; i++) {
+                store.poll();
+            }
+            long timeout = System.currentTimeMillis() + 10000;
+            while (store.getSegmentCount() > 4 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertTrue(store.getSegmentCount() <= 4);
+            assertEquals(store.getSegmentCount(), directory.listFiles().length);
+        } finally {
+            store.destroy();
+        }
+
+        store = createStore(parameters);
+        try {
+            assertEquals(10, store.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals("ID" + (190 + i), store.poll().getMessageID());
+            }
+        } finally {
+            store.destroy();
+        }
+    }
+
+    public void testRelocation() throws Exception {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(JournalMessageStore.SEGMENT_SIZE, "4096");
+        parameters.put(JournalMessageStore.SYNC_INTERVAL, "10");
+        JournalMessageStore store = createStore(parameters);
+        try {
+            populateStore(store, 200);
+            int segments = store.getSegmentCount();
+
+            // a single unconsumed message should not hold on to the oldest segments
+            for (int i = 1; i < 200; i++) {
+                store.remove("ID" + i);
+            }
+            long timeout = System.currentTimeMillis() + 10000;
+            while (store.getSegmentCount() > 4 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertTrue(store.getSegmentCount() < segments);
+            assertTrue(store.getSegmentCount() <= 4);
+        } finally {
+            store.destroy();
+        }
+
+        store = createStore(parameters);
+        try {
+            assertEquals(1, store.size());
+            assertEquals("ID0", store.peek().getMessageID());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    public void testConcurrentProducers() throws Exception {
+        final JournalMessageStore store = createStore(null);
+        final int producers = 4;
+        final int count = 2000;
+        try {
+            Thread[] threads = new Thread[producers];
+            for (int t = 0; t < producers; t++) {
+                final int producer = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < count; i++) {
+                                store.offer(createMessageContext("P" + producer + "-" + i));
+                            }
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(producers * count, store.size());
+
+            int[] next = new int[producers];
+            for (int i = 0; i < producers * count; i++) {
+                String id = store.poll().getMessageID();
+                int producer = Integer.parseInt(id.substring(1, id.indexOf('-')));
+                assertEquals("P" + producer + "-" + next[producer], id);
+                next[producer]++;
+            }
+            assertEquals(0, store.size());
+        } finally {
+            store.destroy();
+        }
+    }
+
+    private JournalMessageStore createStore(Map<String, Object> parameters) {
+        JournalMessageStore store = new JournalMessageStore();
+        if (parameters == null) {
+            parameters = new HashMap<String, Object>();
+        }
+        parameters.put(JournalMessageStore.JOURNAL_DIRECTORY, directory.getAbsolutePath());
+        store.setParameters(parameters);
+        store.setName("JournalStore");
+        store.init(synapseEnvironment);
+        return store;
+    }
+
+    private void populateStore(MessageStore store, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            store.offer(createMessageContext("ID" + i));
+        }
+    }
+
+    private MessageContext createMessageContext(String identifier) throws Exception {
+        MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
+        msg.setMessageID(identifier);
+        return msg;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.registry;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMNode;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.Entry;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.mediators.TestUtils;
+import org.apache.synapse.mediators.base.SequenceMediator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class RegistryCacheRefreshTest extends TestCase {
+
+    private static final String SEQUENCE_1 =
+            "<sequence xmlns=\"http://ws.apache.org/ns/synapse\" name=\"seq1\">\n" +
+            "    <property name=\"foo\" value=\"bar\" />" +
+            "</sequence>";
+
+    private static final String SEQUENCE_2 =
+            "<sequence xmlns=\"http://ws.apache.org/ns/synapse\" name=\"seq1\">\n" +
+            "    <property name=\"foo\" value=\"baz\" />" +
+            "</sequence>";
+
+    private static final String KEY = "dynamic_sequence";
+
+    private TestRegistry registry;
+    private SynapseConfiguration config;
+
+    protected void setUp() throws Exception {
+        Map<String, OMNode> data = new HashMap<String, OMNode>();
+        data.put(KEY, TestUtils.createOMElement(SEQUENCE_1));
+        registry = new TestRegistry(data, 1000L);
+        config = new SynapseConfiguration();
+        config.setRegistry(registry);
+    }
+
+    public void testRefreshAhead() throws Exception {
+        Mediator seq1 = config.getSequence(KEY);
+        assertEquals("bar", mediate(seq1));
+        assertEquals(1, registry.getHitCount());
+
+        // the version of a resource is its modification time
+        Thread.sleep(10);
+        registry.updateResource(KEY, TestUtils.createOMElement(SEQUENCE_2));
+        assertSame(seq1, config.getSequence(KEY));
+        // the entry is refreshed before the lease expires, as it is in use
+        Thread.sleep(1200);
+        assertEquals(2, registry.getHitCount());
+
+        Mediator seq2 = config.getSequence(KEY);
+        assertNotSame(seq1, seq2);
+        assertEquals("baz", mediate(seq2));
+        assertFalse(((SequenceMediator) seq1).isInitialized());
+        assertEquals(2, registry.getHitCount());
+    }
+
+    public void testIdleEntryExpires() throws Exception {
+        Mediator seq1 = config.getSequence(KEY);
+        assertEquals(1, registry.getHitCount());
+
+        Thread.sleep(10);
+        registry.updateResource(KEY, TestUtils.createOMElement(SEQUENCE_2));
+        // an entry nobody requests is not refreshed
+        Thread.sleep(1200);
+        assertEquals(1, registry.getHitCount());
+
+        // but loaded again by the next request once its lease has run out
+        Mediator seq2 = config.getSequence(KEY);
+        assertNotSame(seq1, seq2);
+        assertEquals("baz", mediate(seq2));
+        assertEquals(2, registry.getHitCount());
+    }
+
+    public void testLastGoodValueServed() throws Exception {
+        Mediator seq1 = config.getSequence(KEY);
+        registry.available = false;
+        // let the lease run out while the registry is unavailable
+        Thread.sleep(1200);
+        assertSame(seq1, config.getSequence(KEY));
+
+        registry.updateResource(KEY, TestUtils.createOMElement(SEQUENCE_2));
+        registry.available = true;
+        // the stale value is served until the background refresh completes
+        Mediator seq2 = seq1;
+        long timeout = System.currentTimeMillis() + 5000;
+        while (seq2 == seq1 && System.currentTimeMillis() < timeout) {
+            seq2 = config.getSequence(KEY);
+            Thread.sleep(10);
+        }
+        assertEquals("baz", mediate(seq2));
+    }
+
+    public void testCoalescedLoads() throws Exception {
+        Entry entry = new Entry(KEY);
+        entry.setType(Entry.REMOTE_ENTRY);
+        config.addEntry(KEY, entry);
+
+        registry.lookupDelay = 200;
+        Thread[] threads = new Thread[8];
+        final Object[] values = new Object[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    values[index] = config.getEntry(KEY);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, registry.getHitCount());
+        for (Object value : values) {
+            assertNotNull(value);
+            assertSame(values[0], value);
+        }
+    }
+
+    private String mediate(Mediator sequence) throws Exception {
+        MessageContext synCtx = TestUtils.createLightweightSynapseMessageContext("<empty/>", config);
+        sequence.mediate(synCtx);
+        return (String) synCtx.getProperty("foo");
+    }
+
+    private static class TestRegistry extends SimpleInMemoryRegistry {
+
+        private volatile boolean available = true;
+        private volatile long lookupDelay = 0;
+
+        TestRegistry(Map<String, OMNode> data, long cacheDuration) {
+            super(data, cacheDuration);
+        }
+
+        public synchronized OMNode lookup(String key) {
+            if (lookupDelay > 0) {
+                try {
+                    Thread.sleep(lookupDelay);
+                } catch (InterruptedException ignore) {
+                }
+            }
+            return super.lookup(key);
+        }
+
+        public RegistryEntry getRegistryEntry(String key) {
+            if (!available) {
+                throw new IllegalStateException("Registry not available");
+            }
+            return super.getRegistryEntry(key);
+        }
+    }
+}
@@ -29,9 +29,16 @@ import org.apache.synapse.TestMessageContext;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.TestUtils;
+import org.apache.axis2.addressing.EndpointReference;
+import org.jaxen.Context;
+import org.jaxen.Function;
+import org.jaxen.FunctionCallException;
 import org.jaxen.SimpleVariableContext;
+import org.jaxen.UnresolvableException;
+import org.jaxen.XPathFunctionContext;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -128,6 +135,128 @@ public class SynapseXPathTest extends TestCase {
         assertEquals(6, new SynapseXPath("string-length(//test)").numberValueOf(ctx).intValue());
     }
     
+    public void testPropertyLookups() throws Exception {
+        Axis2MessageContext synCtx = TestUtils.getAxis2MessageContext("<test/>", null);
+        synCtx.setProperty("test", message);
+        synCtx.getAxis2MessageContext().setProperty("test", "axis2 " + message);
+        synCtx.setTo(new EndpointReference("http://localhost:8280/services/test"));
+
+        // simple lookups are resolved directly, the same calls with computed arguments by Jaxen
+        String[][] expressions = {
+            {"get-property('test')", "get-property(concat('te', 'st'))"},
+            {"get-property('missing')", "get-property(concat('miss', 'ing'))"},
+            {"get-property('To')", "get-property(concat('T', 'o'))"},
+            {"get-property('axis2', 'test')", "get-property('axis2', concat('te', 'st'))"},
+            {"get-property('default', 'test')", "get-property('default', concat('te', 'st'))"},
+            {"get-property('bogus', 'test')", "get-property('bogus', concat('te', 'st'))"},
+        };
+        for (String[] pair : expressions) {
+            SynapseXPath direct = new SynapseXPath(pair[0]);
+            SynapseXPath evaluated = new SynapseXPath(pair[1]);
+            assertEquals(pair[0], evaluated.evaluate(synCtx), direct.evaluate(synCtx));
+            assertEquals(pair[0], evaluated.stringValueOf(synCtx), direct.stringValueOf(synCtx));
+            assertEquals(pair[0], evaluated.booleanValueOf(synCtx), direct.booleanValueOf(synCtx));
+        }
+
+        assertEquals(message, new SynapseXPath("$ctx:test").evaluate(synCtx));
+        assertNull(new SynapseXPath("$ctx:missing").stringValueOf(synCtx));
+
+        SynapseXPath xpath = new SynapseXPath("$ctx:test");
+        xpath.addNamespace("ctx", "http://test");
+        try {
+            xpath.evaluate(synCtx);
+            fail("A prefix bound to a namespace should not refer to the message properties");
+        } catch (UnresolvableException expected) {
+
+        }
+    }
+
+    public void testBodyAndHeaderVariables() throws Exception {
+        Axis2MessageContext synCtx = TestUtils.getAxis2MessageContext("<test>body</test>", null);
+        synCtx.setProperty("body", message);
+        synCtx.setProperty("header", message);
+        synCtx.getAxis2MessageContext().setProperty("body", message);
+
+        // body and header refer to the SOAP body and header whatever the prefix of the variable
+        String[] prefixes = {"ctx", "axis2", "trp"};
+        for (String prefix : prefixes) {
+            for (String name : new String[] {"body", "header"}) {
+                SynapseXPath prefixed = new SynapseXPath("$" + prefix + ":" + name);
+                SynapseXPath evaluated = new SynapseXPath("$" + name);
+                assertEquals(prefixed.toString(), evaluated.evaluate(synCtx),
+                        prefixed.evaluate(synCtx));
+                assertEquals(prefixed.toString(), evaluated.stringValueOf(synCtx),
+                        prefixed.stringValueOf(synCtx));
+            }
+        }
+        assertSame(synCtx.getEnvelope().getBody(),
+                new SynapseXPath("$ctx:body").selectSingleNode(synCtx));
+        assertSame(synCtx.getEnvelope().getHeader(),
+                new SynapseXPath("$ctx:header").selectSingleNode(synCtx));
+    }
+
+    public void testNestedEvaluation() throws Exception {
+        final SynapseXPath xpath = new SynapseXPath("concat(nested(), get-property('test'))");
+        final MessageContext inner = new TestMessageContext();
+        inner.setProperty("test", "inner");
+        MessageContext outer = new TestMessageContext();
+        outer.setProperty("test", "outer");
+
+        final XPathFunctionContext functions = new XPathFunctionContext();
+        functions.registerFunction(null, "nested", new Function() {
+            private boolean nested;
+            public Object call(Context context, List args) throws FunctionCallException {
+                if (nested) {
+                    return "";
+                }
+                nested = true;
+                try {
+                    // evaluating the same XPath while it is being evaluated on this thread
+                    return xpath.stringValueOf(inner) + "-";
+                } finally {
+                    nested = false;
+                }
+            }
+        });
+        xpath.setFunctionContext(functions);
+
+        assertEquals("inner-outer", xpath.stringValueOf(outer));
+        assertEquals("inner-outer", xpath.stringValueOf(outer));
+    }
+
+    public void testConcurrentEvaluation() throws Exception {
+        final SynapseXPath[] xpaths = {
+            new SynapseXPath("get-property('test')"),
+            new SynapseXPath("concat(get-property('test'), $ctx:test)")
+        };
+        final int iterations = 1000;
+        final String[] failures = new String[8];
+        Thread[] threads = new Thread[failures.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    MessageContext synCtx = new TestMessageContext();
+                    for (int j = 0; j < iterations && failures[index] == null; j++) {
+                        String value = index + ":" + j;
+                        synCtx.setProperty("test", value);
+                        if (!value.equals(xpaths[0].stringValueOf(synCtx)) ||
+                                !(value + value).equals(xpaths[1].stringValueOf(synCtx))) {
+                            failures[index] = "Unexpected result for " + value;
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String failure : failures) {
+            assertNull(failure, failure);
+        }
+    }
+
     public void testCustomVariables() throws Exception {
         SynapseXPath xpath = new SynapseXPath("$myvar");
         SimpleVariableContext variableContext = new SimpleVariableContext();
@@ -25,7 +25,8 @@ import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 
 /**
- *
+ * Experimental SEDA mediator, superseded by the
+ * {@link org.apache.synapse.mediators.stage.StageMediator} (<code>&lt;stage&gt;</code>) in core.
  */
 public class SEDAMediator extends AbstractMediator implements ManagedLifecycle {
 
@@ -44,4 +44,12 @@ public final class HessianConstants {
     
     /** Hessian fault marker for protocol version 2.0 */
     public static final char HESSIAN_V2_FAULT_IDENTIFIER = 'F';
+
+    /**
+     * Axis2 parameter to read Hessian messages from the transport only when they are needed,
+     * instead of buffering them as they are received. A streamed message cannot be sent again,
+     * so this must not be enabled if messages are cloned or resent by failover, load balance or
+     * hedging endpoints
+     */
+    public static final String STREAM_MESSAGES_PARAM = "hessian.streamMessages";
 }
@@ -28,7 +28,9 @@ import org.apache.axis2.AxisFault;
 import org.apache.axis2.builder.Builder;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.description.Parameter;
+import org.apache.axis2.engine.AxisConfiguration;
 import org.apache.axis2.transport.base.BaseConstants;
+import org.apache.axis2.util.JavaUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.SynapseConstants;
@@ -80,13 +82,22 @@ public class HessianMessageBuilder implements Builder {
 
         try {
 
-            Parameter synEnv = messageContext.getConfigurationContext().getAxisConfiguration()
-                    .getParameter(SynapseConstants.SYNAPSE_ENV);
+            AxisConfiguration axisConfig =
+                    messageContext.getConfigurationContext().getAxisConfiguration();
+            Parameter synEnv = axisConfig.getParameter(SynapseConstants.SYNAPSE_ENV);
 
             PushbackInputStream pis = detectAndMarkMessageFault(messageContext, inputStream);
 
             DataHandler dataHandler;
-            if (synEnv != null && synEnv.getValue() != null) {
+            if (JavaUtils.isTrueExplicitly(
+                    axisConfig.getParameterValue(HessianConstants.STREAM_MESSAGES_PARAM))) {
+                // the message is read from the transport only when it is needed, so that a
+                // message relayed unchanged is streamed out without being buffered
+                SynapseEnvironment env = synEnv != null ?
+                        (SynapseEnvironment) synEnv.getValue() : null;
+                dataHandler = new DataHandler(
+                        SynapseBinaryDataSource.createStreamed(pis, contentType, env));
+            } else if (synEnv != null && synEnv.getValue() != null) {
                 dataHandler = new DataHandler(new SynapseBinaryDataSource(pis, contentType,
                         (SynapseEnvironment) synEnv.getValue()));
             } else {
@@ -116,7 +127,8 @@ public class HessianMessageBuilder implements Builder {
      * Reads the first four bytes of the inputstream to detect whether the message represents a
      * fault message. Once a fault message has been detected, a property used to mark fault messages
      * is stored in the Axis2 message context. The implementaton uses a PushbackInputStream to be
-     * able to put those four bytes back at the end of processing.
+     * able to put those four bytes back at the end of processing, so that only the header of the
+     * message is read at this point.
      *
      * @param   messageContext  the Axis2 message context
      * @param   inputStream     the inputstream to read the Hessian message
@@ -131,7 +143,15 @@ public class HessianMessageBuilder implements Builder {
         int bytesToRead = 4;
         PushbackInputStream pis = new PushbackInputStream(inputStream, bytesToRead);
         byte[] headerBytes = new byte[bytesToRead];
-        int n = pis.read(headerBytes);
+        int n = 0;
+        // a single read may return fewer bytes than the transport is about to deliver
+        while (n < bytesToRead) {
+            int count = pis.read(headerBytes, n, bytesToRead - n);
+            if (count == -1) {
+                break;
+            }
+            n += count;
+        }
 
         // checking fourth byte for fault marker
         if (n == bytesToRead) {
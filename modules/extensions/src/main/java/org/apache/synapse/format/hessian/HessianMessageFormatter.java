@@ -29,7 +29,6 @@ import org.apache.axis2.Constants;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.transport.MessageFormatter;
 import org.apache.axis2.transport.http.util.URLTemplatingUtil;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.util.SynapseBinaryDataSource;
@@ -38,7 +37,6 @@ import javax.activation.DataHandler;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.Iterator;
@@ -164,20 +162,12 @@ public class HessianMessageFormatter implements MessageFormatter {
 
         if (synapseBinaryDataSource != null) {
 
-            InputStream inputStream = null;
             try {
-                inputStream = synapseBinaryDataSource.getInputStream();
-                IOUtils.copy(inputStream, out);
+                // streams the message from the transport if it has not been buffered
+                synapseBinaryDataSource.writeTo(out);
             } catch (IOException e) {
                 handleException("Couldn't get the bytes from the HessianDataSource", e);
             } finally {
-                if (inputStream != null) {
-                    try {
-                        inputStream.close();
-                    } catch (IOException ignore) {
-                        log.warn("Error closing input stream.", ignore);
-                    }
-                }
                 if (out != null) {
                     try {
                         out.close();
@@ -104,6 +104,14 @@ public class MediatorCustomVariable extends MediatorVariable {
         }
     }
 
+    public Object getValue(MessageContext synCtx) {
+        if (this.regKey == null) {
+            return evaluate(synCtx);
+        }
+        evaluateValue(synCtx);
+        return this.value;
+    }
+
     /**
      * Return the object to be used for the variable value
      *
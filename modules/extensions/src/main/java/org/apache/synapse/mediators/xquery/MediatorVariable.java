@@ -30,7 +30,7 @@ public abstract class MediatorVariable {
 
     private QName name;
     private int type;
-    protected Object value;
+    protected volatile Object value;
 
 
     public MediatorVariable(QName name) {
@@ -69,4 +69,17 @@ public abstract class MediatorVariable {
      */
     public abstract boolean evaluateValue(MessageContext synCtx);
 
+    /**
+     * Calculates the value of this variable for the given message. Unlike
+     * {@link #evaluateValue(MessageContext)}, this does not keep a value taken from the message
+     * in the variable, so that the variable can be used by concurrent messages.
+     *
+     * @param synCtx Current message in transit
+     * @return the value of the variable for the message
+     */
+    public Object getValue(MessageContext synCtx) {
+        evaluateValue(synCtx);
+        return value;
+    }
+
 }
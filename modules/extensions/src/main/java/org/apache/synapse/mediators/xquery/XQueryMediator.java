@@ -28,18 +28,18 @@ import org.apache.axiom.om.OMText;
 import org.apache.axiom.om.OMXMLBuilderFactory;
 import org.apache.axiom.om.OMXMLParserWrapper;
 import org.apache.axiom.om.util.ElementHelper;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.SynapseLog;
-import org.apache.synapse.config.Entry;
 import org.apache.synapse.config.SynapseConfigUtils;
+import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.MediatorProperty;
 import org.apache.synapse.mediators.Value;
 import org.apache.synapse.util.xpath.SourceXPathSupport;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.w3c.dom.Element;
-import org.xml.sax.InputSource;
 
 import javax.activation.DataHandler;
 import javax.xml.namespace.QName;
@@ -48,6 +48,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -62,7 +64,7 @@ import java.util.*;
  * through the XPath expression .
  */
 
-public class XQueryMediator extends AbstractMediator {
+public class XQueryMediator extends AbstractMediator implements ManagedLifecycle {
 
     /* Properties that must set to the XQDataSource  */
     private final List<MediatorProperty> dataSourceProperties = new ArrayList<MediatorProperty>();
@@ -79,20 +81,30 @@ public class XQueryMediator extends AbstractMediator {
     /* The list of variables for binding to the DyanamicContext in order to available for querying */
     private final List<MediatorVariable> variables = new ArrayList<MediatorVariable>();
 
-    /*Lock used to ensure thread-safe lookup of the object from the registry */
+    /* Lock used to ensure thread-safe creation of the data source */
     private final Object resourceLock = new Object();
 
     /* Is it need to use DOMSource and DOMResult? */
     private boolean useDOMSource = false;
 
     /*The DataSource which use to create a connection to XML database */
-    private XQDataSource cachedXQDataSource = null;
+    private volatile XQDataSource cachedXQDataSource = null;
 
-    /* connection with a specific XQuery engine.Connection will live as long as synapse live */
-    private XQConnection cachedConnection = null;
+    /*
+     * Connections with the XQuery engine and the expressions prepared on them, which are not
+     * thread safe. A thread takes one of these for the duration of a query, so that queries
+     * are evaluated concurrently, and gives it back once the result has been processed
+     */
+    private final Queue<QueryContext> idleContexts = new ConcurrentLinkedQueue<QueryContext>();
+
+    /* The number of contexts in the idle queue, which is bounded by MAX_IDLE_CONTEXTS */
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+
+    /* Contexts given back while this many are idle are closed rather than kept */
+    private static final int MAX_IDLE_CONTEXTS = 32;
 
-    /* An expression that use for multiple  executions.Expression will recreate if query has changed */
-    private Map<String, XQPreparedExpression> cachedPreparedExpressionMap = new Hashtable<String, XQPreparedExpression>();
+    /* Key of the expression prepared from the in-lined query source */
+    private static final String INLINED_QUERY_KEY = "";
 
     public XQueryMediator() {
     }
@@ -132,6 +144,17 @@ public class XQueryMediator extends AbstractMediator {
         return false;
     }
 
+    public void init(SynapseEnvironment se) {
+    }
+
+    public void destroy() {
+        QueryContext context;
+        while ((context = idleContexts.poll()) != null) {
+            idleCount.decrementAndGet();
+            context.close();
+        }
+    }
+
     /**
      * Perform the quering and get the result and attached to the target node
      *
@@ -140,185 +163,68 @@ public class XQueryMediator extends AbstractMediator {
      */
     private void performQuery(MessageContext synCtx, SynapseLog synLog) {
 
-        boolean reLoad = false;
-        boolean needBind = false;
         XQResultSequence resultSequence;
-        String generatedQueryKey = null;
-        boolean isQueryKeyGenerated = false;
+        String expressionKey;
+        Object query;
 
-        if (queryKey != null) {
+        if (querySource != null && !"".equals(querySource)) {
+            expressionKey = INLINED_QUERY_KEY;
+            query = querySource;
+        } else {
             // Derive actual key from xpath or get static key
-            generatedQueryKey = queryKey.evaluateValue(synCtx);
-        }
-
-        if (generatedQueryKey != null) {
-            isQueryKeyGenerated = true;
-        }
-
-        // get expression from generatedQueryKey
-        XQPreparedExpression cachedPreparedExpression = null;
-
-        if (generatedQueryKey != null && !"".equals(generatedQueryKey)) {
-
-            Entry dp = synCtx.getConfiguration().getEntryDefinition(generatedQueryKey);
-            // if the queryKey refers to a dynamic resource
-            if (dp != null && dp.isDynamic()) {
-                if (!dp.isCached() || dp.isExpired()) {
-                    reLoad = true;
+            expressionKey = queryKey != null ? queryKey.evaluateValue(synCtx) : null;
+            // the entry is replaced when a dynamic resource is reloaded, so an expression is
+            // prepared again only when the source it was prepared from is no longer current
+            query = expressionKey != null ? synCtx.getEntry(expressionKey) : null;
+            if (query == null) {
+                if (synLog.isTraceOrDebugEnabled()) {
+                    synLog.traceOrDebug("Couldn't find the xquery source with a key "
+                            + queryKey);
                 }
+                return;
             }
         }
 
+        QueryContext context = null;
+        boolean failed = false;
         try {
-            synchronized (resourceLock) {
-
-                //creating data source
-                if (cachedXQDataSource == null) {
-                    // A factory for XQConnection  objects
-                    cachedXQDataSource = new SaxonXQDataSource();
-                    //setting up the properties to the XQDataSource
-                    if (dataSourceProperties != null && !dataSourceProperties.isEmpty()) {
-                        synLog.traceOrDebug("Setting up properties to the XQDataSource");
-                        for (MediatorProperty dataSourceProperty : dataSourceProperties) {
-                            if (dataSourceProperty != null) {
-                                cachedXQDataSource.setProperty(dataSourceProperty.getName(),
-                                        dataSourceProperty.getValue());
-                            }
-                        }
-                    }
-                }
+            context = acquireContext(synLog);
 
-                //creating connection
-                if (cachedConnection == null
-                        || (cachedConnection != null && cachedConnection.isClosed())) {
-                    //get the Connection to XML DataBase
-                    synLog.traceOrDebug("Creating a connection from the XQDataSource ");
-                    cachedConnection = cachedXQDataSource.getConnection();
-                }
+            PreparedQuery preparedQuery = context.expressions.get(expressionKey);
+            if (preparedQuery == null || preparedQuery.query != query
+                    || preparedQuery.expression.isClosed()) {
 
-                //If already cached expression then load it from cachedPreparedExpressionMap
-                if (isQueryKeyGenerated) {
-                    cachedPreparedExpression = cachedPreparedExpressionMap.get(generatedQueryKey);
+                if (preparedQuery != null) {
+                    preparedQuery.close();
                 }
-
-                // prepare the expression to execute query
-                if (reLoad || cachedPreparedExpression == null
-                        || (cachedPreparedExpression != null
-                        && cachedPreparedExpression.isClosed())) {
-
-                    if (querySource != null && !"".equals(querySource)) {
-
-                        if (cachedPreparedExpression == null) {
-
-                            if (synLog.isTraceOrDebugEnabled()) {
-                                synLog.traceOrDebug("Using in-lined query source - " + querySource);
-                                synLog.traceOrDebug("Prepare an expression for the query ");
-                            }
-
-                            //create an XQPreparedExpression using the query source
-                            cachedPreparedExpression =
-                                    cachedConnection.prepareExpression(querySource);
-
-                            // if cachedPreparedExpression is created then put it in to cachedPreparedExpressionMap
-                            if (isQueryKeyGenerated) {
-                                cachedPreparedExpressionMap.put(generatedQueryKey, cachedPreparedExpression);
-                            }
-
-                            // need binding because the expression just has recreated
-                            needBind = true;
-                        }
-
-                    } else {
-
-                        Object o = synCtx.getEntry(generatedQueryKey);
-                        if (o == null) {
-                            if (synLog.isTraceOrDebugEnabled()) {
-                                synLog.traceOrDebug("Couldn't find the xquery source with a key "
-                                        + queryKey);
-                            }
-                            return;
-                        }
-
-                        String sourceCode = null;
-                        InputStream inputStream = null;
-                        if (o instanceof OMElement) {
-                            sourceCode = ((OMElement) (o)).getText();
-                        } else if (o instanceof String) {
-                            sourceCode = (String) o;
-                        } else if (o instanceof OMText) {
-                            DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
-                            if (dataHandler != null) {
-                                try {
-                                    inputStream = dataHandler.getInputStream();
-                                    if (inputStream == null) {
-                                        if (synLog.isTraceOrDebugEnabled()) {
-                                            synLog.traceOrDebug("Couldn't get" +
-                                                    " the stream from the xquery source with a key "
-                                                    + queryKey);
-                                        }
-                                        return;
-                                    }
-
-                                } catch (IOException e) {
-                                    handleException("Error in reading content as a stream ");
-                                }
-                            }
-                        }
-
-                        if ((sourceCode == null || "".equals(sourceCode)) && inputStream == null) {
-                            if (synLog.isTraceOrDebugEnabled()) {
-                                synLog.traceOrDebug("Couldn't find the xquery source with a key "
-                                        + queryKey);
-                            }
-                            return;
-                        }
-
-                        if (synLog.isTraceOrDebugEnabled()) {
-                            synLog.traceOrDebug("Picked up the xquery source from the " +
-                                    "key " + queryKey);
-                            synLog.traceOrDebug("Prepare an expression for the query ");
-                        }
-
-                        if (sourceCode != null) {
-                            //create an XQPreparedExpression using the query source
-                            cachedPreparedExpression =
-                                    cachedConnection.prepareExpression(sourceCode);
-                        } else {
-                            //create an XQPreparedExpression using the query source stream
-                            cachedPreparedExpression =
-                                    cachedConnection.prepareExpression(inputStream);
-                        }
-
-                        // if cachedPreparedExpression is created then put it in to cachedPreparedExpressionMap
-                        if (isQueryKeyGenerated) {
-                            cachedPreparedExpressionMap.put(generatedQueryKey, cachedPreparedExpression);
-                        }
-
-                        // need binding because the expression just has recreated
-                        needBind = true;
-                    }
+                preparedQuery = prepareQuery(context.connection, query, synLog);
+                if (preparedQuery == null) {
+                    context.expressions.remove(expressionKey);
+                    return;
                 }
+                context.expressions.put(expressionKey, preparedQuery);
+            }
 
-                //Bind the external variables to the DynamicContext
-                if (variables != null && !variables.isEmpty()) {
-                    synLog.traceOrDebug("Binding  external variables to the DynamicContext");
-                    for (MediatorVariable variable : variables) {
-                        if (variable != null) {
-                            boolean hasValueChanged = variable.evaluateValue(synCtx);
-                            //if the value has changed or need binding because the expression has recreated
-                            if (hasValueChanged || needBind) {
-                                //Binds the external variable to the DynamicContext
-                                bindVariable(cachedPreparedExpression, variable, synLog);
-                            }
+            //Bind the external variables to the DynamicContext
+            if (!variables.isEmpty()) {
+                synLog.traceOrDebug("Binding  external variables to the DynamicContext");
+                for (int i = 0; i < preparedQuery.boundValues.length; i++) {
+                    MediatorVariable variable = variables.get(i);
+                    if (variable != null) {
+                        Object value = variable.getValue(synCtx);
+                        // bind if the value has changed since the expression was last executed
+                        if (value != preparedQuery.boundValues[i]) {
+                            //Binds the external variable to the DynamicContext
+                            bindVariable(preparedQuery.expression, variable, value, synLog);
+                            preparedQuery.boundValues[i] = value;
                         }
                     }
                 }
-
-                //executing the query
-                resultSequence = cachedPreparedExpression.executeQuery();
-
             }
 
+            //executing the query
+            resultSequence = preparedQuery.expression.executeQuery();
+
             if (resultSequence == null) {
                 synLog.traceOrDebug("Result Sequence is null");
                 return;
@@ -406,29 +312,178 @@ public class XQueryMediator extends AbstractMediator {
             }
             resultSequence.close();  // closing the result sequence
         } catch (XQException e) {
+            failed = true;
             handleException("Error during the querying " + e.getMessage(), e);
         } catch (OMException e) {
             handleException("Error during retrieving  the Doument Node as  the result "
                     + e.getMessage(), e);
+        } finally {
+            if (context != null) {
+                releaseContext(context, failed);
+            }
+        }
+    }
+
+    /**
+     * Take an idle connection with its prepared expressions, or create a new one if all of them
+     * are in use
+     *
+     * @param synLog the Synapse log to use
+     * @return a query context to be used only by the current thread until it is released
+     * @throws XQException if the connection cannot be created
+     */
+    private QueryContext acquireContext(SynapseLog synLog) throws XQException {
+        QueryContext context;
+        while ((context = idleContexts.poll()) != null) {
+            idleCount.decrementAndGet();
+            if (!context.connection.isClosed()) {
+                return context;
+            }
+            context.close();
+        }
+
+        //creating data source
+        XQDataSource dataSource = cachedXQDataSource;
+        if (dataSource == null) {
+            synchronized (resourceLock) {
+                if (cachedXQDataSource == null) {
+                    // A factory for XQConnection  objects
+                    dataSource = new SaxonXQDataSource();
+                    //setting up the properties to the XQDataSource
+                    if (!dataSourceProperties.isEmpty()) {
+                        synLog.traceOrDebug("Setting up properties to the XQDataSource");
+                        for (MediatorProperty dataSourceProperty : dataSourceProperties) {
+                            if (dataSourceProperty != null) {
+                                dataSource.setProperty(dataSourceProperty.getName(),
+                                        dataSourceProperty.getValue());
+                            }
+                        }
+                    }
+                    cachedXQDataSource = dataSource;
+                }
+                dataSource = cachedXQDataSource;
+            }
+        }
+
+        //get the Connection to XML DataBase
+        synLog.traceOrDebug("Creating a connection from the XQDataSource ");
+        return new QueryContext(dataSource.getConnection());
+    }
+
+    /**
+     * Give a query context back once the result has been processed, clearing the values bound
+     * to its expressions so that an idle context does not hold on to the message. A context is
+     * closed instead if the query failed, as its expressions may be left in an unknown state,
+     * or if enough contexts are idle already
+     *
+     * @param context the context taken by the current thread
+     * @param failed  whether the engine reported an error for the query
+     */
+    private void releaseContext(QueryContext context, boolean failed) {
+        if (!failed) {
+            try {
+                for (PreparedQuery preparedQuery : context.expressions.values()) {
+                    preparedQuery.clearBindings();
+                }
+            } catch (XQException e) {
+                log.warn("Error while clearing the variables bound to the XQuery expression", e);
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            context.close();
+        } else if (idleCount.incrementAndGet() > MAX_IDLE_CONTEXTS) {
+            idleCount.decrementAndGet();
+            context.close();
+        } else {
+            idleContexts.offer(context);
         }
     }
 
+    /**
+     * Prepare an expression for the given query source
+     *
+     * @param connection the connection to prepare the expression on
+     * @param query      the in-lined query or the entry holding it
+     * @param synLog     the Synapse log to use
+     * @return the prepared expression or null if the query source is empty
+     * @throws XQException if the query cannot be compiled
+     */
+    private PreparedQuery prepareQuery(XQConnection connection, Object query,
+                                       SynapseLog synLog) throws XQException {
+
+        String sourceCode = null;
+        InputStream inputStream = null;
+        if (query instanceof OMElement) {
+            sourceCode = ((OMElement) (query)).getText();
+        } else if (query instanceof String) {
+            sourceCode = (String) query;
+        } else if (query instanceof OMText) {
+            DataHandler dataHandler = (DataHandler) ((OMText) query).getDataHandler();
+            if (dataHandler != null) {
+                try {
+                    inputStream = dataHandler.getInputStream();
+                    if (inputStream == null) {
+                        if (synLog.isTraceOrDebugEnabled()) {
+                            synLog.traceOrDebug("Couldn't get" +
+                                    " the stream from the xquery source with a key "
+                                    + queryKey);
+                        }
+                        return null;
+                    }
+
+                } catch (IOException e) {
+                    handleException("Error in reading content as a stream ");
+                }
+            }
+        }
+
+        if ((sourceCode == null || "".equals(sourceCode)) && inputStream == null) {
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Couldn't find the xquery source with a key "
+                        + queryKey);
+            }
+            return null;
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            if (query == querySource) {
+                synLog.traceOrDebug("Using in-lined query source - " + querySource);
+            } else {
+                synLog.traceOrDebug("Picked up the xquery source from the " +
+                        "key " + queryKey);
+            }
+            synLog.traceOrDebug("Prepare an expression for the query ");
+        }
+
+        XQPreparedExpression expression;
+        if (sourceCode != null) {
+            //create an XQPreparedExpression using the query source
+            expression = connection.prepareExpression(sourceCode);
+        } else {
+            //create an XQPreparedExpression using the query source stream
+            expression = connection.prepareExpression(inputStream);
+        }
+        return new PreparedQuery(expression, query, variables.size());
+    }
+
     /**
      * Binding a variable to the Dynamic Context in order to available during doing the querying
      *
      * @param xqDynamicContext The Dynamic Context  to which the variable will be binded
-     * @param variable         The variable which contains the name and vaule for binding
+     * @param variable         The variable which contains the name and type for binding
+     * @param value            The value of the variable for the current message
      * @param synLog           the Synapse log to use
      * @throws XQException throws if any error occurs when binding the variable
      */
     private void bindVariable(XQDynamicContext xqDynamicContext, MediatorVariable variable,
-                              SynapseLog synLog) throws XQException {
+                              Object value, SynapseLog synLog) throws XQException {
 
         if (variable != null) {
 
             QName name = variable.getName();
             int type = variable.getType();
-            Object value = variable.getValue();
 
             if (value != null && type != -1) {
 
@@ -634,9 +689,8 @@ public class XQueryMediator extends AbstractMediator {
                                                 OMAbstractFactory.FEATURE_DOM).getOMFactory())).
                                         getOwnerDocument()), null);
             } else {
-                xqDynamicContext.bindDocument(name,
-                        new InputSource(SynapseConfigUtils.getInputStream(
-                                variableValue)));
+                // the document is built by the engine straight from the events of the OM
+                xqDynamicContext.bindObject(name, variableValue.getSAXSource(true), null);
             }
         }
     }
@@ -695,6 +749,83 @@ public class XQueryMediator extends AbstractMediator {
         this.dataSourceProperties.addAll(list);
     }
 
+    /**
+     * A connection used by one thread at a time, with the expressions prepared on it keyed on the
+     * query key
+     */
+    private class QueryContext {
+
+        private final XQConnection connection;
+        private final Map<String, PreparedQuery> expressions =
+                new HashMap<String, PreparedQuery>();
+
+        QueryContext(XQConnection connection) {
+            this.connection = connection;
+        }
+
+        void close() {
+            for (PreparedQuery preparedQuery : expressions.values()) {
+                preparedQuery.close();
+            }
+            expressions.clear();
+            try {
+                connection.close();
+            } catch (XQException e) {
+                log.warn("Error while closing the XQuery connection", e);
+            }
+        }
+    }
+
+    /**
+     * A prepared expression, with the query source it was prepared from and the values last
+     * bound to its external variables
+     */
+    private class PreparedQuery {
+
+        private final XQPreparedExpression expression;
+        private final Object query;
+        private final Object[] boundValues;
+
+        PreparedQuery(XQPreparedExpression expression, Object query, int variables) {
+            this.expression = expression;
+            this.query = query;
+            this.boundValues = new Object[variables];
+        }
+
+        /**
+         * Forget the values bound to the external variables, binding an empty element to the
+         * variables which held a part of the message
+         *
+         * @throws XQException if the empty element cannot be bound
+         */
+        void clearBindings() throws XQException {
+            for (int i = 0; i < boundValues.length; i++) {
+                if (boundValues[i] == null) {
+                    continue;
+                }
+                MediatorVariable variable = variables.get(i);
+                int type = variable.getType();
+                if (type == XQItemType.XQITEMKIND_DOCUMENT || type == XQItemType.XQITEMKIND_ELEMENT
+                        || type == XQItemType.XQITEMKIND_DOCUMENT_ELEMENT) {
+                    bindOMNode(variable.getName(),
+                            OMAbstractFactory.getOMFactory().createOMElement("empty", null),
+                            expression);
+                }
+                boundValues[i] = null;
+            }
+        }
+
+        void close() {
+            try {
+                if (!expression.isClosed()) {
+                    expression.close();
+                }
+            } catch (XQException e) {
+                log.warn("Error while closing the XQuery expression", e);
+            }
+        }
+    }
+
     public boolean isUseDOMSource() {
         return useDOMSource;
     }
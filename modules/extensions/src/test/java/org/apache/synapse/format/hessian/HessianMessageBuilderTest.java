@@ -35,6 +35,7 @@ import org.apache.synapse.util.SynapseBinaryDataSource;
 
 import javax.activation.DataHandler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
@@ -72,6 +73,51 @@ public class HessianMessageBuilderTest extends TestCase {
         test(HessianTestHelper.HESSIAN_INCOMPLETE, null);
     }
 
+    public void testStreamedMessage() throws IOException {
+        HessianTestHelper hessianTestHelper = new HessianTestHelper();
+        MessageContext msgContext = hessianTestHelper.createAxis2MessageContext(null);
+        msgContext.getConfigurationContext().getAxisConfiguration().addParameter(
+                HessianConstants.STREAM_MESSAGES_PARAM, "true");
+        OMElement element = hessianTestHelper.buildHessianTestMessage(
+                HessianTestHelper.HESSIAN_DUMMY_REQUEST, msgContext);
+        SynapseBinaryDataSource synapseBinaryDataSource = getDataSource(element);
+        assertFalse(synapseBinaryDataSource.isBuffered());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        synapseBinaryDataSource.writeTo(out);
+        assertTrue(Arrays.equals(hessianTestHelper.getTestMessageAsBytes(
+                HessianTestHelper.HESSIAN_DUMMY_REQUEST), out.toByteArray()));
+        try {
+            synapseBinaryDataSource.getInputStream();
+            fail("A streamed message cannot be read again");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testBufferedMessage() throws IOException {
+        HessianTestHelper hessianTestHelper = new HessianTestHelper();
+        MessageContext msgContext = hessianTestHelper.createAxis2MessageContext(null);
+        OMElement element = hessianTestHelper.buildHessianTestMessage(
+                HessianTestHelper.HESSIAN_DUMMY_REQUEST, msgContext);
+        SynapseBinaryDataSource synapseBinaryDataSource = getDataSource(element);
+        assertTrue(synapseBinaryDataSource.isBuffered());
+
+        // a buffered message can be sent again, e.g. by a failover endpoint
+        byte[] expected = hessianTestHelper.getTestMessageAsBytes(
+                HessianTestHelper.HESSIAN_DUMMY_REQUEST);
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            synapseBinaryDataSource.writeTo(out);
+            assertTrue(Arrays.equals(expected, out.toByteArray()));
+        }
+    }
+
+    private SynapseBinaryDataSource getDataSource(OMElement element) {
+        OMText hessianTextNode = (OMText) element.getFirstOMChild();
+        return (SynapseBinaryDataSource)
+                ((DataHandler) hessianTextNode.getDataHandler()).getDataSource();
+    }
+
     private MessageContext test(String testMessageName, SynapseEnvironment synEnv)
             throws IOException {
 
@@ -269,4 +269,49 @@ public class XQueryMediatorTest extends TestCase {
         assertTrue(mediator.mediate(mc));
         assertEquals("testing", mc.getEnvelope().getBody().getFirstElement().getLocalName());
     }
+
+    public void testConcurrentQueries() throws Exception {
+        final XQueryMediator mediator = new XQueryMediator();
+        List<MediatorVariable> list = new ArrayList<MediatorVariable>();
+        MediatorVariable variable = new MediatorCustomVariable(new QName("payload"));
+        variable.setType(XQItemType.XQITEMKIND_DOCUMENT);
+        list.add(variable);
+        mediator.addAllVariables(list);
+        mediator.setQuerySource("declare namespace m0=\"http://www.apache-synapse.org/test\"; " +
+                "declare variable $payload as document-node() external;" +
+                "<symbol>{$payload//m0:CheckPriceRequest/m0:Code/child::text()}</symbol>");
+
+        Thread[] threads = new Thread[8];
+        final String[] errors = new String[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 50; j++) {
+                            String code = "SYM" + index + "-" + j;
+                            MessageContext mc = TestUtils.getTestContext(
+                                    sampleXml2.replace("IBM", code), null);
+                            mediator.mediate(mc);
+                            String result = mc.getEnvelope().getBody().getFirstElement().getText();
+                            if (!code.equals(result)) {
+                                errors[index] = "Expected " + code + " but got " + result;
+                                return;
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors[index] = e.toString();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (String error : errors) {
+            assertNull(error, error);
+        }
+        mediator.destroy();
+    }
 }
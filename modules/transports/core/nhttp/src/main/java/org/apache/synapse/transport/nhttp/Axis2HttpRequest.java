@@ -103,6 +103,12 @@ public class Axis2HttpRequest {
      * weather chunking is enabled or not
      */
     private boolean chunked = true;
+    /**
+     * the host and port the request is sent to, which is the proxy for proxied requests
+     */
+    private String routeHost = null;
+    private int routePort = -1;
+    private String route = null;
 
     public Axis2HttpRequest(EndpointReference epr, HttpHost httpHost, MessageContext msgContext) {
         this.epr = epr;
@@ -159,6 +165,29 @@ public class Axis2HttpRequest {
         this.endpointURLPrefix = endpointURLPrefix;
     }
 
+    public void setRoute(String routeHost, int routePort) {
+        this.routeHost = routeHost;
+        this.routePort = routePort;
+        this.route = routeHost + ":" + routePort;
+    }
+
+    public String getRouteHost() {
+        return routeHost;
+    }
+
+    public int getRoutePort() {
+        return routePort;
+    }
+
+    /**
+     * Get the key of the connections this request may be sent over
+     *
+     * @return host:port of the route or null if the route has not been set
+     */
+    public String getRoute() {
+        return route;
+    }
+
     /**
      * Create and return a new HttpPost request to the destination EPR
      *
@@ -90,6 +90,8 @@ public class ClientHandler implements NHttpClientEventHandler {
     private WorkerPool workerPool = null;
     /** the metrics collector */
     private NhttpMetricsCollector metrics = null;
+    /** the pool of the connections kept alive */
+    private final ConnectionPool connectionPool;
 
     /** Array of content types for which warnings are logged if HTTP status code is 500. */
     private String[] warnOnHttp500;
@@ -120,11 +122,14 @@ public class ClientHandler implements NHttpClientEventHandler {
      * 
      * @param cfgCtx the Axis2 configuration context
      * @param metrics statistics collection metrics
+     * @param connectionPool the pool of the connections kept alive
      */
-    public ClientHandler(final ConfigurationContext cfgCtx, final NhttpMetricsCollector metrics) {
+    public ClientHandler(final ConfigurationContext cfgCtx, final NhttpMetricsCollector metrics,
+                         final ConnectionPool connectionPool) {
         
         super();
         this.cfgCtx = cfgCtx;
+        this.connectionPool = connectionPool;
         this.httpProcessor = getHttpProcessor();
         this.connStrategy = new DefaultConnectionReuseStrategy();
         this.metrics = metrics;
@@ -190,6 +195,7 @@ public class ClientHandler implements NHttpClientEventHandler {
             recordConnection(conn);
         }
 
+        connectionPool.connected(conn, (Axis2HttpRequest) attachment);
         try {
             processConnection(conn, (Axis2HttpRequest) attachment);
         } catch (ConnectionClosedException e) {
@@ -269,7 +275,7 @@ public class ClientHandler implements NHttpClientEventHandler {
      * @param conn HTTP connection to be closed
      */
     public void closed(final NHttpClientConnection conn) {
-        ConnectionPool.forget(conn);
+        connectionPool.forget(conn);
         String message = getErrorMessage("Connection close", conn);
         if (log.isTraceEnabled()) {
             log.trace(message);
@@ -548,17 +554,18 @@ public class ClientHandler implements NHttpClientEventHandler {
                 if (context.getAttribute(NhttpConstants.DISCARD_ON_COMPLETE) != null) {
                     try {
                         // this is a connection we should not re-use
-                        ConnectionPool.forget(conn);
+                        connectionPool.forget(conn);
                         shutdownConnection(conn, false, null);
                         context.removeAttribute(RESPONSE_SINK_BUFFER);
                         context.removeAttribute(REQUEST_SOURCE_BUFFER);
                     } catch (Exception ignore) {}
                 } else if (!connStrategy.keepAlive(response, context)) {
+                    connectionPool.forget(conn);
                     shutdownConnection(conn, false, null);
                     context.removeAttribute(RESPONSE_SINK_BUFFER);
                     context.removeAttribute(REQUEST_SOURCE_BUFFER);
                 } else {
-                    ConnectionPool.release(conn);
+                    connectionPool.release(conn);
                 }
             }
 
@@ -958,13 +965,13 @@ public class ClientHandler implements NHttpClientEventHandler {
                 !connStrategy.keepAlive(response, context)) {
                 try {
                     // this is a connection we should not re-use
-                    ConnectionPool.forget(conn);
+                    connectionPool.forget(conn);
                     shutdownConnection(conn, false, null);
                     context.removeAttribute(RESPONSE_SINK_BUFFER);
                     context.removeAttribute(REQUEST_SOURCE_BUFFER);
                 } catch (Exception ignore) {}
             } else {
-                ConnectionPool.release(conn);
+                connectionPool.release(conn);
             }
         }
 
@@ -20,87 +20,430 @@ package org.apache.synapse.transport.nhttp;
 
 import org.apache.http.nio.NHttpClientConnection;
 import org.apache.http.protocol.HttpContext;
-import org.apache.http.HttpHost;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.protocol.HttpCoreContext;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
 
+/**
+ * Pool of the connections kept alive by the nhttp sender. Connections are pooled per route,
+ * which is the host:port pair a connection is made to, i.e. the proxy for proxied requests.
+ * A request is sent over an idle connection to its route if there is one, or over a new
+ * connection if the route has not reached its connection limit. Otherwise the request waits,
+ * in the order of arrival, until a connection to the route is released or closed.
+ * <p/>
+ * The pool never blocks the caller. A waiting request is handed over to a connection by the
+ * thread releasing it, or a new connection is opened for it by the thread closing one. A
+ * background task closes the connections that have been idle for too long, have outlived
+ * their time to live or have gone stale, and fails the requests that waited too long, so that
+ * none of this is done on the IO threads.
+ */
 public class ConnectionPool {
 
     private static final Log log = LogFactory.getLog(ConnectionPool.class);
 
-    /** A map of available connections for reuse. The key selects the host+port of the
-     * connection and the value contains a List of available connections to destination
+    /** Context attribute holding the route of a connection managed by the pool */
+    public static final String CONNECTION_ROUTE = "synapse.connection-route";
+
+    /**
+     * Sends requests on behalf of the pool, once it has decided how the request is sent
      */
-    private static Map<String,List<NHttpClientConnection>> connMap =
-            Collections.synchronizedMap(new HashMap<String,List<NHttpClientConnection>>());
+    public interface RequestDispatcher {
 
-    public static NHttpClientConnection getConnection(String host, int port) {
+        /**
+         * Send a request over a connection kept alive
+         *
+         * @param conn    the connection leased for the request
+         * @param request the request to send
+         * @return false if the connection has been closed by the other party
+         */
+        boolean submit(NHttpClientConnection conn, Axis2HttpRequest request);
 
-        String key = host + ":" + Integer.toString(port);
-        List<NHttpClientConnection> connections = connMap.get(key);
+        /**
+         * Open a new connection to the route of the request, and send the request over it
+         *
+         * @param request the request to send
+         */
+        void connect(Axis2HttpRequest request);
 
-        if (connections == null || connections.isEmpty()) {
-            if (log.isDebugEnabled()) {
-                log.debug("No connections available for reuse");
+        /**
+         * Fail a request which could not get a connection in time
+         *
+         * @param request the request which waited for a connection
+         * @param message reason for the failure
+         */
+        void fail(Axis2HttpRequest request, String message);
+    }
+
+    /** The pools of each route, keyed by host:port */
+    private final ConcurrentMap<String, RoutePool> routes =
+            new ConcurrentHashMap<String, RoutePool>();
+
+    private final RequestDispatcher dispatcher;
+
+    /** Maximum number of connections to a route, including the ones being established */
+    private final int maxPerRoute;
+
+    /** How long a request may wait for a connection in milliseconds, or 0 to wait forever */
+    private final long waitTimeout;
+
+    /** How long a connection may stay idle in the pool in milliseconds, or 0 for no limit */
+    private final long idleTimeout;
+
+    /** How long a connection may be reused since it was opened in milliseconds, or 0 for ever */
+    private final long timeToLive;
+
+    private final AtomicLong createdConnections = new AtomicLong(0);
+    private final AtomicLong reusedConnections = new AtomicLong(0);
+    private final AtomicLong evictedConnections = new AtomicLong(0);
+    private final AtomicLong waitTimeouts = new AtomicLong(0);
+
+    private ScheduledExecutorService evictor;
+
+    public ConnectionPool(RequestDispatcher dispatcher, int maxPerRoute, long waitTimeout,
+                          long idleTimeout, long timeToLive) {
+        this.dispatcher = dispatcher;
+        this.maxPerRoute = maxPerRoute > 0 ? maxPerRoute : Integer.MAX_VALUE;
+        this.waitTimeout = waitTimeout;
+        this.idleTimeout = idleTimeout;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Start the background task which evicts connections and times out waiting requests
+     *
+     * @param name     name of the sender, used to name the thread
+     * @param interval how often the task runs in milliseconds
+     */
+    public synchronized void start(final String name, long interval) {
+        if (evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-connection-evictor");
+                t.setDaemon(true);
+                return t;
             }
-            return null;
+        });
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    evict(System.currentTimeMillis());
+                } catch (Throwable t) {
+                    log.error("Error while evicting connections from the pool", t);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
 
-        } else {
-            NHttpClientConnection conn;
-            synchronized (connections) {
-                while (!connections.isEmpty()) {
-                    conn = connections.remove(0);
+    /**
+     * Stop the background task and close the idle connections
+     */
+    public synchronized void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+            evictor = null;
+        }
+        for (RoutePool pool : routes.values()) {
+            List<NHttpClientConnection> idle = new ArrayList<NHttpClientConnection>();
+            synchronized (pool) {
+                for (IdleConnection conn : pool.idle) {
+                    idle.add(conn.connection);
+                }
+                pool.idle.clear();
+            }
+            for (NHttpClientConnection conn : idle) {
+                close(conn);
+            }
+        }
+    }
 
-                    if (conn.isOpen() && !conn.isStale()) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("A connection to host : " + host + " on port : " +
-                                port + " is available in the pool, and will be reused");
-                        }
-                        conn.requestInput(); // asankha - make sure keep alives work properly when reused with throttling
-                        return conn;
+    /**
+     * Send a request to the route set on it, over an idle connection, a new connection or
+     * once a connection becomes available
+     *
+     * @param request the request to send
+     */
+    public void send(Axis2HttpRequest request) {
+        RoutePool pool = getRoutePool(request.getRoute());
+        long now = System.currentTimeMillis();
+        NHttpClientConnection conn = null;
+        boolean connect = false;
+        List<NHttpClientConnection> expired = null;
+
+        synchronized (pool) {
+            // requests already waiting are served first
+            if (pool.waiters.isEmpty()) {
+                while (conn == null && !pool.idle.isEmpty()) {
+                    NHttpClientConnection idle = pool.idle.removeFirst().connection;
+                    if (isReusable(idle, now) && !idle.isStale()) {
+                        conn = idle;
+                        pool.leased.add(conn);
                     } else {
-                        if (log.isDebugEnabled()) {
-                            log.debug("closing stale connection to : " + host + ":" + port);
-                        }
-                        try {
-                            conn.close();
-                        } catch (IOException ignore) {
+                        if (expired == null) {
+                            expired = new ArrayList<NHttpClientConnection>();
                         }
+                        expired.add(idle);
                     }
                 }
+                if (conn == null && pool.size() < maxPerRoute) {
+                    pool.connecting.add(request);
+                    connect = true;
+                }
+            }
+            if (conn == null && !connect) {
+                pool.waiters.add(new Waiter(request,
+                        waitTimeout > 0 ? now + waitTimeout : Long.MAX_VALUE));
             }
-            return null;
+        }
+
+        if (expired != null) {
+            for (NHttpClientConnection idle : expired) {
+                evictedConnections.incrementAndGet();
+                close(idle);
+            }
+        }
+
+        if (conn != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("A connection to : " + pool.route + " is available in the pool, " +
+                        "and will be reused");
+            }
+            reusedConnections.incrementAndGet();
+            handOver(pool, conn, request);
+        } else if (connect) {
+            createdConnections.incrementAndGet();
+            dispatcher.connect(request);
+        } else if (log.isDebugEnabled()) {
+            log.debug("All " + maxPerRoute + " connections to : " + pool.route + " are in use, " +
+                    "the request will wait for a connection");
         }
     }
 
-    public static void release(NHttpClientConnection conn) {
+    /**
+     * Record a connection opened for a request
+     *
+     * @param conn    the new connection
+     * @param request the request the connection was opened for
+     */
+    public void connected(NHttpClientConnection conn, Axis2HttpRequest request) {
+        String route = request.getRoute();
+        conn.getContext().setAttribute(CONNECTION_ROUTE, route);
+        RoutePool pool = getRoutePool(route);
+        synchronized (pool) {
+            pool.connecting.remove(request);
+            pool.leased.add(conn);
+        }
+    }
 
-        HttpHost host = (HttpHost) conn.getContext().getAttribute(
-            HttpCoreContext.HTTP_TARGET_HOST);
-        String key = host.getHostName() + ":" + Integer.toString(host.getPort());
+    /**
+     * Record that a connection could not be opened for a request, so that another request
+     * may try
+     *
+     * @param request the request the connection was being opened for
+     */
+    public void connectFailed(Axis2HttpRequest request) {
+        if (request.getRoute() == null) {
+            return;
+        }
+        RoutePool pool = getRoutePool(request.getRoute());
+        synchronized (pool) {
+            if (!pool.connecting.remove(request)) {
+                return;
+            }
+        }
+        dispatchWaiters(pool);
+    }
 
-        List<NHttpClientConnection> connections = connMap.get(key);
-        if (connections == null) {
-            synchronized(connMap) {
-                // use double locking to make sure
-                connections = connMap.get(key);
-                if (connections == null) {
-                    connections = Collections.synchronizedList(new LinkedList<NHttpClientConnection>());
-                    connMap.put(key, connections);
+    /**
+     * Give back a connection to be kept alive, once its response has been received
+     *
+     * @param conn the connection to release
+     */
+    public void release(NHttpClientConnection conn) {
+        RoutePool pool = getRoutePool(conn);
+        cleanConnectionReferences(conn);
+        if (pool == null) {
+            close(conn);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean reusable = isReusable(conn, now);
+        Waiter waiter = null;
+        int size;
+        synchronized (pool) {
+            if (!pool.leased.remove(conn)) {
+                return;
+            }
+            if (reusable) {
+                waiter = pool.waiters.poll();
+                if (waiter != null) {
+                    pool.leased.add(conn);
+                } else {
+                    pool.idle.addFirst(new IdleConnection(conn, now));
                 }
             }
+            size = pool.size();
         }
 
-        cleanConnectionReferences(conn);
-        connections.add(conn);
+        if (!reusable) {
+            evictedConnections.incrementAndGet();
+            close(conn);
+            dispatchWaiters(pool);
+        } else if (waiter != null) {
+            reusedConnections.incrementAndGet();
+            handOver(pool, conn, waiter.request);
+        } else if (log.isDebugEnabled()) {
+            log.debug("Released a connection to : " + pool.route +
+                    " to the connection pool of current size : " + size);
+        }
+    }
+
+    /**
+     * Remove a connection which is closed or must not be reused from the pool
+     *
+     * @param conn the connection to remove
+     */
+    public void forget(NHttpClientConnection conn) {
+        RoutePool pool = getRoutePool(conn);
+        if (pool == null) {
+            return;
+        }
+        synchronized (pool) {
+            if (!pool.leased.remove(conn) && !pool.removeIdle(conn)) {
+                return;
+            }
+        }
+        dispatchWaiters(pool);
+    }
 
-        if (log.isDebugEnabled()) {
-            log.debug("Released a connection to host: " + host.getHostName() + " on port : " +
-                    host.getPort() + " to the connection pool of current size : " + connections.size());
+    /**
+     * Close the connections which have been idle for too long, have outlived their time to
+     * live or have gone stale, and fail the requests which have waited too long
+     *
+     * @param now the current time in milliseconds
+     */
+    public void evict(long now) {
+        for (RoutePool pool : routes.values()) {
+            List<NHttpClientConnection> expired = new ArrayList<NHttpClientConnection>();
+            List<Axis2HttpRequest> timedOut = new ArrayList<Axis2HttpRequest>();
+            synchronized (pool) {
+                Iterator<IdleConnection> idle = pool.idle.iterator();
+                while (idle.hasNext()) {
+                    IdleConnection conn = idle.next();
+                    if ((idleTimeout > 0 && now - conn.idleSince >= idleTimeout) ||
+                            !isReusable(conn.connection, now) || conn.connection.isStale()) {
+                        idle.remove();
+                        expired.add(conn.connection);
+                    }
+                }
+                Iterator<Waiter> waiters = pool.waiters.iterator();
+                while (waiters.hasNext()) {
+                    Waiter waiter = waiters.next();
+                    if (waiter.deadline <= now || waiter.request.isCompleted()) {
+                        waiters.remove();
+                        timedOut.add(waiter.request);
+                    }
+                }
+            }
+
+            for (NHttpClientConnection conn : expired) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing an expired connection to : " + pool.route);
+                }
+                evictedConnections.incrementAndGet();
+                close(conn);
+            }
+            for (Axis2HttpRequest request : timedOut) {
+                if (!request.isCompleted()) {
+                    waitTimeouts.incrementAndGet();
+                    dispatcher.fail(request, "Timeout waiting for a connection to : " +
+                            pool.route);
+                }
+            }
+            if (!expired.isEmpty()) {
+                dispatchWaiters(pool);
+            }
+        }
+    }
+
+    /**
+     * Open new connections for the waiting requests, while the route is below its limit
+     */
+    private void dispatchWaiters(RoutePool pool) {
+        while (true) {
+            Waiter waiter;
+            synchronized (pool) {
+                if (pool.waiters.isEmpty() || pool.size() >= maxPerRoute) {
+                    return;
+                }
+                waiter = pool.waiters.poll();
+                pool.connecting.add(waiter.request);
+            }
+            createdConnections.incrementAndGet();
+            dispatcher.connect(waiter.request);
+        }
+    }
+
+    private void handOver(RoutePool pool, NHttpClientConnection conn, Axis2HttpRequest request) {
+        // make sure keep alives work properly when reused with throttling
+        conn.requestInput();
+        if (!dispatcher.submit(conn, request)) {
+            if (log.isDebugEnabled()) {
+                log.debug("A pooled connection to : " + pool.route + " has been closed, " +
+                        "sending the request again");
+            }
+            forget(conn);
+            send(request);
+        }
+    }
+
+    private boolean isReusable(NHttpClientConnection conn, long now) {
+        if (!conn.isOpen()) {
+            return false;
+        }
+        if (timeToLive > 0) {
+            Long created = (Long) conn.getContext().getAttribute(
+                    ClientHandler.CONNECTION_CREATION_TIME);
+            if (created != null && now - created >= timeToLive) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RoutePool getRoutePool(String route) {
+        RoutePool pool = routes.get(route);
+        if (pool == null) {
+            pool = new RoutePool(route);
+            RoutePool existing = routes.putIfAbsent(route, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    private RoutePool getRoutePool(NHttpClientConnection conn) {
+        String route = (String) conn.getContext().getAttribute(CONNECTION_ROUTE);
+        return route != null ? routes.get(route) : null;
+    }
+
+    private void close(NHttpClientConnection conn) {
+        try {
+            conn.close();
+        } catch (IOException ignore) {
         }
     }
 
@@ -109,9 +452,11 @@ public class ConnectionPool {
         HttpContext ctx = conn.getContext();        
         Axis2HttpRequest axis2Req =
             (Axis2HttpRequest) ctx.getAttribute(ClientHandler.AXIS2_HTTP_REQUEST);
-        axis2Req.clear();   // this is linked via the selection key attachment and will free itself
-                            // on timeout of the keep alive connection. Till then minimize the
-                            // memory usage to a few bytes 
+        if (axis2Req != null) {
+            axis2Req.clear();   // this is linked via the selection key attachment and will free
+                                // itself on timeout of the keep alive connection. Till then
+                                // minimize the memory usage to a few bytes
+        }
 
         ctx.removeAttribute(ClientHandler.AXIS2_HTTP_REQUEST);
         ctx.removeAttribute(ClientHandler.OUTGOING_MESSAGE_CONTEXT);
@@ -124,17 +469,148 @@ public class ConnectionPool {
         conn.resetOutput();
     }
 
-    public static void forget(NHttpClientConnection conn) {
+    public int getMaxConnectionsPerRoute() {
+        return maxPerRoute;
+    }
+
+    public int getLeasedConnections() {
+        int count = 0;
+        for (RoutePool pool : routes.values()) {
+            synchronized (pool) {
+                count += pool.leased.size();
+            }
+        }
+        return count;
+    }
+
+    public int getIdleConnections() {
+        int count = 0;
+        for (RoutePool pool : routes.values()) {
+            synchronized (pool) {
+                count += pool.idle.size();
+            }
+        }
+        return count;
+    }
+
+    public int getPendingConnections() {
+        int count = 0;
+        for (RoutePool pool : routes.values()) {
+            synchronized (pool) {
+                count += pool.connecting.size();
+            }
+        }
+        return count;
+    }
+
+    public int getWaitingRequests() {
+        int count = 0;
+        for (RoutePool pool : routes.values()) {
+            synchronized (pool) {
+                count += pool.waiters.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of leased, idle and pending connections and waiting requests of each route
+     *
+     * @return a map of host:port to the statistics of the route
+     */
+    public Map<String, String> getRouteStatistics() {
+        Map<String, String> stats = new TreeMap<String, String>();
+        for (RoutePool pool : routes.values()) {
+            synchronized (pool) {
+                stats.put(pool.route, "leased=" + pool.leased.size() + ", idle=" +
+                        pool.idle.size() + ", pending=" + pool.connecting.size() +
+                        ", waiting=" + pool.waiters.size());
+            }
+        }
+        return stats;
+    }
+
+    public long getCreatedConnections() {
+        return createdConnections.get();
+    }
+
+    public long getReusedConnections() {
+        return reusedConnections.get();
+    }
+
+    public long getEvictedConnections() {
+        return evictedConnections.get();
+    }
+
+    public long getWaitTimeouts() {
+        return waitTimeouts.get();
+    }
+
+    public void resetCounters() {
+        createdConnections.set(0);
+        reusedConnections.set(0);
+        evictedConnections.set(0);
+        waitTimeouts.set(0);
+    }
+
+    /**
+     * The connections to a route and the requests waiting for one. Guarded by its own monitor.
+     */
+    private static class RoutePool {
+
+        private final String route;
+
+        /** Idle connections, the most recently released first */
+        private final LinkedList<IdleConnection> idle = new LinkedList<IdleConnection>();
+
+        /** Connections in use by a request */
+        private final Set<NHttpClientConnection> leased = new HashSet<NHttpClientConnection>();
+
+        /** Requests a connection is being opened for */
+        private final Set<Axis2HttpRequest> connecting = new HashSet<Axis2HttpRequest>();
+
+        /** Requests waiting for a connection, in the order of arrival */
+        private final LinkedList<Waiter> waiters = new LinkedList<Waiter>();
 
-        HttpHost host = (HttpHost) conn.getContext().getAttribute(
-            HttpCoreContext.HTTP_TARGET_HOST);
-        String key = host.getHostName() + ":" + Integer.toString(host.getPort());
+        RoutePool(String route) {
+            this.route = route;
+        }
+
+        int size() {
+            return idle.size() + leased.size() + connecting.size();
+        }
 
-        List<NHttpClientConnection> connections = connMap.get(key);
-        if (connections != null) {
-            synchronized(connections) {
-                connections.remove(conn);
+        boolean removeIdle(NHttpClientConnection conn) {
+            Iterator<IdleConnection> itr = idle.iterator();
+            while (itr.hasNext()) {
+                if (itr.next().connection == conn) {
+                    itr.remove();
+                    return true;
+                }
             }
+            return false;
+        }
+    }
+
+    private static class IdleConnection {
+
+        private final NHttpClientConnection connection;
+        private final long idleSince;
+
+        IdleConnection(NHttpClientConnection connection, long idleSince) {
+            this.connection = connection;
+            this.idleSince = idleSince;
+        }
+    }
+
+    private static class Waiter {
+
+        private final Axis2HttpRequest request;
+        private final long deadline;
+
+        Waiter(Axis2HttpRequest request, long deadline) {
+            this.request = request;
+            this.deadline = deadline;
         }
     }
 }
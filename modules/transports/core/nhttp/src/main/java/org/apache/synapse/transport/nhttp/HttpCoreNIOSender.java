@@ -56,6 +56,7 @@ import org.apache.http.protocol.HTTP;
 import org.apache.axis2.transport.base.threads.NativeThreadFactory;
 import org.apache.synapse.transport.nhttp.debug.ClientConnectionDebug;
 import org.apache.synapse.transport.nhttp.debug.ServerConnectionDebug;
+import org.apache.synapse.transport.nhttp.util.ConnectionPoolView;
 import org.apache.synapse.transport.nhttp.util.MessageFormatterDecoratorFactory;
 import org.apache.synapse.transport.nhttp.util.NhttpUtil;
 import org.apache.synapse.transport.nhttp.util.NhttpMetricsCollector;
@@ -78,10 +79,17 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
 
     private static final Log log = LogFactory.getLog(HttpCoreNIOSender.class);
 
+    /** How often the connection pool evicts expired connections, in milliseconds */
+    private static final long EVICTION_INTERVAL = 1000;
+
     /** The IOReactor */
     private DefaultConnectingIOReactor ioReactor = null;
     /** The client handler */
     private ClientHandler handler = null;
+    /** The pool of the connections kept alive */
+    private ConnectionPool connectionPool = null;
+    /** JMX view of the connection pool */
+    private ConnectionPoolView connectionPoolView = null;
     /** The session request callback that calls back to the message receiver with errors */
     private final SessionRequestCallback sessionRequestCallback = getSessionRequestCallback();
     /** The SSL Context to be used */
@@ -175,7 +183,11 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
         }
 
         metrics = new NhttpMetricsCollector(false, transportOut.getName());
-        handler = new ClientHandler(cfgCtx, metrics);
+        connectionPool = new ConnectionPool(getRequestDispatcher(),
+            cfg.getMaxConnectionsPerTarget(), cfg.getConnectionWaitTimeout(),
+            cfg.getConnectionIdleTimeout(), cfg.getConnectionTimeToLive());
+        connectionPool.start(transportOut.getName(), EVICTION_INTERVAL);
+        handler = new ClientHandler(cfgCtx, metrics, connectionPool);
         final IOEventDispatch ioEventDispatch = getEventDispatch(
             handler, sslContext, sslSetupHandler, getConnectionConfig(), transportOut);
 
@@ -199,6 +211,8 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
         mbeanSupport
             = new TransportMBeanSupport(this, "nio-" + transportOut.getName());
         mbeanSupport.register();
+        connectionPoolView = new ConnectionPoolView("nio-" + transportOut.getName(),
+            connectionPool);
         
         state = BaseConstants.STARTED;
     }
@@ -385,7 +399,7 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
                 }
             }
             
-            NHttpClientConnection conn = ConnectionPool.getConnection(host, port);
+            axis2Req.setRoute(host, port);
 
             // Ensure MessageContext has a ClientConnectionDebug attached before we start streaming
             ServerConnectionDebug scd = (ServerConnectionDebug)
@@ -398,30 +412,11 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
                     ccd = new ClientConnectionDebug(scd);
                     scd.setClientConnectionDebug(ccd);
                 }
-                ccd.recordRequestStartTime(conn, axis2Req);
+                ccd.recordRequestStartTime(null, axis2Req);
                 msgContext.setProperty(ClientHandler.CLIENT_CONNECTION_DEBUG, ccd);
             }
 
-            if (conn == null) {
-                ioReactor.connect(new InetSocketAddress(host, port),
-                    null, axis2Req, sessionRequestCallback);
-                if (log.isDebugEnabled()) {
-                    log.debug("A new connection established to : " + host + ":" + port);
-                }
-            } else {
-                try {
-                    handler.submitRequest(conn, axis2Req);
-                    if (log.isDebugEnabled()) {
-                        log.debug("An existing connection reused to : " + host + ":" + port);
-                    }                    
-                } catch (ConnectionClosedException e) {
-                    ioReactor.connect(new InetSocketAddress(host, port),
-                        null, axis2Req, sessionRequestCallback);
-                    if (log.isDebugEnabled()) {
-                        log.debug("A new connection established to : " + host + ":" + port);
-                    }
-                }
-            }
+            connectionPool.send(axis2Req);
 
             axis2Req.streamMessageContents();
 
@@ -726,6 +721,8 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
         } catch (IOException e) {
             log.warn("Error shutting down IOReactor", e);
         }
+        connectionPool.shutdown();
+        connectionPoolView.destroy();
         mbeanSupport.unregister();
         metrics.destroy();
     }
@@ -771,6 +768,7 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
                     request.getAttachment() instanceof Axis2HttpRequest) {
 
                     Axis2HttpRequest axis2Request = (Axis2HttpRequest) request.getAttachment();
+                    connectionPool.connectFailed(axis2Request);
                     if (!axis2Request.isCompleted()) {
                         handler.markRequestCompletedWithError(
                             axis2Request, errorCode,  errorMessage,  null);
@@ -780,6 +778,40 @@ public class HttpCoreNIOSender extends AbstractHandler implements TransportSende
         };
     }
 
+    /**
+     * Return a RequestDispatcher through which the connection pool sends requests over the
+     * connections it leases or opens, and fails the requests which waited too long for one
+     * @return a request dispatcher
+     */
+    private ConnectionPool.RequestDispatcher getRequestDispatcher() {
+        return new ConnectionPool.RequestDispatcher() {
+            public boolean submit(NHttpClientConnection conn, Axis2HttpRequest request) {
+                try {
+                    handler.submitRequest(conn, request);
+                    if (log.isDebugEnabled()) {
+                        log.debug("An existing connection reused to : " + request.getRoute());
+                    }
+                    return true;
+                } catch (ConnectionClosedException e) {
+                    return false;
+                }
+            }
+
+            public void connect(Axis2HttpRequest request) {
+                ioReactor.connect(new InetSocketAddress(request.getRouteHost(),
+                    request.getRoutePort()), null, request, sessionRequestCallback);
+                if (log.isDebugEnabled()) {
+                    log.debug("A new connection established to : " + request.getRoute());
+                }
+            }
+
+            public void fail(Axis2HttpRequest request, String message) {
+                handler.markRequestCompletedWithError(
+                    request, NhttpConstants.CONNECT_TIMEOUT, message, null);
+            }
+        };
+    }
+
     // -------------- utility methods -------------
     private boolean isBypass(String hostName) {
         for (String entry : proxyBypassList) {
@@ -38,6 +38,8 @@ public final class NHttpConfiguration extends HttpTransportConfiguration {
     private static final int BLOCKING_QUEUE_LENGTH = -1;
     private static final int IO_WORKER_COUNT = Runtime.getRuntime().availableProcessors();
     private static final int BUFFER_SIZE           = 8192;
+    private static final int CONNECTION_WAIT_TIMEOUT = 60000;
+    private static final int CONNECTION_IDLE_TIMEOUT = 60000;
 
     // server listener
     private static final String S_T_CORE     = "snd_t_core";
@@ -120,6 +122,22 @@ public final class NHttpConfiguration extends HttpTransportConfiguration {
         return getIntProperty(NhttpConstants.DISABLE_KEEPALIVE, 0) == 1;
     }
 
+    public int getMaxConnectionsPerTarget() {
+        return getIntProperty(NhttpConstants.MAX_CONNECTIONS_PER_TARGET, Integer.MAX_VALUE);
+    }
+
+    public int getConnectionWaitTimeout() {
+        return getIntProperty(NhttpConstants.CONNECTION_WAIT_TIMEOUT, CONNECTION_WAIT_TIMEOUT);
+    }
+
+    public int getConnectionIdleTimeout() {
+        return getIntProperty(NhttpConstants.CONNECTION_IDLE_TIMEOUT, CONNECTION_IDLE_TIMEOUT);
+    }
+
+    public int getConnectionTimeToLive() {
+        return getIntProperty(NhttpConstants.CONNECTION_TTL, -1);
+    }
+
     public boolean isCountConnections() {
         return getBooleanProperty(NhttpConstants.COUNT_CONNECTIONS, false);
     }
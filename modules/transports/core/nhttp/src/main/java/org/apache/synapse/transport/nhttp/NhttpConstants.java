@@ -163,6 +163,16 @@ public class NhttpConstants {
     public static final String SO_TIMEOUT_RECEIVER = "http.socket.timeout.receiver";
     public static final String SO_TIMEOUT_SENDER = "http.socket.timeout.sender";
     
+    /**
+     * nhttp properties which bound the connections the sender keeps to each host:port, how
+     * long a request waits for one of them, and how long an idle connection is kept alive
+     * and a connection is reused at all, in milliseconds
+     */
+    public static final String MAX_CONNECTIONS_PER_TARGET = "http.max.connections.per.target";
+    public static final String CONNECTION_WAIT_TIMEOUT = "http.connection.wait.timeout";
+    public static final String CONNECTION_IDLE_TIMEOUT = "http.connection.idle.timeout";
+    public static final String CONNECTION_TTL = "http.connection.ttl";
+
     /** This property can be used to set the HOST header sent from the client to synapse */
     public static final String REQUEST_HOST_HEADER = "REQUEST_HOST_HEADER";
     
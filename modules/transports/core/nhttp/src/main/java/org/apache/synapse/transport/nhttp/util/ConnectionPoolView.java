@@ -0,0 +1,93 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.nhttp.util;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.transport.nhttp.ConnectionPool;
+
+import java.util.Map;
+
+/**
+ * ConnectionPoolView MBean exposes the state of the connection pool of an NHTTP sender, i.e.
+ * the number of connections in use, idle and being opened, the number of requests waiting
+ * for a connection, and how often connections have been opened, reused and evicted since
+ * the counters were last reset. The same figures are also available for each target
+ * host:port.
+ */
+public class ConnectionPoolView implements ConnectionPoolViewMBean {
+
+    private static final String NHTTP_CONNECTION_POOL = "NhttpConnectionPool";
+
+    private ConnectionPool pool;
+    private String name;
+
+    public ConnectionPoolView(String name, ConnectionPool pool) {
+        this.name = name;
+        this.pool = pool;
+        MBeanRegistrar.getInstance().registerMBean(this, NHTTP_CONNECTION_POOL, name);
+    }
+
+    public void destroy() {
+        MBeanRegistrar.getInstance().unRegisterMBean(NHTTP_CONNECTION_POOL, name);
+    }
+
+    public int getMaxConnectionsPerTarget() {
+        return pool.getMaxConnectionsPerRoute();
+    }
+
+    public int getLeasedConnections() {
+        return pool.getLeasedConnections();
+    }
+
+    public int getIdleConnections() {
+        return pool.getIdleConnections();
+    }
+
+    public int getPendingConnections() {
+        return pool.getPendingConnections();
+    }
+
+    public int getWaitingRequests() {
+        return pool.getWaitingRequests();
+    }
+
+    public long getCreatedConnections() {
+        return pool.getCreatedConnections();
+    }
+
+    public long getReusedConnections() {
+        return pool.getReusedConnections();
+    }
+
+    public long getEvictedConnections() {
+        return pool.getEvictedConnections();
+    }
+
+    public long getWaitTimeouts() {
+        return pool.getWaitTimeouts();
+    }
+
+    public Map getConnectionsPerTarget() {
+        return pool.getRouteStatistics();
+    }
+
+    public void reset() {
+        pool.resetCounters();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.passthru;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests a pass-through listener processes concurrently. The limit
+ * adapts to the observed latency using additive increase, multiplicative decrease: every
+ * request completed within the latency threshold while the listener is busy raises the limit
+ * by roughly one request per window, and a request exceeding the threshold shrinks the limit by
+ * the backoff ratio, at most once per threshold period.
+ * <p/>
+ * Requests over the limit are rejected on the IO thread before any message processing is done.
+ * A fraction of the limit may be reserved for requests of a high priority, as evaluated by the
+ * priority conditions of the listener.
+ */
+public class AdmissionController {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThreshold;
+    private final double backoffRatio;
+    private final double reservedRatio;
+    private final int priorityThreshold;
+
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong admitted = new AtomicLong(0);
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    private volatile double limit;
+    private long lastDecrease = 0;
+
+    /**
+     * Create an admission controller
+     *
+     * @param initialLimit      concurrency limit to start with
+     * @param minLimit          the limit is never decreased below this value
+     * @param maxLimit          the limit is never increased above this value
+     * @param latencyThreshold  latency in milliseconds above which the listener is overloaded
+     * @param backoffRatio      the limit is multiplied by this ratio when overloaded
+     * @param reservedRatio     fraction of the limit only available to high priority requests
+     * @param priorityThreshold lowest priority considered high priority
+     */
+    public AdmissionController(int initialLimit, int minLimit, int maxLimit,
+                               long latencyThreshold, double backoffRatio,
+                               double reservedRatio, int priorityThreshold) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits : " +
+                    minLimit + " - " + maxLimit);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        if (reservedRatio < 0 || reservedRatio >= 1) {
+            throw new IllegalArgumentException("Reserved ratio must be between 0 and 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThreshold = latencyThreshold;
+        this.backoffRatio = backoffRatio;
+        this.reservedRatio = reservedRatio;
+        this.priorityThreshold = priorityThreshold;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Try to admit a request of the given priority
+     *
+     * @param priority priority of the request
+     * @return a permit which must be released when the request completes, or null if the
+     *         request should be rejected
+     */
+    public Permit tryAcquire(int priority) {
+        int allowed = getLimit(priority);
+        while (true) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                admitted.incrementAndGet();
+                return new Permit();
+            }
+        }
+    }
+
+    /**
+     * Get the number of requests of the given priority which may be in flight. Requests below
+     * the priority threshold may only use the part of the limit which is not reserved.
+     *
+     * @param priority priority of the request
+     * @return concurrency limit for the priority
+     */
+    protected int getLimit(int priority) {
+        int current = (int) limit;
+        if (priority >= priorityThreshold) {
+            return current;
+        }
+        return Math.max(1, (int) (current * (1 - reservedRatio)));
+    }
+
+    private void release(long latency, boolean failed) {
+        int current = inFlight.getAndDecrement();
+        if (latency > latencyThreshold) {
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (now - lastDecrease >= latencyThreshold) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                }
+            }
+        } else if (!failed && current * 2 >= limit) {
+            // only grow the limit when it is actually being used
+            synchronized (this) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    public int getConcurrencyLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlightRequests() {
+        return inFlight.get();
+    }
+
+    public long getAdmittedRequests() {
+        return admitted.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejected.get();
+    }
+
+    public void resetCounters() {
+        admitted.set(0);
+        rejected.set(0);
+    }
+
+    /**
+     * Represents an admitted request. Releasing it more than once has no effect.
+     */
+    public class Permit {
+
+        private final long start = System.currentTimeMillis();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        /**
+         * Release the permit once the response has been written or the request has failed
+         *
+         * @param failed whether the request did not complete normally
+         */
+        public void release(boolean failed) {
+            if (released.compareAndSet(false, true)) {
+                AdmissionController.this.release(System.currentTimeMillis() - start, failed);
+            }
+        }
+    }
+}
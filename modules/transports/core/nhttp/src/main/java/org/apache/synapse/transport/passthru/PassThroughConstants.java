@@ -44,6 +44,31 @@ public class PassThroughConstants {
     public static final String WSDL_EPR_PREFIX = "WSDLEPRPrefix";
     public static final String BIND_ADDRESS = "bind-address" ;
 
+    /** Priority executor and conditions used to dispatch requests received by the listener */
+    public static final String PRIORITY_CONFIG_FILE_NAME = "priorityConfigFile";
+
+    /** Adaptive admission control of the listener and its tuning parameters */
+    public static final String ADMISSION_CONTROL = "admissionControl";
+    public static final String ADMISSION_INITIAL_LIMIT = "admissionControl.initialLimit";
+    public static final String ADMISSION_MIN_LIMIT = "admissionControl.minLimit";
+    public static final String ADMISSION_MAX_LIMIT = "admissionControl.maxLimit";
+    public static final String ADMISSION_LATENCY_THRESHOLD = "admissionControl.latencyThreshold";
+    public static final String ADMISSION_BACKOFF_RATIO = "admissionControl.backoffRatio";
+    public static final String ADMISSION_RESERVED_RATIO = "admissionControl.reservedRatio";
+    public static final String ADMISSION_PRIORITY_THRESHOLD = "admissionControl.priorityThreshold";
+
+    /** Compression and decompression of the relayed responses to match the Accept-Encoding */
+    public static final String RESPONSE_TRANSCODING = "responseTranscoding";
+    public static final String RESPONSE_TRANSCODING_MIN_SIZE = "responseTranscoding.minSize";
+    public static final String RESPONSE_TRANSCODING_CONTENT_TYPES =
+            "responseTranscoding.contentTypes";
+
+    /** Scheme of the addresses sent over cleartext HTTP/2, and tuning of the HTTP/2 sender */
+    public static final String H2C_SCHEME = "h2c";
+    public static final String HTTP2_MAX_CONNECTIONS_PER_HOST = "http2.maxConnectionsPerHost";
+    public static final String HTTP2_INITIAL_WINDOW_SIZE = "http2.initialWindowSize";
+    public static final String HTTP2_CONNECTION_WINDOW_SIZE = "http2.connectionWindowSize";
+
     public static final String EPR_TO_SERVICE_NAME_MAP = "service.epr.map";
     public static final String NON_BLOCKING_TRANSPORT = "NonBlockingTransport";
     public static final String SERIALIZED_BYTES = "SerializedBytes";
@@ -0,0 +1,369 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru;
+
+import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.AddressingConstants;
+import org.apache.axis2.addressing.AddressingHelper;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.description.TransportOutDescription;
+import org.apache.axis2.handlers.AbstractHandler;
+import org.apache.axis2.transport.MessageFormatter;
+import org.apache.axis2.transport.TransportSender;
+import org.apache.axis2.transport.base.ParamUtils;
+import org.apache.axis2.transport.base.threads.NativeThreadFactory;
+import org.apache.axis2.transport.base.threads.WorkerPool;
+import org.apache.axis2.transport.http.HTTPConstants;
+import org.apache.axis2.util.MessageProcessorSelector;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOReactorExceptionHandler;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.synapse.transport.passthru.config.TargetConfiguration;
+import org.apache.synapse.transport.passthru.http2.Http2ConnectionPool;
+import org.apache.synapse.transport.passthru.http2.Http2Constants;
+import org.apache.synapse.transport.passthru.http2.Http2IOEventDispatch;
+import org.apache.synapse.transport.passthru.http2.Http2ResponseHandler;
+import org.apache.synapse.transport.passthru.http2.Http2Stream;
+import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
+import org.apache.synapse.transport.passthru.util.TargetRequestFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Pass-through sender which sends requests to their targets over cleartext HTTP/2 (h2c) with
+ * prior knowledge, multiplexing the concurrent requests to a target over a few connections
+ * instead of opening a connection for each of them. Endpoints select it with
+ * <code>h2c://host:port/path</code> addresses. The request and response bodies are streamed
+ * through the pass-through pipes as for HTTP/1.1 targets, and the responses are processed by
+ * the same client workers.
+ * <p/>
+ * Responses to the clients of a listener are handed over to the sender of the transport the
+ * request came in through.
+ */
+public class PassThroughHttp2Sender extends AbstractHandler implements TransportSender {
+
+    protected Log log = LogFactory.getLog(this.getClass().getName());
+
+    /** Request headers which only apply to an HTTP/1.x connection */
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade",
+            "host", "te"));
+
+    private ConfigurationContext configurationContext;
+
+    private TargetConfiguration targetConfiguration;
+
+    private TargetErrorHandler targetErrorHandler;
+
+    private DefaultConnectingIOReactor ioReactor;
+
+    private Http2ConnectionPool connectionPool;
+
+    private final Http2ResponseHandler responseHandler = new ResponseHandler();
+
+    public void init(ConfigurationContext configurationContext,
+                     TransportOutDescription transportOutDescription) throws AxisFault {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Initializing pass-through HTTP/2 sender...");
+        }
+        this.configurationContext = configurationContext;
+
+        WorkerPool workerPool = (WorkerPool) configurationContext.getProperty(
+                PassThroughConstants.PASS_THROUGH_TRANSPORT_WORKER_POOL);
+        targetConfiguration = new TargetConfiguration(configurationContext,
+                transportOutDescription, workerPool);
+        configurationContext.setProperty(PassThroughConstants.PASS_THROUGH_TRANSPORT_WORKER_POOL,
+                targetConfiguration.getWorkerPool());
+        targetErrorHandler = new TargetErrorHandler(targetConfiguration);
+
+        try {
+            String prefix = "HTTP2-PT-Sender I/O Dispatcher";
+            ioReactor = new DefaultConnectingIOReactor(
+                    targetConfiguration.getReactorConfig(false),
+                    new NativeThreadFactory(new ThreadGroup(prefix + " Thread Group"), prefix));
+
+            ioReactor.setExceptionHandler(new IOReactorExceptionHandler() {
+
+                public boolean handle(IOException ioException) {
+                    log.warn("System may be unstable: HTTP/2 ConnectingIOReactor encountered " +
+                            "a checked exception : " + ioException.getMessage(), ioException);
+                    return true;
+                }
+
+                public boolean handle(RuntimeException runtimeException) {
+                    log.warn("System may be unstable: HTTP/2 ConnectingIOReactor encountered " +
+                            "a runtime exception : " + runtimeException.getMessage(),
+                            runtimeException);
+                    return true;
+                }
+            });
+        } catch (IOReactorException e) {
+            handleException("Error starting the HTTP/2 ConnectingIOReactor", e);
+        }
+
+        connectionPool = new Http2ConnectionPool(ioReactor,
+                ParamUtils.getOptionalParamInt(transportOutDescription,
+                        PassThroughConstants.HTTP2_MAX_CONNECTIONS_PER_HOST, 2),
+                ParamUtils.getOptionalParamInt(transportOutDescription,
+                        PassThroughConstants.HTTP2_INITIAL_WINDOW_SIZE,
+                        Http2Constants.DEFAULT_WINDOW_SIZE),
+                ParamUtils.getOptionalParamInt(transportOutDescription,
+                        PassThroughConstants.HTTP2_CONNECTION_WINDOW_SIZE, 1024 * 1024),
+                targetConfiguration.getReactorConfig(false).getSoTimeout());
+
+        final Http2IOEventDispatch ioEventDispatch = new Http2IOEventDispatch(connectionPool);
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    ioReactor.execute(ioEventDispatch);
+                } catch (Exception ex) {
+                    log.fatal("Exception encountered in the HTTP/2 sender. No more connections " +
+                            "will be initiated by this transport", ex);
+                }
+                log.info("HTTP/2 sender shutdown");
+            }
+        }, "PassThroughHTTP2Sender");
+        t.start();
+
+        log.info("Pass-through HTTP/2 sender started...");
+    }
+
+    public void cleanup(MessageContext messageContext) throws AxisFault {
+
+    }
+
+    public void stop() {
+        connectionPool.shutdown();
+        try {
+            ioReactor.shutdown();
+        } catch (IOException e) {
+            log.error("Error shutting down the PassThroughHttp2Sender", e);
+        }
+    }
+
+    public InvocationResponse invoke(MessageContext msgContext) throws AxisFault {
+        EndpointReference epr = PassThroughTransportUtils.getDestinationEPR(msgContext);
+        if (epr == null) {
+            return getResponseSender(msgContext).invoke(msgContext);
+        }
+        if (epr.hasNoneAddress()) {
+            handleException("Cannot send message to " + AddressingConstants.Final.WSA_NONE_URI);
+        }
+
+        // remove unwanted HTTP headers (if any from the current message)
+        PassThroughTransportUtils.removeUnwantedHeaders(msgContext, targetConfiguration);
+
+        if (AddressingHelper.isReplyRedirected(msgContext)
+                && !msgContext.getReplyTo().hasNoneAddress()) {
+            msgContext.setProperty(PassThroughConstants.IGNORE_SC_ACCEPTED, Constants.VALUE_TRUE);
+        }
+
+        if (msgContext.getProperty(PassThroughConstants.PASS_THROUGH_PIPE) == null) {
+            Pipe pipe = new Pipe(targetConfiguration.getBufferFactory().getBuffer(),
+                    "Test", targetConfiguration);
+            msgContext.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, pipe);
+            msgContext.setProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED, Boolean.TRUE);
+        }
+
+        URL url = getTargetUrl(epr.getAddress());
+        int port = url.getPort() != -1 ? url.getPort() : 80;
+        TargetRequest request = TargetRequestFactory.create(msgContext, targetConfiguration, url);
+
+        Pipe pipe = null;
+        OutputStream out = null;
+        if (request.hasEntityBody()) {
+            pipe = (Pipe) msgContext.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
+            if (Boolean.TRUE.equals(msgContext.getProperty(
+                    PassThroughConstants.MESSAGE_BUILDER_INVOKED))) {
+                // switch the pipe over to the serialized message before the stream reads it
+                out = pipe.getOutputStream();
+            }
+        }
+
+        Http2Stream stream = new Http2Stream(createRequestHeaders(msgContext, request, url, port),
+                pipe, targetConfiguration, responseHandler);
+        stream.setAttachment(msgContext);
+        connectionPool.submit(url.getHost(), port, stream);
+
+        if (out != null) {
+            MessageFormatter formatter = MessageProcessorSelector.getMessageFormatter(msgContext);
+            OMOutputFormat format = PassThroughTransportUtils.getOMOutputFormat(msgContext);
+            formatter.writeTo(msgContext, format, out, false);
+            pipe.setSerializationComplete(true);
+            stream.requestOutput();
+        }
+        return InvocationResponse.CONTINUE;
+    }
+
+    /**
+     * Get the sender for a response to a client of the transport the request came in through
+     */
+    private TransportSender getResponseSender(MessageContext msgContext) throws AxisFault {
+        if (msgContext.getTransportIn() != null) {
+            TransportOutDescription transportOut = configurationContext.getAxisConfiguration().
+                    getTransportOut(msgContext.getTransportIn().getName());
+            if (transportOut != null && transportOut.getSender() != null &&
+                    transportOut.getSender() != this) {
+                return transportOut.getSender();
+            }
+        }
+        handleException("No valid destination EPR to send message");
+        return null;
+    }
+
+    /**
+     * Build the HTTP/2 header fields of a request, with names in lower case and without the
+     * headers which only apply to HTTP/1.x connections
+     */
+    private List<Header> createRequestHeaders(MessageContext msgContext, TargetRequest request,
+                                              URL url, int port) {
+        String path = ("".equals(url.getPath()) ? "/" : url.getPath()) +
+                (url.getQuery() != null ? "?" + url.getQuery() : "");
+        String authority = url.getHost() + (url.getPort() != -1 ? ":" + port : "");
+
+        List<Header> headers = new ArrayList<Header>();
+        for (Map.Entry<String, TreeSet<String>> entry : request.getHeaders().entrySet()) {
+            if (entry.getKey() == null) {
+                continue;
+            }
+            String name = entry.getKey().toLowerCase(Locale.ENGLISH);
+            if (HTTP.TARGET_HOST.equalsIgnoreCase(name)) {
+                authority = entry.getValue().first();
+            } else if (!CONNECTION_HEADERS.contains(name) &&
+                    !HTTPConstants.HEADER_SOAP_ACTION.equalsIgnoreCase(name)) {
+                for (String value : entry.getValue()) {
+                    headers.add(new BasicHeader(name, value));
+                }
+            }
+        }
+
+        String soapAction = TargetRequest.getSoapActionHeader(msgContext);
+        if (soapAction != null) {
+            headers.add(new BasicHeader(HTTPConstants.HEADER_SOAP_ACTION.toLowerCase(Locale.ENGLISH),
+                    soapAction));
+        } else if (request.getHeaders().containsKey(HTTPConstants.HEADER_SOAP_ACTION)) {
+            headers.add(new BasicHeader(HTTPConstants.HEADER_SOAP_ACTION.toLowerCase(Locale.ENGLISH),
+                    request.getHeaders().get(HTTPConstants.HEADER_SOAP_ACTION).first()));
+        }
+
+        Long contentLength = (Long) msgContext.getProperty(
+                PassThroughConstants.PASS_THROUGH_MESSAGE_LENGTH);
+        if (contentLength != null && request.hasEntityBody() &&
+                !request.getHeaders().containsKey(HTTP.CONTENT_LEN)) {
+            headers.add(new BasicHeader("content-length", contentLength.toString()));
+        }
+
+        List<Header> requestHeaders = new ArrayList<Header>(headers.size() + 4);
+        requestHeaders.add(new BasicHeader(":method", request.getMethod()));
+        requestHeaders.add(new BasicHeader(":scheme", "http"));
+        requestHeaders.add(new BasicHeader(":authority", authority));
+        requestHeaders.add(new BasicHeader(":path", path));
+        requestHeaders.addAll(headers);
+        return requestHeaders;
+    }
+
+    /**
+     * Map an h2c address to the http URL of the target
+     */
+    private URL getTargetUrl(String address) throws AxisFault {
+        if (address.regionMatches(true, 0, PassThroughConstants.H2C_SCHEME + ":", 0,
+                PassThroughConstants.H2C_SCHEME.length() + 1)) {
+            address = "http" + address.substring(PassThroughConstants.H2C_SCHEME.length());
+        }
+        try {
+            return new URL(address);
+        } catch (MalformedURLException e) {
+            handleException("Malformed URL in the target EPR", e);
+        }
+        return null;
+    }
+
+    private void handleException(String s, Exception e) throws AxisFault {
+        log.error(s, e);
+        throw new AxisFault(s, e);
+    }
+
+    private void handleException(String msg) throws AxisFault {
+        log.error(msg);
+        throw new AxisFault(msg);
+    }
+
+    /**
+     * Hands the responses over to the client workers, and reports the failed requests back to
+     * the message receiver of their operations.
+     */
+    private class ResponseHandler implements Http2ResponseHandler {
+
+        public void responseReceived(Http2Stream stream, HttpResponse response) {
+            MessageContext requestMsgCtx = (MessageContext) stream.getAttachment();
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_ACCEPTED &&
+                    requestMsgCtx.isPropertyTrue(PassThroughConstants.IGNORE_SC_ACCEPTED)) {
+                return;
+            }
+
+            TargetResponse targetResponse = new TargetResponse(targetConfiguration, response,
+                    null, stream.getResponsePipe() != null);
+            targetResponse.setPipe(stream.getResponsePipe());
+            targetConfiguration.getWorkerPool().execute(
+                    new ClientWorker(targetConfiguration, requestMsgCtx, targetResponse));
+        }
+
+        public void failed(Http2Stream stream, Exception e) {
+            MessageContext requestMsgCtx = (MessageContext) stream.getAttachment();
+            log.warn("HTTP/2 request to " + stream.getConnection() + " failed : " +
+                    e.getMessage());
+            if (e instanceof ConnectException) {
+                targetErrorHandler.handleError(requestMsgCtx, ErrorCodes.CONNECTION_FAILED,
+                        "Error connecting to the back end", e, ProtocolState.REQUEST_READY);
+            } else if (e instanceof SocketTimeoutException) {
+                targetErrorHandler.handleError(requestMsgCtx, ErrorCodes.CONNECTION_TIMEOUT,
+                        "Error in Sender", e, ProtocolState.REQUEST_DONE);
+            } else {
+                targetErrorHandler.handleError(requestMsgCtx, ErrorCodes.SND_IO_ERROR,
+                        "Error in Sender", e, ProtocolState.REQUEST_DONE);
+            }
+        }
+    }
+}
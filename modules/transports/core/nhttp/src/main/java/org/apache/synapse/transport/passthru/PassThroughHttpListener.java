@@ -135,6 +135,12 @@ public class PassThroughHttpListener implements TransportListener {
                 new TransportView(this, null, metrics, null), "Transport",
                 "passthru-" + namePrefix.toLowerCase() + "-receiver");
         sourceConfiguration.setMetrics(metrics);
+        if (sourceConfiguration.getPriorityExecutor() != null) {
+            metrics.enablePriorityStatistics();
+        }
+        if (sourceConfiguration.getAdmissionController() != null) {
+            metrics.enableAdmissionStatistics(sourceConfiguration.getAdmissionController());
+        }
     }
 
     public void start() throws AxisFault {
@@ -274,6 +280,9 @@ public class PassThroughHttpListener implements TransportListener {
         MBeanRegistrar.getInstance().unRegisterMBean("Transport",
                 "passthru-" + namePrefix.toLowerCase() + "-receiver");
         sourceConfiguration.getMetrics().destroy();
+        if (sourceConfiguration.getPriorityExecutor() != null) {
+            sourceConfiguration.getPriorityExecutor().destroy();
+        }
     }
 
     /**
@@ -531,6 +531,13 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
 
             pipe.attachConsumer(conn);
             sourceResponse.connect(pipe);
+
+            // only the raw bytes relayed from the backend are transcoded
+            if (sourceConfiguration.getContentCodingPolicy() != null &&
+                    (noEntityBody == null || !noEntityBody) &&
+                    !msgContext.isPropertyTrue(PassThroughConstants.MESSAGE_BUILDER_INVOKED)) {
+                sourceResponse.selectContentCoding(sourceConfiguration.getContentCodingPolicy());
+            }
         }
 
         Integer errorCode = (Integer) msgContext.getProperty(PassThroughConstants.ERROR_CODE);
@@ -23,6 +23,7 @@ import org.apache.http.nio.IOControl;
 import org.apache.http.nio.ContentDecoder;
 import org.apache.http.nio.ContentEncoder;
 import org.apache.synapse.transport.passthru.config.BaseConfiguration;
+import org.apache.synapse.transport.passthru.util.ContentCodec;
 import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 
 import java.io.*;
@@ -72,6 +73,12 @@ public class Pipe {
     private ByteBufferInputStream inputStream;
     private ByteBufferOutputStream outputStream;
 
+    /** Compresses or decompresses the data on its way to the consumer, if set */
+    private ContentCodec codec;
+
+    /** Holds the transcoded data until the consumer takes it */
+    private ControlledByteBuffer codecBuffer;
+
     public Pipe(IOControl producerIoControl, ControlledByteBuffer buffer,
                 String name, BaseConfiguration baseConfig) {
         this.producerIoControl = producerIoControl;
@@ -95,6 +102,23 @@ public class Pipe {
         this.consumerIoControl = consumerIoControl;
     }
 
+    /**
+     * Set a codec to compress or decompress the data relayed from the producer as the consumer
+     * takes it. This only applies to the data in the buffer, and not to data written to the
+     * output stream of this pipe.
+     *
+     * @param codec codec taken from the pool, released by this pipe once the data is consumed
+     */
+    public void attachCodec(ContentCodec codec) {
+        lock.lock();
+        try {
+            this.codec = codec;
+            this.codecBuffer = baseConfig.getBufferFactory().getBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Consume the data from the buffer. Before calling this method attachConsumer
      * method must be called with a valid IOControl.
@@ -124,9 +148,14 @@ public class Pipe {
             // if producer at error we have to stop the encoding and return immediately
             if (producerError) {
                 encoder.complete();
+                releaseCodec();
                 return -1;
             }
 
+            if (codec != null && outputBuffer == null) {
+                return consumeTranscoded(encoder);
+            }
+
             setOutputMode(consumerBuffer);
             int bytesWritten = encoder.write(consumerBuffer.getByteBuffer());
             setInputMode(consumerBuffer);
@@ -158,6 +187,56 @@ public class Pipe {
         }
     }
 
+    /**
+     * Transcode the data in the buffer and write it to the encoder. Transcoded data the encoder
+     * did not take is kept in the codec buffer and written first on the next call.
+     */
+    private int consumeTranscoded(ContentEncoder encoder) throws IOException {
+        setOutputMode(codecBuffer);
+        int bytesWritten = encoder.write(codecBuffer.getByteBuffer());
+
+        int consumed = 0;
+        if (!codecBuffer.hasRemaining()) {
+            setInputMode(codecBuffer);
+            setOutputMode(buffer);
+            int available = buffer.remaining();
+            codec.transcode(buffer.getByteBuffer(), codecBuffer.getByteBuffer(), producerCompleted);
+            consumed = available - buffer.remaining();
+            setInputMode(buffer);
+
+            setOutputMode(codecBuffer);
+            bytesWritten += encoder.write(codecBuffer.getByteBuffer());
+        }
+        setInputMode(codecBuffer);
+
+        if (codecBuffer.position() == 0) {
+            if (codec.isFinished() && producerCompleted && buffer.position() == 0) {
+                encoder.complete();
+                releaseCodec();
+            } else if (buffer.position() == 0 && !producerCompleted) {
+                // the codec has taken all the data. Wait until the producer fills up the buffer
+                consumerIoControl.suspendOutput();
+            }
+        }
+
+        if (consumed > 0) {
+            if (!encoder.isCompleted() && !producerCompleted && hasHttpProducer) {
+                producerIoControl.requestInput();
+            }
+            writeCondition.signalAll();
+        }
+        return bytesWritten;
+    }
+
+    private void releaseCodec() {
+        if (codec != null) {
+            codec.release();
+            baseConfig.getBufferFactory().release(codecBuffer);
+            codec = null;
+            codecBuffer = null;
+        }
+    }
+
     /**
      * Produce data in to the buffer.
      *
@@ -212,6 +291,8 @@ public class Pipe {
         lock.lock();
         try {
             this.consumerError = true;
+            // nothing more is consumed, so the codec goes back to the pool now
+            releaseCodec();
             writeCondition.signalAll();
         } finally {
             lock.unlock();
@@ -46,6 +46,9 @@ public class SourceContext {
 
     private Pipe writer;
 
+    /** Admission of the current request, released when the request-response is completed */
+    private AdmissionController.Permit permit;
+
     public SourceContext(SourceConfiguration sourceConfiguration) {
         this.sourceConfiguration = sourceConfiguration;
     }
@@ -108,6 +111,11 @@ public class SourceContext {
 
         this.reader = null;
         this.writer = null;
+
+        if (permit != null) {
+            permit.release(isError);
+            permit = null;
+        }
     }
 
     public boolean isShutDown() {
@@ -134,6 +142,14 @@ public class SourceContext {
         this.writer = writer;
     }
 
+    public AdmissionController.Permit getPermit() {
+        return permit;
+    }
+
+    public void setPermit(AdmissionController.Permit permit) {
+        this.permit = permit;
+    }
+
     public static void create(NHttpConnection conn, ProtocolState state,
                               SourceConfiguration configuration) {
         SourceContext info = new SourceContext(configuration);
@@ -29,12 +29,18 @@ import org.apache.http.message.BasicHttpResponse;
 import org.apache.axis2.AxisFault;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.evaluators.EvaluatorContext;
+import org.apache.synapse.commons.evaluators.Parser;
+import org.apache.synapse.commons.executors.PriorityExecutor;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
 import org.apache.synapse.transport.passthru.jmx.LatencyView;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This is the class where transport interacts with the client. This class
@@ -85,6 +91,26 @@ public class SourceHandler implements NHttpServerEventHandler {
                 handleInvalidState(conn, "Request received");
                 return;
             }
+
+            // only the URL and the headers are available at this point, the priority
+            // conditions must not access the message body
+            int priority = 0;
+            Parser parser = sourceConfiguration.getParser();
+            if (parser != null) {
+                priority = parser.parse(getEvaluatorContext(conn.getHttpRequest()));
+            }
+
+            AdmissionController admissionController =
+                    sourceConfiguration.getAdmissionController();
+            if (admissionController != null) {
+                AdmissionController.Permit permit = admissionController.tryAcquire(priority);
+                if (permit == null) {
+                    rejectRequest(conn);
+                    return;
+                }
+                SourceContext.get(conn).setPermit(permit);
+            }
+
             // we have received a message over this connection. So we must inform the pool
             sourceConfiguration.getSourceConnections().useConnection(conn);
 
@@ -106,8 +132,23 @@ public class SourceHandler implements NHttpServerEventHandler {
                         outputBuffer);
 			} 
 
-            sourceConfiguration.getWorkerPool().execute(
-                    new ServerWorker(request, sourceConfiguration));
+            ServerWorker worker = new ServerWorker(request, sourceConfiguration);
+            PriorityExecutor executor = sourceConfiguration.getPriorityExecutor();
+            if (executor != null) {
+                metrics.notifyQueued(priority);
+                try {
+                    executor.execute(new PriorityWorker(worker, priority, metrics), priority);
+                } catch (RejectedExecutionException e) {
+                    metrics.notifyRejected(priority);
+                    log.error("Priority executor rejected the request with priority " +
+                            priority, e);
+                    informReaderError(conn);
+                    SourceContext.updateState(conn, ProtocolState.CLOSED);
+                    sourceConfiguration.getSourceConnections().shutDownConnection(conn, true);
+                }
+            } else {
+                sourceConfiguration.getWorkerPool().execute(worker);
+            }
 
         } catch (HttpException e) {
             log.error("HTTP exception while processing request", e);
@@ -444,6 +485,47 @@ public class SourceHandler implements NHttpServerEventHandler {
         }
     }
 
+    private EvaluatorContext getEvaluatorContext(HttpRequest request) {
+        // header names are case insensitive, as in SourceRequest
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (Header header : request.getAllHeaders()) {
+            headers.put(header.getName(), header.getValue());
+        }
+        return new EvaluatorContext(request.getRequestLine().getUri(), headers);
+    }
+
+    /**
+     * Reject a request over the concurrency limit of the listener. A 503 response is sent
+     * without reading the request body and the connection is closed.
+     *
+     * @param conn the connection the request was received on
+     */
+    private void rejectRequest(NHttpServerConnection conn) {
+        if (log.isDebugEnabled()) {
+            log.debug("Concurrency limit reached, rejecting the request on " + conn);
+        }
+
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+                HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+        response.addHeader(HTTP.CONN_DIRECTIVE, HTTP.CONN_CLOSE);
+
+        HttpContext httpContext = conn.getContext();
+        httpContext.setAttribute(HttpCoreContext.HTTP_CONNECTION, conn);
+        httpContext.setAttribute(HttpCoreContext.HTTP_REQUEST, conn.getHttpRequest());
+        httpContext.setAttribute(HttpCoreContext.HTTP_RESPONSE, response);
+
+        try {
+            sourceConfiguration.getHttpProcessor().process(response, httpContext);
+            conn.submitResponse(response);
+            SourceContext.updateState(conn, ProtocolState.CLOSING);
+            sourceConfiguration.getSourceConnections().closeConnection(conn);
+        } catch (Exception e) {
+            log.error("Error while rejecting the request", e);
+            SourceContext.updateState(conn, ProtocolState.CLOSED);
+            sourceConfiguration.getSourceConnections().shutDownConnection(conn, true);
+        }
+    }
+
     private void handleInvalidState(NHttpServerConnection conn, String action) {
         log.warn(action + " while the handler is in an inconsistent state " +
                 SourceContext.getState(conn));
@@ -504,4 +586,27 @@ public class SourceHandler implements NHttpServerEventHandler {
         }
     }
 
+    /**
+     * Wraps a ServerWorker dispatched through the priority executor, to report the time the
+     * request spent waiting for a thread of its priority
+     */
+    private static class PriorityWorker implements Runnable {
+
+        private final ServerWorker worker;
+        private final int priority;
+        private final PassThroughTransportMetricsCollector metrics;
+        private final long queuedTime = System.currentTimeMillis();
+
+        private PriorityWorker(ServerWorker worker, int priority,
+                               PassThroughTransportMetricsCollector metrics) {
+            this.worker = worker;
+            this.priority = priority;
+            this.metrics = metrics;
+        }
+
+        public void run() {
+            metrics.notifyDequeued(priority, System.currentTimeMillis() - queuedTime);
+            worker.run();
+        }
+    }
 }
@@ -27,6 +27,8 @@ import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
+import org.apache.synapse.transport.passthru.util.ContentCodec;
+import org.apache.synapse.transport.passthru.util.ContentCodingPolicy;
 import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.context.MessageContext;
@@ -182,6 +184,80 @@ public class SourceResponse {
         return bytes;
     }
 
+    /**
+     * Compress or decompress the body of this response, if the policy chooses a codec for it.
+     * The content length is not known once the body is transcoded, so the response is chunked.
+     * Must be called after the pipe is connected and before the response is started.
+     *
+     * @param policy the content coding policy of the listener
+     */
+    public void selectContentCoding(ContentCodingPolicy policy) {
+        if (pipe == null || request == null) {
+            return;
+        }
+
+        String contentLength = getHeader(HTTP.CONTENT_LEN);
+        ContentCodec codec;
+        try {
+            codec = policy.select(request.getMethod(), status, request.getHeaders(),
+                    getHeader(ContentCodingPolicy.CONTENT_ENCODING), getHeader(HTTP.CONTENT_TYPE),
+                    contentLength != null ? Long.parseLong(contentLength.trim()) : -1,
+                    getHeaderValues(ContentCodingPolicy.CACHE_CONTROL),
+                    getHeader(ContentCodingPolicy.CONTENT_RANGE));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (codec == null) {
+            return;
+        }
+
+        removeHeader(HTTP.CONTENT_LEN);
+        removeHeader(ContentCodingPolicy.CONTENT_ENCODING);
+        if (codec.getMode() == ContentCodec.Mode.COMPRESS) {
+            addHeader(ContentCodingPolicy.CONTENT_ENCODING, codec.getCoding());
+        }
+        addHeader(ContentCodingPolicy.VARY, ContentCodingPolicy.ACCEPT_ENCODING);
+        pipe.attachCodec(codec);
+    }
+
+    private String getHeader(String name) {
+        for (Map.Entry<String, TreeSet<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                return entry.getValue().first();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get all the values of a header, separated by commas
+     */
+    private String getHeaderValues(String name) {
+        StringBuilder values = null;
+        for (Map.Entry<String, TreeSet<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                for (String value : entry.getValue()) {
+                    if (values == null) {
+                        values = new StringBuilder(value);
+                    } else {
+                        values.append(',').append(value);
+                    }
+                }
+            }
+        }
+        return values != null ? values.toString() : null;
+    }
+
+    private void removeHeader(String name) {
+        Iterator<String> itr = headers.keySet().iterator();
+        while (itr.hasNext()) {
+            String key = itr.next();
+            if (name.equalsIgnoreCase(key)) {
+                itr.remove();
+            }
+        }
+    }
+
     public void addHeader(String name, String value) {
     	if(headers.get(name) == null) {
     		TreeSet<String> values = new TreeSet<String>(); 
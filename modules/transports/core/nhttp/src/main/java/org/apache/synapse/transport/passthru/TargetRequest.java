@@ -205,24 +205,13 @@ public class TargetRequest {
         
         //setup wsa action..
         if (request != null){
-        	
-    		String soapAction = requestMsgCtx.getSoapAction();
-            if (soapAction == null) {
-                soapAction = requestMsgCtx.getWSAAction();
-            }
-            if (soapAction == null) {
-            	requestMsgCtx.getAxisOperation().getInputAction();
-            }
-
-            if (requestMsgCtx.isSOAP11() && soapAction != null && soapAction.length() > 0) {
+            String soapAction = getSoapActionHeader(requestMsgCtx);
+            if (soapAction != null) {
                 Header existingHeader = request.getFirstHeader(HTTPConstants.HEADER_SOAP_ACTION);
                 if (existingHeader != null) {
                 	request.removeHeader(existingHeader);
                 }
-                MessageFormatter messageFormatter =
-                    MessageFormatterDecoratorFactory.createMessageFormatterDecorator(requestMsgCtx);
-                request.setHeader(HTTPConstants.HEADER_SOAP_ACTION,
-                        messageFormatter.formatSOAPAction(requestMsgCtx, null, soapAction));
+                request.setHeader(HTTPConstants.HEADER_SOAP_ACTION, soapAction);
             }
     	}
 
@@ -249,7 +238,30 @@ public class TargetRequest {
         }
     }
 
-    
+
+    /**
+     * Get the value of the SOAPAction header to be sent with a SOAP 1.1 request
+     *
+     * @param requestMsgCtx the request message context
+     * @return the formatted SOAP action, or null if the header should not be sent
+     */
+    static String getSoapActionHeader(MessageContext requestMsgCtx) {
+        String soapAction = requestMsgCtx.getSoapAction();
+        if (soapAction == null) {
+            soapAction = requestMsgCtx.getWSAAction();
+        }
+        if (soapAction == null) {
+            requestMsgCtx.getAxisOperation().getInputAction();
+        }
+
+        if (requestMsgCtx.isSOAP11() && soapAction != null && soapAction.length() > 0) {
+            MessageFormatter messageFormatter =
+                MessageFormatterDecoratorFactory.createMessageFormatterDecorator(requestMsgCtx);
+            return messageFormatter.formatSOAPAction(requestMsgCtx, null, soapAction);
+        }
+        return null;
+    }
+
 	public void addHeader(String name, String value) {
 		if (headers.get(name) == null) {
 			TreeSet<String> values = new TreeSet<String>();
@@ -378,4 +390,12 @@ public class TargetRequest {
 		return request;
 	}
 
+    public URL getUrl() {
+        return url;
+    }
+
+    public Map<String, TreeSet<String>> getHeaders() {
+        return headers;
+    }
+
 }
@@ -160,6 +160,16 @@ public class TargetResponse {
         return pipe;
     }
 
+    /**
+     * Set the pipe the response body is read from, for responses which are not read from an
+     * HTTP/1.x connection by the target handler
+     *
+     * @param pipe pipe filled with the response body
+     */
+    public void setPipe(Pipe pipe) {
+        this.pipe = pipe;
+    }
+
     public int getStatus() {
         return status;
     }
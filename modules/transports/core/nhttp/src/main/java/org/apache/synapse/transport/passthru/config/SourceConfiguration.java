@@ -19,6 +19,10 @@
 
 package org.apache.synapse.transport.passthru.config;
 
+import org.apache.axiom.om.OMAttribute;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMException;
+import org.apache.axiom.om.OMXMLBuilderFactory;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.description.Parameter;
 import org.apache.axis2.description.TransportInDescription;
@@ -32,12 +36,25 @@ import org.apache.axis2.transport.base.threads.WorkerPool;
 import org.apache.axis2.transport.base.ParamUtils;
 import org.apache.axis2.AxisFault;
 
+import org.apache.synapse.commons.evaluators.EvaluatorConstants;
+import org.apache.synapse.commons.evaluators.EvaluatorException;
+import org.apache.synapse.commons.evaluators.Parser;
+import org.apache.synapse.commons.executors.ExecutorConstants;
+import org.apache.synapse.commons.executors.PriorityExecutor;
+import org.apache.synapse.commons.executors.config.PriorityExecutorFactory;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
+import org.apache.synapse.transport.passthru.AdmissionController;
 import org.apache.synapse.transport.passthru.HttpGetRequestProcessor;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.connections.SourceConnections;
+import org.apache.synapse.transport.passthru.util.ContentCodingPolicy;
 
+import javax.xml.namespace.QName;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.Properties;
 
 /**
  * This class stores configurations specific to the Listeners
@@ -73,6 +90,18 @@ public class SourceConfiguration extends BaseConfiguration {
     /** WSDL processor for Get requests*/
     private HttpGetRequestProcessor httpGetRequestProcessor = null;
 
+    /** The priority executor used to dispatch requests, if priority based dispatching is enabled */
+    private PriorityExecutor priorityExecutor = null;
+
+    /** The parser used to evaluate the priority of a request against its URL and headers */
+    private Parser parser = null;
+
+    /** Limits the number of concurrent requests, if admission control is enabled */
+    private AdmissionController admissionController = null;
+
+    /** Selects the responses to compress or decompress, if response transcoding is enabled */
+    private ContentCodingPolicy contentCodingPolicy = null;
+
     public SourceConfiguration(ConfigurationContext configurationContext,
                                TransportInDescription description,
                                WorkerPool pool, boolean ssl) throws AxisFault {
@@ -118,6 +147,21 @@ public class SourceConfiguration extends BaseConfiguration {
                 handleException("Cannot create HttpGetRequestProcessor");
             }
         }
+
+        param = parameters.getParameter(PassThroughConstants.PRIORITY_CONFIG_FILE_NAME);
+        if (param != null && param.getValue() != null) {
+            createPriorityConfiguration(param.getValue().toString());
+        }
+
+        if (ParamUtils.getOptionalParamBoolean(
+                parameters, PassThroughConstants.ADMISSION_CONTROL, false)) {
+            createAdmissionController();
+        }
+
+        if (ParamUtils.getOptionalParamBoolean(
+                parameters, PassThroughConstants.RESPONSE_TRANSCODING, false)) {
+            createContentCodingPolicy();
+        }
     }
 
     @Override
@@ -168,6 +212,22 @@ public class SourceConfiguration extends BaseConfiguration {
 		return httpGetRequestProcessor;
 	}
 
+    public PriorityExecutor getPriorityExecutor() {
+        return priorityExecutor;
+    }
+
+    public Parser getParser() {
+        return parser;
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public ContentCodingPolicy getContentCodingPolicy() {
+        return contentCodingPolicy;
+    }
+
 	/**
      * Return the EPR prefix for services made available over this transport
      * @param cfgCtx configuration context to retrieve the service context path
@@ -211,6 +271,121 @@ public class SourceConfiguration extends BaseConfiguration {
 		}
 	}
     
+    /**
+     * Create a priority executor from the given file
+     *
+     * @param fileName file name of the executor configuration
+     * @throws AxisFault if an error occurs
+     */
+    private void createPriorityConfiguration(String fileName) throws AxisFault {
+        OMElement definitions = null;
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(fileName);
+            definitions = OMXMLBuilderFactory.createOMBuilder(fis).getDocumentElement();
+            definitions.build();
+        } catch (FileNotFoundException e) {
+            handleException("Priority configuration file cannot be found : " + fileName, e);
+        } catch (OMException e) {
+            handleException("Error parsing priority configuration xml file " + fileName, e);
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException e) {
+                    log.warn("Error closing the priority configuration file : " + fileName, e);
+                }
+            }
+        }
+
+        OMElement executorElem = definitions.getFirstChildWithName(
+                new QName(ExecutorConstants.PRIORITY_EXECUTOR));
+        if (executorElem == null) {
+            handleException(ExecutorConstants.PRIORITY_EXECUTOR +
+                    " configuration is mandatory for priority based routing");
+        }
+
+        OMElement conditionsElem = definitions.getFirstChildWithName(
+                new QName(EvaluatorConstants.CONDITIONS));
+        if (conditionsElem == null) {
+            handleException("Conditions configuration is mandatory for priority based routing");
+        }
+
+        OMAttribute defPriorityAttr = conditionsElem.getAttribute(
+                new QName(EvaluatorConstants.DEFAULT_PRIORITY));
+        if (defPriorityAttr != null) {
+            parser = new Parser(Integer.parseInt(defPriorityAttr.getAttributeValue()));
+        } else {
+            parser = new Parser();
+        }
+
+        try {
+            parser.init(conditionsElem);
+        } catch (EvaluatorException e) {
+            handleException("Invalid " + EvaluatorConstants.CONDITIONS +
+                    " configuration for priority based mediation", e);
+        }
+
+        priorityExecutor = PriorityExecutorFactory.createExecutor(
+                null, executorElem, false, new Properties());
+        priorityExecutor.init();
+
+        log.info("Created a priority based executor from the configuration: " + fileName);
+    }
+
+    private void createAdmissionController() throws AxisFault {
+        int initialLimit = ParamUtils.getOptionalParamInt(
+                parameters, PassThroughConstants.ADMISSION_INITIAL_LIMIT, 100);
+        int minLimit = ParamUtils.getOptionalParamInt(
+                parameters, PassThroughConstants.ADMISSION_MIN_LIMIT, 10);
+        int maxLimit = ParamUtils.getOptionalParamInt(
+                parameters, PassThroughConstants.ADMISSION_MAX_LIMIT, 1000);
+        int latencyThreshold = ParamUtils.getOptionalParamInt(
+                parameters, PassThroughConstants.ADMISSION_LATENCY_THRESHOLD, 2000);
+        double backoffRatio = getOptionalParamDouble(
+                PassThroughConstants.ADMISSION_BACKOFF_RATIO, 0.9);
+        double reservedRatio = getOptionalParamDouble(
+                PassThroughConstants.ADMISSION_RESERVED_RATIO, 0);
+        int priorityThreshold = ParamUtils.getOptionalParamInt(
+                parameters, PassThroughConstants.ADMISSION_PRIORITY_THRESHOLD, Integer.MIN_VALUE);
+
+        try {
+            admissionController = new AdmissionController(initialLimit, minLimit, maxLimit,
+                    latencyThreshold, backoffRatio, reservedRatio, priorityThreshold);
+        } catch (IllegalArgumentException e) {
+            handleException("Invalid admission control configuration", e);
+        }
+        log.info("Admission control enabled with an initial concurrency limit of " +
+                admissionController.getConcurrencyLimit());
+    }
+
+    private void createContentCodingPolicy() throws AxisFault {
+        int minSize = ParamUtils.getOptionalParamInt(
+                parameters, PassThroughConstants.RESPONSE_TRANSCODING_MIN_SIZE, 1024);
+        String contentTypes = ParamUtils.getOptionalParam(
+                parameters, PassThroughConstants.RESPONSE_TRANSCODING_CONTENT_TYPES);
+        if (contentTypes == null) {
+            contentTypes = ContentCodingPolicy.DEFAULT_CONTENT_TYPES;
+        }
+
+        contentCodingPolicy = new ContentCodingPolicy(minSize, contentTypes);
+        log.info("Response transcoding enabled for " + contentTypes +
+                " responses of at least " + minSize + " bytes");
+    }
+
+    private double getOptionalParamDouble(String name, double defaultValue) throws AxisFault {
+        String value = ParamUtils.getOptionalParam(parameters, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            handleException("Invalid value for the parameter " + name + " : " + value, e);
+        }
+        return defaultValue;
+    }
+
     private HttpGetRequestProcessor createHttpGetProcessor(String str) throws AxisFault {
         Object obj = null;
         try {
@@ -0,0 +1,243 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Decodes HPACK header blocks (RFC 7541) into header fields. The decoder keeps the dynamic
+ * table of the connection, so all the header blocks received over a connection must be
+ * decoded, in order, by the same decoder.
+ */
+public class HpackDecoder {
+
+    /** The static table, indexed from 1 */
+    static final Header[] STATIC_TABLE = {
+            null,
+            new BasicHeader(":authority", ""),
+            new BasicHeader(":method", "GET"),
+            new BasicHeader(":method", "POST"),
+            new BasicHeader(":path", "/"),
+            new BasicHeader(":path", "/index.html"),
+            new BasicHeader(":scheme", "http"),
+            new BasicHeader(":scheme", "https"),
+            new BasicHeader(":status", "200"),
+            new BasicHeader(":status", "204"),
+            new BasicHeader(":status", "206"),
+            new BasicHeader(":status", "304"),
+            new BasicHeader(":status", "400"),
+            new BasicHeader(":status", "404"),
+            new BasicHeader(":status", "500"),
+            new BasicHeader("accept-charset", ""),
+            new BasicHeader("accept-encoding", "gzip, deflate"),
+            new BasicHeader("accept-language", ""),
+            new BasicHeader("accept-ranges", ""),
+            new BasicHeader("accept", ""),
+            new BasicHeader("access-control-allow-origin", ""),
+            new BasicHeader("age", ""),
+            new BasicHeader("allow", ""),
+            new BasicHeader("authorization", ""),
+            new BasicHeader("cache-control", ""),
+            new BasicHeader("content-disposition", ""),
+            new BasicHeader("content-encoding", ""),
+            new BasicHeader("content-language", ""),
+            new BasicHeader("content-length", ""),
+            new BasicHeader("content-location", ""),
+            new BasicHeader("content-range", ""),
+            new BasicHeader("content-type", ""),
+            new BasicHeader("cookie", ""),
+            new BasicHeader("date", ""),
+            new BasicHeader("etag", ""),
+            new BasicHeader("expect", ""),
+            new BasicHeader("expires", ""),
+            new BasicHeader("from", ""),
+            new BasicHeader("host", ""),
+            new BasicHeader("if-match", ""),
+            new BasicHeader("if-modified-since", ""),
+            new BasicHeader("if-none-match", ""),
+            new BasicHeader("if-range", ""),
+            new BasicHeader("if-unmodified-since", ""),
+            new BasicHeader("last-modified", ""),
+            new BasicHeader("link", ""),
+            new BasicHeader("location", ""),
+            new BasicHeader("max-forwards", ""),
+            new BasicHeader("proxy-authenticate", ""),
+            new BasicHeader("proxy-authorization", ""),
+            new BasicHeader("range", ""),
+            new BasicHeader("referer", ""),
+            new BasicHeader("refresh", ""),
+            new BasicHeader("retry-after", ""),
+            new BasicHeader("server", ""),
+            new BasicHeader("set-cookie", ""),
+            new BasicHeader("strict-transport-security", ""),
+            new BasicHeader("transfer-encoding", ""),
+            new BasicHeader("user-agent", ""),
+            new BasicHeader("vary", ""),
+            new BasicHeader("via", ""),
+            new BasicHeader("www-authenticate", "")
+    };
+
+    /** Overhead of an entry of the dynamic table, on top of the length of name and value */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    /** The dynamic table, most recently added entry first */
+    private final LinkedList<Header> dynamicTable = new LinkedList<Header>();
+
+    private int tableSize = 0;
+
+    /** The table size the encoder of the peer may use, as advertised in our settings */
+    private final int maxTableSizeLimit;
+
+    /** The table size set by the encoder of the peer */
+    private int maxTableSize;
+
+    public HpackDecoder(int maxTableSize) {
+        this.maxTableSizeLimit = maxTableSize;
+        this.maxTableSize = maxTableSize;
+    }
+
+    /**
+     * Decode a complete header block
+     *
+     * @param block buffer holding the header block, from its position to its limit
+     * @return the header fields in the order of the block
+     * @throws Http2Exception if the block can not be decoded
+     */
+    public List<Header> decode(ByteBuffer block) throws Http2Exception {
+        List<Header> headers = new ArrayList<Header>();
+        try {
+            boolean first = true;
+            while (block.hasRemaining()) {
+                int b = block.get(block.position()) & 0xff;
+                if ((b & 0x80) != 0) {
+                    // indexed header field
+                    headers.add(getEntry(decodeInt(block, 7)));
+                } else if ((b & 0x40) != 0) {
+                    // literal header field with incremental indexing
+                    Header header = decodeLiteral(block, 6);
+                    add(header);
+                    headers.add(header);
+                } else if ((b & 0x20) != 0) {
+                    // dynamic table size update, only allowed at the start of a block
+                    if (!first) {
+                        throw compressionError("Table size update after a header field");
+                    }
+                    int size = decodeInt(block, 5);
+                    if (size > maxTableSizeLimit) {
+                        throw compressionError("Table size " + size + " exceeds the limit");
+                    }
+                    maxTableSize = size;
+                    evict(0);
+                    continue;
+                } else {
+                    // literal header field without indexing, or never indexed
+                    headers.add(decodeLiteral(block, 4));
+                }
+                first = false;
+            }
+        } catch (java.nio.BufferUnderflowException e) {
+            throw compressionError("Truncated header block");
+        }
+        return headers;
+    }
+
+    private Header decodeLiteral(ByteBuffer block, int prefix) throws Http2Exception {
+        int index = decodeInt(block, prefix);
+        String name = index == 0 ? decodeString(block) : getEntry(index).getName();
+        return new BasicHeader(name, decodeString(block));
+    }
+
+    private Header getEntry(int index) throws Http2Exception {
+        if (index > 0 && index < STATIC_TABLE.length) {
+            return STATIC_TABLE[index];
+        }
+        int dynamicIndex = index - STATIC_TABLE.length;
+        if (index <= 0 || dynamicIndex >= dynamicTable.size()) {
+            throw compressionError("Invalid header table index " + index);
+        }
+        return dynamicTable.get(dynamicIndex);
+    }
+
+    private void add(Header header) {
+        int size = entrySize(header);
+        evict(size);
+        if (size <= maxTableSize) {
+            dynamicTable.addFirst(header);
+            tableSize += size;
+        }
+    }
+
+    /**
+     * Evict the oldest entries until the given number of octets fits in the table
+     */
+    private void evict(int size) {
+        while (!dynamicTable.isEmpty() && tableSize + size > maxTableSize) {
+            tableSize -= entrySize(dynamicTable.removeLast());
+        }
+    }
+
+    private static int entrySize(Header header) {
+        return header.getName().length() + header.getValue().length() + ENTRY_OVERHEAD;
+    }
+
+    private static int decodeInt(ByteBuffer block, int prefix) throws Http2Exception {
+        int max = (1 << prefix) - 1;
+        int value = block.get() & max;
+        if (value < max) {
+            return value;
+        }
+        int shift = 0;
+        int b;
+        do {
+            b = block.get() & 0xff;
+            if (shift > 21) {
+                throw compressionError("Integer overflow in header block");
+            }
+            value += (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static String decodeString(ByteBuffer block) throws Http2Exception {
+        boolean huffman = (block.get(block.position()) & 0x80) != 0;
+        int length = decodeInt(block, 7);
+        if (length > block.remaining()) {
+            throw compressionError("Truncated string in header block");
+        }
+        if (huffman) {
+            return Huffman.decode(block, length);
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (block.get() & 0xff);
+        }
+        return new String(chars);
+    }
+
+    private static Http2Exception compressionError(String message) {
+        return new Http2Exception(Http2Constants.COMPRESSION_ERROR, message);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.http.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodes header fields into HPACK header blocks (RFC 7541). Fields are encoded as indexed
+ * fields when they are in the static table, and as literals without indexing otherwise, so
+ * the encoder never adds to the dynamic table of the peer and keeps no per connection state.
+ * Strings are Huffman encoded when that makes them shorter.
+ */
+public class HpackEncoder {
+
+    /** Index of each header field of the static table, keyed by name and value */
+    private static final Map<String, Integer> FIELD_INDEX = new HashMap<String, Integer>();
+
+    /** Lowest index of each header name of the static table */
+    private static final Map<String, Integer> NAME_INDEX = new HashMap<String, Integer>();
+
+    static {
+        for (int i = HpackDecoder.STATIC_TABLE.length - 1; i > 0; i--) {
+            Header header = HpackDecoder.STATIC_TABLE[i];
+            FIELD_INDEX.put(header.getName() + ":" + header.getValue(), i);
+            NAME_INDEX.put(header.getName(), i);
+        }
+    }
+
+    /**
+     * Encode a header block
+     *
+     * @param headers header fields, with lower case names
+     * @return the encoded header block
+     */
+    public byte[] encode(List<Header> headers) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        for (Header header : headers) {
+            String name = header.getName().toLowerCase(Locale.ENGLISH);
+            String value = header.getValue() != null ? header.getValue() : "";
+            Integer index = FIELD_INDEX.get(name + ":" + value);
+            if (index != null) {
+                encodeInt(out, 0x80, 7, index);
+                continue;
+            }
+            index = NAME_INDEX.get(name);
+            if (index != null) {
+                encodeInt(out, 0x00, 4, index);
+            } else {
+                out.write(0x00);
+                encodeString(out, name);
+            }
+            encodeString(out, value);
+        }
+        return out.toByteArray();
+    }
+
+    private static void encodeString(ByteArrayOutputStream out, String s) {
+        int huffmanLength = Huffman.encodedLength(s);
+        if (huffmanLength < s.length()) {
+            encodeInt(out, 0x80, 7, huffmanLength);
+            Huffman.encode(s, out);
+        } else {
+            encodeInt(out, 0x00, 7, s.length());
+            for (int i = 0; i < s.length(); i++) {
+                out.write(s.charAt(i));
+            }
+        }
+    }
+
+    private static void encodeInt(ByteArrayOutputStream out, int mask, int prefix, int value) {
+        int max = (1 << prefix) - 1;
+        if (value < max) {
+            out.write(mask | value);
+            return;
+        }
+        out.write(mask | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
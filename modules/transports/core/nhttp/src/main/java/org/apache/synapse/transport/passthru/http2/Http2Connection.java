@@ -0,0 +1,859 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.Header;
+import org.apache.http.nio.reactor.IOSession;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.apache.synapse.transport.passthru.http2.Http2Constants.*;
+
+/**
+ * Client side of an HTTP/2 connection (RFC 7540) over an IO session of the IO reactor, which
+ * multiplexes the requests of many {@link Http2Stream}s. Frames are read and written on the IO
+ * thread of the session, while streams are submitted and their pipes filled and drained by the
+ * worker threads.
+ * <p/>
+ * The frames to be written are buffered under the lock of the connection, which guards the
+ * streams and the flow control windows as well. The connection never calls into a pipe, a
+ * stream handler or the pool while holding its lock, as the pipes call back into the connection
+ * under their own locks.
+ */
+public class Http2Connection {
+
+    private static final Log log = LogFactory.getLog(Http2Connection.class);
+
+    /** Buffered output beyond which the request bodies are held back until it is written out */
+    private static final int OUTPUT_HIGH_WATER_MARK = 64 * 1024;
+
+    private final IOSession session;
+
+    private final Http2ConnectionPool pool;
+
+    private final Http2ConnectionPool.Route route;
+
+    /** Flow control window of each stream advertised to the peer */
+    private final int initialWindowSize;
+
+    /** Flow control window of the connection advertised to the peer */
+    private final int connectionWindowSize;
+
+    /** Frames waiting to be written, guarded by this connection */
+    private ByteBuffer output = ByteBuffer.allocate(16 * 1024);
+
+    private final Map<Integer, Http2Stream> streams = new LinkedHashMap<Integer, Http2Stream>();
+
+    private final HpackEncoder encoder = new HpackEncoder();
+
+    private int nextStreamId = 1;
+
+    private int sendWindow = DEFAULT_WINDOW_SIZE;
+
+    private int peerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+
+    private int peerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    private int peerMaxConcurrentStreams = Integer.MAX_VALUE;
+
+    /** Whether the settings of the peer have been received */
+    private boolean ready;
+
+    private boolean goingAway;
+
+    private volatile boolean closed;
+
+    private IOException closeCause;
+
+    private boolean retired;
+
+    /** Input read from the session, used by the IO thread only */
+    private final ByteBuffer input = ByteBuffer.allocate(FRAME_HEADER_LENGTH + DEFAULT_MAX_FRAME_SIZE);
+
+    private final HpackDecoder decoder = new HpackDecoder(DEFAULT_HEADER_TABLE_SIZE);
+
+    /** Header block being put together from CONTINUATION frames */
+    private ByteArrayOutputStream headerBlock;
+
+    private int headerStreamId;
+
+    private boolean headerEndStream;
+
+    /** Data received on the connection which has not been given back to the peer */
+    private int unacknowledged;
+
+    /** Streams whose response pipe has asked for more input */
+    private final Queue<Http2Stream> inputRequests = new ConcurrentLinkedQueue<Http2Stream>();
+
+    Http2Connection(IOSession session, Http2ConnectionPool pool, Http2ConnectionPool.Route route,
+                    int initialWindowSize, int connectionWindowSize) {
+        this.session = session;
+        this.pool = pool;
+        this.route = route;
+        this.initialWindowSize = initialWindowSize;
+        this.connectionWindowSize = connectionWindowSize;
+    }
+
+    Http2ConnectionPool.Route getRoute() {
+        return route;
+    }
+
+    /**
+     * Whether a new stream can be opened on this connection
+     *
+     * @return true if the connection is ready and below the stream limit of the peer
+     */
+    public synchronized boolean canOpenStream() {
+        return ready && !goingAway && !closed && streams.size() < peerMaxConcurrentStreams &&
+                nextStreamId > 0;
+    }
+
+    public synchronized int getActiveStreamCount() {
+        return streams.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Open a stream for the given request and send its headers
+     *
+     * @param stream stream of the request
+     * @return false if the connection cannot take any more streams
+     */
+    public boolean submit(Http2Stream stream) {
+        synchronized (this) {
+            if (!canOpenStream()) {
+                return false;
+            }
+            int id = nextStreamId;
+            nextStreamId += 2;
+            stream.attach(this, id, peerInitialWindowSize, initialWindowSize);
+            streams.put(id, stream);
+            writeHeaders(id, encoder.encode(stream.getRequestHeaders()), !stream.hasRequestBody());
+        }
+        requestOutput();
+        return true;
+    }
+
+    /**
+     * Close the connection after telling the peer that no more streams will be opened
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            goingAway = true;
+            writeGoAway(NO_ERROR, null);
+            flushQuietly();
+        }
+        session.close();
+    }
+
+    void requestOutput() {
+        if (!closed) {
+            session.setEvent(SelectionKey.OP_WRITE);
+        }
+    }
+
+    void requestInput(Http2Stream stream) {
+        if (closed) {
+            // the IO thread is gone, so hand over what has been received right away
+            try {
+                stream.deliverInput();
+            } catch (IOException e) {
+                stream.fail(e);
+            }
+        } else {
+            inputRequests.add(stream);
+            session.setEvent(SelectionKey.OP_WRITE);
+        }
+    }
+
+    void cancel(Http2Stream stream) {
+        resetStream(stream, CANCEL, new IOException("Stream " + stream.getId() + " cancelled"));
+    }
+
+    /**
+     * Write a DATA frame of the given stream, as much of the data as the flow control windows
+     * and the frame size limit of the peer allow. Called on the IO thread.
+     *
+     * @param stream    the stream the data belongs to
+     * @param src       data to be written, or null to end the stream with an empty frame
+     * @param endStream whether the frame ends the stream
+     * @return number of bytes written
+     */
+    synchronized int writeData(Http2Stream stream, ByteBuffer src, boolean endStream) {
+        if (closed) {
+            return 0;
+        }
+        if (src == null) {
+            writeFrameHeader(0, DATA, endStream ? FLAG_END_STREAM : 0, stream.getId());
+            return 0;
+        }
+
+        int bytes = Math.min(Math.min(src.remaining(), peerMaxFrameSize),
+                Math.min(stream.sendWindow, sendWindow));
+        if (bytes > 0) {
+            writeFrameHeader(bytes, DATA, endStream ? FLAG_END_STREAM : 0, stream.getId());
+            int limit = src.limit();
+            src.limit(src.position() + bytes);
+            output.put(src);
+            src.limit(limit);
+            stream.sendWindow -= bytes;
+            sendWindow -= bytes;
+        } else {
+            bytes = 0;
+        }
+        stream.windowBlocked = src.hasRemaining() && (stream.sendWindow <= 0 || sendWindow <= 0);
+        return bytes;
+    }
+
+    void writeWindowUpdate(int streamId, int increment) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            writeFrameHeader(4, WINDOW_UPDATE, 0, streamId);
+            output.putInt(increment);
+        }
+        requestOutput();
+    }
+
+    /**
+     * Send the connection preface. Called on the IO thread once the session is connected.
+     */
+    void connected() {
+        synchronized (this) {
+            ensureCapacity(CLIENT_PREFACE.length);
+            output.put(CLIENT_PREFACE);
+            writeFrameHeader(12, SETTINGS, 0, 0);
+            output.putShort((short) SETTINGS_ENABLE_PUSH).putInt(0);
+            output.putShort((short) SETTINGS_INITIAL_WINDOW_SIZE).putInt(initialWindowSize);
+            if (connectionWindowSize > DEFAULT_WINDOW_SIZE) {
+                writeFrameHeader(4, WINDOW_UPDATE, 0, 0);
+                output.putInt(connectionWindowSize - DEFAULT_WINDOW_SIZE);
+            }
+        }
+        requestOutput();
+    }
+
+    /**
+     * Read and handle the frames available on the session. Called on the IO thread.
+     */
+    void consumeInput() {
+        try {
+            int bytes = session.channel().read(input);
+            if (bytes < 0) {
+                shutdown(new ConnectionClosedException("Connection closed by the peer"));
+                return;
+            }
+
+            input.flip();
+            while (input.remaining() >= FRAME_HEADER_LENGTH) {
+                int pos = input.position();
+                int length = ((input.get(pos) & 0xff) << 16) | ((input.get(pos + 1) & 0xff) << 8) |
+                        (input.get(pos + 2) & 0xff);
+                if (length > DEFAULT_MAX_FRAME_SIZE) {
+                    throw new Http2Exception(FRAME_SIZE_ERROR, "Frame of " + length +
+                            " bytes exceeds the maximum frame size");
+                }
+                if (input.remaining() < FRAME_HEADER_LENGTH + length) {
+                    break;
+                }
+                int type = input.get(pos + 3) & 0xff;
+                int flags = input.get(pos + 4) & 0xff;
+                int streamId = input.getInt(pos + 5) & 0x7fffffff;
+
+                input.position(pos + FRAME_HEADER_LENGTH);
+                ByteBuffer payload = input.slice();
+                payload.limit(length);
+                input.position(pos + FRAME_HEADER_LENGTH + length);
+                handleFrame(type, flags, streamId, payload);
+            }
+            input.compact();
+
+            processInputRequests();
+        } catch (Http2Exception e) {
+            connectionError(e);
+        } catch (IOException e) {
+            shutdown(e);
+        }
+    }
+
+    /**
+     * Write the request bodies of the streams and the buffered frames to the session. Called
+     * on the IO thread.
+     */
+    void produceOutput() {
+        try {
+            processInputRequests();
+
+            boolean progress = true;
+            while (progress && getBufferedOutput() < OUTPUT_HIGH_WATER_MARK) {
+                progress = false;
+                for (Http2Stream stream : getWritableStreams()) {
+                    try {
+                        if (stream.produceOutput()) {
+                            progress = true;
+                        }
+                    } catch (IOException e) {
+                        resetStream(stream, CANCEL, e);
+                        continue;
+                    }
+                    streamUpdated(stream);
+                }
+            }
+
+            synchronized (this) {
+                if (output.position() > 0) {
+                    output.flip();
+                    session.channel().write(output);
+                    output.compact();
+                }
+            }
+
+            // suspend the output unless there is more to write, checking again after clearing
+            // the event so that an output request made in the meantime is not lost
+            session.clearEvent(SelectionKey.OP_WRITE);
+            if (getBufferedOutput() > 0 || !inputRequests.isEmpty() ||
+                    !getWritableStreams().isEmpty()) {
+                session.setEvent(SelectionKey.OP_WRITE);
+            }
+        } catch (IOException e) {
+            shutdown(e);
+        }
+    }
+
+    /**
+     * Handle the expiry of the socket timeout of the session. Called on the IO thread.
+     */
+    void timeout() {
+        if (getActiveStreamCount() == 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Closing idle HTTP/2 connection to " + route);
+            }
+            retire(null);
+            close();
+        } else {
+            shutdown(new SocketTimeoutException("HTTP/2 connection to " + route + " timed out"));
+        }
+    }
+
+    /**
+     * Fail the remaining streams once the session has been closed. Called on the IO thread.
+     */
+    void disconnected() {
+        List<Http2Stream> active;
+        synchronized (this) {
+            closed = true;
+            active = new ArrayList<Http2Stream>(streams.values());
+            streams.clear();
+        }
+        IOException cause = closeCause != null ? closeCause :
+                new ConnectionClosedException("HTTP/2 connection to " + route + " closed");
+        for (Http2Stream stream : active) {
+            stream.fail(cause);
+        }
+        processInputRequests();
+        retire(cause);
+    }
+
+    private void handleFrame(int type, int flags, int streamId,
+                             ByteBuffer payload) throws IOException {
+        if (headerBlock != null && type != CONTINUATION) {
+            throw new Http2Exception(PROTOCOL_ERROR, "Expected a CONTINUATION frame");
+        }
+        if (!ready && type != SETTINGS) {
+            throw new Http2Exception(PROTOCOL_ERROR,
+                    "Expected a SETTINGS frame, the peer may not support HTTP/2");
+        }
+
+        switch (type) {
+            case DATA:
+                handleData(flags, streamId, payload);
+                break;
+            case HEADERS:
+                handleHeaders(flags, streamId, payload);
+                break;
+            case CONTINUATION:
+                handleContinuation(flags, streamId, payload);
+                break;
+            case RST_STREAM:
+                handleReset(streamId, payload);
+                break;
+            case SETTINGS:
+                handleSettings(flags, streamId, payload);
+                break;
+            case PING:
+                handlePing(flags, streamId, payload);
+                break;
+            case GOAWAY:
+                handleGoAway(streamId, payload);
+                break;
+            case WINDOW_UPDATE:
+                handleWindowUpdate(streamId, payload);
+                break;
+            case PUSH_PROMISE:
+                throw new Http2Exception(PROTOCOL_ERROR, "PUSH_PROMISE received while push is " +
+                        "disabled");
+            default:
+                // PRIORITY frames and unknown frame types are ignored
+        }
+    }
+
+    private void handleData(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "DATA frame on stream 0");
+        }
+        int length = payload.remaining();
+        int padding = removePadding(flags, payload);
+
+        // the window of the connection is given back as soon as the data arrives, since the
+        // streams hold back their own windows until their pipes take the data
+        unacknowledged += length;
+        if (unacknowledged >= connectionWindowSize / 2) {
+            writeWindowUpdate(0, unacknowledged);
+            unacknowledged = 0;
+        }
+
+        Http2Stream stream = getStream(streamId);
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.dataReceived(payload, padding, (flags & FLAG_END_STREAM) != 0);
+            stream.deliverInput();
+        } catch (IOException e) {
+            resetStream(stream, e instanceof Http2Exception ?
+                    ((Http2Exception) e).getErrorCode() : CANCEL, e);
+            return;
+        }
+        streamUpdated(stream);
+    }
+
+    private void handleHeaders(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId == 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "HEADERS frame on stream 0");
+        }
+        removePadding(flags, payload);
+        if ((flags & FLAG_PRIORITY) != 0) {
+            if (payload.remaining() < 5) {
+                throw new Http2Exception(FRAME_SIZE_ERROR, "Truncated HEADERS frame");
+            }
+            payload.position(payload.position() + 5);
+        }
+
+        headerStreamId = streamId;
+        headerEndStream = (flags & FLAG_END_STREAM) != 0;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            headersReceived(payload);
+        } else {
+            headerBlock = new ByteArrayOutputStream(payload.remaining() * 2);
+            headerBlock.write(payload.array(), payload.arrayOffset() + payload.position(),
+                    payload.remaining());
+        }
+    }
+
+    private void handleContinuation(int flags, int streamId,
+                                    ByteBuffer payload) throws IOException {
+        if (headerBlock == null || streamId != headerStreamId) {
+            throw new Http2Exception(PROTOCOL_ERROR, "Unexpected CONTINUATION frame");
+        }
+        headerBlock.write(payload.array(), payload.arrayOffset() + payload.position(),
+                payload.remaining());
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            ByteBuffer block = ByteBuffer.wrap(headerBlock.toByteArray());
+            headerBlock = null;
+            headersReceived(block);
+        }
+    }
+
+    private void headersReceived(ByteBuffer block) throws IOException {
+        // the block is decoded even if the stream is gone, to keep the header table in sync
+        List<Header> headers = decoder.decode(block);
+        Http2Stream stream = getStream(headerStreamId);
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.headersReceived(headers, headerEndStream);
+            stream.deliverInput();
+        } catch (IOException e) {
+            resetStream(stream, e instanceof Http2Exception ?
+                    ((Http2Exception) e).getErrorCode() : CANCEL, e);
+            return;
+        }
+        streamUpdated(stream);
+    }
+
+    private void handleReset(int streamId, ByteBuffer payload) throws IOException {
+        if (payload.remaining() != 4) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "Invalid RST_STREAM frame");
+        }
+        int errorCode = payload.getInt();
+        Http2Stream stream;
+        synchronized (this) {
+            stream = streams.remove(streamId);
+        }
+        if (stream != null) {
+            stream.fail(new Http2Exception(errorCode, "Stream " + streamId +
+                    " reset by the peer with error code " + errorCode));
+            pool.streamReleased(this);
+        }
+    }
+
+    private void handleSettings(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "SETTINGS frame on stream " + streamId);
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            if (payload.hasRemaining()) {
+                throw new Http2Exception(FRAME_SIZE_ERROR, "SETTINGS acknowledgement with payload");
+            }
+            return;
+        }
+        if (payload.remaining() % 6 != 0) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "Invalid SETTINGS frame");
+        }
+
+        boolean first;
+        synchronized (this) {
+            while (payload.hasRemaining()) {
+                int id = payload.getShort() & 0xffff;
+                long value = payload.getInt() & 0xffffffffL;
+                switch (id) {
+                    case SETTINGS_INITIAL_WINDOW_SIZE:
+                        if (value > MAX_WINDOW_SIZE) {
+                            throw new Http2Exception(FLOW_CONTROL_ERROR,
+                                    "Invalid initial window size " + value);
+                        }
+                        int delta = (int) value - peerInitialWindowSize;
+                        for (Http2Stream stream : streams.values()) {
+                            if ((long) stream.sendWindow + delta > MAX_WINDOW_SIZE) {
+                                throw new Http2Exception(FLOW_CONTROL_ERROR,
+                                        "Window of stream " + stream.getId() + " overflows");
+                            }
+                            stream.sendWindow += delta;
+                        }
+                        peerInitialWindowSize = (int) value;
+                        break;
+                    case SETTINGS_MAX_FRAME_SIZE:
+                        if (value < DEFAULT_MAX_FRAME_SIZE || value > 0xffffff) {
+                            throw new Http2Exception(PROTOCOL_ERROR,
+                                    "Invalid maximum frame size " + value);
+                        }
+                        peerMaxFrameSize = (int) value;
+                        break;
+                    case SETTINGS_MAX_CONCURRENT_STREAMS:
+                        peerMaxConcurrentStreams = (int) Math.min(value, Integer.MAX_VALUE);
+                        break;
+                    default:
+                        // the encoder does not use the header table of the peer, and the other
+                        // settings do not apply to a client
+                }
+            }
+            writeFrameHeader(0, SETTINGS, FLAG_ACK, 0);
+            first = !ready;
+            ready = true;
+        }
+        requestOutput();
+
+        if (first) {
+            pool.connectionReady(this);
+        } else {
+            pool.streamReleased(this);
+        }
+    }
+
+    private void handlePing(int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "PING frame on stream " + streamId);
+        }
+        if (payload.remaining() != 8) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "Invalid PING frame");
+        }
+        if ((flags & FLAG_ACK) == 0) {
+            synchronized (this) {
+                writeFrameHeader(8, PING, FLAG_ACK, 0);
+                output.put(payload);
+            }
+            requestOutput();
+        }
+    }
+
+    private void handleGoAway(int streamId, ByteBuffer payload) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(PROTOCOL_ERROR, "GOAWAY frame on stream " + streamId);
+        }
+        if (payload.remaining() < 8) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "Invalid GOAWAY frame");
+        }
+        int lastStreamId = payload.getInt() & 0x7fffffff;
+        int errorCode = payload.getInt();
+        if (log.isDebugEnabled()) {
+            log.debug("HTTP/2 connection to " + route + " going away with error code " +
+                    errorCode + ", last stream " + lastStreamId);
+        }
+
+        List<Http2Stream> refused = new ArrayList<Http2Stream>();
+        boolean idle;
+        synchronized (this) {
+            goingAway = true;
+            for (Http2Stream stream : new ArrayList<Http2Stream>(streams.values())) {
+                if (stream.getId() > lastStreamId) {
+                    streams.remove(stream.getId());
+                    refused.add(stream);
+                }
+            }
+            idle = streams.isEmpty();
+        }
+        for (Http2Stream stream : refused) {
+            stream.fail(new Http2Exception(REFUSED_STREAM, "Stream " + stream.getId() +
+                    " not processed by the peer, which is going away with error code " +
+                    errorCode));
+        }
+        retire(null);
+        if (idle) {
+            close();
+        }
+    }
+
+    private void handleWindowUpdate(int streamId, ByteBuffer payload) throws IOException {
+        if (payload.remaining() != 4) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame");
+        }
+        int increment = payload.getInt() & 0x7fffffff;
+        if (streamId == 0) {
+            synchronized (this) {
+                if (increment == 0 || (long) sendWindow + increment > MAX_WINDOW_SIZE) {
+                    throw new Http2Exception(increment == 0 ? PROTOCOL_ERROR : FLOW_CONTROL_ERROR,
+                            "Invalid window increment " + increment + " for the connection");
+                }
+                sendWindow += increment;
+            }
+        } else {
+            Http2Stream stream = getStream(streamId);
+            if (stream == null) {
+                return;
+            }
+            boolean valid;
+            synchronized (this) {
+                valid = increment > 0 && (long) stream.sendWindow + increment <= MAX_WINDOW_SIZE;
+                if (valid) {
+                    stream.sendWindow += increment;
+                }
+            }
+            if (!valid) {
+                resetStream(stream, increment == 0 ? PROTOCOL_ERROR : FLOW_CONTROL_ERROR,
+                        new Http2Exception(FLOW_CONTROL_ERROR, "Invalid window increment " +
+                                increment + " for stream " + streamId));
+                return;
+            }
+        }
+        requestOutput();
+    }
+
+    private int removePadding(int flags, ByteBuffer payload) throws Http2Exception {
+        if ((flags & FLAG_PADDED) == 0) {
+            return 0;
+        }
+        if (!payload.hasRemaining()) {
+            throw new Http2Exception(FRAME_SIZE_ERROR, "Truncated padded frame");
+        }
+        int padLength = payload.get() & 0xff;
+        if (padLength > payload.remaining()) {
+            throw new Http2Exception(PROTOCOL_ERROR, "Padding exceeds the frame payload");
+        }
+        payload.limit(payload.limit() - padLength);
+        return padLength + 1;
+    }
+
+    private void processInputRequests() {
+        Http2Stream stream;
+        while ((stream = inputRequests.poll()) != null) {
+            try {
+                stream.deliverInput();
+            } catch (IOException e) {
+                resetStream(stream, CANCEL, e);
+            }
+        }
+    }
+
+    /**
+     * Release a stream which has sent its request and received its response
+     */
+    private void streamUpdated(Http2Stream stream) {
+        boolean abandoned = stream.abandonRequest();
+        if (!stream.isDone()) {
+            return;
+        }
+        boolean removed;
+        synchronized (this) {
+            removed = streams.remove(stream.getId()) != null;
+            if (removed && abandoned) {
+                writeRstStream(stream.getId(), CANCEL);
+            }
+        }
+        if (removed) {
+            pool.streamReleased(this);
+        }
+    }
+
+    private void resetStream(Http2Stream stream, int errorCode, IOException cause) {
+        boolean removed;
+        synchronized (this) {
+            removed = streams.remove(stream.getId()) != null;
+            if (removed && !closed) {
+                writeRstStream(stream.getId(), errorCode);
+            }
+        }
+        requestOutput();
+        stream.fail(cause);
+        if (removed) {
+            pool.streamReleased(this);
+        }
+    }
+
+    private void connectionError(Http2Exception e) {
+        log.warn("HTTP/2 protocol error on the connection to " + route + " : " + e.getMessage());
+        synchronized (this) {
+            writeGoAway(e.getErrorCode(), e.getMessage());
+            flushQuietly();
+        }
+        shutdown(e);
+    }
+
+    private void shutdown(IOException cause) {
+        if (closeCause == null) {
+            closeCause = cause;
+        }
+        synchronized (this) {
+            goingAway = true;
+        }
+        session.close();
+    }
+
+    private void retire(IOException cause) {
+        if (!retired) {
+            retired = true;
+            pool.connectionRetired(this, cause);
+        }
+    }
+
+    private synchronized Http2Stream getStream(int streamId) {
+        return streams.get(streamId);
+    }
+
+    private synchronized int getBufferedOutput() {
+        return output.position();
+    }
+
+    private synchronized List<Http2Stream> getWritableStreams() {
+        List<Http2Stream> writable = new ArrayList<Http2Stream>();
+        for (Http2Stream stream : streams.values()) {
+            if (stream.isOutputRequested() && !(stream.windowBlocked &&
+                    (stream.sendWindow <= 0 || sendWindow <= 0))) {
+                writable.add(stream);
+            }
+        }
+        return writable;
+    }
+
+    private void writeHeaders(int streamId, byte[] block, boolean endStream) {
+        int offset = 0;
+        int type = HEADERS;
+        do {
+            int length = Math.min(block.length - offset, peerMaxFrameSize);
+            int flags = offset + length == block.length ? FLAG_END_HEADERS : 0;
+            if (type == HEADERS && endStream) {
+                flags |= FLAG_END_STREAM;
+            }
+            writeFrameHeader(length, type, flags, streamId);
+            output.put(block, offset, length);
+            offset += length;
+            type = CONTINUATION;
+        } while (offset < block.length);
+    }
+
+    private void writeRstStream(int streamId, int errorCode) {
+        writeFrameHeader(4, RST_STREAM, 0, streamId);
+        output.putInt(errorCode);
+    }
+
+    private void writeGoAway(int errorCode, String message) {
+        byte[] debug = message != null ? message.getBytes() : new byte[0];
+        writeFrameHeader(8 + debug.length, GOAWAY, 0, 0);
+        // the peer opens no streams, as push is disabled
+        output.putInt(0);
+        output.putInt(errorCode);
+        output.put(debug);
+    }
+
+    private void writeFrameHeader(int length, int type, int flags, int streamId) {
+        ensureCapacity(FRAME_HEADER_LENGTH + length);
+        output.put((byte) (length >>> 16));
+        output.put((byte) (length >>> 8));
+        output.put((byte) length);
+        output.put((byte) type);
+        output.put((byte) flags);
+        output.putInt(streamId);
+    }
+
+    private void ensureCapacity(int length) {
+        if (output.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(
+                    Math.max(output.capacity() * 2, output.position() + length));
+            output.flip();
+            larger.put(output);
+            output = larger;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            output.flip();
+            session.channel().write(output);
+        } catch (IOException ignore) {
+            // the session is closed next
+        } finally {
+            output.compact();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HTTP/2 connection to " + route;
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.nio.reactor.SessionRequest;
+import org.apache.http.nio.reactor.SessionRequestCallback;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a few HTTP/2 connections to each target and spreads the streams over them. A stream is
+ * submitted to the least loaded connection which is below the concurrent stream limit of its
+ * peer, and another connection is opened only when all of them are at their limit, up to the
+ * configured number of connections per target. Streams which find no room wait in submission
+ * order until a stream completes or a connection becomes ready.
+ */
+public class Http2ConnectionPool {
+
+    private static final Log log = LogFactory.getLog(Http2ConnectionPool.class);
+
+    private final ConnectingIOReactor ioReactor;
+
+    private final int maxConnectionsPerRoute;
+
+    private final int initialWindowSize;
+
+    private final int connectionWindowSize;
+
+    private final int socketTimeout;
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<String, Route>();
+
+    private final SessionRequestCallback connectCallback = new ConnectCallback();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Create a pool
+     *
+     * @param ioReactor              reactor used to open the connections
+     * @param maxConnectionsPerRoute maximum number of connections to a target
+     * @param initialWindowSize      flow control window of each stream, which bounds the
+     *                               response data buffered for it
+     * @param connectionWindowSize   flow control window of each connection
+     * @param socketTimeout          socket timeout of the connections in milliseconds
+     */
+    public Http2ConnectionPool(ConnectingIOReactor ioReactor, int maxConnectionsPerRoute,
+                               int initialWindowSize, int connectionWindowSize,
+                               int socketTimeout) {
+        this.ioReactor = ioReactor;
+        this.maxConnectionsPerRoute = Math.max(1, maxConnectionsPerRoute);
+        // the peer may use the default window until it has seen the settings of the connection
+        this.initialWindowSize = Math.max(initialWindowSize, Http2Constants.DEFAULT_WINDOW_SIZE);
+        this.connectionWindowSize = Math.max(connectionWindowSize,
+                Http2Constants.DEFAULT_WINDOW_SIZE);
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * Send the request of a stream to the given target
+     *
+     * @param host   host of the target
+     * @param port   port of the target
+     * @param stream stream of the request
+     */
+    public void submit(String host, int port, Http2Stream stream) {
+        if (shutdown) {
+            stream.fail(new ConnectException("HTTP/2 connection pool has been shut down"));
+            return;
+        }
+        String key = host + ":" + port;
+        Route route = routes.get(key);
+        if (route == null) {
+            route = new Route(host, port);
+            Route existing = routes.putIfAbsent(key, route);
+            if (existing != null) {
+                route = existing;
+            }
+        }
+        synchronized (route) {
+            route.pending.add(stream);
+        }
+        dispatch(route);
+    }
+
+    /**
+     * Close all the connections and fail the streams waiting for one
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (Route route : routes.values()) {
+            List<Http2Connection> connections;
+            synchronized (route) {
+                connections = new ArrayList<Http2Connection>(route.connections);
+            }
+            failPending(route, new ConnectException("HTTP/2 connection pool has been shut down"));
+            for (Http2Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        int count = 0;
+        for (Route route : routes.values()) {
+            synchronized (route) {
+                count += route.connections.size();
+            }
+        }
+        return count;
+    }
+
+    public int getPendingStreamCount() {
+        int count = 0;
+        for (Route route : routes.values()) {
+            synchronized (route) {
+                count += route.pending.size();
+            }
+        }
+        return count;
+    }
+
+    Http2Connection createConnection(IOSession session) {
+        Route route = (Route) session.getAttribute(IOSession.ATTACHMENT_KEY);
+        session.setSocketTimeout(socketTimeout);
+        return new Http2Connection(session, this, route, initialWindowSize, connectionWindowSize);
+    }
+
+    void connectionReady(Http2Connection connection) {
+        Route route = connection.getRoute();
+        synchronized (route) {
+            route.connecting--;
+            route.connections.add(connection);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("HTTP/2 connection to " + route + " is ready");
+        }
+        dispatch(route);
+    }
+
+    void streamReleased(Http2Connection connection) {
+        dispatch(connection.getRoute());
+    }
+
+    /**
+     * Stop using a connection which has been closed or is going away
+     *
+     * @param connection the connection
+     * @param cause      cause of the closure, or null if the connection is going away
+     */
+    void connectionRetired(Http2Connection connection, IOException cause) {
+        Route route = connection.getRoute();
+        boolean failed = false;
+        synchronized (route) {
+            if (!route.connections.remove(connection)) {
+                // the connection was closed before it became ready, so the target may not
+                // support HTTP/2 and there is no point in trying it again for the same streams
+                route.connecting--;
+                failed = route.connections.isEmpty() && route.connecting == 0;
+            }
+        }
+        if (failed) {
+            failPending(route, cause != null ? cause :
+                    new ConnectException("HTTP/2 connection to " + route + " closed"));
+        }
+        dispatch(route);
+    }
+
+    private void connectFailed(Route route, IOException cause) {
+        log.warn("Unable to open an HTTP/2 connection to " + route + " : " + cause.getMessage());
+        boolean failed;
+        synchronized (route) {
+            route.connecting--;
+            failed = route.connections.isEmpty() && route.connecting == 0;
+        }
+        if (failed) {
+            failPending(route, cause);
+        }
+    }
+
+    private void failPending(Route route, IOException cause) {
+        List<Http2Stream> streams;
+        synchronized (route) {
+            streams = new ArrayList<Http2Stream>(route.pending);
+            route.pending.clear();
+        }
+        for (Http2Stream stream : streams) {
+            stream.fail(cause);
+        }
+    }
+
+    /**
+     * Submit the waiting streams of a route to its connections, opening another connection if
+     * they are all at their limit
+     */
+    private void dispatch(Route route) {
+        while (true) {
+            Http2Stream stream = null;
+            Http2Connection connection;
+            boolean connect = false;
+            synchronized (route) {
+                if (route.pending.isEmpty()) {
+                    return;
+                }
+                connection = route.select();
+                if (connection != null) {
+                    stream = route.pending.removeFirst();
+                } else if (!shutdown && route.connecting == 0 &&
+                        route.connections.size() < maxConnectionsPerRoute) {
+                    route.connecting++;
+                    connect = true;
+                } else {
+                    return;
+                }
+            }
+
+            if (connect) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Opening an HTTP/2 connection to " + route);
+                }
+                try {
+                    ioReactor.connect(new InetSocketAddress(route.host, route.port), null,
+                            route, connectCallback);
+                } catch (RuntimeException e) {
+                    connectFailed(route, new ConnectException(e.getMessage()));
+                }
+                return;
+            }
+
+            if (!connection.submit(stream)) {
+                synchronized (route) {
+                    route.pending.addFirst(stream);
+                }
+            }
+        }
+    }
+
+    /**
+     * The connections to a target and the streams waiting for one of them
+     */
+    static class Route {
+
+        private final String host;
+        private final int port;
+        private final List<Http2Connection> connections = new ArrayList<Http2Connection>();
+        private final LinkedList<Http2Stream> pending = new LinkedList<Http2Stream>();
+        private int connecting;
+
+        private Route(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        private Http2Connection select() {
+            Http2Connection selected = null;
+            int load = Integer.MAX_VALUE;
+            for (Http2Connection connection : connections) {
+                if (connection.canOpenStream()) {
+                    int streams = connection.getActiveStreamCount();
+                    if (streams < load) {
+                        selected = connection;
+                        load = streams;
+                    }
+                }
+            }
+            return selected;
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    private class ConnectCallback implements SessionRequestCallback {
+
+        public void completed(SessionRequest request) {
+        }
+
+        public void failed(SessionRequest request) {
+            connectFailed((Route) request.getAttachment(), request.getException());
+        }
+
+        public void timeout(SessionRequest request) {
+            connectFailed((Route) request.getAttachment(),
+                    new ConnectException("Timeout connecting to " + request.getAttachment()));
+        }
+
+        public void cancelled(SessionRequest request) {
+            connectFailed((Route) request.getAttachment(),
+                    new ConnectException("Connection to " + request.getAttachment() +
+                            " cancelled"));
+        }
+    }
+}
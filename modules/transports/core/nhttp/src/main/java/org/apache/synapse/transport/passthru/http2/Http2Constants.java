@@ -0,0 +1,77 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+/**
+ * Frame types, flags, settings and error codes of HTTP/2, as defined in RFC 7540.
+ */
+public class Http2Constants {
+
+    /** The connection preface a client sends before its first SETTINGS frame */
+    public static final byte[] CLIENT_PREFACE = {
+            'P', 'R', 'I', ' ', '*', ' ', 'H', 'T', 'T', 'P', '/', '2', '.', '0', '\r', '\n',
+            '\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n'
+    };
+
+    public static final int FRAME_HEADER_LENGTH = 9;
+
+    // frame types
+    public static final int DATA          = 0x0;
+    public static final int HEADERS       = 0x1;
+    public static final int PRIORITY      = 0x2;
+    public static final int RST_STREAM    = 0x3;
+    public static final int SETTINGS      = 0x4;
+    public static final int PUSH_PROMISE  = 0x5;
+    public static final int PING          = 0x6;
+    public static final int GOAWAY        = 0x7;
+    public static final int WINDOW_UPDATE = 0x8;
+    public static final int CONTINUATION  = 0x9;
+
+    // frame flags
+    public static final int FLAG_END_STREAM  = 0x1;
+    public static final int FLAG_ACK         = 0x1;
+    public static final int FLAG_END_HEADERS = 0x4;
+    public static final int FLAG_PADDED      = 0x8;
+    public static final int FLAG_PRIORITY    = 0x20;
+
+    // settings
+    public static final int SETTINGS_HEADER_TABLE_SIZE      = 0x1;
+    public static final int SETTINGS_ENABLE_PUSH            = 0x2;
+    public static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    public static final int SETTINGS_INITIAL_WINDOW_SIZE    = 0x4;
+    public static final int SETTINGS_MAX_FRAME_SIZE         = 0x5;
+    public static final int SETTINGS_MAX_HEADER_LIST_SIZE   = 0x6;
+
+    // error codes
+    public static final int NO_ERROR            = 0x0;
+    public static final int PROTOCOL_ERROR      = 0x1;
+    public static final int INTERNAL_ERROR      = 0x2;
+    public static final int FLOW_CONTROL_ERROR  = 0x3;
+    public static final int STREAM_CLOSED       = 0x5;
+    public static final int FRAME_SIZE_ERROR    = 0x6;
+    public static final int REFUSED_STREAM      = 0x7;
+    public static final int CANCEL              = 0x8;
+    public static final int COMPRESSION_ERROR   = 0x9;
+
+    // protocol defaults
+    public static final int DEFAULT_WINDOW_SIZE = 65535;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+    public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+}
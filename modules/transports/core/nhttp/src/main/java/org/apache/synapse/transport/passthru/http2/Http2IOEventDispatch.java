@@ -0,0 +1,73 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.http.nio.reactor.IOEventDispatch;
+import org.apache.http.nio.reactor.IOSession;
+
+/**
+ * Dispatches the IO events of the sessions opened by an {@link Http2ConnectionPool} to their
+ * {@link Http2Connection}s.
+ */
+public class Http2IOEventDispatch implements IOEventDispatch {
+
+    private final Http2ConnectionPool pool;
+
+    public Http2IOEventDispatch(Http2ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    public void connected(IOSession session) {
+        Http2Connection connection = pool.createConnection(session);
+        session.setAttribute(CONNECTION_KEY, connection);
+        connection.connected();
+    }
+
+    public void inputReady(IOSession session) {
+        Http2Connection connection = getConnection(session);
+        if (connection != null) {
+            connection.consumeInput();
+        }
+    }
+
+    public void outputReady(IOSession session) {
+        Http2Connection connection = getConnection(session);
+        if (connection != null) {
+            connection.produceOutput();
+        }
+    }
+
+    public void timeout(IOSession session) {
+        Http2Connection connection = getConnection(session);
+        if (connection != null) {
+            connection.timeout();
+        }
+    }
+
+    public void disconnected(IOSession session) {
+        Http2Connection connection = getConnection(session);
+        if (connection != null) {
+            connection.disconnected();
+        }
+    }
+
+    private Http2Connection getConnection(IOSession session) {
+        return (Http2Connection) session.getAttribute(CONNECTION_KEY);
+    }
+}
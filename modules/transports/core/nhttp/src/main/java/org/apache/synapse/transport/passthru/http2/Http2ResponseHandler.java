@@ -0,0 +1,45 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.http.HttpResponse;
+
+/**
+ * Receives the outcome of the requests sent over HTTP/2 streams. The methods are called on the
+ * IO reactor thread and must not block.
+ */
+public interface Http2ResponseHandler {
+
+    /**
+     * The head of the response to a request has been received. If the response has a body, it
+     * can be read from the response pipe of the stream.
+     *
+     * @param stream   the stream which carried the request
+     * @param response the response, without the pseudo header fields
+     */
+    void responseReceived(Http2Stream stream, HttpResponse response);
+
+    /**
+     * The request failed before its response was received.
+     *
+     * @param stream the stream which carried the request
+     * @param e      the cause of the failure
+     */
+    void failed(Http2Stream stream, Exception e);
+}
@@ -0,0 +1,481 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.synapse.transport.passthru.Pipe;
+import org.apache.synapse.transport.passthru.config.BaseConfiguration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A request and its response, exchanged over a stream of an {@link Http2Connection}. The body
+ * of the request is taken from a pipe and the body of the response is written to another, as
+ * the pass-through transport does for HTTP/1.x connections. The stream is the IOControl of both
+ * pipes, so a pipe suspending its consumer or producer holds back the DATA frames of the stream
+ * alone, and HTTP/2 flow control carries the backpressure to the peer without stalling the
+ * other streams of the connection.
+ */
+public class Http2Stream implements IOControl {
+
+    private static final Log log = LogFactory.getLog(Http2Stream.class);
+
+    public static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    private final List<Header> requestHeaders;
+
+    private final String method;
+
+    /** Pipe the request body is taken from, or null if the request has no body */
+    private final Pipe requestPipe;
+
+    private final BaseConfiguration configuration;
+
+    private final Http2ResponseHandler handler;
+
+    private Object attachment;
+
+    private volatile Http2Connection connection;
+
+    private volatile int id;
+
+    /** Flow control window of the peer for this stream, guarded by the connection */
+    int sendWindow;
+
+    /** Whether the last write was cut short by a flow control window, guarded by the connection */
+    boolean windowBlocked;
+
+    private volatile boolean outputRequested;
+
+    /** Counts the output requests, so that a request racing with a suspension is not lost */
+    private final AtomicInteger outputRequests = new AtomicInteger();
+
+    private final DataEncoder encoder = new DataEncoder();
+
+    private volatile boolean requestComplete;
+
+    private volatile boolean inputSuspended;
+
+    private volatile Pipe responsePipe;
+
+    private volatile HttpResponse response;
+
+    /** Data received but not yet taken by the response pipe, used by the IO thread only */
+    private ByteBuffer received;
+
+    private final DataDecoder decoder = new DataDecoder();
+
+    private int receiveWindow;
+
+    private int unacknowledged;
+
+    private volatile boolean remoteClosed;
+
+    private volatile boolean inputComplete;
+
+    private volatile boolean failed;
+
+    /**
+     * Create a stream for a request
+     *
+     * @param requestHeaders header fields of the request, including the pseudo header fields
+     * @param requestPipe    pipe the request body is taken from, or null if there is no body
+     * @param configuration  configuration used to create the pipe of the response
+     * @param handler        handler notified of the response
+     */
+    public Http2Stream(List<Header> requestHeaders, Pipe requestPipe,
+                       BaseConfiguration configuration, Http2ResponseHandler handler) {
+        this.requestHeaders = requestHeaders;
+        this.requestPipe = requestPipe;
+        this.configuration = configuration;
+        this.handler = handler;
+
+        String method = null;
+        for (Header header : requestHeaders) {
+            if (":method".equals(header.getName())) {
+                method = header.getValue();
+            }
+        }
+        this.method = method;
+        if (requestPipe != null) {
+            requestPipe.attachConsumer(this);
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Http2Connection getConnection() {
+        return connection;
+    }
+
+    public List<Header> getRequestHeaders() {
+        return requestHeaders;
+    }
+
+    public HttpResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * Get the pipe the response body is written to
+     *
+     * @return the response pipe, or null if the response has no body or has not been received
+     */
+    public Pipe getResponsePipe() {
+        return responsePipe;
+    }
+
+    public Object getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    public void requestOutput() {
+        outputRequested = true;
+        outputRequests.incrementAndGet();
+        Http2Connection conn = connection;
+        if (conn != null) {
+            conn.requestOutput();
+        }
+    }
+
+    public void suspendOutput() {
+        outputRequested = false;
+    }
+
+    public void requestInput() {
+        inputSuspended = false;
+        Http2Connection conn = connection;
+        if (conn != null) {
+            conn.requestInput(this);
+        }
+    }
+
+    public void suspendInput() {
+        inputSuspended = true;
+    }
+
+    public void shutdown() throws IOException {
+        Http2Connection conn = connection;
+        if (conn != null) {
+            conn.cancel(this);
+        }
+    }
+
+    void attach(Http2Connection connection, int id, int sendWindow, int receiveWindow) {
+        this.connection = connection;
+        this.id = id;
+        this.sendWindow = sendWindow;
+        this.receiveWindow = receiveWindow;
+        if (requestPipe == null) {
+            requestComplete = true;
+        } else {
+            // a pass-through request body may already be waiting in the pipe
+            outputRequested = true;
+        }
+    }
+
+    boolean hasRequestBody() {
+        return requestPipe != null;
+    }
+
+    boolean isOutputRequested() {
+        return outputRequested && !requestComplete && !failed;
+    }
+
+    boolean isDone() {
+        return failed || (requestComplete && remoteClosed);
+    }
+
+    /**
+     * Write the next DATA frame of the request body. Called on the IO thread.
+     *
+     * @return true if the stream made progress
+     * @throws IOException if the request body cannot be read or written
+     */
+    boolean produceOutput() throws IOException {
+        int requests = outputRequests.get();
+        int bytes = requestPipe.consume(encoder);
+        if (bytes < 0) {
+            // the request body could not be read from its source
+            requestComplete = true;
+            throw new IOException("Error reading the request body for stream " + id);
+        }
+        if (encoder.completing) {
+            connection.writeData(this, null, true);
+            requestComplete = true;
+            return true;
+        }
+        if (bytes == 0 && !windowBlocked) {
+            // there is nothing to send until the request pipe is filled up again
+            outputRequested = false;
+            if (outputRequests.get() != requests) {
+                outputRequested = true;
+            }
+        }
+        return bytes > 0;
+    }
+
+    /**
+     * Handle the header block of the response, or its trailers. Called on the IO thread.
+     *
+     * @param headers   decoded header fields
+     * @param endStream whether the header block ends the response
+     * @throws Http2Exception if the response is malformed
+     */
+    void headersReceived(List<Header> headers, boolean endStream) throws Http2Exception {
+        if (response == null) {
+            String status = null;
+            for (Header header : headers) {
+                if (":status".equals(header.getName())) {
+                    status = header.getValue();
+                }
+            }
+            int code;
+            try {
+                code = Integer.parseInt(status);
+            } catch (NumberFormatException e) {
+                throw new Http2Exception(Http2Constants.PROTOCOL_ERROR,
+                        "Invalid :status in the response of stream " + id + " : " + status);
+            }
+            if (code < HttpStatus.SC_OK) {
+                // ignore informational responses
+                if (endStream) {
+                    throw new Http2Exception(Http2Constants.PROTOCOL_ERROR,
+                            "Informational response ends stream " + id);
+                }
+                return;
+            }
+
+            HttpResponse response = new BasicHttpResponse(new BasicStatusLine(HTTP_2, code,
+                    EnglishReasonPhraseCatalog.INSTANCE.getReason(code, Locale.ENGLISH)));
+            for (Header header : headers) {
+                if (!header.getName().startsWith(":")) {
+                    response.addHeader(toCanonicalName(header.getName()), header.getValue());
+                }
+            }
+
+            if (!endStream && !"HEAD".equals(method) && code != HttpStatus.SC_NO_CONTENT &&
+                    code != HttpStatus.SC_NOT_MODIFIED) {
+                responsePipe = new Pipe(this, configuration.getBufferFactory().getBuffer(),
+                        "target", configuration);
+            }
+            this.response = response;
+            handler.responseReceived(this, response);
+        } else if (!endStream) {
+            throw new Http2Exception(Http2Constants.PROTOCOL_ERROR,
+                    "Trailers do not end stream " + id);
+        }
+        // trailers are dropped, as the pass-through transport has no means to relay them
+
+        if (endStream) {
+            remoteClosed = true;
+        }
+    }
+
+    /**
+     * Take the payload of a DATA frame of the response. Called on the IO thread.
+     *
+     * @param data      the data, excluding padding
+     * @param padding   number of flow controlled padding octets which came with the data
+     * @param endStream whether the frame ends the response
+     * @throws Http2Exception if the data is not expected or exceeds the flow control window
+     */
+    void dataReceived(ByteBuffer data, int padding, boolean endStream) throws Http2Exception {
+        if (response == null) {
+            throw new Http2Exception(Http2Constants.PROTOCOL_ERROR,
+                    "DATA received before the response headers on stream " + id);
+        }
+        if (responsePipe != null && data.hasRemaining()) {
+            if (received == null) {
+                received = ByteBuffer.allocate(receiveWindow);
+            }
+            if (data.remaining() > received.remaining()) {
+                throw new Http2Exception(Http2Constants.FLOW_CONTROL_ERROR,
+                        "Flow control window exceeded on stream " + id);
+            }
+            received.put(data);
+        } else {
+            // the data will never be taken from the stream, so give back its window now
+            padding += data.remaining();
+        }
+        unacknowledged += padding;
+
+        if (endStream) {
+            remoteClosed = true;
+        }
+    }
+
+    /**
+     * Write the received data to the response pipe, unless the pipe has suspended the input.
+     * Called on the IO thread.
+     *
+     * @throws IOException if the data cannot be written to the pipe
+     */
+    void deliverInput() throws IOException {
+        if (responsePipe != null && !inputSuspended && !inputComplete && !failed &&
+                ((received != null && received.position() > 0) || remoteClosed)) {
+            unacknowledged += responsePipe.produce(decoder);
+            if (decoder.isCompleted()) {
+                inputComplete = true;
+            }
+        }
+        if (!remoteClosed && unacknowledged > 0 && unacknowledged >= receiveWindow / 2) {
+            connection.writeWindowUpdate(id, unacknowledged);
+            unacknowledged = 0;
+        }
+    }
+
+    /**
+     * Whether the whole response has been received while the request is still being sent,
+     * in which case the rest of the request is dropped.
+     *
+     * @return true if the request body should not be sent any further
+     */
+    boolean abandonRequest() {
+        if (remoteClosed && !requestComplete) {
+            requestComplete = true;
+            requestPipe.consumerError();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fail the stream, unless its response has already been received. Called on the IO thread
+     * or, if the stream is failed before it is submitted, on the caller thread.
+     *
+     * @param e the cause of the failure
+     */
+    void fail(Exception e) {
+        if (failed) {
+            return;
+        }
+        if (remoteClosed) {
+            // the whole response is here already, only the rest of the request is lost
+            abandonRequest();
+            return;
+        }
+        failed = true;
+        if (log.isDebugEnabled()) {
+            log.debug("HTTP/2 stream " + id + " failed : " + e.getMessage());
+        }
+        if (requestPipe != null) {
+            requestPipe.consumerError();
+        }
+        if (response == null) {
+            handler.failed(this, e);
+        } else if (responsePipe != null) {
+            responsePipe.producerError();
+        }
+    }
+
+    /**
+     * Convert a lower case HTTP/2 header name into the capitalized form used by HTTP/1.x,
+     * which the rest of the transport looks headers up with.
+     */
+    static String toCanonicalName(String name) {
+        char[] chars = name.toCharArray();
+        boolean start = true;
+        for (int i = 0; i < chars.length; i++) {
+            if (start) {
+                chars[i] = Character.toUpperCase(chars[i]);
+            }
+            start = chars[i] == '-';
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return "HTTP/2 stream " + id;
+    }
+
+    /**
+     * Writes the request body as DATA frames, as much as the flow control windows allow.
+     */
+    private class DataEncoder implements ContentEncoder {
+
+        private boolean completing;
+
+        public int write(ByteBuffer src) throws IOException {
+            if (completing || !src.hasRemaining()) {
+                return 0;
+            }
+            return connection.writeData(Http2Stream.this, src, false);
+        }
+
+        public void complete() throws IOException {
+            // the frame which ends the stream is written once the pipe lets go of the encoder
+            completing = true;
+        }
+
+        public boolean isCompleted() {
+            return completing;
+        }
+    }
+
+    /**
+     * Reads the received DATA payloads into the response pipe.
+     */
+    private class DataDecoder implements ContentDecoder {
+
+        public int read(ByteBuffer dst) throws IOException {
+            if (received == null || received.position() == 0) {
+                return 0;
+            }
+            received.flip();
+            int bytes = Math.min(dst.remaining(), received.remaining());
+            if (bytes < received.remaining()) {
+                int limit = received.limit();
+                received.limit(received.position() + bytes);
+                dst.put(received);
+                received.limit(limit);
+            } else {
+                dst.put(received);
+            }
+            received.compact();
+            return bytes;
+        }
+
+        public boolean isCompleted() {
+            return remoteClosed && (received == null || received.position() == 0);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.passthru.jmx;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.transport.passthru.AdmissionController;
+
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * AdmissionControlView MBean exposes the current concurrency limit of a pass-through listener
+ * along with the number of requests in flight and the number of requests admitted and rejected
+ * since the last reset.
+ */
+public class AdmissionControlView implements AdmissionControlViewMBean {
+
+    private static final String PASS_THROUGH_ADMISSION_CONTROL = "PassThroughAdmissionControl";
+
+    private AdmissionController controller;
+
+    private Date resetTime = Calendar.getInstance().getTime();
+
+    private String name;
+
+    public AdmissionControlView(String name, AdmissionController controller) {
+        this.name = name;
+        this.controller = controller;
+        MBeanRegistrar.getInstance().registerMBean(this, PASS_THROUGH_ADMISSION_CONTROL, name);
+    }
+
+    public void destroy() {
+        MBeanRegistrar.getInstance().unRegisterMBean(PASS_THROUGH_ADMISSION_CONTROL, name);
+    }
+
+    public int getConcurrencyLimit() {
+        return controller.getConcurrencyLimit();
+    }
+
+    public int getInFlightRequests() {
+        return controller.getInFlightRequests();
+    }
+
+    public long getAdmittedRequests() {
+        return controller.getAdmittedRequests();
+    }
+
+    public long getRejectedRequests() {
+        return controller.getRejectedRequests();
+    }
+
+    public Date getLastResetTime() {
+        return resetTime;
+    }
+
+    public void reset() {
+        controller.resetCounters();
+        resetTime = Calendar.getInstance().getTime();
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.synapse.transport.passthru.jmx;
 
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.transport.base.MetricsCollector;
+import org.apache.synapse.transport.passthru.AdmissionController;
 
 /**
  * <p>This simple extension of the Axis2 transport MetricsCollector implementation,
@@ -31,22 +32,64 @@ import org.apache.axis2.transport.base.MetricsCollector;
  *    <li>connected (this should get called whenever a new connection is created)</li>
  *    <li>disconnected (this should get called whenever an existing connection is closed)</li>
  * <ul>
- * <p>These new events are used to update the ConnectionsView at runtime.</p>
+ * <p>These new events are used to update the ConnectionsView at runtime. When priority
+ * based dispatching is enabled on the listener, a PriorityQueueView is also maintained and
+ * updated as requests are queued in and taken from the priority executor. Similarly an
+ * AdmissionControlView is maintained when admission control is enabled on the listener.</p>
  */
 public class PassThroughTransportMetricsCollector extends MetricsCollector {
 
     private ConnectionsView view;
+    private PriorityQueueView priorityView;
+    private AdmissionControlView admissionView;
     private boolean listener;
+    private String name;
 
     public PassThroughTransportMetricsCollector(boolean listener, boolean isHttps)
             throws AxisFault {
         this.listener = listener;
-        String name = "http" + (isHttps ? "s" : "") + "-" + (listener ? "listener" : "sender");
+        this.name = "http" + (isHttps ? "s" : "") + "-" + (listener ? "listener" : "sender");
         this.view = new ConnectionsView(name);
     }
 
+    public void enablePriorityStatistics() {
+        if (priorityView == null) {
+            priorityView = new PriorityQueueView(name);
+        }
+    }
+
+    public void enableAdmissionStatistics(AdmissionController controller) {
+        if (admissionView == null) {
+            admissionView = new AdmissionControlView(name, controller);
+        }
+    }
+
     public void destroy() {
         view.destroy();
+        if (priorityView != null) {
+            priorityView.destroy();
+        }
+        if (admissionView != null) {
+            admissionView.destroy();
+        }
+    }
+
+    public void notifyQueued(int priority) {
+        if (priorityView != null) {
+            priorityView.queued(priority);
+        }
+    }
+
+    public void notifyDequeued(int priority, long waitTime) {
+        if (priorityView != null) {
+            priorityView.dequeued(priority, waitTime);
+        }
+    }
+
+    public void notifyRejected(int priority) {
+        if (priorityView != null) {
+            priorityView.rejected(priority);
+        }
     }
 
     public void connected() {
@@ -0,0 +1,145 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.passthru.jmx;
+
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PriorityQueueView MBean can be used to monitor the priority based dispatching of the
+ * pass-through listener. For each priority it reports the number of requests waiting in the
+ * priority executor, the number of requests handed over to a worker and the average and
+ * maximum time (in milliseconds) requests spent waiting in the queue.
+ */
+public class PriorityQueueView implements PriorityQueueViewMBean {
+
+    private static final String PASS_THROUGH_PRIORITY_QUEUES = "PassThroughPriorityQueues";
+
+    private ConcurrentMap<Integer, QueueStatistics> statistics =
+            new ConcurrentHashMap<Integer, QueueStatistics>();
+
+    private Date resetTime = Calendar.getInstance().getTime();
+
+    private String name;
+
+    public PriorityQueueView(String name) {
+        this.name = name;
+        MBeanRegistrar.getInstance().registerMBean(this, PASS_THROUGH_PRIORITY_QUEUES, name);
+    }
+
+    public void destroy() {
+        MBeanRegistrar.getInstance().unRegisterMBean(PASS_THROUGH_PRIORITY_QUEUES, name);
+    }
+
+    protected void queued(int priority) {
+        getStatistics(priority).depth.incrementAndGet();
+    }
+
+    protected void dequeued(int priority, long waitTime) {
+        QueueStatistics stats = getStatistics(priority);
+        stats.depth.decrementAndGet();
+        stats.processed.incrementAndGet();
+        stats.totalWaitTime.addAndGet(waitTime);
+
+        long max = stats.maxWaitTime.get();
+        while (waitTime > max && !stats.maxWaitTime.compareAndSet(max, waitTime)) {
+            max = stats.maxWaitTime.get();
+        }
+    }
+
+    protected void rejected(int priority) {
+        getStatistics(priority).depth.decrementAndGet();
+    }
+
+    public Map<Integer, Integer> getQueueDepths() {
+        Map<Integer, Integer> map = new TreeMap<Integer, Integer>();
+        for (Map.Entry<Integer, QueueStatistics> entry : statistics.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().depth.get());
+        }
+        return map;
+    }
+
+    public Map<Integer, Long> getProcessedRequests() {
+        Map<Integer, Long> map = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, QueueStatistics> entry : statistics.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().processed.get());
+        }
+        return map;
+    }
+
+    public Map<Integer, Long> getAverageWaitTimes() {
+        Map<Integer, Long> map = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, QueueStatistics> entry : statistics.entrySet()) {
+            QueueStatistics stats = entry.getValue();
+            long processed = stats.processed.get();
+            map.put(entry.getKey(), processed == 0 ? 0 : stats.totalWaitTime.get() / processed);
+        }
+        return map;
+    }
+
+    public Map<Integer, Long> getMaxWaitTimes() {
+        Map<Integer, Long> map = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, QueueStatistics> entry : statistics.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().maxWaitTime.get());
+        }
+        return map;
+    }
+
+    public Date getLastResetTime() {
+        return resetTime;
+    }
+
+    public void reset() {
+        // queue depths reflect the current state of the executor and are not reset
+        for (QueueStatistics stats : statistics.values()) {
+            stats.processed.set(0);
+            stats.totalWaitTime.set(0);
+            stats.maxWaitTime.set(0);
+        }
+        resetTime = Calendar.getInstance().getTime();
+    }
+
+    private QueueStatistics getStatistics(int priority) {
+        QueueStatistics stats = statistics.get(priority);
+        if (stats == null) {
+            QueueStatistics newStats = new QueueStatistics();
+            stats = statistics.putIfAbsent(priority, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    private static class QueueStatistics {
+        private final AtomicInteger depth = new AtomicInteger(0);
+        private final AtomicLong processed = new AtomicLong(0);
+        private final AtomicLong totalWaitTime = new AtomicLong(0);
+        private final AtomicLong maxWaitTime = new AtomicLong(0);
+    }
+}
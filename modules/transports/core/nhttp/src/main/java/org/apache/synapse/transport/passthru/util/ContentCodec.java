@@ -0,0 +1,423 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.transport.passthru.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses or decompresses a message body in the gzip or deflate content coding while it is
+ * relayed through a {@link org.apache.synapse.transport.passthru.Pipe}. Each call to
+ * {@link #transcode(ByteBuffer, ByteBuffer, boolean)} takes as much of the input as it can and
+ * writes the result to the output, so the body is never held in full.
+ * <p/>
+ * Codecs hold a Deflater or Inflater, which allocate native memory, so they are pooled. A codec
+ * is taken with {@link #acquire(Mode, String)} and must be given back with {@link #release()}
+ * once the body has been transcoded.
+ */
+public abstract class ContentCodec {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    public enum Mode { COMPRESS, DECOMPRESS }
+
+    /** Largest number of idle codecs kept of each kind */
+    private static final int POOL_SIZE = 64;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final byte[] GZIP_HEADER = {
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private static final Pool[] pools = {
+            new Pool(), new Pool(), new Pool(), new Pool()
+    };
+
+    /** Input is copied into this array, as the Java 6 zip classes only take arrays */
+    protected final byte[] input = new byte[8 * 1024];
+
+    private final Pool pool;
+    private final Mode mode;
+    private final String coding;
+
+    private ContentCodec(Pool pool, Mode mode, boolean gzip) {
+        this.pool = pool;
+        this.mode = mode;
+        this.coding = gzip ? GZIP : DEFLATE;
+    }
+
+    /**
+     * Take a codec for the given mode and content coding from the pool
+     *
+     * @param mode   whether to compress or decompress
+     * @param coding gzip or deflate
+     * @return a codec ready to transcode a new body
+     */
+    public static ContentCodec acquire(Mode mode, String coding) {
+        boolean gzip = isGzip(coding);
+        if (!gzip && !DEFLATE.equalsIgnoreCase(coding)) {
+            throw new IllegalArgumentException("Unsupported content coding : " + coding);
+        }
+        int index = (mode == Mode.COMPRESS ? 0 : 2) + (gzip ? 0 : 1);
+        Pool pool = pools[index];
+        ContentCodec codec = pool.idle.poll();
+        if (codec != null) {
+            pool.size.decrementAndGet();
+            return codec;
+        }
+        if (mode == Mode.COMPRESS) {
+            return new Compressor(pool, gzip);
+        } else {
+            return new Decompressor(pool, gzip);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Get the content coding the body is compressed with, on the output for a compressor and on
+     * the input for a decompressor
+     *
+     * @return gzip or deflate
+     */
+    public String getCoding() {
+        return coding;
+    }
+
+    public static boolean isGzip(String coding) {
+        return GZIP.equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding);
+    }
+
+    /**
+     * Transcode as much of the input as possible into the output
+     *
+     * @param src        input, in read mode
+     * @param dst        output, in write mode
+     * @param endOfInput true if no more input follows what is in src
+     * @throws IOException if the input is not valid in the content coding
+     */
+    public abstract void transcode(ByteBuffer src, ByteBuffer dst,
+                                   boolean endOfInput) throws IOException;
+
+    /**
+     * Check whether the whole body has been transcoded and written to the output
+     *
+     * @return true if there is no more output to come
+     */
+    public abstract boolean isFinished();
+
+    protected abstract void reset();
+
+    /**
+     * Give the codec back to the pool. It must not be used after this.
+     */
+    public void release() {
+        reset();
+        if (pool.size.incrementAndGet() <= POOL_SIZE) {
+            pool.idle.add(this);
+        } else {
+            pool.size.decrementAndGet();
+            end();
+        }
+    }
+
+    protected abstract void end();
+
+    /**
+     * Copy pending header or trailer bytes to the output
+     *
+     * @return true if all of them have been written
+     */
+    private static boolean drain(ByteBuffer pending, ByteBuffer dst) {
+        while (pending.hasRemaining() && dst.hasRemaining()) {
+            dst.put(pending.get());
+        }
+        return !pending.hasRemaining();
+    }
+
+    private static class Pool {
+        private final Queue<ContentCodec> idle = new ConcurrentLinkedQueue<ContentCodec>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+
+    private static class Compressor extends ContentCodec {
+
+        private final boolean gzip;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        /** Header which is still to be written, and then the trailer */
+        private final ByteBuffer pending = ByteBuffer.allocate(10);
+        private boolean finishing = false;
+        private boolean trailerAdded = false;
+
+        private Compressor(Pool pool, boolean gzip) {
+            super(pool, Mode.COMPRESS, gzip);
+            this.gzip = gzip;
+            // gzip has its own header and trailer around the raw deflate stream
+            this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, gzip);
+            reset();
+        }
+
+        public void transcode(ByteBuffer src, ByteBuffer dst,
+                              boolean endOfInput) throws IOException {
+            if (!drain(pending, dst)) {
+                return;
+            }
+            while (dst.hasRemaining() && !deflater.finished()) {
+                if (deflater.needsInput()) {
+                    if (src.hasRemaining()) {
+                        int length = Math.min(src.remaining(), input.length);
+                        src.get(input, 0, length);
+                        crc.update(input, 0, length);
+                        deflater.setInput(input, 0, length);
+                    } else if (endOfInput && !finishing) {
+                        deflater.finish();
+                        finishing = true;
+                    } else if (!finishing) {
+                        // the deflater holds on to what it has until more input comes
+                        return;
+                    }
+                }
+                int written = deflater.deflate(dst.array(), dst.arrayOffset() + dst.position(),
+                        dst.remaining());
+                dst.position(dst.position() + written);
+            }
+            if (deflater.finished() && gzip && !trailerAdded) {
+                pending.clear();
+                pending.order(ByteOrder.LITTLE_ENDIAN);
+                pending.putInt((int) crc.getValue());
+                pending.putInt(deflater.getTotalIn());
+                pending.flip();
+                trailerAdded = true;
+                drain(pending, dst);
+            }
+        }
+
+        public boolean isFinished() {
+            return deflater.finished() && !pending.hasRemaining();
+        }
+
+        protected void reset() {
+            deflater.reset();
+            crc.reset();
+            finishing = false;
+            trailerAdded = false;
+            pending.clear();
+            if (gzip) {
+                pending.put(GZIP_HEADER);
+            }
+            pending.flip();
+        }
+
+        protected void end() {
+            deflater.end();
+        }
+    }
+
+    private static class Decompressor extends ContentCodec {
+
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+
+        private final boolean gzip;
+        /** Set up on the first bytes of a deflate body, which may come with or without zlib */
+        private Inflater inflater;
+        private final Inflater zlibInflater;
+        private final Inflater rawInflater;
+
+        /** Bytes of the gzip header read so far, and the number still to skip of a field */
+        private final byte[] header = new byte[10];
+        private int headerRead;
+        private int skip;
+        private int flags;
+        private int headerState;
+
+        private Decompressor(Pool pool, boolean gzip) {
+            super(pool, Mode.DECOMPRESS, gzip);
+            this.gzip = gzip;
+            this.rawInflater = new Inflater(true);
+            this.zlibInflater = gzip ? null : new Inflater(false);
+            reset();
+        }
+
+        public void transcode(ByteBuffer src, ByteBuffer dst,
+                              boolean endOfInput) throws IOException {
+            if (inflater != null && inflater.finished()) {
+                src.position(src.limit());
+                return;
+            }
+            if (gzip && !readHeader(src)) {
+                checkTruncated(src, endOfInput);
+                return;
+            }
+            if (inflater == null) {
+                if (src.remaining() < 2) {
+                    checkTruncated(src, endOfInput);
+                    return;
+                }
+                int cmf = src.get(src.position()) & 0xff;
+                int flg = src.get(src.position() + 1) & 0xff;
+                boolean zlib = (cmf & 0x0f) == Deflater.DEFLATED && (cmf * 256 + flg) % 31 == 0;
+                inflater = zlib ? zlibInflater : rawInflater;
+            }
+
+            try {
+                while (dst.hasRemaining() && !inflater.finished()) {
+                    if (inflater.needsInput()) {
+                        if (!src.hasRemaining()) {
+                            checkTruncated(src, endOfInput);
+                            return;
+                        }
+                        int length = Math.min(src.remaining(), input.length);
+                        src.get(input, 0, length);
+                        inflater.setInput(input, 0, length);
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("Deflate streams with a preset dictionary are " +
+                                "not supported");
+                    }
+                    int written = inflater.inflate(dst.array(),
+                            dst.arrayOffset() + dst.position(), dst.remaining());
+                    dst.position(dst.position() + written);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid " + (gzip ? GZIP : DEFLATE) + " content : " +
+                        e.getMessage());
+            }
+
+            if (inflater.finished()) {
+                // the gzip trailer, and anything else after the compressed data, is dropped
+                src.position(src.limit());
+            }
+        }
+
+        private void checkTruncated(ByteBuffer src, boolean endOfInput) throws IOException {
+            if (endOfInput && !src.hasRemaining()) {
+                throw new IOException("Unexpected end of " + (gzip ? GZIP : DEFLATE) +
+                        " content");
+            }
+        }
+
+        /**
+         * Read the gzip header, which may be split across calls
+         *
+         * @return true once the whole header has been read
+         */
+        private boolean readHeader(ByteBuffer src) throws IOException {
+            while (headerState != 5) {
+                if (!src.hasRemaining()) {
+                    return false;
+                }
+                switch (headerState) {
+                    case 0:
+                        header[headerRead++] = src.get();
+                        if (headerRead == header.length) {
+                            int magic = (header[0] & 0xff) | ((header[1] & 0xff) << 8);
+                            if (magic != GZIP_MAGIC || header[2] != Deflater.DEFLATED) {
+                                throw new IOException("Invalid gzip header");
+                            }
+                            flags = header[3] & 0xff;
+                            headerRead = 0;
+                            headerState = 1;
+                        }
+                        break;
+                    case 1:
+                        // length of the extra field, then the field itself
+                        if ((flags & FEXTRA) == 0) {
+                            headerState = 2;
+                        } else if (skip < 0) {
+                            int length = Math.min(-skip, src.remaining());
+                            src.position(src.position() + length);
+                            skip += length;
+                            if (skip == 0) {
+                                headerState = 2;
+                            }
+                        } else {
+                            header[headerRead++] = src.get();
+                            if (headerRead == 2) {
+                                skip = -((header[0] & 0xff) | ((header[1] & 0xff) << 8));
+                                headerRead = 0;
+                                if (skip == 0) {
+                                    headerState = 2;
+                                }
+                            }
+                        }
+                        break;
+                    case 2:
+                        if ((flags & FNAME) == 0 || src.get() == 0) {
+                            headerState = 3;
+                        }
+                        break;
+                    case 3:
+                        if ((flags & FCOMMENT) == 0 || src.get() == 0) {
+                            headerState = 4;
+                        }
+                        break;
+                    case 4:
+                        if ((flags & FHCRC) == 0) {
+                            headerState = 5;
+                        } else {
+                            src.get();
+                            if (++headerRead == 2) {
+                                headerState = 5;
+                            }
+                        }
+                        break;
+                }
+            }
+            return true;
+        }
+
+        public boolean isFinished() {
+            return inflater != null && inflater.finished();
+        }
+
+        protected void reset() {
+            rawInflater.reset();
+            if (zlibInflater != null) {
+                zlibInflater.reset();
+            }
+            inflater = gzip ? rawInflater : null;
+            headerRead = 0;
+            skip = 0;
+            flags = 0;
+            headerState = gzip ? 0 : 5;
+        }
+
+        protected void end() {
+            rawInflater.end();
+            if (zlibInflater != null) {
+                zlibInflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.transport.passthru.util;
+
+import org.apache.http.HttpStatus;
+
+import java.util.Map;
+
+/**
+ * Decides whether a response relayed by the pass-through transport is compressed or
+ * decompressed on its way to the client. A response without a content coding is compressed with
+ * gzip or deflate if the client accepts one of them, the content type is one of the compressible
+ * types and the body is not known to be smaller than the minimum size. A response compressed in
+ * a coding the client does not accept is decompressed. Partial content, and responses which
+ * must not be transformed according to the Cache-Control header of the request or of the response,
+ * are always relayed as they are.
+ */
+public class ContentCodingPolicy {
+
+    public static final String ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String CONTENT_ENCODING = "Content-Encoding";
+    public static final String VARY = "Vary";
+    public static final String CACHE_CONTROL = "Cache-Control";
+    public static final String CONTENT_RANGE = "Content-Range";
+
+    public static final String DEFAULT_CONTENT_TYPES = "text/,application/xml," +
+            "application/soap+xml,application/json,application/javascript";
+
+    private final int minSize;
+    private final String[] contentTypes;
+
+    /**
+     * @param minSize      smallest body, in bytes, which is compressed
+     * @param contentTypes comma separated prefixes of the compressible content types
+     */
+    public ContentCodingPolicy(int minSize, String contentTypes) {
+        this.minSize = minSize;
+        String[] types = contentTypes.split(",");
+        for (int i = 0; i < types.length; i++) {
+            types[i] = types[i].trim().toLowerCase();
+        }
+        this.contentTypes = types;
+    }
+
+    /**
+     * Choose the codec for a response
+     *
+     * @param method          method of the request
+     * @param status          status code of the response
+     * @param requestHeaders  headers of the request
+     * @param contentEncoding content coding of the response, or null
+     * @param contentType     content type of the response, or null
+     * @param contentLength   length of the response body, or -1 if it is not known
+     * @param cacheControl    Cache-Control header of the response, or null
+     * @param contentRange    Content-Range header of the response, or null
+     * @return a codec taken from the pool, or null if the body is relayed as it is
+     */
+    public ContentCodec select(String method, int status, Map<String, String> requestHeaders,
+                               String contentEncoding, String contentType, long contentLength,
+                               String cacheControl, String contentRange) {
+
+        if ("HEAD".equalsIgnoreCase(method) || status < HttpStatus.SC_OK ||
+                status == HttpStatus.SC_NO_CONTENT || status == HttpStatus.SC_NOT_MODIFIED ||
+                status == HttpStatus.SC_PARTIAL_CONTENT || contentRange != null ||
+                isNoTransform(cacheControl) ||
+                (requestHeaders != null && isNoTransform(requestHeaders.get(CACHE_CONTROL)))) {
+            return null;
+        }
+        String acceptEncoding = requestHeaders != null ? requestHeaders.get(ACCEPT_ENCODING) : null;
+        if (acceptEncoding == null) {
+            // any content coding is acceptable to the client, and it did not ask for one
+            return null;
+        }
+
+        if (contentEncoding != null && !"identity".equalsIgnoreCase(contentEncoding.trim())) {
+            String coding = contentEncoding.trim();
+            if (quality(acceptEncoding, coding) > 0 ||
+                    (!ContentCodec.isGzip(coding) && !ContentCodec.DEFLATE.equalsIgnoreCase(coding))) {
+                return null;
+            }
+            return ContentCodec.acquire(ContentCodec.Mode.DECOMPRESS, coding);
+        }
+
+        if ((contentLength >= 0 && contentLength < minSize) || !isCompressible(contentType)) {
+            return null;
+        }
+        double gzip = quality(acceptEncoding, ContentCodec.GZIP);
+        double deflate = quality(acceptEncoding, ContentCodec.DEFLATE);
+        if (gzip > 0 && gzip >= deflate) {
+            return ContentCodec.acquire(ContentCodec.Mode.COMPRESS, ContentCodec.GZIP);
+        } else if (deflate > 0) {
+            return ContentCodec.acquire(ContentCodec.Mode.COMPRESS, ContentCodec.DEFLATE);
+        }
+        return null;
+    }
+
+    /**
+     * Does a Cache-Control header carry the no-transform directive?
+     *
+     * @param cacheControl value of the Cache-Control header, or null
+     * @return true if the body must not be transformed
+     */
+    static boolean isNoTransform(String cacheControl) {
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String directive : cacheControl.split(",")) {
+            if ("no-transform".equalsIgnoreCase(directive.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.trim().toLowerCase();
+        for (String prefix : contentTypes) {
+            if (prefix.length() > 0 && type.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the quality value an Accept-Encoding header gives to a content coding
+     *
+     * @param acceptEncoding value of the Accept-Encoding header
+     * @param coding         content coding
+     * @return quality between 0 and 1, 0 if the coding is not acceptable
+     */
+    static double quality(String acceptEncoding, String coding) {
+        double wildcard = -1;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String name = parts[0].trim();
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(coding) ||
+                    (ContentCodec.isGzip(name) && ContentCodec.isGzip(coding))) {
+                return q;
+            } else if ("*".equals(name)) {
+                wildcard = q;
+            }
+        }
+        return wildcard > 0 ? wildcard : 0;
+    }
+}
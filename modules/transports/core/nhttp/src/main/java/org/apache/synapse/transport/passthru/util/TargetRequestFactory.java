@@ -49,6 +49,21 @@ public class TargetRequestFactory {
 
     public static TargetRequest create(MessageContext msgContext,
                                        TargetConfiguration configuration) throws AxisFault {
+        return create(msgContext, configuration, null);
+    }
+
+    /**
+     * Create a request to the given URL, which may differ from the address of the destination
+     * EPR of the message
+     *
+     * @param msgContext    the message to be sent
+     * @param configuration configuration of the sender
+     * @param targetUrl     URL of the target, or null to use the address of the destination EPR
+     * @return the target request
+     * @throws AxisFault if the address of the destination EPR is not a valid URL
+     */
+    public static TargetRequest create(MessageContext msgContext, TargetConfiguration configuration,
+                                       URL targetUrl) throws AxisFault {
         try {
             String httpMethod = (String) msgContext.getProperty(
                     Constants.Configuration.HTTP_METHOD);
@@ -63,8 +78,11 @@ public class TargetRequestFactory {
             	noEntityBody  = false;
             }
 
-            EndpointReference epr = PassThroughTransportUtils.getDestinationEPR(msgContext);
-            URL url = new URL(epr.getAddress());
+            URL url = targetUrl;
+            if (url == null) {
+                EndpointReference epr = PassThroughTransportUtils.getDestinationEPR(msgContext);
+                url = new URL(epr.getAddress());
+            }
             TargetRequest request = new TargetRequest(configuration, url, httpMethod,
                     noEntityBody == null || !noEntityBody);
 
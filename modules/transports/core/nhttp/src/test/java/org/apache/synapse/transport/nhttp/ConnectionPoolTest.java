@@ -0,0 +1,245 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.nhttp;
+
+import static org.junit.Assert.*;
+
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.context.MessageContext;
+import org.apache.http.HttpHost;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConnectionPoolTest {
+
+    private static final String ROUTE = "localhost:9000";
+
+    private TestDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new TestDispatcher();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        ConnectionPool pool = new ConnectionPool(dispatcher, 2, 0, 0, 0);
+        Axis2HttpRequest first = createRequest();
+        pool.send(first);
+        assertEquals(1, dispatcher.connected.size());
+        assertEquals(1, pool.getPendingConnections());
+
+        TestConnection conn = new TestConnection();
+        pool.connected(conn.proxy, first);
+        assertEquals(1, pool.getLeasedConnections());
+        pool.release(conn.proxy);
+        assertEquals(1, pool.getIdleConnections());
+
+        Axis2HttpRequest second = createRequest();
+        pool.send(second);
+        assertEquals(1, dispatcher.connected.size());
+        assertSame(second, dispatcher.submitted.get(0));
+        assertEquals(1, pool.getLeasedConnections());
+        assertEquals(0, pool.getIdleConnections());
+        assertEquals(1, pool.getCreatedConnections());
+        assertEquals(1, pool.getReusedConnections());
+    }
+
+    @Test
+    public void testWaitForConnection() throws Exception {
+        ConnectionPool pool = new ConnectionPool(dispatcher, 1, 0, 0, 0);
+        Axis2HttpRequest first = createRequest();
+        Axis2HttpRequest second = createRequest();
+        Axis2HttpRequest third = createRequest();
+        pool.send(first);
+        pool.send(second);
+        pool.send(third);
+        assertEquals(1, dispatcher.connected.size());
+        assertEquals(2, pool.getWaitingRequests());
+
+        // the released connection is handed over to the requests in the order of arrival
+        TestConnection conn = new TestConnection();
+        pool.connected(conn.proxy, first);
+        pool.release(conn.proxy);
+        assertSame(second, dispatcher.submitted.get(0));
+        pool.release(conn.proxy);
+        assertSame(third, dispatcher.submitted.get(1));
+        assertEquals(0, pool.getWaitingRequests());
+        assertEquals(1, dispatcher.connected.size());
+    }
+
+    @Test
+    public void testClosedConnectionFreesSlot() throws Exception {
+        ConnectionPool pool = new ConnectionPool(dispatcher, 1, 0, 0, 0);
+        Axis2HttpRequest first = createRequest();
+        Axis2HttpRequest second = createRequest();
+        pool.send(first);
+        pool.send(second);
+
+        TestConnection conn = new TestConnection();
+        pool.connected(conn.proxy, first);
+        conn.open = false;
+        pool.forget(conn.proxy);
+        pool.forget(conn.proxy);
+        assertEquals(2, dispatcher.connected.size());
+        assertSame(second, dispatcher.connected.get(1));
+        assertEquals(1, pool.getPendingConnections());
+        assertEquals(0, pool.getLeasedConnections());
+    }
+
+    @Test
+    public void testConnectFailure() throws Exception {
+        ConnectionPool pool = new ConnectionPool(dispatcher, 1, 0, 0, 0);
+        Axis2HttpRequest first = createRequest();
+        Axis2HttpRequest second = createRequest();
+        pool.send(first);
+        pool.send(second);
+
+        // the session request callback may report the same failure more than once
+        pool.connectFailed(first);
+        pool.connectFailed(first);
+        assertEquals(2, dispatcher.connected.size());
+        assertEquals(1, pool.getPendingConnections());
+        assertEquals(0, pool.getWaitingRequests());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ConnectionPool pool = new ConnectionPool(dispatcher, 2, 0, 1000, 0);
+        Axis2HttpRequest first = createRequest();
+        Axis2HttpRequest second = createRequest();
+        pool.send(first);
+        pool.send(second);
+        TestConnection idle = new TestConnection();
+        TestConnection stale = new TestConnection();
+        pool.connected(idle.proxy, first);
+        pool.connected(stale.proxy, second);
+        pool.release(idle.proxy);
+        pool.release(stale.proxy);
+
+        stale.stale = true;
+        pool.evict(System.currentTimeMillis());
+        assertTrue(stale.closed);
+        assertFalse(idle.closed);
+        assertEquals(1, pool.getIdleConnections());
+
+        pool.evict(System.currentTimeMillis() + 1000);
+        assertTrue(idle.closed);
+        assertEquals(0, pool.getIdleConnections());
+        assertEquals(2, pool.getEvictedConnections());
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception {
+        ConnectionPool pool = new ConnectionPool(dispatcher, 1, 0, 0, 1000);
+        Axis2HttpRequest first = createRequest();
+        pool.send(first);
+        TestConnection conn = new TestConnection();
+        conn.context.setAttribute(ClientHandler.CONNECTION_CREATION_TIME,
+                System.currentTimeMillis() - 1000);
+        pool.connected(conn.proxy, first);
+        pool.release(conn.proxy);
+        assertTrue(conn.closed);
+        assertEquals(0, pool.getIdleConnections());
+    }
+
+    @Test
+    public void testWaitTimeout() throws Exception {
+        ConnectionPool pool = new ConnectionPool(dispatcher, 1, 500, 0, 0);
+        Axis2HttpRequest first = createRequest();
+        Axis2HttpRequest second = createRequest();
+        pool.send(first);
+        pool.send(second);
+
+        pool.evict(System.currentTimeMillis());
+        assertTrue(dispatcher.failed.isEmpty());
+        pool.evict(System.currentTimeMillis() + 500);
+        assertEquals(1, dispatcher.failed.size());
+        assertSame(second, dispatcher.failed.get(0));
+        assertEquals(0, pool.getWaitingRequests());
+        assertEquals(1, pool.getWaitTimeouts());
+    }
+
+    private Axis2HttpRequest createRequest() {
+        Axis2HttpRequest request = new Axis2HttpRequest(
+                new EndpointReference("http://" + ROUTE + "/services/Test"),
+                new HttpHost("localhost", 9000), new MessageContext());
+        request.setRoute("localhost", 9000);
+        return request;
+    }
+
+    private static class TestDispatcher implements ConnectionPool.RequestDispatcher {
+
+        private final List<Axis2HttpRequest> submitted = new ArrayList<Axis2HttpRequest>();
+        private final List<Axis2HttpRequest> connected = new ArrayList<Axis2HttpRequest>();
+        private final List<Axis2HttpRequest> failed = new ArrayList<Axis2HttpRequest>();
+
+        public boolean submit(NHttpClientConnection conn, Axis2HttpRequest request) {
+            submitted.add(request);
+            return true;
+        }
+
+        public void connect(Axis2HttpRequest request) {
+            connected.add(request);
+        }
+
+        public void fail(Axis2HttpRequest request, String message) {
+            failed.add(request);
+            request.setCompleted(true);
+        }
+    }
+
+    private static class TestConnection implements InvocationHandler {
+
+        private final HttpContext context = new BasicHttpContext();
+        private final NHttpClientConnection proxy = (NHttpClientConnection) Proxy.newProxyInstance(
+                NHttpClientConnection.class.getClassLoader(),
+                new Class[] {NHttpClientConnection.class}, this);
+        private volatile boolean open = true;
+        private volatile boolean stale = false;
+        private volatile boolean closed = false;
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("getContext".equals(name)) {
+                return context;
+            } else if ("isOpen".equals(name)) {
+                return open && !closed;
+            } else if ("isStale".equals(name)) {
+                return stale;
+            } else if ("close".equals(name) || "shutdown".equals(name)) {
+                closed = true;
+            } else if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.passthru;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void testRejectOverLimit() {
+        AdmissionController controller = new AdmissionController(2, 1, 10, 1000, 0.5, 0, 0);
+        AdmissionController.Permit p1 = controller.tryAcquire(0);
+        AdmissionController.Permit p2 = controller.tryAcquire(0);
+        assertNotNull(p1);
+        assertNotNull(p2);
+        assertNull(controller.tryAcquire(0));
+        assertEquals(1, controller.getRejectedRequests());
+
+        p1.release(false);
+        // releasing twice must not free another slot
+        p1.release(false);
+        assertEquals(1, controller.getInFlightRequests());
+        assertNotNull(controller.tryAcquire(0));
+        assertNull(controller.tryAcquire(0));
+        assertEquals(3, controller.getAdmittedRequests());
+    }
+
+    @Test
+    public void testReservedCapacity() {
+        AdmissionController controller = new AdmissionController(10, 1, 10, 1000, 0.5, 0.5, 5);
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(controller.tryAcquire(1));
+        }
+        // the rest of the limit is only available to high priority requests
+        assertNull(controller.tryAcquire(1));
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(controller.tryAcquire(10));
+        }
+        assertNull(controller.tryAcquire(10));
+    }
+
+    @Test
+    public void testAdaptiveLimit() throws Exception {
+        AdmissionController controller = new AdmissionController(4, 2, 8, 20, 0.5, 0, 0);
+        // fast requests at full utilisation raise the limit
+        for (int i = 0; i < 40; i++) {
+            AdmissionController.Permit[] permits = new AdmissionController.Permit[
+                    controller.getConcurrencyLimit()];
+            for (int j = 0; j < permits.length; j++) {
+                permits[j] = controller.tryAcquire(0);
+            }
+            for (AdmissionController.Permit permit : permits) {
+                permit.release(false);
+            }
+        }
+        assertEquals(8, controller.getConcurrencyLimit());
+
+        // a slow request halves it
+        AdmissionController.Permit permit = controller.tryAcquire(0);
+        Thread.sleep(50);
+        permit.release(false);
+        assertEquals(4, controller.getConcurrencyLimit());
+
+        // but never below the minimum
+        for (int i = 0; i < 3; i++) {
+            permit = controller.tryAcquire(0);
+            Thread.sleep(50);
+            permit.release(false);
+        }
+        assertEquals(2, controller.getConcurrencyLimit());
+    }
+}
@@ -0,0 +1,138 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.transport.passthru.config;
+
+import static org.junit.Assert.*;
+
+import org.apache.axis2.context.ConfigurationContextFactory;
+import org.apache.axis2.description.Parameter;
+import org.apache.axis2.description.TransportInDescription;
+import org.apache.commons.io.FileUtils;
+import org.apache.synapse.commons.evaluators.EvaluatorContext;
+import org.apache.synapse.commons.executors.PriorityExecutor;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class SourceConfigurationTest {
+
+    private static final String PRIORITY_CONFIGURATION =
+            "<priorityConfiguration>" +
+            "  <priorityExecutor>" +
+            "    <queues isFixedCapacity=\"true\">" +
+            "      <queue size=\"100\" priority=\"10\"/>" +
+            "      <queue size=\"100\" priority=\"1\"/>" +
+            "    </queues>" +
+            "    <threads core=\"1\" max=\"1\" keep-alive=\"5\"/>" +
+            "  </priorityExecutor>" +
+            "  <conditions defaultPriority=\"1\">" +
+            "    <condition priority=\"10\">" +
+            "      <equal type=\"header\" source=\"priority\" value=\"high\"/>" +
+            "    </condition>" +
+            "    <condition priority=\"1\">" +
+            "      <equal type=\"header\" source=\"priority\" value=\"low\"/>" +
+            "    </condition>" +
+            "  </conditions>" +
+            "</priorityConfiguration>";
+
+    private File file;
+    private SourceConfiguration configuration;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("priority-configuration", ".xml");
+        FileUtils.writeStringToFile(file, PRIORITY_CONFIGURATION, "UTF-8");
+
+        TransportInDescription description = new TransportInDescription("http");
+        description.addParameter(new Parameter("port", "8280"));
+        description.addParameter(new Parameter(PassThroughConstants.PRIORITY_CONFIG_FILE_NAME,
+                file.getPath()));
+        configuration = new SourceConfiguration(
+                ConfigurationContextFactory.createEmptyConfigurationContext(), description,
+                null, false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (configuration != null && configuration.getPriorityExecutor() != null) {
+            configuration.getPriorityExecutor().destroy();
+        }
+        // the configuration file is closed once it has been read
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testHigherPriorityDispatchedFirst() throws Exception {
+        PriorityExecutor executor = configuration.getPriorityExecutor();
+        assertNotNull(executor);
+
+        // keep the only thread of the executor busy until all the requests are queued
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 10);
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        final List<Integer> dispatched = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            Map<String, String> headers =
+                    new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+            headers.put("Priority", i % 2 == 0 ? "low" : "high");
+            final int priority = configuration.getParser().parse(
+                    new EvaluatorContext("/services/test", headers));
+            executor.execute(new Runnable() {
+                public void run() {
+                    dispatched.add(priority);
+                    done.countDown();
+                }
+            }, priority);
+        }
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        // at most one low priority request is taken before the high priority queue is served
+        assertEquals(10, dispatched.size());
+        int high = 0;
+        for (int priority : dispatched.subList(0, 6)) {
+            if (priority == 10) {
+                high++;
+            }
+        }
+        assertEquals(5, high);
+    }
+}
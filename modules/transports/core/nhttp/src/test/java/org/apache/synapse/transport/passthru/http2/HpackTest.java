@@ -0,0 +1,105 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import static org.junit.Assert.*;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HpackTest {
+
+    @Test
+    public void testRequestExamples() throws Exception {
+        // RFC 7541, C.4.1 and C.4.2
+        HpackDecoder decoder = new HpackDecoder(4096);
+        List<Header> headers = decoder.decode(hex("828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        assertHeaders(headers, ":method", "GET", ":scheme", "http", ":path", "/",
+                ":authority", "www.example.com");
+
+        headers = decoder.decode(hex("828684be5886a8eb10649cbf"));
+        assertHeaders(headers, ":method", "GET", ":scheme", "http", ":path", "/",
+                ":authority", "www.example.com", "cache-control", "no-cache");
+    }
+
+    @Test
+    public void testResponseExample() throws Exception {
+        // RFC 7541, C.6.1
+        HpackDecoder decoder = new HpackDecoder(256);
+        List<Header> headers = decoder.decode(hex("488264025885aec3771a4b6196d07abe" +
+                "941054d444a8200595040b8166e082a62d1bff6e919d29ad171863c78f0b97c8e9ae82ae43d3"));
+        assertHeaders(headers, ":status", "302", "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longValue.append((char) ('!' + i % 90));
+        }
+        List<Header> headers = new ArrayList<Header>();
+        headers.add(new BasicHeader(":method", "POST"));
+        headers.add(new BasicHeader(":path", "/services/StockQuoteService?wsdl"));
+        headers.add(new BasicHeader("Content-Type", "text/xml; charset=UTF-8"));
+        headers.add(new BasicHeader("soapaction", "\"urn:getQuote\""));
+        headers.add(new BasicHeader("accept-encoding", "gzip, deflate"));
+        headers.add(new BasicHeader("x-empty", ""));
+        headers.add(new BasicHeader("x-long", longValue.toString()));
+
+        byte[] block = new HpackEncoder().encode(headers);
+        List<Header> decoded = new HpackDecoder(4096).decode(ByteBuffer.wrap(block));
+        assertEquals(headers.size(), decoded.size());
+        for (int i = 0; i < headers.size(); i++) {
+            assertEquals(headers.get(i).getName().toLowerCase(), decoded.get(i).getName());
+            assertEquals(headers.get(i).getValue(), decoded.get(i).getValue());
+        }
+    }
+
+    @Test
+    public void testInvalidIndex() throws Exception {
+        try {
+            new HpackDecoder(4096).decode(hex("ff00"));
+            fail("Index out of the table accepted");
+        } catch (Http2Exception e) {
+            assertEquals(Http2Constants.COMPRESSION_ERROR, e.getErrorCode());
+        }
+    }
+
+    private static void assertHeaders(List<Header> headers, String... expected) {
+        assertEquals(expected.length / 2, headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            assertEquals(expected[i * 2], headers.get(i).getName());
+            assertEquals(expected[i * 2 + 1], headers.get(i).getValue());
+        }
+    }
+
+    static ByteBuffer hex(String s) {
+        byte[] bytes = new byte[s.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import static org.junit.Assert.*;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.synapse.transport.passthru.Pipe;
+import org.apache.synapse.transport.passthru.config.BaseConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class Http2ConnectionTest {
+
+    private Http2TestServer server;
+    private DefaultConnectingIOReactor ioReactor;
+    private Http2ConnectionPool pool;
+    private BaseConfiguration configuration;
+
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        if (ioReactor != null) {
+            ioReactor.shutdown(1000);
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testMultiplexing() throws Exception {
+        start(100, 200, 2);
+        List<Exchange> exchanges = new ArrayList<Exchange>();
+        for (int i = 0; i < 10; i++) {
+            exchanges.add(send(server.getPort(), "/echo/" + i, ("request " + i).getBytes()));
+        }
+        for (int i = 0; i < 10; i++) {
+            Exchange exchange = exchanges.get(i);
+            exchange.await();
+            assertNull(exchange.error);
+            assertEquals(200, exchange.response.getStatusLine().getStatusCode());
+            assertEquals("/echo/" + i, exchange.response.getFirstHeader("X-Request-Path").getValue());
+            assertEquals("text/plain", exchange.response.getFirstHeader("Content-Type").getValue());
+            assertEquals("request " + i, new String(exchange.body.toByteArray()));
+        }
+        // all the requests are in flight at once over a single connection
+        assertEquals(1, server.connections.get());
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(10, server.maxActiveStreams.get());
+    }
+
+    @Test
+    public void testStreamLimit() throws Exception {
+        start(2, 100, 1);
+        List<Exchange> exchanges = new ArrayList<Exchange>();
+        for (int i = 0; i < 6; i++) {
+            exchanges.add(send(server.getPort(), "/echo/" + i, null));
+        }
+        for (Exchange exchange : exchanges) {
+            exchange.await();
+            assertNull(exchange.error);
+            assertEquals(200, exchange.response.getStatusLine().getStatusCode());
+        }
+        assertEquals(1, server.connections.get());
+        assertEquals(2, server.maxActiveStreams.get());
+        assertEquals(0, pool.getPendingStreamCount());
+    }
+
+    @Test
+    public void testFlowControl() throws Exception {
+        start(100, 0, 1);
+        byte[] body = new byte[1024 * 1024];
+        new Random(7).nextBytes(body);
+        Exchange first = send(server.getPort(), "/large/1", body);
+        Exchange second = send(server.getPort(), "/large/2", body);
+        first.await();
+        second.await();
+        assertNull(first.error);
+        assertNull(second.error);
+        assertArrayEquals(body, first.body.toByteArray());
+        assertArrayEquals(body, second.body.toByteArray());
+    }
+
+    @Test
+    public void testStreamReset() throws Exception {
+        start(100, 0, 1);
+        Exchange reset = send(server.getPort(), "/reset", "request".getBytes());
+        reset.await();
+        assertTrue(reset.error instanceof Http2Exception);
+        assertEquals(Http2Constants.INTERNAL_ERROR, ((Http2Exception) reset.error).getErrorCode());
+
+        // the connection carries on with the other streams
+        Exchange echo = send(server.getPort(), "/echo", "request".getBytes());
+        echo.await();
+        assertNull(echo.error);
+        assertEquals("request", new String(echo.body.toByteArray()));
+    }
+
+    @Test
+    public void testConnectionRefused() throws Exception {
+        start(100, 0, 1);
+        ServerSocket socket = new ServerSocket(0);
+        int port = socket.getLocalPort();
+        socket.close();
+
+        Exchange exchange = send(port, "/echo", null);
+        exchange.await();
+        assertNotNull(exchange.error);
+        assertNull(exchange.response);
+    }
+
+    private void start(int maxConcurrentStreams, long delay, int maxConnections) throws Exception {
+        server = new Http2TestServer(maxConcurrentStreams, delay);
+        server.start();
+
+        configuration = new BaseConfiguration(null, null, null) {
+            protected HttpProcessor initHttpProcessor() {
+                return null;
+            }
+        };
+        ioReactor = new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT);
+        pool = new Http2ConnectionPool(ioReactor, maxConnections, 65535, 1024 * 1024, 30000);
+        final Http2IOEventDispatch dispatch = new Http2IOEventDispatch(pool);
+        Thread reactor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    ioReactor.execute(dispatch);
+                } catch (Exception ignore) {
+                }
+            }
+        }, "h2-test-reactor");
+        reactor.setDaemon(true);
+        reactor.start();
+    }
+
+    private Exchange send(int port, String path, final byte[] body) throws Exception {
+        List<Header> headers = new ArrayList<Header>();
+        headers.add(new BasicHeader(":method", "POST"));
+        headers.add(new BasicHeader(":scheme", "http"));
+        headers.add(new BasicHeader(":authority", "localhost:" + port));
+        headers.add(new BasicHeader(":path", path));
+        headers.add(new BasicHeader("content-type", "text/plain"));
+
+        final Pipe pipe = body != null ? new Pipe(configuration.getBufferFactory().getBuffer(),
+                "test", configuration) : null;
+        final Exchange exchange = new Exchange();
+        final Http2Stream stream = new Http2Stream(headers, pipe, configuration, exchange);
+        pool.submit("localhost", port, stream);
+
+        if (pipe != null) {
+            final OutputStream out = pipe.getOutputStream();
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        out.write(body);
+                        pipe.setSerializationComplete(true);
+                        stream.requestOutput();
+                    } catch (Exception e) {
+                        exchange.error = e;
+                    }
+                }
+            }).start();
+        }
+        return exchange;
+    }
+
+    private static class Exchange implements Http2ResponseHandler {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile HttpResponse response;
+        private volatile Exception error;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        public void responseReceived(final Http2Stream stream, HttpResponse response) {
+            this.response = response;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        if (stream.getResponsePipe() != null) {
+                            InputStream in = stream.getResponsePipe().getInputStream();
+                            byte[] buffer = new byte[4096];
+                            int bytes;
+                            while ((bytes = in.read(buffer)) > 0) {
+                                body.write(buffer, 0, bytes);
+                            }
+                        }
+                    } catch (Exception e) {
+                        error = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        public void failed(Http2Stream stream, Exception e) {
+            error = e;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("Timed out waiting for the response", done.await(30, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.apache.synapse.transport.passthru.http2;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.synapse.transport.passthru.http2.Http2Constants.*;
+
+/**
+ * A blocking HTTP/2 server which echoes the body of each request back, for testing the client.
+ * It honours the flow control windows of the client and gives back its own windows as soon as
+ * the data arrives. Requests to <code>/reset</code> are answered with RST_STREAM.
+ */
+class Http2TestServer {
+
+    final AtomicInteger connections = new AtomicInteger();
+    final AtomicInteger activeStreams = new AtomicInteger();
+    final AtomicInteger maxActiveStreams = new AtomicInteger();
+
+    private final ServerSocket serverSocket;
+    private final int maxConcurrentStreams;
+    private final long delay;
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+
+    /**
+     * @param maxConcurrentStreams stream limit advertised to the client
+     * @param delay                time in milliseconds each response is held back for
+     */
+    Http2TestServer(int maxConcurrentStreams, long delay) throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.delay = delay;
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    void start() {
+        Thread acceptor = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        sockets.add(socket);
+                        connections.incrementAndGet();
+                        new Thread(new ConnectionHandler(socket), "h2-test-connection").start();
+                    }
+                } catch (IOException ignore) {
+                    // server socket closed
+                }
+            }
+        }, "h2-test-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    void stop() throws IOException {
+        serverSocket.close();
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    private class ConnectionHandler implements Runnable {
+
+        private final Socket socket;
+        private DataInputStream in;
+        private OutputStream out;
+
+        /** Guards the output and the send windows */
+        private final Object lock = new Object();
+        private int connectionWindow = DEFAULT_WINDOW_SIZE;
+        private int initialWindow = DEFAULT_WINDOW_SIZE;
+        private final Map<Integer, Integer> windows = new HashMap<Integer, Integer>();
+
+        private final Map<Integer, ServerStream> streams = new HashMap<Integer, ServerStream>();
+        private final HpackDecoder decoder = new HpackDecoder(DEFAULT_HEADER_TABLE_SIZE);
+        private final HpackEncoder encoder = new HpackEncoder();
+        private ByteArrayOutputStream headerBlock;
+        private int headerStreamId;
+        private boolean headerEndStream;
+
+        private ConnectionHandler(Socket socket) {
+            this.socket = socket;
+        }
+
+        public void run() {
+            try {
+                in = new DataInputStream(socket.getInputStream());
+                out = socket.getOutputStream();
+                byte[] preface = new byte[CLIENT_PREFACE.length];
+                in.readFully(preface);
+                if (!Arrays.equals(CLIENT_PREFACE, preface)) {
+                    throw new IOException("Invalid connection preface");
+                }
+                ByteBuffer settings = ByteBuffer.allocate(6);
+                settings.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(maxConcurrentStreams);
+                writeFrame(SETTINGS, 0, 0, settings.array(), 0, 6);
+
+                byte[] header = new byte[FRAME_HEADER_LENGTH];
+                while (true) {
+                    in.readFully(header);
+                    int length = ((header[0] & 0xff) << 16) | ((header[1] & 0xff) << 8) |
+                            (header[2] & 0xff);
+                    int type = header[3] & 0xff;
+                    int flags = header[4] & 0xff;
+                    int streamId = ByteBuffer.wrap(header, 5, 4).getInt() & 0x7fffffff;
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if (!handleFrame(type, flags, streamId, payload)) {
+                        break;
+                    }
+                }
+            } catch (Exception ignore) {
+                // connection closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+
+        private boolean handleFrame(int type, int flags, int streamId,
+                                    byte[] payload) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            switch (type) {
+                case SETTINGS:
+                    if ((flags & FLAG_ACK) == 0) {
+                        synchronized (lock) {
+                            while (buffer.hasRemaining()) {
+                                int id = buffer.getShort();
+                                int value = buffer.getInt();
+                                if (id == SETTINGS_INITIAL_WINDOW_SIZE) {
+                                    for (Map.Entry<Integer, Integer> e : windows.entrySet()) {
+                                        e.setValue(e.getValue() + value - initialWindow);
+                                    }
+                                    initialWindow = value;
+                                }
+                            }
+                            lock.notifyAll();
+                        }
+                        writeFrame(SETTINGS, FLAG_ACK, 0, payload, 0, 0);
+                    }
+                    break;
+                case HEADERS:
+                    headerStreamId = streamId;
+                    headerEndStream = (flags & FLAG_END_STREAM) != 0;
+                    headerBlock = new ByteArrayOutputStream();
+                    headerBlock.write(payload);
+                    if ((flags & FLAG_END_HEADERS) != 0) {
+                        headersReceived();
+                    }
+                    break;
+                case CONTINUATION:
+                    headerBlock.write(payload);
+                    if ((flags & FLAG_END_HEADERS) != 0) {
+                        headersReceived();
+                    }
+                    break;
+                case DATA:
+                    ServerStream stream = streams.get(streamId);
+                    if (stream != null) {
+                        stream.body.write(payload);
+                    }
+                    if (payload.length > 0) {
+                        writeWindowUpdate(0, payload.length);
+                        if ((flags & FLAG_END_STREAM) == 0) {
+                            writeWindowUpdate(streamId, payload.length);
+                        }
+                    }
+                    if (stream != null && (flags & FLAG_END_STREAM) != 0) {
+                        respond(stream);
+                    }
+                    break;
+                case WINDOW_UPDATE:
+                    int increment = buffer.getInt();
+                    synchronized (lock) {
+                        if (streamId == 0) {
+                            connectionWindow += increment;
+                        } else if (windows.containsKey(streamId)) {
+                            windows.put(streamId, windows.get(streamId) + increment);
+                        }
+                        lock.notifyAll();
+                    }
+                    break;
+                case RST_STREAM:
+                    stream = streams.get(streamId);
+                    if (stream != null) {
+                        stream.reset = true;
+                    }
+                    break;
+                case PING:
+                    if ((flags & FLAG_ACK) == 0) {
+                        writeFrame(PING, FLAG_ACK, 0, payload, 0, payload.length);
+                    }
+                    break;
+                case GOAWAY:
+                    return false;
+                default:
+            }
+            return true;
+        }
+
+        private void headersReceived() throws IOException {
+            ServerStream stream = new ServerStream(headerStreamId);
+            for (Header header : decoder.decode(ByteBuffer.wrap(headerBlock.toByteArray()))) {
+                stream.headers.put(header.getName(), header.getValue());
+            }
+            headerBlock = null;
+            streams.put(stream.id, stream);
+            synchronized (lock) {
+                windows.put(stream.id, initialWindow);
+            }
+            int active = activeStreams.incrementAndGet();
+            while (true) {
+                int max = maxActiveStreams.get();
+                if (active <= max || maxActiveStreams.compareAndSet(max, active)) {
+                    break;
+                }
+            }
+            if (headerEndStream) {
+                respond(stream);
+            }
+        }
+
+        private void respond(final ServerStream stream) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(delay);
+                        if ("/reset".equals(stream.headers.get(":path"))) {
+                            activeStreams.decrementAndGet();
+                            ByteBuffer code = ByteBuffer.allocate(4).putInt(INTERNAL_ERROR);
+                            writeFrame(RST_STREAM, 0, stream.id, code.array(), 0, 4);
+                            return;
+                        }
+                        sendResponse(stream);
+                    } catch (Exception ignore) {
+                        // connection closed
+                    }
+                }
+            }, "h2-test-stream-" + stream.id).start();
+        }
+
+        private void sendResponse(ServerStream stream) throws Exception {
+            byte[] body = stream.body.toByteArray();
+            List<Header> headers = new ArrayList<Header>();
+            headers.add(new BasicHeader(":status", "200"));
+            if (stream.headers.containsKey("content-type")) {
+                headers.add(new BasicHeader("content-type", stream.headers.get("content-type")));
+            }
+            headers.add(new BasicHeader("x-request-path", stream.headers.get(":path")));
+            byte[] block = encoder.encode(headers);
+
+            if (body.length == 0) {
+                activeStreams.decrementAndGet();
+                writeFrame(HEADERS, FLAG_END_HEADERS | FLAG_END_STREAM, stream.id, block, 0,
+                        block.length);
+                return;
+            }
+            writeFrame(HEADERS, FLAG_END_HEADERS, stream.id, block, 0, block.length);
+
+            int offset = 0;
+            while (offset < body.length && !stream.reset) {
+                synchronized (lock) {
+                    while (windows.get(stream.id) <= 0 || connectionWindow <= 0) {
+                        lock.wait();
+                    }
+                    int length = Math.min(Math.min(body.length - offset, DEFAULT_MAX_FRAME_SIZE),
+                            Math.min(windows.get(stream.id), connectionWindow));
+                    windows.put(stream.id, windows.get(stream.id) - length);
+                    connectionWindow -= length;
+                    boolean last = offset + length == body.length;
+                    if (last) {
+                        activeStreams.decrementAndGet();
+                    }
+                    writeFrame(DATA, last ? FLAG_END_STREAM : 0, stream.id, body, offset, length);
+                    offset += length;
+                }
+            }
+        }
+
+        private void writeWindowUpdate(int streamId, int increment) throws IOException {
+            byte[] payload = ByteBuffer.allocate(4).putInt(increment).array();
+            writeFrame(WINDOW_UPDATE, 0, streamId, payload, 0, 4);
+        }
+
+        private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset,
+                                int length) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+            header.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+            header.put((byte) type).put((byte) flags).putInt(streamId);
+            synchronized (lock) {
+                out.write(header.array());
+                out.write(payload, offset, length);
+                out.flush();
+            }
+        }
+    }
+
+    private static class ServerStream {
+
+        private final int id;
+        private final Map<String, String> headers = new HashMap<String, String>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private volatile boolean reset;
+
+        private ServerStream(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+package org.apache.synapse.transport.passthru.jmx;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class PriorityQueueViewTest {
+
+    private PriorityQueueView view;
+
+    @Before
+    public void setUp() {
+        view = new PriorityQueueView("test-listener");
+    }
+
+    @After
+    public void tearDown() {
+        view.destroy();
+    }
+
+    @Test
+    public void testQueueSizes() {
+        for (int i = 0; i < 3; i++) {
+            view.queued(10);
+        }
+        view.queued(1);
+        view.queued(1);
+        view.dequeued(10, 20);
+        view.dequeued(10, 40);
+        view.rejected(1);
+
+        Map<Integer, Integer> depths = view.getQueueDepths();
+        assertEquals(2, depths.size());
+        assertEquals(1, depths.get(10).intValue());
+        assertEquals(1, depths.get(1).intValue());
+        assertEquals(2, view.getProcessedRequests().get(10).longValue());
+        assertEquals(0, view.getProcessedRequests().get(1).longValue());
+        assertEquals(30, view.getAverageWaitTimes().get(10).longValue());
+        assertEquals(40, view.getMaxWaitTimes().get(10).longValue());
+
+        // the queue depths are the current state of the executor and survive a reset
+        view.reset();
+        assertEquals(1, view.getQueueDepths().get(10).intValue());
+        assertEquals(0, view.getProcessedRequests().get(10).longValue());
+        assertEquals(0, view.getMaxWaitTimes().get(10).longValue());
+    }
+}
@@ -0,0 +1,205 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.passthru.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+public class ContentCodecTest {
+
+    @Test
+    public void testGzipCompress() throws Exception {
+        byte[] data = createData(100000);
+        byte[] compressed = transcode(ContentCodec.Mode.COMPRESS, ContentCodec.GZIP, data, 1000);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, read(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testDeflateCompress() throws Exception {
+        byte[] data = createData(50000);
+        byte[] compressed = transcode(ContentCodec.Mode.COMPRESS, ContentCodec.DEFLATE, data, 777);
+        // deflate is the zlib format in HTTP
+        assertArrayEquals(data, read(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testGzipDecompress() throws Exception {
+        byte[] data = createData(100000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out), data);
+        // pooled codecs must be as good as new ones
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(data, transcode(ContentCodec.Mode.DECOMPRESS, "x-gzip",
+                    out.toByteArray(), 13 + i));
+        }
+    }
+
+    @Test
+    public void testDeflateDecompress() throws Exception {
+        byte[] data = createData(20000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(out), data);
+        assertArrayEquals(data, transcode(ContentCodec.Mode.DECOMPRESS, ContentCodec.DEFLATE,
+                out.toByteArray(), 1));
+
+        // some servers send raw deflate data without the zlib wrapper
+        out.reset();
+        write(new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true)), data);
+        assertArrayEquals(data, transcode(ContentCodec.Mode.DECOMPRESS, ContentCodec.DEFLATE,
+                out.toByteArray(), 100));
+    }
+
+    @Test
+    public void testTruncatedInput() throws Exception {
+        byte[] data = createData(10000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out), data);
+        byte[] truncated = new byte[out.size() / 2];
+        System.arraycopy(out.toByteArray(), 0, truncated, 0, truncated.length);
+        try {
+            transcode(ContentCodec.Mode.DECOMPRESS, ContentCodec.GZIP, truncated, 100);
+            fail("Truncated input must not be accepted");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testQuality() {
+        assertEquals(1.0, ContentCodingPolicy.quality("gzip, deflate", "gzip"), 0);
+        assertEquals(0.5, ContentCodingPolicy.quality("deflate, gzip;q=0.5", "gzip"), 0);
+        assertEquals(0, ContentCodingPolicy.quality("deflate, gzip;q=0", "gzip"), 0);
+        assertEquals(0, ContentCodingPolicy.quality("deflate", "gzip"), 0);
+        assertEquals(0.3, ContentCodingPolicy.quality("*;q=0.3", "gzip"), 0);
+        assertEquals(0, ContentCodingPolicy.quality("gzip;q=0, *", "gzip"), 0);
+    }
+
+    @Test
+    public void testSelect() {
+        ContentCodingPolicy policy = new ContentCodingPolicy(1024,
+                ContentCodingPolicy.DEFAULT_CONTENT_TYPES);
+        Map<String, String> headers = new HashMap<String, String>();
+        assertNull(policy.select("GET", 200, headers, null, "text/xml", 5000, null, null));
+
+        headers.put(ContentCodingPolicy.ACCEPT_ENCODING, "deflate;q=0.5, gzip");
+        ContentCodec codec = policy.select("GET", 200, headers, null, "text/xml", 5000, null, null);
+        assertEquals(ContentCodec.Mode.COMPRESS, codec.getMode());
+        assertEquals(ContentCodec.GZIP, codec.getCoding());
+        codec.release();
+
+        assertNull(policy.select("GET", 200, headers, null, "text/xml", 100, null, null));
+        assertNull(policy.select("GET", 200, headers, null, "image/png", 5000, null, null));
+        assertNull(policy.select("HEAD", 200, headers, null, "text/xml", 5000, null, null));
+        assertNull(policy.select("GET", 304, headers, null, "text/xml", 5000, null, null));
+        assertNull(policy.select("GET", 200, headers, "gzip", "text/xml", 5000, null, null));
+
+        headers.put(ContentCodingPolicy.ACCEPT_ENCODING, "identity");
+        codec = policy.select("GET", 200, headers, "gzip", "text/xml", 5000, null, null);
+        assertEquals(ContentCodec.Mode.DECOMPRESS, codec.getMode());
+        codec.release();
+        assertNull(policy.select("GET", 200, headers, "br", "text/xml", 5000, null, null));
+
+        // partial content and responses which must not be transformed are relayed as they are
+        headers.put(ContentCodingPolicy.ACCEPT_ENCODING, "gzip");
+        assertNull(policy.select("GET", 206, headers, null, "text/xml", 5000, null,
+                "bytes 0-4999/10000"));
+        assertNull(policy.select("GET", 200, headers, null, "text/xml", 5000, null,
+                "bytes 0-4999/10000"));
+        assertNull(policy.select("GET", 200, headers, null, "text/xml", 5000,
+                "max-age=60, No-Transform", null));
+        headers.put(ContentCodingPolicy.CACHE_CONTROL, "no-transform");
+        assertNull(policy.select("GET", 200, headers, null, "text/xml", 5000, null, null));
+        headers.remove(ContentCodingPolicy.CACHE_CONTROL);
+        codec = policy.select("GET", 200, headers, null, "text/xml", 5000, "max-age=60", null);
+        assertEquals(ContentCodec.Mode.COMPRESS, codec.getMode());
+        codec.release();
+    }
+
+    /**
+     * Feed the data to a codec in chunks of the given size, through small buffers
+     */
+    private byte[] transcode(ContentCodec.Mode mode, String coding, byte[] data,
+                             int chunkSize) throws IOException {
+        ContentCodec codec = ContentCodec.acquire(mode, coding);
+        ByteBuffer src = ByteBuffer.allocate(2 * chunkSize);
+        ByteBuffer dst = ByteBuffer.allocate(512);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int offset = 0;
+        while (!codec.isFinished()) {
+            int length = Math.min(chunkSize, Math.min(src.remaining(), data.length - offset));
+            src.put(data, offset, length);
+            offset += length;
+            src.flip();
+            codec.transcode(src, dst, offset == data.length);
+            src.compact();
+
+            dst.flip();
+            out.write(dst.array(), 0, dst.remaining());
+            dst.clear();
+            if (offset == data.length && src.position() == 0 && !codec.isFinished() &&
+                    out.size() > 10 * data.length + 1024) {
+                fail("The codec does not make progress");
+            }
+        }
+        codec.release();
+        return out.toByteArray();
+    }
+
+    private byte[] createData(int size) {
+        Random random = new Random(size);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < size) {
+            sb.append("<item id=\"").append(random.nextInt(1000)).append("\">value")
+                    .append(random.nextInt(100)).append("</item>");
+        }
+        return sb.substring(0, size).getBytes();
+    }
+
+    private void write(OutputStream out, byte[] data) throws IOException {
+        out.write(data);
+        out.close();
+    }
+
+    private byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -56,6 +56,9 @@ public class FIXConstants {
     public static final String DEFAULT_START_TIME_VALUE = "00:00:00";
     public static final String DEFAULT_END_TIME_VALUE = "00:00:00";
     public static final int DEFAULT_COUNTER_UPPER_LIMIT = 1000000000;
+    public static final int DEFAULT_OUTGOING_QUEUE_SIZE = 10000;
+    /** Maximum number of messages of a session processed before the thread is yielded */
+    public static final int SESSION_DRAIN_BATCH_SIZE = 32;
 
     public static final String HEART_BY_INT = "HeartBtInt";
     public static final String BEGIN_STRING = "BeginString";
@@ -111,6 +114,9 @@ public class FIXConstants {
     public static final String FIX_ACCEPTOR_SINGLE_THREADED = "transport.fix.AcceptorSingleThreaded";
     public static final String FIX_INITIATOR_SINGLE_THREADED = "transport.fix.InitiatorSingleThreaded";
 
+    public static final String FIX_PRESERVE_SESSION_ORDER = "transport.fix.PreserveSessionOrder";
+    public static final String FIX_OUTGOING_QUEUE_SIZE = "transport.fix.OutgoingMessageQueueSize";
+
     public static final String FIX_USE_THREADED_CONNECTORS = "transport.fix.UseThreadedConnectors";
     public static final String FIX_USE_THREADED_ACCEPTOR = "transport.fix.UseThreadedAcceptor";
     public static final String FIX_USE_THREADED_INITIATOR = "transport.fix.UseThreadedInitiator";
@@ -44,9 +44,13 @@ import quickfix.field.TargetCompID;
 import javax.xml.namespace.QName;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -66,12 +70,16 @@ public class FIXIncomingMessageHandler implements Application {
     private boolean acceptor;
     /** A Map of counters with one counter per session */
     private Map<SessionID, AtomicInteger> countersMap;
-    private Queue<MessageContext> outgoingMessages;
+    /** A Map of queues of messages waiting to be processed, with one queue per session */
+    private ConcurrentMap<SessionID, SessionQueue> sessionQueues;
+    /** Outgoing messages waiting for a response, no more are sent while it is full */
+    private BlockingQueue<MessageContext> outgoingMessages;
     private boolean allNewApproach = true;
     private boolean dropExtraResponses = false;
     private Semaphore semaphore;
     private SessionEventHandler eventHandler;
     private boolean singleThreaded;
+    private boolean preserveSessionOrder;
 
     public FIXIncomingMessageHandler(ConfigurationContext cfgCtx, WorkerPool workerPool,
                                      AxisService service, boolean acceptor) {
@@ -81,7 +89,8 @@ public class FIXIncomingMessageHandler implements Application {
         this.log = LogFactory.getLog(this.getClass());
         this.acceptor = acceptor;
         countersMap = new ConcurrentHashMap<SessionID, AtomicInteger>();
-        outgoingMessages = new LinkedBlockingQueue<MessageContext>();
+        sessionQueues = new ConcurrentHashMap<SessionID, SessionQueue>();
+        outgoingMessages = new LinkedBlockingQueue<MessageContext>(getOutgoingQueueSize());
         semaphore = new Semaphore(0);
         getResponseHandlingApproach();
 
@@ -108,6 +117,28 @@ public class FIXIncomingMessageHandler implements Application {
         }
 
         singleThreaded = isSingleThreaded();
+
+        Parameter orderParam = service.getParameter(FIXConstants.FIX_PRESERVE_SESSION_ORDER);
+        preserveSessionOrder = orderParam == null ||
+                !JavaUtils.isFalseExplicitly(orderParam.getValue());
+    }
+
+    private int getOutgoingQueueSize() {
+        Parameter param = service.getParameter(FIXConstants.FIX_OUTGOING_QUEUE_SIZE);
+        if (param != null && param.getValue() != null) {
+            try {
+                int size = Integer.parseInt(param.getValue().toString().trim());
+                if (size <= 0) {
+                    handleException("Invalid outgoing message queue size: " + size +
+                            ", the size must be greater than 0", null);
+                }
+                return size;
+            } catch (NumberFormatException e) {
+                log.warn("Invalid outgoing message queue size: " + param.getValue() +
+                        ", using the default value", e);
+            }
+        }
+        return FIXConstants.DEFAULT_OUTGOING_QUEUE_SIZE;
     }
 
     private void getResponseHandlingApproach() {
@@ -151,10 +182,16 @@ public class FIXIncomingMessageHandler implements Application {
     }
 
 
-    public void setOutgoingMessageContext(MessageContext msgCtx) {
-        if (!allNewApproach) {
-            outgoingMessages.offer(msgCtx);
-        }
+    /**
+     * Save an outgoing message to correlate its response with it. Responses are matched with
+     * the outgoing messages in the order they were sent, so a message which is waiting for its
+     * response is never dropped, and a new message is refused while the queue is full.
+     *
+     * @param msgCtx the Axis2 MessageContext of the outgoing message
+     * @return false if the queue is full and the message must not be sent
+     */
+    public boolean setOutgoingMessageContext(MessageContext msgCtx) {
+        return allNewApproach || outgoingMessages.offer(msgCtx);
     }
 
     public void acquire() throws InterruptedException {
@@ -349,11 +386,25 @@ public class FIXIncomingMessageHandler implements Application {
         }
         if (singleThreaded) {
             processMessage(message, sessionID, counter);
+        } else if (preserveSessionOrder) {
+            getSessionQueue(sessionID).add(new FIXWorkerThread(message, sessionID, counter));
         } else {
             workerPool.execute(new FIXWorkerThread(message, sessionID, counter));
         }
     }
 
+    private SessionQueue getSessionQueue(SessionID sessionID) {
+        SessionQueue queue = sessionQueues.get(sessionID);
+        if (queue == null) {
+            SessionQueue newQueue = new SessionQueue();
+            queue = sessionQueues.putIfAbsent(sessionID, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
     public void processMessage(Message message, SessionID sessionID, int counter) {
         if (allNewApproach) {
             //treat all messages (including responses) as new messages
@@ -472,4 +523,55 @@ public class FIXIncomingMessageHandler implements Application {
         }
     }
 
+    /**
+     * Messages of a single session waiting to be processed. Messages of different sessions are
+     * processed in parallel using the worker pool, but at most one worker processes the
+     * messages of a given session at a time, in the order they were received. A worker yields
+     * after processing a batch of messages so that a busy session cannot hold on to a thread.
+     */
+    class SessionQueue implements Runnable {
+
+        private final Queue<FIXWorkerThread> messages =
+                new ConcurrentLinkedQueue<FIXWorkerThread>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        public void add(FIXWorkerThread message) {
+            messages.offer(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    workerPool.execute(this);
+                } catch (RuntimeException e) {
+                    scheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                for (int i = 0; i < FIXConstants.SESSION_DRAIN_BATCH_SIZE; i++) {
+                    FIXWorkerThread message = messages.poll();
+                    if (message == null) {
+                        break;
+                    }
+                    try {
+                        message.run();
+                    } catch (Exception e) {
+                        log.error("Error while processing FIX message", e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // messages added after the last poll, or left over from the batch
+                if (!messages.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,153 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.fix;
+
+import org.apache.axiom.om.OMDataSourceExt;
+import org.apache.axiom.om.ds.AbstractPushOMDataSource;
+import quickfix.Field;
+import quickfix.FieldMap;
+import quickfix.Group;
+import quickfix.Message;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An OMDataSource backed by a quickfix Message. The XML infoset of the message, as described in
+ * {@link FIXUtils#setSOAPEnvelope}, is only produced when the payload is serialized or expanded
+ * because a mediator accessed it. As long as the element is not expanded the original message
+ * can be retrieved using {@link #getMessage()}, which lets a message received over FIX be sent
+ * out over FIX without ever being converted to XML and back.
+ */
+public class FIXMessageDataSource extends AbstractPushOMDataSource {
+
+    private final Message message;
+    private final int counter;
+    private final String sessionID;
+    private final Map<Field<?>, String> binaryFields;
+
+    /**
+     * Create a data source for a FIX message
+     *
+     * @param message      the FIX message
+     * @param counter      application level sequence number of the message
+     * @param sessionID    the incoming session
+     * @param binaryFields content IDs of the attachments holding binary field values, or null
+     *                     if the message has no binary fields
+     */
+    public FIXMessageDataSource(Message message, int counter, String sessionID,
+                                Map<Field<?>, String> binaryFields) {
+        this.message = message;
+        this.counter = counter;
+        this.sessionID = sessionID;
+        this.binaryFields = binaryFields;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public int getCounter() {
+        return counter;
+    }
+
+    public String getSessionID() {
+        return sessionID;
+    }
+
+    public Object getObject() {
+        return message;
+    }
+
+    public boolean isDestructiveWrite() {
+        return false;
+    }
+
+    public OMDataSourceExt copy() {
+        return new FIXMessageDataSource(message, counter, sessionID, binaryFields);
+    }
+
+    public void serialize(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement("", FIXConstants.FIX_MESSAGE, "");
+        writer.writeAttribute(FIXConstants.FIX_MESSAGE_INCOMING_SESSION, sessionID);
+        writer.writeAttribute(FIXConstants.FIX_MESSAGE_COUNTER, String.valueOf(counter));
+
+        writer.writeStartElement("", FIXConstants.FIX_HEADER, "");
+        writeFields(writer, message.getHeader());
+        writer.writeEndElement();
+
+        writer.writeStartElement("", FIXConstants.FIX_BODY, "");
+        writeBody(writer, message);
+        writer.writeEndElement();
+
+        writer.writeStartElement("", FIXConstants.FIX_TRAILER, "");
+        writeFields(writer, message.getTrailer());
+        writer.writeEndElement();
+
+        writer.writeEndElement();
+    }
+
+    private void writeBody(XMLStreamWriter writer, FieldMap fieldMap) throws XMLStreamException {
+        writeFields(writer, fieldMap);
+
+        Iterator<Integer> groupKeys = fieldMap.groupKeyIterator();
+        while (groupKeys.hasNext()) {
+            int groupKey = groupKeys.next();
+            writer.writeStartElement("", FIXConstants.FIX_GROUPS, "");
+            writer.writeAttribute(FIXConstants.FIX_FIELD_ID, String.valueOf(groupKey));
+            List<Group> groups = fieldMap.getGroups(groupKey);
+            for (Group group : groups) {
+                writer.writeStartElement("", FIXConstants.FIX_GROUP, "");
+                writeBody(writer, group);
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    private void writeFields(XMLStreamWriter writer, FieldMap fieldMap) throws XMLStreamException {
+        Iterator<Field<?>> fields = fieldMap.iterator();
+        while (fields.hasNext()) {
+            Field<?> field = fields.next();
+            writer.writeStartElement("", FIXConstants.FIX_FIELD, "");
+            writer.writeAttribute(FIXConstants.FIX_FIELD_ID, String.valueOf(field.getTag()));
+
+            Object value = field.getObject();
+            if (value instanceof byte[]) {
+                writer.writeStartElement("", FIXConstants.FIX_BINARY_FIELD, "");
+                writer.writeAttribute(FIXConstants.FIX_MESSAGE_REFERENCE,
+                        "cid:" + binaryFields.get(field));
+                writer.writeEndElement();
+            } else if (value != null) {
+                String text = value.toString();
+                if (text.indexOf('<') == -1 && text.indexOf('&') == -1 &&
+                        text.indexOf('>') == -1) {
+                    writer.writeCharacters(text);
+                } else {
+                    writer.writeCData(text);
+                }
+            }
+            writer.writeEndElement();
+        }
+    }
+}
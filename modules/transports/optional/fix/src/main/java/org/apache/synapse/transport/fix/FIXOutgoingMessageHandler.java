@@ -83,7 +83,7 @@ public class FIXOutgoingMessageHandler {
             }
 
             if (expectedValue == counter) {
-                sendToTarget(msgCtx, targetEPR, message, targetSession);
+                boolean sent = sendToTarget(msgCtx, targetEPR, message, targetSession);
                 if (FIXConstants.DEFAULT_COUNTER_UPPER_LIMIT == expectedValue) {
                     if (log.isDebugEnabled()) {
                         log.debug("Outgoing request counter rolled over for the session: " +
@@ -93,6 +93,9 @@ public class FIXOutgoingMessageHandler {
                 }
                 countersMap.put(sourceSession, ++expectedValue);
                 sendQueuedMessages(expectedValue, sourceSession);
+                if (!sent) {
+                    handleRejected(targetEPR);
+                }
             }
             else {
                 if (log.isDebugEnabled()) {
@@ -110,10 +113,19 @@ public class FIXOutgoingMessageHandler {
         else {
             //insufficient information to send the messages in order...
             // send it right away...
-            sendToTarget(msgCtx, targetEPR, message, targetSession);
+            if (!sendToTarget(msgCtx, targetEPR, message, targetSession)) {
+                handleRejected(targetEPR);
+            }
         }
     }
 
+    private void handleRejected(String targetEPR) {
+        String msg = "Too many FIX messages sent to " + targetEPR + " are waiting for a " +
+                "response, the message is not sent";
+        log.error(msg);
+        throw new AxisFIXException(msg);
+    }
+
     /**
      * Sends the FIX message to the given target session. If MessageContext and the target EPR
      * are not null then save the outgoing MessageContext in the FIX application to handle the
@@ -123,19 +135,22 @@ public class FIXOutgoingMessageHandler {
      * @param targetEPR the target EPR to send the message
      * @param message the FIX message
      * @param sessionID the ID of the target FIX session
+     * @return false if the message was not sent, since too many messages are waiting for
+     *         a response
      *
      * @throws SessionNotFound on error
      */
-    private void sendToTarget(MessageContext msgCtx, String targetEPR, Message message,
-                              SessionID sessionID) throws SessionNotFound {
+    private boolean sendToTarget(MessageContext msgCtx, String targetEPR, Message message,
+                                 SessionID sessionID) throws SessionNotFound {
         if (msgCtx != null && targetEPR != null) {
             FIXIncomingMessageHandler messageHandler = (FIXIncomingMessageHandler) sessionFactory.
                     getApplication(targetEPR);
-            if (messageHandler != null) {
-                messageHandler.setOutgoingMessageContext(msgCtx);
+            if (messageHandler != null && !messageHandler.setOutgoingMessageContext(msgCtx)) {
+                return false;
             }
         }
         Session.sendToTarget(message, sessionID);
+        return true;
     }
 
     /**
@@ -163,7 +178,12 @@ public class FIXOutgoingMessageHandler {
                 log.debug("Source session: " + session + " - Sending the previously queued message " +
                         "with the sequence number: " + expectedValue);
             }
-            sendToTarget(msgCtx, targetEPR, message, sessionID);
+            if (!sendToTarget(msgCtx, targetEPR, message, sessionID)) {
+                // the sender of a queued message is gone, so it can only be dropped
+                log.error("Too many FIX messages sent to " + targetEPR + " are waiting for a " +
+                        "response, dropped the queued message with the sequence number: " +
+                        expectedValue);
+            }
             messages.remove(expectedValue);
             if (FIXConstants.DEFAULT_COUNTER_UPPER_LIMIT == expectedValue) {
                 if (log.isDebugEnabled()) {
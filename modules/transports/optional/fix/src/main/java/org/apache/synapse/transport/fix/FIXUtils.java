@@ -23,6 +23,7 @@ import org.apache.axiom.attachments.ByteArrayDataSource;
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMSourcedElement;
 import org.apache.axiom.soap.SOAPBody;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.axiom.soap.SOAPFactory;
@@ -80,148 +81,69 @@ public class FIXUtils {
             log.debug("Creating SOAP envelope for FIX message...");
         }
 
+        // the XML infoset is only built if the payload is accessed, the binary fields are
+        // added as attachments right away so that they are available when serializing
+        Map<Field<?>, String> binaryFields = new IdentityHashMap<Field<?>, String>();
+        addBinaryFields(message.getHeader(), binaryFields, msgCtx);
+        addBinaryFields(message, binaryFields, msgCtx);
+        addBinaryFields(message.getTrailer(), binaryFields, msgCtx);
+
         SOAPFactory soapFactory = OMAbstractFactory.getSOAP11Factory();
-        OMElement msg = soapFactory.createOMElement(FIXConstants.FIX_MESSAGE, null);
-        msg.addAttribute(soapFactory.createOMAttribute(FIXConstants.FIX_MESSAGE_INCOMING_SESSION,
-                null, sessionID));
-        msg.addAttribute(soapFactory.createOMAttribute
-                (FIXConstants.FIX_MESSAGE_COUNTER, null, String.valueOf(counter)));
-
-        OMElement header = soapFactory.createOMElement(FIXConstants.FIX_HEADER, null);
-        OMElement body = soapFactory.createOMElement(FIXConstants.FIX_BODY, null);
-        OMElement trailer = soapFactory.createOMElement(FIXConstants.FIX_TRAILER, null);
-
-        //process FIX header
-        Iterator<Field<?>> iter = message.getHeader().iterator();
-        if (iter != null) {
-            while (iter.hasNext()) {
-                Field<?> field = iter.next();
-                OMElement msgField = soapFactory.createOMElement(FIXConstants.FIX_FIELD, null);
-                msgField.addAttribute(soapFactory.createOMAttribute(FIXConstants.FIX_FIELD_ID,
-                        null, String.valueOf(field.getTag())));
-                Object value = field.getObject();
-
-                if (value instanceof byte[]) {
-                    DataSource dataSource = new ByteArrayDataSource((byte[]) value);
-                    DataHandler dataHandler = new DataHandler(dataSource);
-                    String contentID = msgCtx.addAttachment(dataHandler);
-                    OMElement binaryData = soapFactory.createOMElement(
-                            FIXConstants.FIX_BINARY_FIELD, null);
-                    String binaryCID = "cid:" + contentID;
-                    binaryData.addAttribute(FIXConstants.FIX_MESSAGE_REFERENCE, binaryCID, null);
-                    msgField.addChild(binaryData);
-                } else {
-                    createOMText(soapFactory, msgField, value.toString());
-                }
-                header.addChild(msgField);
-            }
-        }
-        //process FIX body
-        convertFIXBodyToXML(message, body, soapFactory, msgCtx);
-
-        //process FIX trailer
-        iter = message.getTrailer().iterator();
-        if (iter != null) {
-            while (iter.hasNext()) {
-                Field<?> field = iter.next();
-                OMElement msgField = soapFactory.createOMElement(FIXConstants.FIX_FIELD, null);
-                msgField.addAttribute(soapFactory.
-                        createOMAttribute(FIXConstants.FIX_FIELD_ID, null,
-                        String.valueOf(field.getTag())));
-                Object value = field.getObject();
-
-                if (value instanceof byte[]) {
-                    DataSource dataSource = new ByteArrayDataSource((byte[]) value);
-                    DataHandler dataHandler = new DataHandler(dataSource);
-                    String contentID = msgCtx.addAttachment(dataHandler);
-                    OMElement binaryData = soapFactory.createOMElement(
-                            FIXConstants.FIX_BINARY_FIELD, null);
-                    String binaryCID = "cid:" + contentID;
-                    binaryData.addAttribute(FIXConstants.FIX_MESSAGE_REFERENCE, binaryCID, null);
-                    msgField.addChild(binaryData);
-                } else {
-                    createOMText(soapFactory, msgField, value.toString());
-                }
-                trailer.addChild(msgField);
-            }
-        }
+        FIXMessageDataSource dataSource = new FIXMessageDataSource(message, counter, sessionID,
+                binaryFields.isEmpty() ? null : binaryFields);
+        OMElement msg = soapFactory.createOMElement(dataSource, FIXConstants.FIX_MESSAGE, null);
 
-        msg.addChild(header);
-        msg.addChild(body);
-        msg.addChild(trailer);
         SOAPEnvelope envelope = soapFactory.getDefaultEnvelope();
         envelope.getBody().addChild(msg);
         msgCtx.setEnvelope(envelope);
     }
-    
 
     /**
-     * Constructs the XML infoset for the FIX message body
+     * Adds the values of the binary fields in the given field map and its repeating groups to
+     * the message context as attachments
      *
-     * @param message the FIX message
-     * @param body the body element of the XML infoset
-     * @param soapFactory the SOAP factory to create XML elements
+     * @param fieldMap the FIX field map
+     * @param binaryFields map to which the content IDs of the attachments are added
      * @param msgCtx the Axis2 Message context
-     * @throws AxisFault on error
      */
-    private void convertFIXBodyToXML(FieldMap message, OMElement body, SOAPFactory soapFactory,
-                                        MessageContext msgCtx) throws AxisFault{
-
-        if (log.isDebugEnabled()) {
-            log.debug("Generating FIX message body (Message ID: " + msgCtx.getMessageID() + ")");
+    private void addBinaryFields(FieldMap fieldMap, Map<Field<?>, String> binaryFields,
+                                 MessageContext msgCtx) {
+        Iterator<Field<?>> iter = fieldMap.iterator();
+        while (iter.hasNext()) {
+            Field<?> field = iter.next();
+            Object value = field.getObject();
+            if (value instanceof byte[]) {
+                DataSource dataSource = new ByteArrayDataSource((byte[]) value);
+                binaryFields.put(field, msgCtx.addAttachment(new DataHandler(dataSource)));
+            }
         }
 
-        Iterator<Field<?>> iter = message.iterator();
-        if (iter != null) {
-             while (iter.hasNext()) {
-                 Field<?> field = iter.next();
-                 OMElement msgField = soapFactory.createOMElement(FIXConstants.FIX_FIELD, null);
-                 msgField.addAttribute(soapFactory.
-                         createOMAttribute(FIXConstants.FIX_FIELD_ID, null,
-                         String.valueOf(field.getTag())));
-                 Object value = field.getObject();
-
-                 if (value instanceof byte[]) {
-                     DataSource dataSource = new ByteArrayDataSource((byte[]) value);
-                     DataHandler dataHandler = new DataHandler(dataSource);
-                     String contentID = msgCtx.addAttachment(dataHandler);
-                     OMElement binaryData = soapFactory.createOMElement(
-                             FIXConstants.FIX_BINARY_FIELD, null);
-                     String binaryCID = "cid:" + contentID;
-                     binaryData.addAttribute(FIXConstants.FIX_MESSAGE_REFERENCE, binaryCID, null);
-                     msgField.addChild(binaryData);
-                 } else {
-                     createOMText(soapFactory, msgField, value.toString());
-                 }
-
-                 body.addChild(msgField);
-             }
-        }
-        
-        //process FIX repeating groups
-        Iterator<Integer> groupKeyItr = message.groupKeyIterator();
-        if (groupKeyItr != null) {
-            while (groupKeyItr.hasNext()) {
-                int groupKey =  groupKeyItr.next();
-                OMElement groupsField = soapFactory.createOMElement(FIXConstants.FIX_GROUPS,
-                        null);
-                groupsField.addAttribute(FIXConstants.FIX_FIELD_ID,
-                        String.valueOf(groupKey),null);
-                List<Group> groupList = message.getGroups(groupKey);
-                Iterator<Group> groupIterator = groupList.iterator();
-
-                while (groupIterator.hasNext()) {
-                    Group msgGroup = groupIterator.next();
-                    OMElement groupField = soapFactory.createOMElement(FIXConstants.FIX_GROUP, null);
-                    // rec. call the method to process the repeating groups
-                    convertFIXBodyToXML(msgGroup, groupField, soapFactory, msgCtx);
-                    groupsField.addChild(groupField);
-                }
-                body.addChild(groupsField);
+        Iterator<Integer> groupKeyItr = fieldMap.groupKeyIterator();
+        while (groupKeyItr.hasNext()) {
+            for (Group group : fieldMap.getGroups(groupKeyItr.next())) {
+                addBinaryFields(group, binaryFields, msgCtx);
             }
         }
     }
 
+    /**
+     * Returns the FIX data source backing the payload of the given SOAP body, if the payload
+     * was created from a FIX message and has not been expanded since.
+     *
+     * @param body the SOAP body
+     * @return the FIX data source or null
+     */
+    public static FIXMessageDataSource getFIXDataSource(SOAPBody body) {
+        OMElement payload = body.getFirstElement();
+        if (payload instanceof OMSourcedElement) {
+            OMSourcedElement sourcedElement = (OMSourcedElement) payload;
+            if (!sourcedElement.isExpanded() &&
+                    sourcedElement.getDataSource() instanceof FIXMessageDataSource) {
+                return (FIXMessageDataSource) sourcedElement.getDataSource();
+            }
+        }
+        return null;
+    }
 
     private void generateFIXBody(OMElement node, FieldMap message, MessageContext msgCtx,
                                  boolean withNs, String nsURI, String nsPrefix) throws IOException {
@@ -311,12 +233,19 @@ public class FIXUtils {
                     msgCtx.getMessageID() + ")");
         }
 
+        SOAPBody soapBody = msgCtx.getEnvelope().getBody();
+        FIXMessageDataSource dataSource = getFIXDataSource(soapBody);
+        if (dataSource != null) {
+            // the payload has not been touched since it was received over FIX, the sender
+            // modifies the header fields so hand over a copy of the original message
+            return (Message) dataSource.getMessage().clone();
+        }
+
         boolean withNs = false;
         String nsPrefix = null;
         String nsURI = null;
-        
+
         Message message = new Message();
-        SOAPBody soapBody = msgCtx.getEnvelope().getBody();
 
         //find namespace information embedded in the FIX payload
         OMNamespace ns = getNamespaceOfFIXPayload(soapBody);
@@ -719,6 +648,10 @@ public class FIXUtils {
     public static int getSequenceNumber(MessageContext msgCtx) {
         int seqNum;
         SOAPBody body = msgCtx.getEnvelope().getBody();
+        FIXMessageDataSource dataSource = getFIXDataSource(body);
+        if (dataSource != null) {
+            return dataSource.getCounter();
+        }
         OMNamespace ns = getNamespaceOfFIXPayload(body);
         if (ns == null) {
             OMElement messageNode = body.getFirstChildWithName(new QName(FIXConstants.FIX_MESSAGE));
@@ -764,6 +697,10 @@ public class FIXUtils {
     public static String getSourceSession(MessageContext msgCtx) {
         String srcSession;
         SOAPBody body = msgCtx.getEnvelope().getBody();
+        FIXMessageDataSource dataSource = getFIXDataSource(body);
+        if (dataSource != null) {
+            return dataSource.getSessionID();
+        }
         OMNamespace ns = getNamespaceOfFIXPayload(body);
         if (ns == null) {
             OMElement messageNode = body.getFirstChildWithName(new QName(FIXConstants.FIX_MESSAGE));
@@ -790,24 +727,6 @@ public class FIXUtils {
                    FIXConstants.FIX_MESSAGE_INCOMING_SESSION, ns.getPrefix()));
     }
 
-    /**
-     * Creates a text node within a CDATA section selectively by looking at the enclosing text.
-     *
-     * @param soapFactory SOAPFactory instance used to create the OMText object
-     * @param field Parent OMElement (field element)
-     * @param text String text to be added to the field element
-     */
-    private static void createOMText(SOAPFactory soapFactory, OMElement field, String text) {
-        if (text == null) {
-            return;
-        }
-        if (text.indexOf('<') == -1 && text.indexOf('&') == -1 && text.indexOf('>') == -1) {
-            soapFactory.createOMText(field, text);
-        } else {
-            soapFactory.createOMText(field, text, OMElement.CDATA_SECTION_NODE);
-        }
-    }
-
     /**
      * Read the FIX message payload and identify the namespace if exists
      *
@@ -0,0 +1,125 @@
+/*
+*  Licensed to the Apache Software Foundation (ASF) under one
+*  or more contributor license agreements.  See the NOTICE file
+*  distributed with this work for additional information
+*  regarding copyright ownership.  The ASF licenses this file
+*  to you under the Apache License, Version 2.0 (the
+*  "License"); you may not use this file except in compliance
+*  with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+*  Unless required by applicable law or agreed to in writing,
+*  software distributed under the License is distributed on an
+*   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+*  KIND, either express or implied.  See the License for the
+*  specific language governing permissions and limitations
+*  under the License.
+*/
+
+package org.apache.synapse.transport.fix;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.transport.base.threads.WorkerPool;
+import org.apache.axis2.transport.base.threads.WorkerPoolFactory;
+import quickfix.Message;
+import quickfix.SessionID;
+import quickfix.field.MsgSeqNum;
+import quickfix.field.SenderCompID;
+import quickfix.field.TargetCompID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FIXIncomingMessageHandlerTest extends TestCase {
+
+    private static final int SESSIONS = 4;
+    private static final int MESSAGES = 500;
+
+    public void testOrderedSessionProcessing() throws Exception {
+        WorkerPool pool = WorkerPoolFactory.getWorkerPool(8, 8, 5, -1, "FIXTest", "FIXTest");
+        final Map<SessionID, List<Integer>> processed =
+                new ConcurrentHashMap<SessionID, List<Integer>>();
+        final CountDownLatch done = new CountDownLatch(SESSIONS * MESSAGES);
+        final AtomicInteger concurrent = new AtomicInteger(0);
+        final AtomicInteger maxConcurrent = new AtomicInteger(0);
+
+        FIXIncomingMessageHandler handler = new FIXIncomingMessageHandler(
+                null, pool, new AxisService("FIXTest"), true) {
+            public void processMessage(Message message, SessionID sessionID, int counter) {
+                int current = concurrent.incrementAndGet();
+                int max = maxConcurrent.get();
+                while (current > max && !maxConcurrent.compareAndSet(max, current)) {
+                    max = maxConcurrent.get();
+                }
+                processed.get(sessionID).add(counter);
+                Thread.yield();
+                concurrent.decrementAndGet();
+                done.countDown();
+            }
+        };
+
+        SessionID[] sessions = new SessionID[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            sessions[i] = new SessionID("FIX.4.4", "SENDER" + i, "TARGET");
+            processed.put(sessions[i], Collections.synchronizedList(new ArrayList<Integer>()));
+            handler.onLogon(sessions[i]);
+        }
+        for (int i = 0; i < MESSAGES; i++) {
+            for (SessionID session : sessions) {
+                handler.fromApp(createMessage(session, i + 1), session);
+            }
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        for (SessionID session : sessions) {
+            List<Integer> counters = processed.get(session);
+            assertEquals(MESSAGES, counters.size());
+            for (int i = 0; i < MESSAGES; i++) {
+                assertEquals(i + 1, (int) counters.get(i));
+            }
+        }
+        assertTrue(maxConcurrent.get() <= SESSIONS);
+    }
+
+    public void testOutgoingQueueFull() throws Exception {
+        WorkerPool pool = WorkerPoolFactory.getWorkerPool(1, 1, 5, -1, "FIXTest", "FIXTest");
+        AxisService service = new AxisService("FIXTest");
+        service.addParameter(FIXConstants.FIX_RESPONSE_HANDLER_APPROACH, "false");
+        service.addParameter(FIXConstants.FIX_OUTGOING_QUEUE_SIZE, "2");
+        FIXIncomingMessageHandler handler =
+                new FIXIncomingMessageHandler(null, pool, service, false);
+
+        // the messages waiting for a response are kept, and the new one is refused
+        assertTrue(handler.setOutgoingMessageContext(new MessageContext()));
+        assertTrue(handler.setOutgoingMessageContext(new MessageContext()));
+        assertFalse(handler.setOutgoingMessageContext(new MessageContext()));
+
+        service.addParameter(FIXConstants.FIX_OUTGOING_QUEUE_SIZE, "0");
+        try {
+            new FIXIncomingMessageHandler(null, pool, service, false);
+            fail("An outgoing message queue size of 0 must be rejected");
+        } catch (AxisFIXException expected) {
+        }
+    }
+
+    /**
+     * Create an application message received over the given session, with the header fields
+     * the handler logs when debug logging is enabled
+     */
+    private Message createMessage(SessionID session, int seqNum) {
+        Message message = new Message();
+        message.getHeader().setField(new SenderCompID(session.getTargetCompID()));
+        message.getHeader().setField(new TargetCompID(session.getSenderCompID()));
+        message.getHeader().setField(new MsgSeqNum(seqNum));
+        return message;
+    }
+}
@@ -19,15 +19,20 @@
 
 package org.apache.synapse.transport.fix;
 
+import quickfix.BytesField;
 import quickfix.Message;
 import quickfix.Group;
 import quickfix.fix41.NewOrderSingle;
 import quickfix.field.*;
 import org.apache.axis2.context.MessageContext;
+import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.soap.SOAPBody;
 import org.custommonkey.xmlunit.XMLTestCase;
 
+import javax.xml.namespace.QName;
 import java.util.Date;
+import java.util.Iterator;
 
 public class MessageTest extends XMLTestCase {
 
@@ -136,4 +141,50 @@ public class MessageTest extends XMLTestCase {
 
         assertXMLEqual(expected, AXIOMUtil.stringToOM(result).toString());
     }
+
+    public void testLazyConversion() throws Exception {
+        Message message = new NewOrderSingle();
+        message.getHeader().setField(new BeginString(BEGIN_STRING));
+        message.getHeader().setField(new SenderCompID(SENDER_ID));
+        message.getHeader().setField(new TargetCompID(TARGET_ID));
+        message.setField(new Symbol("A&B <C>"));
+        message.setField(new BytesField(RawData.FIELD, new byte[] {1, 2, 3}));
+
+        MessageContext msgCtx = new MessageContext();
+        FIXUtils.getInstance().setSOAPEnvelope(message, SEQ_NUM, SESSION_ID, msgCtx);
+        SOAPBody body = msgCtx.getEnvelope().getBody();
+        assertNotNull(FIXUtils.getFIXDataSource(body));
+        assertEquals(SEQ_NUM, FIXUtils.getSequenceNumber(msgCtx));
+        assertEquals(SESSION_ID, FIXUtils.getSourceSession(msgCtx));
+        assertEquals(1, msgCtx.getAttachmentMap().getAllContentIDs().length);
+
+        // the payload is not expanded, the message is copied without going through XML
+        Message copy = FIXUtils.getInstance().createFIXMessage(msgCtx);
+        assertNotSame(message, copy);
+        assertEquals(message.toString(), copy.toString());
+        assertNotNull(FIXUtils.getFIXDataSource(body));
+
+        // serializing the payload does not expand it
+        String xml = body.getFirstElement().toString();
+        assertTrue(xml.contains("<![CDATA[A&B <C>]]>"));
+        assertNotNull(FIXUtils.getFIXDataSource(body));
+
+        // accessing the payload expands it, after which the XML is used
+        OMElement payload = body.getFirstElement();
+        Iterator fields = payload.getFirstChildWithName(
+                new QName(FIXConstants.FIX_BODY)).getChildElements();
+        OMElement rawData = null;
+        while (fields.hasNext()) {
+            OMElement field = (OMElement) fields.next();
+            if (field.getFirstElement() != null) {
+                rawData = field.getFirstElement();
+            }
+        }
+        assertNotNull(rawData);
+        assertEquals(FIXConstants.FIX_BINARY_FIELD, rawData.getLocalName());
+        assertXMLEqual(xml, payload.toString());
+        assertNull(FIXUtils.getFIXDataSource(body));
+        assertEquals(SEQ_NUM, FIXUtils.getSequenceNumber(msgCtx));
+        assertEquals(SESSION_ID, FIXUtils.getSourceSession(msgCtx));
+    }
 }